@@ -1,92 +1,2447 @@
 package com.terryx.datastructure.myconcurrenthashmap;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.*;
 
 /**
+ * A hash table supporting full concurrency of retrievals and high
+ * concurrency for updates, after {@code java.util.concurrent.ConcurrentHashMap}.
+ *
+ * Retrievals never lock. The table is an {@code AtomicReferenceArray}
+ * and the value and next fields of its nodes are volatile, so get()
+ * sees the result of the most recently completed update of the key.
+ * An insertion into an empty bin is a single CAS of the new node into
+ * the table. Every other update locks the first node of its bin, so
+ * writers only wait for each other when they hit the same bin.
+ *
+ * When the table grows, each bin in turn is split into the new table
+ * under the lock of its first node and then replaced by a
+ * ForwardingNode that points at the new table. Readers that meet one
+ * look in the new table instead. The bins are handed out in strides
+ * of at least {@link #MIN_TRANSFER_STRIDE}, from the top down, and
+ * every writer that meets a ForwardingNode or pushes the count over
+ * the threshold during a resize claims strides and moves them too,
+ * so the more threads write, the sooner the resize is done.
+ *
+ * The number of mappings is kept like a LongAdder: in a base count,
+ * and once updates of that collide, in a table of counter cells, each
+ * padded to its own cache line. A thread updates the cell picked by
+ * its probe hash, and moves to another cell, or doubles the table up
+ * to the number of CPUs, when its CAS fails. size() sums the cells,
+ * so it is exact only while no updates are in progress.
+ *
+ * compute, computeIfAbsent, computeIfPresent and merge are atomic:
+ * they run under the lock of the key's bin, and when the bin is empty
+ * they first CAS a ReservationNode into it and lock that. So the
+ * function is called at most once per call, racing callers for the
+ * same key wait for it rather than compute the value again, and
+ * updates of other bins go on meanwhile. The function should be short
+ * and must not update this map.
+ *
+ * The bulk operations forEach, search and reduce, in their key,
+ * value and entry forms, take a parallelism threshold: when the map
+ * is estimated to hold fewer mappings than that, they run in the
+ * calling thread ({@code Long.MAX_VALUE} always does so), else the
+ * table is split into ranges of bins that run as tasks in
+ * {@link ForkJoinPool#commonPool()}. They traverse the live table like
+ * the iterators do, without locking or copying, and so see each
+ * mapping that is present throughout and possibly some of those
+ * added or removed meanwhile. The functions must not depend on the
+ * order of the mappings, and reducers must be associative.
+ *
+ * Iterators and the views are weakly consistent: they never throw
+ * ConcurrentModificationException and reflect some state of the map
+ * at or since their creation. Like Hashtable, and unlike MyHashMap,
+ * this class does not allow null keys or values. Bins are always
+ * lists; unlike ConcurrentHashMap they are never turned into trees.
+ *
  * @author taoranxue on 1/30/18 9:03 PM.
  */
-public class MyConcurrentHashMap<K, V> implements ConcurrentMap<K, V> {
+public class MyConcurrentHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
 
+    /**
+     * The largest possible table capacity. Must be a power of two,
+     * and the top two bits of the hash are used for control purposes.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
 
+    /**
+     * The default initial table capacity. Must be a power of two.
+     */
+    static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Minimum number of rebinnings per transfer step. Ranges are
+     * subdivided to allow multiple resizer threads. This value serves
+     * as a lower bound to avoid resizers encountering excessive memory
+     * contention.
+     */
+    private static final int MIN_TRANSFER_STRIDE = 16;
+
+    /**
+     * The number of bits used for generation stamp in sizeCtl.
+     * Must be at least 6 for 32bit arrays.
+     */
+    private static final int RESIZE_STAMP_BITS = 16;
+
+    /**
+     * The maximum number of threads that can help resize.
+     * Must fit in 32 - RESIZE_STAMP_BITS bits.
+     */
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;
+
+    /**
+     * The bit shift for recording size stamp in sizeCtl.
+     */
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+
+    /*
+     * Encodings for Node hash fields. Normal nodes have nonnegative
+     * hashes.
+     */
+    static final int MOVED = -1; // hash for forwarding nodes
+    static final int RESERVED = -2; // hash for transient reservations
+
+    /**
+     * Number of CPUS, to place bounds on the transfer stride.
+     */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Usable bits of normal node hash.
+     */
+    static final int HASH_BITS = 0x7fffffff;
+
+    /**
+     * Key-value entry. Subclasses with a negative hash mark special
+     * nodes that hold no mapping; their find() searches on their
+     * behalf.
+     */
+    static class Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        volatile V val;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V val, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.val = val;
+            this.next = next;
+        }
+
+        public final K getKey() {
+            return key;
+        }
+
+        public final V getValue() {
+            return val;
+        }
+
+        public final int hashCode() {
+            return key.hashCode() ^ val.hashCode();
+        }
+
+        public final String toString() {
+            return key + "=" + val;
+        }
+
+        public final V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public final boolean equals(Object o) {
+            Object k, v, u;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?, ?>) o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (k == key || k.equals(key)) &&
+                    (v == (u = val) || v.equals(u)));
+        }
+
+        /**
+         * Finds the node for the key in the list starting here.
+         */
+        Node<K, V> find(int h, Object k) {
+            Node<K, V> e = this;
+            if (k != null) {
+                do {
+                    K ek;
+                    if (e.hash == h &&
+                            ((ek = e.key) == k || (ek != null && k.equals(ek))))
+                        return e;
+                } while ((e = e.next) != null);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Spreads higher bits of the hash to lower ones, as MyHashMap.hash
+     * does, and clears the sign bit, which marks special nodes.
+     */
+    static int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    /**
+     * Returns the stamp bits for resizing a table of size n. Must be
+     * negative when shifted left by RESIZE_STAMP_SHIFT.
+     */
+    static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    /**
+     * Returns a power of two table size for the given desired capacity.
+     */
+    static int tableSizeFor(int c) {
+        int n = c - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * The array of bins. Lazily initialized upon first insertion. Size
+     * is always a power of two.
+     */
+    transient volatile AtomicReferenceArray<Node<K, V>> table;
+
+    /**
+     * The next table to use; non-null only while resizing.
+     */
+    private transient volatile AtomicReferenceArray<Node<K, V>> nextTable;
+
+    /**
+     * Table initialization and resizing control. When negative, the
+     * table is being initialized or resized: -1 for initialization,
+     * else the resize stamp of the table length in the high bits and
+     * 1 + the number of active resizing threads in the low bits.
+     * Otherwise, when table is null, holds the initial table size to
+     * use upon creation, or 0 for default. After initialization, holds
+     * the next element count value upon which to resize the table.
+     */
+    transient volatile int sizeCtl;
+
+    /**
+     * The next table index (plus one) to split while resizing; strides
+     * are claimed by decreasing it.
+     */
+    private transient volatile int transferIndex;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MyConcurrentHashMap> SIZECTL =
+            AtomicIntegerFieldUpdater.newUpdater(MyConcurrentHashMap.class, "sizeCtl");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MyConcurrentHashMap> TRANSFERINDEX =
+            AtomicIntegerFieldUpdater.newUpdater(MyConcurrentHashMap.class, "transferIndex");
+
+    /**
+     * Base counter value, used mainly when there is no contention,
+     * but also as a fallback during table initialization races.
+     * Updated via CAS.
+     */
+    private transient volatile long baseCount;
+
+    /**
+     * Spinlock (locked via CAS) used when resizing and/or creating
+     * CounterCells.
+     */
+    private transient volatile int cellsBusy;
+
+    /**
+     * Table of counter cells. When non-null, size is a power of 2.
+     */
+    transient volatile CounterCell[] counterCells;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MyConcurrentHashMap> BASECOUNT =
+            AtomicLongFieldUpdater.newUpdater(MyConcurrentHashMap.class, "baseCount");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MyConcurrentHashMap> CELLSBUSY =
+            AtomicIntegerFieldUpdater.newUpdater(MyConcurrentHashMap.class, "cellsBusy");
+
+    // views
+    private transient KeySetView<K, V> keySet;
+    private transient ValuesView<K, V> values;
+    private transient EntrySetView<K, V> entrySet;
+
+    /**
+     * Creates a new, empty map with the default initial table size (16).
+     */
+    public MyConcurrentHashMap() {
+    }
+
+    /**
+     * Creates a new, empty map with an initial table size accommodating
+     * the specified number of elements without the need to dynamically
+     * resize.
+     *
+     * @param initialCapacity The implementation performs internal
+     *                        sizing to accommodate this many elements.
+     * @throws IllegalArgumentException if the initial capacity of
+     *                                  elements is negative
+     */
+    public MyConcurrentHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        this.sizeCtl = (initialCapacity >= (MAXIMUM_CAPACITY >>> 1)) ? MAXIMUM_CAPACITY :
+                tableSizeFor(initialCapacity + (initialCapacity >>> 1) + 1);
+    }
+
+    /**
+     * Creates a new map with the same mappings as the given map.
+     *
+     * @throws NullPointerException if the specified map, or any of its
+     *                              keys or values, is null
+     */
+    public MyConcurrentHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max(m.size(), DEFAULT_CAPACITY >>> 1));
+        putAll(m);
+    }
+
+    /* ---------------- Table access -------------- */
+
+    /**
+     * Initializes table, using the size recorded in sizeCtl.
+     */
+    private AtomicReferenceArray<Node<K, V>> initTable() {
+        AtomicReferenceArray<Node<K, V>> tab;
+        int sc;
+        while ((tab = table) == null || tab.length() == 0) {
+            if ((sc = sizeCtl) < 0) {
+                Thread.yield(); // lost initialization race; just spin
+            } else if (SIZECTL.compareAndSet(this, sc, -1)) {
+                try {
+                    if ((tab = table) == null || tab.length() == 0) {
+                        int n = (sc > 0) ? sc : DEFAULT_CAPACITY;
+                        table = tab = new AtomicReferenceArray<>(n);
+                        sc = n - (n >>> 2);
+                    }
+                } finally {
+                    sizeCtl = sc;
+                }
+                break;
+            }
+        }
+        return tab;
+    }
+
+    /**
+     * Adds to count, and if table is too small and not already
+     * resizing, initiates transfer. If already resizing, helps
+     * perform transfer if work is available. Rechecks occupancy
+     * after a transfer to see if another resize is already needed
+     * because resizings are lagging additions.
+     *
+     * @param x     the count to add
+     * @param check if negative, don't check resize
+     */
+    private void addCount(long x, int check) {
+        CounterCell[] cs;
+        long b, s;
+        if ((cs = counterCells) != null ||
+                !BASECOUNT.compareAndSet(this, b = baseCount, s = b + x)) {
+            CounterCell c;
+            long v;
+            int m;
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 ||
+                    (c = cs[getProbe() & m]) == null ||
+                    !(uncontended = CounterCell.VALUE.compareAndSet(c, v = c.value, v + x))) {
+                fullAddCount(x, uncontended);
+                return;
+            }
+            if (check <= 1)
+                return;
+            s = sumCount();
+        }
+        if (check >= 0) {
+            AtomicReferenceArray<Node<K, V>> tab, nt;
+            int n, sc;
+            while (s >= (long) (sc = sizeCtl) && (tab = table) != null &&
+                    (n = tab.length()) < MAXIMUM_CAPACITY) {
+                int rs = resizeStamp(n) << RESIZE_STAMP_SHIFT;
+                if (sc < 0) {
+                    if (sc == rs + MAX_RESIZERS || sc == rs + 1 ||
+                            (nt = nextTable) == null || transferIndex <= 0)
+                        break;
+                    if (SIZECTL.compareAndSet(this, sc, sc + 1))
+                        transfer(tab, nt);
+                } else if (SIZECTL.compareAndSet(this, sc, rs + 2))
+                    transfer(tab, null);
+                s = sumCount();
+            }
+        }
+    }
+
+    /**
+     * Helps transfer if a resize is in progress.
+     */
+    final AtomicReferenceArray<Node<K, V>> helpTransfer(AtomicReferenceArray<Node<K, V>> tab, Node<K, V> f) {
+        AtomicReferenceArray<Node<K, V>> nextTab;
+        int sc;
+        if (tab != null && (f instanceof ForwardingNode) &&
+                (nextTab = ((ForwardingNode<K, V>) f).nextTable) != null) {
+            int rs = resizeStamp(tab.length()) << RESIZE_STAMP_SHIFT;
+            while (nextTab == nextTable && table == tab &&
+                    (sc = sizeCtl) < 0) {
+                if (sc == rs + MAX_RESIZERS || sc == rs + 1 ||
+                        transferIndex <= 0)
+                    break;
+                if (SIZECTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, nextTab);
+                    break;
+                }
+            }
+            return nextTab;
+        }
+        return table;
+    }
+
+    /**
+     * Moves and/or copies the nodes in each bin to the new table,
+     * claiming a stride of bins at a time from transferIndex down. The
+     * first resizer passes a null nextTab and allocates it. The last
+     * thread to finish rechecks all bins, then installs the new table.
+     */
+    private void transfer(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab) {
+        int n = tab.length(), stride;
+        if ((stride = (NCPU > 1) ? (n >>> 3) / NCPU : n) < MIN_TRANSFER_STRIDE)
+            stride = MIN_TRANSFER_STRIDE; // subdivide range
+        if (nextTab == null) {            // initiating
+            try {
+                nextTab = new AtomicReferenceArray<>(n << 1);
+            } catch (Throwable ex) {      // try to cope with OOME
+                sizeCtl = Integer.MAX_VALUE;
+                return;
+            }
+            nextTable = nextTab;
+            transferIndex = n;
+        }
+        int nextn = nextTab.length();
+        ForwardingNode<K, V> fwd = new ForwardingNode<>(nextTab);
+        boolean advance = true;
+        boolean finishing = false; // to ensure sweep before committing nextTab
+        for (int i = 0, bound = 0; ; ) {
+            Node<K, V> f;
+            int fh;
+            while (advance) {
+                int nextIndex, nextBound;
+                if (--i >= bound || finishing)
+                    advance = false;
+                else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (TRANSFERINDEX.compareAndSet(this, nextIndex,
+                        nextBound = (nextIndex > stride ? nextIndex - stride : 0))) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0 || i >= n || i + n >= nextn) {
+                int sc;
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    sizeCtl = (n << 1) - (n >>> 1);
+                    return;
+                }
+                if (SIZECTL.compareAndSet(this, sc = sizeCtl, sc - 1)) {
+                    if ((sc - 2) != resizeStamp(n) << RESIZE_STAMP_SHIFT)
+                        return;
+                    finishing = advance = true;
+                    i = n; // recheck before commit
+                }
+            } else if ((f = tab.get(i)) == null)
+                advance = tab.compareAndSet(i, null, fwd);
+            else if ((fh = f.hash) == MOVED)
+                advance = true; // already processed
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                        splitBin(f, nextTab, i, n);
+                        tab.set(i, fwd);
+                        advance = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the list at f into the bins i and i + n of nextTab. Readers
+     * may still be walking the old list, so its nodes are copied, except
+     * for the trailing run that goes to the same bin, which is reused.
+     */
+    static <K, V> void splitBin(Node<K, V> f, AtomicReferenceArray<Node<K, V>> nextTab, int i, int n) {
+        int runBit = f.hash & n;
+        Node<K, V> lastRun = f;
+        for (Node<K, V> p = f.next; p != null; p = p.next) {
+            int b = p.hash & n;
+            if (b != runBit) {
+                runBit = b;
+                lastRun = p;
+            }
+        }
+        Node<K, V> ln, hn;
+        if (runBit == 0) {
+            ln = lastRun;
+            hn = null;
+        } else {
+            hn = lastRun;
+            ln = null;
+        }
+        for (Node<K, V> p = f; p != lastRun; p = p.next) {
+            int ph = p.hash;
+            K pk = p.key;
+            V pv = p.val;
+            if ((ph & n) == 0)
+                ln = new Node<>(ph, pk, pv, ln);
+            else
+                hn = new Node<>(ph, pk, pv, hn);
+        }
+        nextTab.set(i, ln);
+        nextTab.set(i + n, hn);
+    }
+
+    /**
+     * A node inserted at the head of bins during transfer operations.
+     */
+    static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> tab) {
+            super(MOVED, null, null, null);
+            this.nextTable = tab;
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            // loop to avoid arbitrarily deep recursion on forwarding nodes
+            outer:
+            for (AtomicReferenceArray<Node<K, V>> tab = nextTable; ; ) {
+                Node<K, V> e;
+                int n;
+                if (k == null || tab == null || (n = tab.length()) == 0 ||
+                        (e = tab.get((n - 1) & h)) == null)
+                    return null;
+                for (; ; ) {
+                    int eh;
+                    K ek;
+                    if ((eh = e.hash) == h &&
+                            ((ek = e.key) == k || (ek != null && k.equals(ek))))
+                        return e;
+                    if (eh < 0) {
+                        if (e instanceof ForwardingNode) {
+                            tab = ((ForwardingNode<K, V>) e).nextTable;
+                            continue outer;
+                        } else
+                            return e.find(h, k);
+                    }
+                    if ((e = e.next) == null)
+                        return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A place-holder node used in computeIfAbsent and compute.
+     */
+    static final class ReservationNode<K, V> extends Node<K, V> {
+        ReservationNode() {
+            super(RESERVED, null, null, null);
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            return null;
+        }
+    }
+
+    /* ---------------- Counter support -------------- */
+
+    /**
+     * A padded cell for distributing counts. Adapted from LongAdder
+     * and Striped64; the padding keeps two cells, or a cell and other
+     * hot data, from sharing a cache line.
+     */
+    static final class CounterCell {
+        long p0, p1, p2, p3, p4, p5, p6;
+        volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        CounterCell(long x) {
+            value = x;
+        }
+
+        static final AtomicLongFieldUpdater<CounterCell> VALUE =
+                AtomicLongFieldUpdater.newUpdater(CounterCell.class, "value");
+    }
+
+    /**
+     * Per-thread hash for picking a counter cell, 0 until the thread
+     * first needs a cell. Stands in for Thread's own probe field,
+     * which only java.util.concurrent can reach.
+     */
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private static final AtomicInteger probeGenerator = new AtomicInteger();
+
+    /**
+     * The increment for generating probe values.
+     */
+    private static final int PROBE_INCREMENT = 0x9e3779b9;
+
+    static int getProbe() {
+        return PROBE.get()[0];
+    }
+
+    /**
+     * Gives the current thread a nonzero probe and returns it.
+     */
+    static int initProbe() {
+        int p = probeGenerator.addAndGet(PROBE_INCREMENT);
+        int probe = (p == 0) ? 1 : p; // skip 0
+        PROBE.get()[0] = probe;
+        return probe;
+    }
+
+    /**
+     * Pseudo-randomly advances and records the given probe value for
+     * the current thread, using a Marsaglia xorshift.
+     */
+    static int advanceProbe(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        PROBE.get()[0] = probe;
+        return probe;
+    }
+
+    final long sumCount() {
+        CounterCell[] cs = counterCells;
+        long sum = baseCount;
+        if (cs != null) {
+            for (CounterCell c : cs)
+                if (c != null)
+                    sum += c.value;
+        }
+        return sum;
+    }
+
+    /**
+     * Adds x when the fast path of addCount failed: creates the cell
+     * table or a missing cell, moves the thread to another cell after
+     * a collision, and doubles the table after repeated collisions
+     * while it is smaller than the number of CPUs.
+     */
+    private void fullAddCount(long x, boolean wasUncontended) {
+        int h;
+        if ((h = getProbe()) == 0) {
+            h = initProbe();      // force initialization
+            wasUncontended = true;
+        }
+        boolean collide = false;  // True if last slot nonempty
+        for (; ; ) {
+            CounterCell[] cs;
+            CounterCell c;
+            int n;
+            long v;
+            if ((cs = counterCells) != null && (n = cs.length) > 0) {
+                if ((c = cs[(n - 1) & h]) == null) {
+                    if (cellsBusy == 0) {            // Try to attach new Cell
+                        CounterCell r = new CounterCell(x); // Optimistic create
+                        if (cellsBusy == 0 && CELLSBUSY.compareAndSet(this, 0, 1)) {
+                            boolean created = false;
+                            try {               // Recheck under lock
+                                CounterCell[] rs;
+                                int m, j;
+                                if ((rs = counterCells) != null &&
+                                        (m = rs.length) > 0 &&
+                                        rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    created = true;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            if (created)
+                                break;
+                            continue;           // Slot is now non-empty
+                        }
+                    }
+                    collide = false;
+                } else if (!wasUncontended)       // CAS already known to fail
+                    wasUncontended = true;      // Continue after rehash
+                else if (CounterCell.VALUE.compareAndSet(c, v = c.value, v + x))
+                    break;
+                else if (counterCells != cs || n >= NCPU)
+                    collide = false;            // At max size or stale
+                else if (!collide)
+                    collide = true;
+                else if (cellsBusy == 0 && CELLSBUSY.compareAndSet(this, 0, 1)) {
+                    try {
+                        if (counterCells == cs) // Expand table unless stale
+                            counterCells = Arrays.copyOf(cs, n << 1);
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    continue;                   // Retry with expanded table
+                }
+                h = advanceProbe(h);
+            } else if (cellsBusy == 0 && counterCells == cs &&
+                    CELLSBUSY.compareAndSet(this, 0, 1)) {
+                boolean init = false;
+                try {                           // Initialize table
+                    if (counterCells == cs) {
+                        CounterCell[] rs = new CounterCell[2];
+                        rs[h & 1] = new CounterCell(x);
+                        counterCells = rs;
+                        init = true;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+                if (init)
+                    break;
+            } else if (BASECOUNT.compareAndSet(this, v = baseCount, v + x))
+                break;                          // Fall back on using base
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map, or
+     * {@code Integer.MAX_VALUE} if there are more; see
+     * {@link #mappingCount}.
+     */
     @Override
     public int size() {
-        return 0;
+        long n = sumCount();
+        return ((n < 0L) ? 0 :
+                (n > (long) Integer.MAX_VALUE) ? Integer.MAX_VALUE :
+                        (int) n);
     }
 
     @Override
     public boolean isEmpty() {
-        return false;
+        return sumCount() <= 0L; // ignore transient negative values
     }
 
+    /**
+     * Returns the number of mappings. This method should be used
+     * instead of {@link #size} because a MyConcurrentHashMap may
+     * contain more mappings than can be represented as an int. The
+     * value returned is an estimate; the actual count may differ if
+     * there are concurrent insertions or removals.
+     *
+     * @return the number of mappings
+     */
+    public long mappingCount() {
+        long n = sumCount();
+        return (n < 0L) ? 0L : n; // ignore transient negative values
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key. Never
+     * locks.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V get(Object key) {
+        AtomicReferenceArray<Node<K, V>> tab;
+        Node<K, V> e, p;
+        int n, eh;
+        K ek;
+        int h = spread(key.hashCode());
+        if ((tab = table) != null && (n = tab.length()) > 0 &&
+                (e = tab.get((n - 1) & h)) != null) {
+            if ((eh = e.hash) == h) {
+                if ((ek = e.key) == key || (ek != null && key.equals(ek)))
+                    return e.val;
+            } else if (eh < 0)
+                return (p = e.find(h, key)) != null ? p.val : null;
+            while ((e = e.next) != null) {
+                if (e.hash == h &&
+                        ((ek = e.key) == key || (ek != null && key.equals(ek))))
+                    return e.val;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    /**
+     * @throws NullPointerException if the specified key is null
+     */
     @Override
     public boolean containsKey(Object key) {
-        return false;
+        return get(key) != null;
     }
 
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value. This requires a full traversal of the map.
+     *
+     * @throws NullPointerException if the specified value is null
+     */
     @Override
     public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        AtomicReferenceArray<Node<K, V>> t;
+        if ((t = table) != null) {
+            Traverser<K, V> it = new Traverser<>(t, t.length(), 0, t.length());
+            for (Node<K, V> p; (p = it.advance()) != null; ) {
+                V v;
+                if ((v = p.val) == value || (v != null && value.equals(v)))
+                    return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * Maps the specified key to the specified value in this table.
+     * Neither the key nor the value can be null.
+     *
+     * @return the previous value associated with {@code key}, or
+     * {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     */
     @Override
-    public V get(Object key) {
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    /**
+     * Implementation for put and putIfAbsent.
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) throw new NullPointerException();
+        int hash = spread(key.hashCode());
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0)
+                tab = initTable();
+            else if ((f = tab.get(i = (n - 1) & hash)) == null) {
+                if (tab.compareAndSet(i, null, new Node<>(hash, key, value, null)))
+                    break; // no lock when adding to empty bin
+            } else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                V oldVal = null;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f; ; ++binCount) {
+                                K ek;
+                                if (e.hash == hash &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    oldVal = e.val;
+                                    if (!onlyIfAbsent)
+                                        e.val = value;
+                                    break;
+                                }
+                                Node<K, V> pred = e;
+                                if ((e = e.next) == null) {
+                                    pred.next = new Node<>(hash, key, value, null);
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (binCount != 0) {
+                    if (oldVal != null)
+                        return oldVal;
+                    break;
+                }
+            }
+        }
+        addCount(1L, binCount);
         return null;
     }
 
+    /**
+     * Copies all of the mappings from the specified map to this one.
+     *
+     * @throws NullPointerException if the specified map, or any of its
+     *                              keys or values, is null
+     */
     @Override
-    public V put(K key, V value) {
-        return null;
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            putVal(e.getKey(), e.getValue(), false);
     }
 
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     *
+     * @return the previous value associated with {@code key}, or
+     * {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key is null
+     */
     @Override
     public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    /**
+     * Implementation for the four public remove/replace methods:
+     * Replaces node value with v, conditional upon match of cv if
+     * non-null. If resulting value is null, delete.
+     */
+    final V replaceNode(Object key, V value, Object cv) {
+        int hash = spread(key.hashCode());
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0 ||
+                    (f = tab.get(i = (n - 1) & hash)) == null)
+                break;
+            else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                V oldVal = null;
+                boolean validated = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            validated = true;
+                            for (Node<K, V> e = f, pred = null; ; ) {
+                                K ek;
+                                if (e.hash == hash &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    V ev = e.val;
+                                    if (cv == null || cv == ev ||
+                                            (ev != null && cv.equals(ev))) {
+                                        oldVal = ev;
+                                        if (value != null)
+                                            e.val = value;
+                                        else if (pred != null)
+                                            pred.next = e.next;
+                                        else
+                                            tab.set(i, e.next);
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null)
+                                    break;
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (validated) {
+                    if (oldVal != null) {
+                        if (value == null)
+                            addCount(-1L, -1);
+                        return oldVal;
+                    }
+                    break;
+                }
+            }
+        }
         return null;
     }
 
+    /**
+     * Removes all of the mappings from this map.
+     */
     @Override
-    public void putAll(Map<? extends K, ? extends V> m) {
+    public void clear() {
+        long delta = 0L; // negative number of deletions
+        int i = 0;
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (tab != null && i < tab.length()) {
+            int fh;
+            Node<K, V> f = tab.get(i);
+            if (f == null)
+                ++i;
+            else if ((fh = f.hash) == MOVED) {
+                tab = helpTransfer(tab, f);
+                i = 0; // restart
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        for (Node<K, V> p = (fh >= 0) ? f : null; p != null; p = p.next)
+                            --delta;
+                        tab.set(i++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0L)
+            addCount(delta, -1);
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     * or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
     @Override
-    public void clear() {
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && replaceNode(key, null, value) != null;
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        return replaceNode(key, newValue, oldValue) != null;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     * or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
     @Override
-    public Set<K> keySet() {
-        return null;
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        return replaceNode(key, value, null);
     }
 
+    /**
+     * If the specified key is not already associated with a value,
+     * attempts to compute its value using the given mapping function
+     * and enters it into this map unless {@code null}. The entire
+     * method invocation is performed atomically, so the function is
+     * applied at most once per key. Some attempted update operations
+     * on this map by other threads may be blocked while computation
+     * is in progress, so the computation should be short and simple,
+     * and must not attempt to update any other mappings of this map.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     * the specified key, or null if the computed value is null
+     * @throws NullPointerException  if the specified key or mappingFunction
+     *                               is null
+     * @throws IllegalStateException if the computation detectably
+     *                               attempts a recursive update to this map that would
+     *                               otherwise never complete
+     */
     @Override
-    public Collection<V> values() {
-        return null;
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        int h = spread(key.hashCode());
+        V val = null;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            K fk;
+            V fv;
+            if (tab == null || (n = tab.length()) == 0)
+                tab = initTable();
+            else if ((f = tab.get(i = (n - 1) & h)) == null) {
+                Node<K, V> r = new ReservationNode<>();
+                synchronized (r) {
+                    if (tab.compareAndSet(i, null, r)) {
+                        binCount = 1;
+                        Node<K, V> node = null;
+                        try {
+                            if ((val = mappingFunction.apply(key)) != null)
+                                node = new Node<>(h, key, val, null);
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            } else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else if (fh == h    // check first node without acquiring lock
+                    && ((fk = f.key) == key || (fk != null && key.equals(fk)))
+                    && (fv = f.val) != null)
+                return fv;
+            else {
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f; ; ++binCount) {
+                                K ek;
+                                if (e.hash == h &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    val = e.val;
+                                    break;
+                                }
+                                Node<K, V> pred = e;
+                                if ((e = e.next) == null) {
+                                    if ((val = mappingFunction.apply(key)) != null) {
+                                        if (pred.next != null)
+                                            throw new IllegalStateException("Recursive update");
+                                        added = true;
+                                        pred.next = new Node<>(h, key, val, null);
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (binCount != 0) {
+                    if (!added)
+                        return val;
+                    break;
+                }
+            }
+        }
+        if (val != null)
+            addCount(1L, binCount);
+        return val;
     }
 
+    /**
+     * If the value for the specified key is present, attempts to
+     * compute a new mapping given the key and its current mapped
+     * value. The entire method invocation is performed atomically.
+     * Some attempted update operations on this map by other threads
+     * may be blocked while computation is in progress, so the
+     * computation should be short and simple, and must not attempt to
+     * update any other mappings of this map.
+     *
+     * @param key               key with which a value may be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException  if the specified key or remappingFunction
+     *                               is null
+     * @throws IllegalStateException if the computation detectably
+     *                               attempts a recursive update to this map that would
+     *                               otherwise never complete
+     */
     @Override
-    public Set<Entry<K, V>> entrySet() {
-        return null;
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        int h = spread(key.hashCode());
+        V val = null;
+        int delta = 0;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0)
+                tab = initTable();
+            else if ((f = tab.get(i = (n - 1) & h)) == null)
+                break;
+            else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f, pred = null; ; ++binCount) {
+                                K ek;
+                                if (e.hash == h &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    val = remappingFunction.apply(key, e.val);
+                                    if (val != null)
+                                        e.val = val;
+                                    else {
+                                        delta = -1;
+                                        Node<K, V> en = e.next;
+                                        if (pred != null)
+                                            pred.next = en;
+                                        else
+                                            tab.set(i, en);
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null)
+                                    break;
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            }
+        }
+        if (delta != 0)
+            addCount((long) delta, binCount);
+        return val;
     }
 
+    /**
+     * Attempts to compute a mapping for the specified key and its
+     * current mapped value (or {@code null} if there is no current
+     * mapping). The entire method invocation is performed atomically.
+     * Some attempted update operations on this map by other threads
+     * may be blocked while computation is in progress, so the
+     * computation should be short and simple, and must not attempt to
+     * update any other mappings of this map.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException  if the specified key or remappingFunction
+     *                               is null
+     * @throws IllegalStateException if the computation detectably
+     *                               attempts a recursive update to this map that would
+     *                               otherwise never complete
+     */
     @Override
-    public V putIfAbsent(K key, V value) {
-        return null;
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        int h = spread(key.hashCode());
+        V val = null;
+        int delta = 0;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0)
+                tab = initTable();
+            else if ((f = tab.get(i = (n - 1) & h)) == null) {
+                Node<K, V> r = new ReservationNode<>();
+                synchronized (r) {
+                    if (tab.compareAndSet(i, null, r)) {
+                        binCount = 1;
+                        Node<K, V> node = null;
+                        try {
+                            if ((val = remappingFunction.apply(key, null)) != null) {
+                                delta = 1;
+                                node = new Node<>(h, key, val, null);
+                            }
+                        } finally {
+                            tab.set(i, node);
+                        }
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            } else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f, pred = null; ; ++binCount) {
+                                K ek;
+                                if (e.hash == h &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    val = remappingFunction.apply(key, e.val);
+                                    if (val != null)
+                                        e.val = val;
+                                    else {
+                                        delta = -1;
+                                        Node<K, V> en = e.next;
+                                        if (pred != null)
+                                            pred.next = en;
+                                        else
+                                            tab.set(i, en);
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null) {
+                                    val = remappingFunction.apply(key, null);
+                                    if (val != null) {
+                                        if (pred.next != null)
+                                            throw new IllegalStateException("Recursive update");
+                                        delta = 1;
+                                        pred.next = new Node<>(h, key, val, null);
+                                    }
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            }
+        }
+        if (delta != 0)
+            addCount((long) delta, binCount);
+        return val;
     }
 
+    /**
+     * If the specified key is not already associated with a
+     * (non-null) value, associates it with the given value.
+     * Otherwise, replaces the value with the results of the given
+     * remapping function, or removes if {@code null}. The entire
+     * method invocation is performed atomically. Some attempted
+     * update operations on this map by other threads may be blocked
+     * while computation is in progress, so the computation should be
+     * short and simple, and must not attempt to update any other
+     * mappings of this map.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException if the specified key or the
+     *                              remappingFunction is null
+     */
     @Override
-    public boolean remove(Object key, Object value) {
-        return false;
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (key == null || value == null || remappingFunction == null)
+            throw new NullPointerException();
+        int h = spread(key.hashCode());
+        V val = null;
+        int delta = 0;
+        int binCount = 0;
+        for (AtomicReferenceArray<Node<K, V>> tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length()) == 0)
+                tab = initTable();
+            else if ((f = tab.get(i = (n - 1) & h)) == null) {
+                if (tab.compareAndSet(i, null, new Node<>(h, key, value, null))) {
+                    delta = 1;
+                    val = value;
+                    break;
+                }
+            } else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f, pred = null; ; ++binCount) {
+                                K ek;
+                                if (e.hash == h &&
+                                        ((ek = e.key) == key || (ek != null && key.equals(ek)))) {
+                                    val = remappingFunction.apply(e.val, value);
+                                    if (val != null)
+                                        e.val = val;
+                                    else {
+                                        delta = -1;
+                                        Node<K, V> en = e.next;
+                                        if (pred != null)
+                                            pred.next = en;
+                                        else
+                                            tab.set(i, en);
+                                    }
+                                    break;
+                                }
+                                pred = e;
+                                if ((e = e.next) == null) {
+                                    delta = 1;
+                                    val = value;
+                                    pred.next = new Node<>(h, key, val, null);
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof ReservationNode)
+                            throw new IllegalStateException("Recursive update");
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            }
+        }
+        if (delta != 0)
+            addCount((long) delta, binCount);
+        return val;
     }
 
     @Override
-    public boolean replace(K key, V oldValue, V newValue) {
-        return false;
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) throw new NullPointerException();
+        AtomicReferenceArray<Node<K, V>> t;
+        if ((t = table) != null) {
+            Traverser<K, V> it = new Traverser<>(t, t.length(), 0, t.length());
+            for (Node<K, V> p; (p = it.advance()) != null; ) {
+                action.accept(p.key, p.val);
+            }
+        }
     }
 
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, and supports removal but not
+     * addition. Its iterators are weakly consistent.
+     */
     @Override
-    public V replace(K key, V value) {
-        return null;
+    public Set<K> keySet() {
+        KeySetView<K, V> ks;
+        return (ks = keySet) != null ? ks : (keySet = new KeySetView<>(this));
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map, backed by the map. Its iterators are weakly consistent.
+     */
+    @Override
+    public Collection<V> values() {
+        ValuesView<K, V> vs;
+        return (vs = values) != null ? vs : (values = new ValuesView<>(this));
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map,
+     * backed by the map. Its iterators are weakly consistent, and their
+     * entries write {@code setValue} through to the map.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySetView<K, V> es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySetView<>(this));
+    }
+
+    /* ---------------- Bulk operations -------------- */
+
+    /**
+     * Computes initial batch value for bulk tasks. The returned value
+     * is approximately exp2 of the number of times (minus one) to
+     * split task by two before executing leaf action. This value is
+     * faster to compute and more convenient to use as a guide to
+     * splitting than is the depth, since it is used while dividing by
+     * two anyway.
+     */
+    final int batchFor(long b) {
+        long n;
+        if (b == Long.MAX_VALUE || (n = sumCount()) <= 1L || n < b)
+            return 0;
+        int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+        return (b <= 0L || (n /= b) >= sp) ? sp : (int) n;
+    }
+
+    /**
+     * Performs the given action for each (key, value).
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param action               the action
+     */
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        if (action == null) throw new NullPointerException();
+        new ForEachMappingTask<>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+    }
+
+    /**
+     * Performs the given action for each non-null transformation
+     * of each (key, value).
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation
+     *                             for an element, or null if there is no transformation (in
+     *                             which case the action is not applied)
+     * @param action               the action
+     * @param <U>                  the return type of the transformer
+     */
+    public <U> void forEach(long parallelismThreshold,
+                            final BiFunction<? super K, ? super V, ? extends U> transformer,
+                            final Consumer<? super U> action) {
+        if (transformer == null || action == null)
+            throw new NullPointerException();
+        forEach(parallelismThreshold, new BiConsumer<K, V>() {
+            @Override
+            public void accept(K k, V v) {
+                U u;
+                if ((u = transformer.apply(k, v)) != null)
+                    action.accept(u);
+            }
+        });
+    }
+
+    /**
+     * Performs the given action for each key.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param action               the action
+     */
+    public void forEachKey(long parallelismThreshold, final Consumer<? super K> action) {
+        if (action == null) throw new NullPointerException();
+        forEach(parallelismThreshold, new BiConsumer<K, V>() {
+            @Override
+            public void accept(K k, V v) {
+                action.accept(k);
+            }
+        });
+    }
+
+    /**
+     * Performs the given action for each value.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param action               the action
+     */
+    public void forEachValue(long parallelismThreshold, final Consumer<? super V> action) {
+        if (action == null) throw new NullPointerException();
+        forEach(parallelismThreshold, new BiConsumer<K, V>() {
+            @Override
+            public void accept(K k, V v) {
+                action.accept(v);
+            }
+        });
+    }
+
+    /**
+     * Performs the given action for each entry. The entries do not
+     * support setValue.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param action               the action
+     */
+    public void forEachEntry(long parallelismThreshold, Consumer<? super Map.Entry<K, V>> action) {
+        if (action == null) throw new NullPointerException();
+        new ForEachEntryTask<>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+    }
+
+    /**
+     * Returns a non-null result from applying the given search
+     * function on each (key, value), or null if none. Upon success,
+     * further element processing is suppressed and the results of
+     * any other parallel invocations of the search function are
+     * ignored.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param searchFunction       a function returning a non-null
+     *                             result on success, else null
+     * @param <U>                  the return type of the search function
+     * @return a non-null result from applying the given search
+     * function on each (key, value), or null if none
+     */
+    public <U> U search(long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        if (searchFunction == null) throw new NullPointerException();
+        return new SearchMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                searchFunction, new AtomicReference<U>()).invoke();
+    }
+
+    /**
+     * Returns a non-null result from applying the given search
+     * function on each key, or null if none. Upon success, further
+     * element processing is suppressed.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param searchFunction       a function returning a non-null
+     *                             result on success, else null
+     * @param <U>                  the return type of the search function
+     * @return a non-null result from applying the given search
+     * function on each key, or null if none
+     */
+    public <U> U searchKeys(long parallelismThreshold, final Function<? super K, ? extends U> searchFunction) {
+        if (searchFunction == null) throw new NullPointerException();
+        return search(parallelismThreshold, new BiFunction<K, V, U>() {
+            @Override
+            public U apply(K k, V v) {
+                return searchFunction.apply(k);
+            }
+        });
+    }
+
+    /**
+     * Returns a non-null result from applying the given search
+     * function on each value, or null if none. Upon success, further
+     * element processing is suppressed.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param searchFunction       a function returning a non-null
+     *                             result on success, else null
+     * @param <U>                  the return type of the search function
+     * @return a non-null result from applying the given search
+     * function on each value, or null if none
+     */
+    public <U> U searchValues(long parallelismThreshold, final Function<? super V, ? extends U> searchFunction) {
+        if (searchFunction == null) throw new NullPointerException();
+        return search(parallelismThreshold, new BiFunction<K, V, U>() {
+            @Override
+            public U apply(K k, V v) {
+                return searchFunction.apply(v);
+            }
+        });
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation
+     * of all (key, value) pairs using the given reducer to
+     * combine values, or null if none.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation
+     *                             for an element, or null if there is no transformation (in
+     *                             which case it is not combined)
+     * @param reducer              a commutative associative combining function
+     * @param <U>                  the return type of the transformer
+     * @return the result of accumulating the given transformation
+     * of all (key, value) pairs
+     */
+    public <U> U reduce(long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        return new MapReduceMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                null, transformer, reducer).invoke();
+    }
+
+    /**
+     * Returns the result of accumulating all keys using the given
+     * reducer to combine values, or null if none.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param reducer              a commutative associative combining function
+     * @return the result of accumulating all keys using the given
+     * reducer to combine values, or null if none
+     */
+    public K reduceKeys(long parallelismThreshold, BiFunction<? super K, ? super K, ? extends K> reducer) {
+        if (reducer == null) throw new NullPointerException();
+        return reduce(parallelismThreshold, new BiFunction<K, V, K>() {
+            @Override
+            public K apply(K k, V v) {
+                return k;
+            }
+        }, reducer);
+    }
+
+    /**
+     * Returns the result of accumulating all values using the
+     * given reducer to combine values, or null if none.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param reducer              a commutative associative combining function
+     * @return the result of accumulating all values
+     */
+    public V reduceValues(long parallelismThreshold, BiFunction<? super V, ? super V, ? extends V> reducer) {
+        if (reducer == null) throw new NullPointerException();
+        return reduce(parallelismThreshold, new BiFunction<K, V, V>() {
+            @Override
+            public V apply(K k, V v) {
+                return v;
+            }
+        }, reducer);
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation
+     * of all (key, value) pairs using the given reducer to
+     * combine values, and the given basis as an identity value.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation
+     *                             for an element
+     * @param basis                the identity (initial default value) for the reduction
+     * @param reducer              a commutative associative combining function
+     * @return the result of accumulating the given transformation
+     * of all (key, value) pairs
+     */
+    public long reduceToLong(long parallelismThreshold,
+                             ToLongBiFunction<? super K, ? super V> transformer,
+                             long basis, LongBinaryOperator reducer) {
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        return new MapReduceMappingsToLongTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table,
+                null, transformer, basis, reducer).invoke();
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation
+     * of all values using the given reducer to combine values,
+     * and the given basis as an identity value.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation
+     *                             for an element
+     * @param basis                the identity (initial default value) for the reduction
+     * @param reducer              a commutative associative combining function
+     * @return the result of accumulating the given transformation
+     * of all values
+     */
+    public long reduceValuesToLong(long parallelismThreshold, final ToLongFunction<? super V> transformer,
+                                   long basis, LongBinaryOperator reducer) {
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        return reduceToLong(parallelismThreshold, new ToLongBiFunction<K, V>() {
+            @Override
+            public long applyAsLong(K k, V v) {
+                return transformer.applyAsLong(v);
+            }
+        }, basis, reducer);
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation
+     * of all (key, value) pairs using the given reducer to
+     * combine values, and the given basis as an identity value.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *                             needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation
+     *                             for an element
+     * @param basis                the identity (initial default value) for the reduction
+     * @param reducer              a commutative associative combining function
+     * @return the result of accumulating the given transformation
+     * of all (key, value) pairs
+     */
+    public double reduceToDouble(long parallelismThreshold,
+                                 ToDoubleBiFunction<? super K, ? super V> transformer,
+                                 double basis, DoubleBinaryOperator reducer) {
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        return new MapReduceMappingsToDoubleTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table,
+                null, transformer, basis, reducer).invoke();
+    }
+
+    /* ---------------- Iterators -------------- */
+
+    /**
+     * Records the table, its length, and current traversal index for a
+     * traverser that must process a region of a forwarded table before
+     * proceeding with the current table.
+     */
+    static final class TableStack<K, V> {
+        int length;
+        int index;
+        AtomicReferenceArray<Node<K, V>> tab;
+        TableStack<K, V> next;
+    }
+
+    /**
+     * Encapsulates traversal for methods such as containsValue; also
+     * serves as a base class for other iterators.
+     *
+     * Method advance visits once each still-valid node that was
+     * reachable upon iterator construction. It might miss some that
+     * were added to a bin after the bin was visited, which is OK wrt
+     * consistency guarantees. Maintaining this property in the face of
+     * possible ongoing resizes requires a fair amount of bookkeeping
+     * state: when a forwarding node is met, the traverser visits the
+     * corresponding bins of the next table, index and index + baseSize,
+     * before moving on, keeping the tables it came from on a stack.
+     */
+    static class Traverser<K, V> {
+        AtomicReferenceArray<Node<K, V>> tab; // current table; updated if resized
+        Node<K, V> next;         // the next entry to use
+        TableStack<K, V> stack, spare; // to save/restore on ForwardingNodes
+        int index;              // index of bin to use next
+        int baseIndex;          // current index of initial table
+        int baseLimit;          // index bound for initial table
+        final int baseSize;     // initial table size
+
+        Traverser(AtomicReferenceArray<Node<K, V>> tab, int size, int index, int limit) {
+            this.tab = tab;
+            this.baseSize = size;
+            this.baseIndex = this.index = index;
+            this.baseLimit = limit;
+            this.next = null;
+        }
+
+        /**
+         * Advances if possible, returning next valid node, or null if none.
+         */
+        final Node<K, V> advance() {
+            Node<K, V> e;
+            if ((e = next) != null)
+                e = e.next;
+            for (; ; ) {
+                AtomicReferenceArray<Node<K, V>> t;
+                int i, n;
+                if (e != null)
+                    return next = e;
+                if (baseIndex >= baseLimit || (t = tab) == null ||
+                        (n = t.length()) <= (i = index) || i < 0)
+                    return next = null;
+                if ((e = t.get(i)) != null && e.hash < 0) {
+                    if (e instanceof ForwardingNode) {
+                        tab = ((ForwardingNode<K, V>) e).nextTable;
+                        e = null;
+                        pushState(t, i, n);
+                        continue;
+                    } else
+                        e = null;
+                }
+                if (stack != null)
+                    recoverState(n);
+                else if ((index = i + baseSize) >= n)
+                    index = ++baseIndex; // visit upper slots if present
+            }
+        }
+
+        /**
+         * Saves traversal state upon encountering a forwarding node.
+         */
+        private void pushState(AtomicReferenceArray<Node<K, V>> t, int i, int n) {
+            TableStack<K, V> s = spare;  // reuse if possible
+            if (s != null)
+                spare = s.next;
+            else
+                s = new TableStack<>();
+            s.tab = t;
+            s.length = n;
+            s.index = i;
+            s.next = stack;
+            stack = s;
+        }
+
+        /**
+         * Possibly pops traversal state.
+         *
+         * @param n length of current table
+         */
+        private void recoverState(int n) {
+            TableStack<K, V> s;
+            int len;
+            while ((s = stack) != null && (index += (len = s.length)) >= n) {
+                n = len;
+                index = s.index;
+                tab = s.tab;
+                s.tab = null;
+                TableStack<K, V> next = s.next;
+                s.next = spare; // save for reuse
+                stack = next;
+                spare = s;
+            }
+            if (s == null && (index += baseSize) >= n)
+                index = ++baseIndex;
+        }
+    }
+
+    /**
+     * Base of key, value, and entry Iterators. Adds fields to
+     * Traverser to support iterator.remove.
+     */
+    static class BaseIterator<K, V> extends Traverser<K, V> {
+        final MyConcurrentHashMap<K, V> map;
+        Node<K, V> lastReturned;
+
+        BaseIterator(AtomicReferenceArray<Node<K, V>> tab, int size, int index, int limit,
+                     MyConcurrentHashMap<K, V> map) {
+            super(tab, size, index, limit);
+            this.map = map;
+            advance();
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final void remove() {
+            Node<K, V> p;
+            if ((p = lastReturned) == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            map.replaceNode(p.key, null, null);
+        }
+    }
+
+    static final class KeyIterator<K, V> extends BaseIterator<K, V> implements Iterator<K> {
+        KeyIterator(AtomicReferenceArray<Node<K, V>> tab, int size, MyConcurrentHashMap<K, V> map) {
+            super(tab, size, 0, size, map);
+        }
+
+        public K next() {
+            Node<K, V> p;
+            if ((p = next) == null)
+                throw new NoSuchElementException();
+            K k = p.key;
+            lastReturned = p;
+            advance();
+            return k;
+        }
+    }
+
+    static final class ValueIterator<K, V> extends BaseIterator<K, V> implements Iterator<V> {
+        ValueIterator(AtomicReferenceArray<Node<K, V>> tab, int size, MyConcurrentHashMap<K, V> map) {
+            super(tab, size, 0, size, map);
+        }
+
+        public V next() {
+            Node<K, V> e;
+            if ((e = next) == null)
+                throw new NoSuchElementException();
+            V v = e.val;
+            lastReturned = e;
+            advance();
+            return v;
+        }
+    }
+
+    static final class EntryIterator<K, V> extends BaseIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        EntryIterator(AtomicReferenceArray<Node<K, V>> tab, int size, MyConcurrentHashMap<K, V> map) {
+            super(tab, size, 0, size, map);
+        }
+
+        public Map.Entry<K, V> next() {
+            Node<K, V> e;
+            if ((e = next) == null)
+                throw new NoSuchElementException();
+            K k = e.key;
+            V v = e.val;
+            lastReturned = e;
+            advance();
+            return new MapEntry<>(k, v, map);
+        }
+    }
+
+    /**
+     * Exported Entry for EntryIterator.
+     */
+    static final class MapEntry<K, V> implements Map.Entry<K, V> {
+        final K key; // non-null
+        V val;       // non-null
+        final MyConcurrentHashMap<K, V> map;
+
+        MapEntry(K key, V val, MyConcurrentHashMap<K, V> map) {
+            this.key = key;
+            this.val = val;
+            this.map = map;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return val;
+        }
+
+        public int hashCode() {
+            return key.hashCode() ^ val.hashCode();
+        }
+
+        public String toString() {
+            return key + "=" + val;
+        }
+
+        public boolean equals(Object o) {
+            Object k, v;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?, ?>) o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (k == key || k.equals(key)) &&
+                    (v == val || v.equals(val)));
+        }
+
+        /**
+         * Sets our entry's value and writes through to the map. The
+         * value to return is somewhat arbitrary here: the mapping may
+         * have been changed or removed since it was read.
+         */
+        public V setValue(V value) {
+            if (value == null) throw new NullPointerException();
+            V v = val;
+            val = value;
+            map.put(key, value);
+            return v;
+        }
+    }
+
+    /* ---------------- Bulk tasks -------------- */
+
+    /**
+     * Base class for bulk tasks. Each task covers the bins
+     * [baseIndex, baseLimit) of the table it was created with, and
+     * forks off the upper half of its range while batch allows;
+     * what is left is walked with a Traverser, which follows
+     * forwarding nodes of a concurrent resize like the iterators do.
+     */
+    @SuppressWarnings("serial")
+    abstract static class BulkTask<K, V, R> extends CountedCompleter<R> {
+        final AtomicReferenceArray<Node<K, V>> tab;
+        final int baseSize;   // initial table size
+        final int baseIndex;  // first bin of this task
+        int baseLimit;        // index bound, lowered as halves are forked
+        int batch;            // split control
+
+        BulkTask(BulkTask<K, V, ?> par, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t) {
+            super(par);
+            this.batch = b;
+            this.baseIndex = i;
+            if ((this.tab = t) == null)
+                this.baseSize = this.baseLimit = 0;
+            else if (par == null)
+                this.baseSize = this.baseLimit = t.length();
+            else {
+                this.baseLimit = f;
+                this.baseSize = par.baseSize;
+            }
+        }
+
+        /**
+         * Returns a traverser over the bins left to this task.
+         */
+        final Traverser<K, V> traverser() {
+            return new Traverser<>(tab, baseSize, baseIndex, baseLimit);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class ForEachMappingTask<K, V> extends BulkTask<K, V, Void> {
+        final BiConsumer<? super K, ? super V> action;
+
+        ForEachMappingTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                           BiConsumer<? super K, ? super V> action) {
+            super(p, b, i, f, t);
+            this.action = action;
+        }
+
+        @Override
+        public void compute() {
+            final BiConsumer<? super K, ? super V> action;
+            if ((action = this.action) != null) {
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    addToPendingCount(1);
+                    new ForEachMappingTask<>(this, batch >>>= 1, baseLimit = h, f, tab, action).fork();
+                }
+                Traverser<K, V> it = traverser();
+                for (Node<K, V> p; (p = it.advance()) != null; )
+                    action.accept(p.key, p.val);
+                propagateCompletion();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class ForEachEntryTask<K, V> extends BulkTask<K, V, Void> {
+        final Consumer<? super Map.Entry<K, V>> action;
+
+        ForEachEntryTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                         Consumer<? super Map.Entry<K, V>> action) {
+            super(p, b, i, f, t);
+            this.action = action;
+        }
+
+        @Override
+        public void compute() {
+            final Consumer<? super Map.Entry<K, V>> action;
+            if ((action = this.action) != null) {
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    addToPendingCount(1);
+                    new ForEachEntryTask<>(this, batch >>>= 1, baseLimit = h, f, tab, action).fork();
+                }
+                Traverser<K, V> it = traverser();
+                for (Node<K, V> p; (p = it.advance()) != null; )
+                    action.accept(p);
+                propagateCompletion();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class SearchMappingsTask<K, V, U> extends BulkTask<K, V, U> {
+        final BiFunction<? super K, ? super V, ? extends U> searchFunction;
+        final AtomicReference<U> result;
+
+        SearchMappingsTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                           BiFunction<? super K, ? super V, ? extends U> searchFunction,
+                           AtomicReference<U> result) {
+            super(p, b, i, f, t);
+            this.searchFunction = searchFunction;
+            this.result = result;
+        }
+
+        @Override
+        public U getRawResult() {
+            return result.get();
+        }
+
+        @Override
+        public void compute() {
+            final BiFunction<? super K, ? super V, ? extends U> searchFunction;
+            final AtomicReference<U> result;
+            if ((searchFunction = this.searchFunction) != null &&
+                    (result = this.result) != null) {
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    if (result.get() != null)
+                        return;
+                    addToPendingCount(1);
+                    new SearchMappingsTask<>(this, batch >>>= 1, baseLimit = h, f, tab,
+                            searchFunction, result).fork();
+                }
+                Traverser<K, V> it = traverser();
+                while (result.get() == null) {
+                    U u;
+                    Node<K, V> p;
+                    if ((p = it.advance()) == null) {
+                        propagateCompletion();
+                        break;
+                    }
+                    if ((u = searchFunction.apply(p.key, p.val)) != null) {
+                        if (result.compareAndSet(null, u))
+                            quietlyCompleteRoot();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class MapReduceMappingsTask<K, V, U> extends BulkTask<K, V, U> {
+        final BiFunction<? super K, ? super V, ? extends U> transformer;
+        final BiFunction<? super U, ? super U, ? extends U> reducer;
+        U result;
+        MapReduceMappingsTask<K, V, U> rights, nextRight;
+
+        MapReduceMappingsTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                              MapReduceMappingsTask<K, V, U> nextRight,
+                              BiFunction<? super K, ? super V, ? extends U> transformer,
+                              BiFunction<? super U, ? super U, ? extends U> reducer) {
+            super(p, b, i, f, t);
+            this.nextRight = nextRight;
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public U getRawResult() {
+            return result;
+        }
+
+        @Override
+        public void compute() {
+            final BiFunction<? super K, ? super V, ? extends U> transformer;
+            final BiFunction<? super U, ? super U, ? extends U> reducer;
+            if ((transformer = this.transformer) != null &&
+                    (reducer = this.reducer) != null) {
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    addToPendingCount(1);
+                    (rights = new MapReduceMappingsTask<>(this, batch >>>= 1, baseLimit = h, f, tab,
+                            rights, transformer, reducer)).fork();
+                }
+                U r = null;
+                Traverser<K, V> it = traverser();
+                for (Node<K, V> p; (p = it.advance()) != null; ) {
+                    U u;
+                    if ((u = transformer.apply(p.key, p.val)) != null)
+                        r = (r == null) ? u : reducer.apply(r, u);
+                }
+                result = r;
+                // fold the results of completed subtasks into their parents
+                for (CountedCompleter<?> c = firstComplete(); c != null; c = c.nextComplete()) {
+                    @SuppressWarnings("unchecked")
+                    MapReduceMappingsTask<K, V, U> t = (MapReduceMappingsTask<K, V, U>) c, s = t.rights;
+                    while (s != null) {
+                        U tr, sr;
+                        if ((sr = s.result) != null)
+                            t.result = (((tr = t.result) == null) ? sr : reducer.apply(tr, sr));
+                        s = t.rights = s.nextRight;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class MapReduceMappingsToLongTask<K, V> extends BulkTask<K, V, Long> {
+        final ToLongBiFunction<? super K, ? super V> transformer;
+        final LongBinaryOperator reducer;
+        final long basis;
+        long result;
+        MapReduceMappingsToLongTask<K, V> rights, nextRight;
+
+        MapReduceMappingsToLongTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                                    MapReduceMappingsToLongTask<K, V> nextRight,
+                                    ToLongBiFunction<? super K, ? super V> transformer,
+                                    long basis, LongBinaryOperator reducer) {
+            super(p, b, i, f, t);
+            this.nextRight = nextRight;
+            this.transformer = transformer;
+            this.basis = basis;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public Long getRawResult() {
+            return result;
+        }
+
+        @Override
+        public void compute() {
+            final ToLongBiFunction<? super K, ? super V> transformer;
+            final LongBinaryOperator reducer;
+            if ((transformer = this.transformer) != null &&
+                    (reducer = this.reducer) != null) {
+                long r = this.basis;
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    addToPendingCount(1);
+                    (rights = new MapReduceMappingsToLongTask<>(this, batch >>>= 1, baseLimit = h, f, tab,
+                            rights, transformer, r, reducer)).fork();
+                }
+                Traverser<K, V> it = traverser();
+                for (Node<K, V> p; (p = it.advance()) != null; )
+                    r = reducer.applyAsLong(r, transformer.applyAsLong(p.key, p.val));
+                result = r;
+                for (CountedCompleter<?> c = firstComplete(); c != null; c = c.nextComplete()) {
+                    @SuppressWarnings("unchecked")
+                    MapReduceMappingsToLongTask<K, V> t = (MapReduceMappingsToLongTask<K, V>) c, s = t.rights;
+                    while (s != null) {
+                        t.result = reducer.applyAsLong(t.result, s.result);
+                        s = t.rights = s.nextRight;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class MapReduceMappingsToDoubleTask<K, V> extends BulkTask<K, V, Double> {
+        final ToDoubleBiFunction<? super K, ? super V> transformer;
+        final DoubleBinaryOperator reducer;
+        final double basis;
+        double result;
+        MapReduceMappingsToDoubleTask<K, V> rights, nextRight;
+
+        MapReduceMappingsToDoubleTask(BulkTask<K, V, ?> p, int b, int i, int f, AtomicReferenceArray<Node<K, V>> t,
+                                      MapReduceMappingsToDoubleTask<K, V> nextRight,
+                                      ToDoubleBiFunction<? super K, ? super V> transformer,
+                                      double basis, DoubleBinaryOperator reducer) {
+            super(p, b, i, f, t);
+            this.nextRight = nextRight;
+            this.transformer = transformer;
+            this.basis = basis;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public Double getRawResult() {
+            return result;
+        }
+
+        @Override
+        public void compute() {
+            final ToDoubleBiFunction<? super K, ? super V> transformer;
+            final DoubleBinaryOperator reducer;
+            if ((transformer = this.transformer) != null &&
+                    (reducer = this.reducer) != null) {
+                double r = this.basis;
+                for (int i = baseIndex, f, h; batch > 0 &&
+                        (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+                    addToPendingCount(1);
+                    (rights = new MapReduceMappingsToDoubleTask<>(this, batch >>>= 1, baseLimit = h, f, tab,
+                            rights, transformer, r, reducer)).fork();
+                }
+                Traverser<K, V> it = traverser();
+                for (Node<K, V> p; (p = it.advance()) != null; )
+                    r = reducer.applyAsDouble(r, transformer.applyAsDouble(p.key, p.val));
+                result = r;
+                for (CountedCompleter<?> c = firstComplete(); c != null; c = c.nextComplete()) {
+                    @SuppressWarnings("unchecked")
+                    MapReduceMappingsToDoubleTask<K, V> t = (MapReduceMappingsToDoubleTask<K, V>) c, s = t.rights;
+                    while (s != null) {
+                        t.result = reducer.applyAsDouble(t.result, s.result);
+                        s = t.rights = s.nextRight;
+                    }
+                }
+            }
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    static final class KeySetView<K, V> extends AbstractSet<K> {
+        final MyConcurrentHashMap<K, V> map;
+
+        KeySetView(MyConcurrentHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            AtomicReferenceArray<Node<K, V>> t = map.table;
+            int f = (t == null) ? 0 : t.length();
+            return new KeyIterator<>(t, f, map);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class ValuesView<K, V> extends AbstractCollection<V> {
+        final MyConcurrentHashMap<K, V> map;
+
+        ValuesView(MyConcurrentHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            AtomicReferenceArray<Node<K, V>> t = map.table;
+            int f = (t == null) ? 0 : t.length();
+            return new ValueIterator<>(t, f, map);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class EntrySetView<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        final MyConcurrentHashMap<K, V> map;
+
+        EntrySetView(MyConcurrentHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            AtomicReferenceArray<Node<K, V>> t = map.table;
+            int f = (t == null) ? 0 : t.length();
+            return new EntryIterator<>(t, f, map);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Object k, v, r;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?, ?>) o).getKey()) != null &&
+                    (r = map.get(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Object k, v;
+            Map.Entry<?, ?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?, ?>) o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    map.remove(k, v));
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
     }
 }
@@ -0,0 +1,358 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * A {@code long -> Object} hash map that never boxes: keys and values
+ * live in parallel primitive arrays probed linearly, with
+ * backward-shift deletion as in {@link MyOpenHashMap}, so get/put
+ * allocate nothing once the table is sized.
+ *
+ * One key value, the empty key (0 unless given to the constructor),
+ * marks free slots in the key array. A mapping for the empty key
+ * itself is kept in a separate field, so every long can be used as a
+ * key; pick an empty key that is rare in the data to keep that path
+ * cold.
+ *
+ * Values may be null; {@link #get} then cannot tell a null mapping
+ * from an absent one, use {@link #containsKey} where it matters.
+ */
+public class LongObjectMap<V> {
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Receives the mappings in {@link #forEach}.
+     */
+    public interface LongObjectConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Keys, emptyKey marks a free slot.
+     */
+    long[] keys;
+
+    /**
+     * Values, parallel to keys.
+     */
+    Object[] values;
+
+    /**
+     * The key value marking free slots.
+     */
+    final long emptyKey;
+
+    /**
+     * Whether the empty key is mapped, and to what; this mapping is
+     * counted in size but not stored in the arrays.
+     */
+    boolean hasEmptyKeyMapping;
+    V emptyKeyValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    /**
+     * The load factor for the table.
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    int modCount;
+
+    public LongObjectMap() {
+        this(0);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR, 0L);
+    }
+
+    /**
+     * Constructs an empty map able to hold {@code expectedSize}
+     * mappings without resizing.
+     *
+     * @param expectedSize the expected number of mappings
+     * @param loadFactor   the load factor, in (0, 1)
+     * @param emptyKey     the key value used to mark free slots
+     * @throws IllegalArgumentException if the size is negative or the
+     *                                  load factor is out of range
+     */
+    public LongObjectMap(int expectedSize, float loadFactor, long emptyKey) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expectedSize);
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        this.emptyKey = emptyKey;
+        allocate(MyOpenHashMap.capacityFor(expectedSize, loadFactor));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        if (emptyKey != 0) {
+            Arrays.fill(keys, emptyKey);
+        }
+        values = new Object[capacity];
+        threshold = (capacity == MAXIMUM_CAPACITY) ? capacity - 1 : (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Home slot of a key. Primitive keys are often small or sequential,
+     * so they are scrambled with a golden-ratio multiply before masking.
+     */
+    static int home(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V value(Object v) {
+        return (V) v;
+    }
+
+    /**
+     * Returns the slot holding the key, or -1 if none. Must not be
+     * called with the empty key.
+     */
+    int findSlot(long key) {
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = home(key, mask); ; i = (i + 1) & mask) {
+            long k = ks[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == emptyKey) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     */
+    public V get(long key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == emptyKey) {
+            return hasEmptyKeyMapping ? emptyKeyValue : defaultValue;
+        }
+        int i = findSlot(key);
+        return i < 0 ? defaultValue : LongObjectMap.<V>value(values[i]);
+    }
+
+    public boolean containsKey(long key) {
+        return key == emptyKey ? hasEmptyKeyMapping : findSlot(key) >= 0;
+    }
+
+    public boolean containsValue(V value) {
+        if (hasEmptyKeyMapping && Objects.equals(emptyKeyValue, value)) {
+            return true;
+        }
+        long[] ks = keys;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != emptyKey && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     */
+    public V put(long key, V value) {
+        if (key == emptyKey) {
+            V oldValue = hasEmptyKeyMapping ? emptyKeyValue : null;
+            if (!hasEmptyKeyMapping) {
+                hasEmptyKeyMapping = true;
+                size++;
+                modCount++;
+            }
+            emptyKeyValue = value;
+            return oldValue;
+        }
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        int i = home(key, mask);
+        for (long k; (k = ks[i]) != emptyKey; i = (i + 1) & mask) {
+            if (k == key) {
+                V oldValue = LongObjectMap.<V>value(values[i]);
+                values[i] = value;
+                return oldValue;
+            }
+        }
+        ks[i] = key;
+        values[i] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Doubles the table, re-placing every key from its home slot.
+     */
+    void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldCap = oldKeys.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1) {
+                throw new IllegalStateException("Capacity exhausted.");
+            }
+            return;
+        }
+        allocate(oldCap << 1);
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        for (int j = 0; j < oldCap; j++) {
+            long k = oldKeys[j];
+            if (k != emptyKey) {
+                int i = home(k, mask);
+                while (ks[i] != emptyKey) {
+                    i = (i + 1) & mask;
+                }
+                ks[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     */
+    public V remove(long key) {
+        if (key == emptyKey) {
+            if (!hasEmptyKeyMapping) {
+                return null;
+            }
+            V oldValue = emptyKeyValue;
+            hasEmptyKeyMapping = false;
+            emptyKeyValue = null;
+            size--;
+            modCount++;
+            return oldValue;
+        }
+        int i = findSlot(key);
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = LongObjectMap.<V>value(values[i]);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Empties slot i and shifts the rest of its run back, as
+     * MyOpenHashMap.removeAt does.
+     */
+    void removeAt(int i) {
+        long[] ks = keys;
+        Object[] vs = values;
+        int mask = ks.length - 1, hole = i;
+        for (int j = (i + 1) & mask; ks[j] != emptyKey; j = (j + 1) & mask) {
+            int dist = (j - home(ks[j], mask)) & mask;
+            if (dist >= ((j - hole) & mask)) {
+                ks[hole] = ks[j];
+                vs[hole] = vs[j];
+                hole = j;
+            }
+        }
+        ks[hole] = emptyKey;
+        vs[hole] = null;
+        size--;
+        modCount++;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, emptyKey);
+            Arrays.fill(values, null);
+            hasEmptyKeyMapping = false;
+            emptyKeyValue = null;
+            size = 0;
+            modCount++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Performs the given action for each mapping, in table order.
+     *
+     * @throws ConcurrentModificationException if the action adds or
+     *                                         removes mappings
+     */
+    public void forEach(LongObjectConsumer<? super V> action) {
+        int mc = modCount;
+        if (hasEmptyKeyMapping) {
+            action.accept(emptyKey, emptyKeyValue);
+        }
+        long[] ks = keys;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != emptyKey) {
+                action.accept(ks[i], LongObjectMap.<V>value(values[i]));
+            }
+        }
+        if (mc != modCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        forEach(new LongObjectConsumer<V>() {
+            @Override
+            public void accept(long key, V value) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(key).append('=').append(value);
+            }
+        });
+        return sb.append('}').toString();
+    }
+}
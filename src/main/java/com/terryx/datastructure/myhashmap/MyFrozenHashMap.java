@@ -0,0 +1,361 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.*;
+
+/**
+ * Immutable map addressed by a minimal perfect hash function, built
+ * with the CHD (compress, hash, displace) algorithm. Keys and values
+ * are kept next to each other in one dense array with exactly one
+ * slot per mapping, and a lookup reads one displacement and then one
+ * slot: a key is either in the slot its hash leads to or not in the
+ * map.
+ *
+ * To build the function the keys are hashed into buckets of about
+ * {@link #BUCKET_SIZE} keys. Taking the largest buckets first, each
+ * bucket is given the smallest displacement d for which all of its
+ * keys hash to slots that are still free; lookups recompute the slot
+ * from the key's hash and the displacement of its bucket. Buckets of
+ * a single key come last, when few slots are free, so instead of
+ * searching they record the slot itself. The displacements cost
+ * about one int per {@code BUCKET_SIZE} keys.
+ *
+ * The function only sees {@code hashCode()}, so keys with exactly the
+ * same hash cannot be told apart by it. All but one key of such a
+ * group are placed after the perfectly hashed slots and found through
+ * a small ordinary {@link MyHashMap} instead; with a reasonable hash
+ * function this overflow is empty or nearly so.
+ *
+ * Instances are created by {@link MyHashMap#freeze()} or from any map
+ * with {@link #MyFrozenHashMap(Map)}. All mutating methods throw
+ * {@code UnsupportedOperationException}.
+ */
+public final class MyFrozenHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * Average number of keys per bucket. Larger buckets make the
+     * displacement array smaller but the search for displacements
+     * slower: building a million keys takes about 1.5s with 3, 2.7s
+     * with 4 and 5s with 5.
+     */
+    static final int BUCKET_SIZE = 3;
+
+    /**
+     * Mixes the bucket and slot hashes apart from each other and from
+     * the bins of MyHashMap.
+     */
+    static final int BUCKET_SEED = 0x2545F491, SLOT_SEED = 0x61C88647;
+
+    /**
+     * Number of perfectly hashed slots, which come first in table.
+     */
+    final int slots;
+
+    /**
+     * Displacement of each bucket, or -1 - slot for a bucket holding a
+     * single key, which is placed directly.
+     */
+    final int[] displacements;
+
+    /**
+     * Key of slot i at 2 * i, its value at 2 * i + 1, so that both are
+     * usually on the same cache line. The slots past {@code slots}
+     * hold the overflow.
+     */
+    final Object[] table;
+
+    /**
+     * Slot of each overflow key, or null if none.
+     */
+    final MyHashMap<Object, Integer> overflow;
+
+    /**
+     * Creates a frozen copy of the given map.
+     *
+     * @throws NullPointerException if the specified map is null
+     */
+    public MyFrozenHashMap(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        int[] hashes = new int[n];
+        Object[] ks = new Object[n];
+        Object[] vs = new Object[n];
+        int i = 0;
+        if (m instanceof MyHashMap && !((MyHashMap<?, ?>) m).keyedHashing) {
+            // reuse stored hashes instead of calling hashCode() again
+            MyHashMap<?, ?> src = (MyHashMap<?, ?>) m;
+            i = copyNodes(src.table, hashes, ks, vs, i);
+            i = copyNodes(src.oldTable, hashes, ks, vs, i);
+        } else {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                hashes[i] = MyHashMap.hash(e.getKey());
+                ks[i] = e.getKey();
+                vs[i] = e.getValue();
+                i++;
+            }
+        }
+        if (i != n)
+            throw new ConcurrentModificationException();
+
+        // sort by hash, so that keys with equal hashes are adjacent
+        long[] byHash = new long[n];
+        for (i = 0; i < n; i++) {
+            byHash[i] = ((long) hashes[i] << 32) | i;
+        }
+        Arrays.sort(byHash);
+        int unique = 0;
+        for (i = 0; i < n; i++) {
+            if (i == 0 || (int) (byHash[i] >>> 32) != (int) (byHash[i - 1] >>> 32)) {
+                unique++;
+            }
+        }
+
+        slots = unique;
+        table = new Object[2 * n];
+        displacements = new int[Math.max(1, (unique + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+
+        int[] uniqueHashes = new int[unique];
+        int[] uniqueIndex = new int[unique];
+        int next = unique;
+        MyHashMap<Object, Integer> extra = null;
+        for (i = 0, unique = 0; i < n; i++) {
+            int h = (int) (byHash[i] >>> 32), index = (int) byHash[i];
+            if (i == 0 || h != (int) (byHash[i - 1] >>> 32)) {
+                uniqueHashes[unique] = h;
+                uniqueIndex[unique++] = index;
+            } else {
+                if (extra == null) {
+                    extra = new MyHashMap<>();
+                }
+                extra.putVal(h, ks[index], next);
+                table[2 * next] = ks[index];
+                table[2 * next++ + 1] = vs[index];
+            }
+        }
+        overflow = extra;
+
+        int[] slotOf = place(uniqueHashes);
+        for (i = 0; i < slotOf.length; i++) {
+            table[2 * slotOf[i]] = ks[uniqueIndex[i]];
+            table[2 * slotOf[i] + 1] = vs[uniqueIndex[i]];
+        }
+    }
+
+    private static int copyNodes(MyHashMap.Node<?, ?>[] tab, int[] hashes, Object[] ks, Object[] vs, int i) {
+        if (tab != null) {
+            for (MyHashMap.Node<?, ?> b : tab) {
+                for (MyHashMap.Node<?, ?> e = b; e != null; e = e.next) {
+                    if (i == ks.length)
+                        throw new ConcurrentModificationException();
+                    hashes[i] = e.hash;
+                    ks[i] = e.key;
+                    vs[i] = e.value;
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Fills in the displacements for the given distinct hashes, and
+     * returns the slot assigned to each.
+     */
+    private int[] place(int[] hashes) {
+        int n = hashes.length, r = displacements.length;
+        int[] slotOf = new int[n];
+        if (n == 0) {
+            return slotOf;
+        }
+
+        // group the keys by bucket (counting sort)
+        int[] bucketStart = new int[r + 1];
+        for (int h : hashes) {
+            bucketStart[bucketOf(h, r) + 1]++;
+        }
+        int maxBucket = 0;
+        for (int b = 0; b < r; b++) {
+            maxBucket = Math.max(maxBucket, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(bucketStart, r);
+        for (int i = 0; i < n; i++) {
+            members[fill[bucketOf(hashes[i], r)]++] = i;
+        }
+
+        // then order the buckets by size, largest first
+        int[] sizeStart = new int[maxBucket + 2];
+        for (int b = 0; b < r; b++) {
+            sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucket; s++) {
+            sizeStart[s + 1] += sizeStart[s];
+        }
+        int[] order = new int[r];
+        for (int b = 0; b < r; b++) {
+            order[sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+        }
+
+        boolean[] taken = new boolean[n];
+        int[] trial = new int[maxBucket];
+        int free = 0; // no free slot below this one
+        for (int b : order) {
+            int from = bucketStart[b], to = bucketStart[b + 1];
+            if (from == to) {
+                break; // only empty buckets left
+            }
+            if (to - from == 1) {
+                // a lone key can simply take the next free slot
+                while (taken[free]) {
+                    free++;
+                }
+                taken[free] = true;
+                displacements[b] = -1 - free;
+                slotOf[members[from]] = free;
+                continue;
+            }
+            for (int d = 0; ; d++) {
+                int placed = 0;
+                for (int k = from; k < to; k++) {
+                    int slot = slotOf(hashes[members[k]], d, n);
+                    if (taken[slot]) {
+                        break;
+                    }
+                    taken[slot] = true;
+                    trial[placed++] = slot;
+                }
+                if (placed == to - from) {
+                    displacements[b] = d;
+                    for (int k = from; k < to; k++) {
+                        slotOf[members[k]] = trial[k - from];
+                    }
+                    break;
+                }
+                // undo and try the next displacement
+                while (placed > 0) {
+                    taken[trial[--placed]] = false;
+                }
+            }
+        }
+        return slotOf;
+    }
+
+    /**
+     * The murmur3 32-bit finalizer, a bijective mix of all bits.
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Maps a uniform int onto [0, n) without division.
+     */
+    static int reduce(int x, int n) {
+        return (int) (((x & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    static int bucketOf(int hash, int r) {
+        return reduce(mix(hash ^ BUCKET_SEED), r);
+    }
+
+    static int slotOf(int hash, int d, int n) {
+        return reduce(mix((hash ^ SLOT_SEED) + d * 0x9E3779B9), n);
+    }
+
+    /**
+     * Returns the slot of the key, or -1 if not present.
+     */
+    private int indexOf(Object key) {
+        int n = slots;
+        if (n != 0) {
+            int h = MyHashMap.hash(key);
+            int d = displacements[bucketOf(h, displacements.length)];
+            int i = (d < 0) ? -1 - d : slotOf(h, d, n);
+            Object k = table[2 * i];
+            if (k == key || (key != null && key.equals(k))) {
+                return i;
+            }
+            if (overflow != null) {
+                MyHashMap.Node<Object, Integer> e = overflow.getNode(h, key);
+                if (e != null) {
+                    return e.value;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) table[2 * i + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 1; i < table.length; i += 2) {
+            Object v = table[i];
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return table.length >> 1;
+    }
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<Map.Entry<K, V>>() {
+                int next;
+
+                public boolean hasNext() {
+                    return next < table.length;
+                }
+
+                @SuppressWarnings("unchecked")
+                public Map.Entry<K, V> next() {
+                    if (next >= table.length)
+                        throw new NoSuchElementException();
+                    int i = next;
+                    next += 2;
+                    return new AbstractMap.SimpleImmutableEntry<>((K) table[i], (V) table[i + 1]);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(table[2 * i + 1], e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return table.length >> 1;
+        }
+    }
+}
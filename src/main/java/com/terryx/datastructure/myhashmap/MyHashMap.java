@@ -1,12 +1,21 @@
 package com.terryx.datastructure.myhashmap;
 
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * @author taoranxue on 2/17/18 2:14 PM.
  */
 public class MyHashMap<K, V> implements Map<K, V> {
-    class Node<K, V> {
+    static class Node<K, V> implements Map.Entry<K, V> {
         // hash and key can't be change
         final int hash;
         final K key;
@@ -45,6 +54,16 @@ public class MyHashMap<K, V> implements Map<K, V> {
             Entry e = (Entry) o;
             return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
         }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
     }
 
     /**
@@ -64,6 +83,47 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    /**
+     * The bin count threshold for using a tree rather than list for a
+     * bin.  Bins are converted to trees when adding an element to a
+     * bin with at least this many nodes. The value must be greater
+     * than 2 and should be at least 8 to mesh with assumptions in
+     * tree removal about conversion back to plain bins upon
+     * shrinkage.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The bin count threshold for untreeifying a (split) bin during a
+     * resize operation. Should be less than TREEIFY_THRESHOLD, and at
+     * most 6 to mesh with shrinkage detection under removal.
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The smallest table capacity for which bins may be treeified.
+     * (Otherwise the table is resized if too many nodes in a bin.)
+     * Should be at least 4 * TREEIFY_THRESHOLD to avoid conflicts
+     * between resizing and treeification thresholds.
+     */
+    static final int MIN_TREEIFY_CAPACITY = 64;
+
+    /**
+     * The number of bins moved from the old table to the new one by
+     * each put or remove while an incremental resize is in progress.
+     * Any value >= 1 finishes the transfer long before the new table
+     * reaches its own threshold; larger values shorten the time both
+     * tables are alive.
+     */
+    static final int TRANSFER_STRIDE = 16;
+
+    /**
+     * The number of keys getAll and putAll probe together. Enough to
+     * keep the memory system busy, small enough that the per-key state
+     * stays in L1.
+     */
+    static final int BATCH_SIZE = 64;
+
 
     /**
      * The table, initialized on first use, and resized as
@@ -85,14 +145,189 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     int threshold;
 
+    /**
+     * The load factor for the hash table.
+     */
+    final float loadFactor;
+
+    /**
+     * Whether resize() only allocates the new table and leaves the
+     * bins of the old one to be moved a few at a time by later writes,
+     * instead of rehashing everything in the put that crossed the
+     * threshold.
+     */
+    final boolean incrementalResize;
+
+    /**
+     * The previous table while an incremental resize is in progress,
+     * else null. Its bins [transferIndex, oldTable.length) still hold
+     * their nodes; bins below transferIndex have been moved to table.
+     */
+    Node<K, V>[] oldTable;
+
+    /**
+     * The next bin of oldTable to be moved.
+     */
+    int transferIndex;
+
+    /**
+     * The number of times this MyHashMap has been structurally modified.
+     * Structural modifications are those that change the number of
+     * mappings in the MyHashMap or otherwise modify its internal
+     * structure (e.g., rehash). This field is used to make iterators on
+     * Collection-views of the MyHashMap fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * Whether keys are hashed with the per-instance secret key below
+     * instead of the plain spreader, see {@link #hashOf}.
+     */
+    final boolean keyedHashing;
+
+    /**
+     * The secret 128-bit hash key, zero unless keyedHashing.
+     */
+    final long hashSeed0, hashSeed1;
+
+    /**
+     * Counters of lookups and resizes, null unless stats are enabled.
+     */
+    transient MyHashMapStats.Recorder stats;
+
+    /**
+     * Views, created on first use.
+     */
+    transient Set<K> keySet;
+    transient Collection<V> values;
+    transient Set<Map.Entry<K, V>> entrySet;
 
+    /**
+     * Constructs an empty {@code MyHashMap} with the default initial
+     * capacity (16) and the default load factor (0.75).
+     */
     public MyHashMap() {
+        this(false);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity and
+     * load factor.
+     *
+     * @param incrementalResize true to spread each resize over the
+     *                          following puts and removes rather than
+     *                          rehashing the whole table at once
+     */
+    public MyHashMap(boolean incrementalResize) {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.incrementalResize = incrementalResize;
+        this.keyedHashing = false;
+        this.hashSeed0 = this.hashSeed1 = 0L;
+    }
+
+    /**
+     * Constructs an empty {@code MyHashMap} with the specified initial
+     * capacity and the default load factor (0.75).
+     *
+     * @param initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public MyHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty {@code MyHashMap} with the specified initial
+     * capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is nonpositive
+     */
+    public MyHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty {@code MyHashMap} with the specified initial
+     * capacity, load factor and resize mode.
+     *
+     * @param initialCapacity   the initial capacity
+     * @param loadFactor        the load factor
+     * @param incrementalResize true to spread each resize over the
+     *                          following puts and removes
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is nonpositive
+     */
+    public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize) {
+        this(initialCapacity, loadFactor, incrementalResize, false);
+    }
+
+    /**
+     * Constructs an empty {@code MyHashMap} with the specified initial
+     * capacity, load factor, resize mode and hashing mode.
+     *
+     * With keyed hashing, each map draws a random secret key and mixes
+     * it into every hash: String keys are hashed over their characters
+     * with SipHash-1-3, other keys have their hashCode() scrambled with
+     * the key. Which keys share a bin then differs from map to map and
+     * cannot be predicted from outside, so keys chosen to collide (e.g.
+     * Strings with equal hashCode(), fed in by a client) no longer pile
+     * up in one bin. Use it for maps filled with untrusted keys; it
+     * costs a pass over each String key on every lookup.
+     *
+     * @param initialCapacity   the initial capacity
+     * @param loadFactor        the load factor
+     * @param incrementalResize true to spread each resize over the
+     *                          following puts and removes
+     * @param keyedHashing      true to hash keys with a secret
+     *                          per-instance key
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is nonpositive
+     */
+    public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize, boolean keyedHashing) {
+        this(initialCapacity, loadFactor, incrementalResize, keyedHashing,
+                keyedHashing ? HashKeys.next() : 0L, keyedHashing ? HashKeys.next() : 0L);
+    }
+
+    /**
+     * As above, with the given hash key, for maps restored from a
+     * snapshot.
+     */
+    MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize, boolean keyedHashing,
+              long hashSeed0, long hashSeed1) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        this.incrementalResize = incrementalResize;
+        this.keyedHashing = keyedHashing;
+        this.hashSeed0 = hashSeed0;
+        this.hashSeed1 = hashSeed1;
+        // the table is allocated on first use with this capacity
+        this.threshold = tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * Constructs a new {@code MyHashMap} with the same mappings as the
+     * specified {@code Map}, sized to hold them without resizing.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public MyHashMap(Map<? extends K, ? extends V> m) {
+        this(false);
+        putMapEntries(m);
     }
 
     @Override
     public V get(Object key) {
-        int hash = hash(key);
-        Node<K, V> e = getNode(hash, key);
+        int hash = hashOf(key);
+        Node<K, V> e = (stats == null) ? getNode(hash, key) : getNodeRecorded(hash, key);
         return e == null ? null : e.value;
     }
 
@@ -103,52 +338,103 @@ public class MyHashMap<K, V> implements Map<K, V> {
      * @param key  the key
      * @return the node, or null if none
      */
-    Node<K, V> getNode(int hash, Object key) {
-        int n = table.length;
-        if (table != null && n > 0 && table[hash & (n - 1)] != null) {
-            Node<K, V> e = table[hash & (n - 1)];
-            do {
-                if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
-                    return e;
-                }
-            } while ((e = e.next) != null);
+    final Node<K, V> getNode(int hash, Object key) {
+        Node<K, V>[] tab = tableFor(hash);
+        if (tab == null || tab.length == 0) {
+            return null;
         }
+        Node<K, V> e = tab[hash & (tab.length - 1)];
+        if (e == null) {
+            return null;
+        }
+        if (e instanceof TreeNode) {
+            return ((TreeNode<K, V>) e).getTreeNode(hash, key);
+        }
+        do {
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                return e;
+            }
+        } while ((e = e.next) != null);
         return null;
     }
 
+    /**
+     * As getNode, recording the number of nodes compared into stats.
+     */
+    final Node<K, V> getNodeRecorded(int hash, Object key) {
+        Node<K, V>[] tab = tableFor(hash);
+        Node<K, V> e = (tab == null || tab.length == 0) ? null : tab[hash & (tab.length - 1)];
+        if (e instanceof TreeNode) {
+            e = ((TreeNode<K, V>) e).getTreeNode(hash, key);
+            stats.recordTreeLookup(e != null);
+            return e;
+        }
+        int probes = 0;
+        for (; e != null; e = e.next) {
+            probes++;
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                break;
+            }
+        }
+        stats.recordLookup(probes, e != null);
+        return e;
+    }
+
     @Override
     public V put(K key, V value) {
-        int hash = hash(key);
+        return putVal(hashOf(key), key, value);
+    }
+
+    /**
+     * Implements Map.put and related methods
+     *
+     * @param hash  hash for key
+     * @param key   the key
+     * @param value the value to put
+     * @return previous value, or null if none
+     */
+    final V putVal(int hash, K key, V value) {
         if (table == null || table.length == 0) {
             table = resize();
         }
-        int n = table.length, index = hash & (n - 1);
-        if (table[index] == null) {
-            table[index] = new Node<>(hash, key, value, null);
+        transferStep();
+        Node<K, V>[] tab = tableFor(hash);
+        int n = tab.length, index = hash & (n - 1);
+        Node<K, V> p = tab[index], e = null;
+        if (p == null) {
+            tab[index] = newNode(hash, key, value, null);
+        } else if (p instanceof TreeNode) {
+            e = ((TreeNode<K, V>) p).putTreeVal(this, tab, hash, key, value);
         } else {
-            Node<K, V> p = table[index], e = null;
             // hash code & key to identify the element
-            do {
+            for (int binCount = 0; ; ++binCount) {
                 if (p.hash == hash && (p.key == key || (key != null && key.equals(p.key)))) {
                     e = p;
                     break;
                 }
                 if (p.next == null) {
-                    e = new Node<>(hash, key, value, null);
+                    p.next = newNode(hash, key, value, null);
+                    // bin held binCount + 1 nodes before this one
+                    if (binCount >= TREEIFY_THRESHOLD - 1) {
+                        treeifyBin(tab, hash);
+                    }
                     break;
                 }
-            } while ((p = p.next) != null);
-
-
-            if (e != null) {
-                // existing mapped value;
-                V oldValue = e.value;
-                e.value = value;
-                return oldValue;
+                p = p.next;
             }
         }
+
+        if (e != null) {
+            // existing mapped value;
+            V oldValue = e.value;
+            e.value = value;
+            afterNodeAccess(e);
+            return oldValue;
+        }
+        ++modCount;
         if (++size > threshold)
             resize();
+        afterNodeInsertion(true);
         return null;
     }
 
@@ -159,74 +445,227 @@ public class MyHashMap<K, V> implements Map<K, V> {
      * elements from each bin must either stay at same index, or move
      * with a power of two offset in the new table.
      *
+     * In incremental mode the old bins are left in place and moved by
+     * transferStep(); a resize that is still in progress is finished
+     * first, so at most two tables are alive.
+     *
      * @return the table
      */
-    Node<K, V>[] resize() {
-        int oldCap = (table == null) ? 0 : table.length, oldThr = threshold;
-        int newCap, newThr;
+    final Node<K, V>[] resize() {
+        if (oldTable != null) {
+            finishTransfer();
+        }
+        Node<K, V>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length, oldThr = threshold;
+        int newCap, newThr = 0;
         if (oldCap > 0) {
             if (oldCap >= MAXIMUM_CAPACITY) {
                 threshold = Integer.MAX_VALUE;
-                return table;
+                return oldTab;
             }
             newCap = oldCap << 1;
-            newThr = oldThr << 1; // double threshold
+            if (newCap < MAXIMUM_CAPACITY && oldCap >= DEFAULT_INITIAL_CAPACITY) {
+                newThr = oldThr << 1; // double threshold
+            }
+        } else if (oldThr > 0) {
+            // initial capacity was placed in threshold
+            newCap = oldThr;
         } else {
             // first to use
             // zero initial threshold signifies using defaults
             newCap = DEFAULT_INITIAL_CAPACITY;
             newThr = (int) (DEFAULT_LOAD_FACTOR * DEFAULT_INITIAL_CAPACITY);
         }
+        if (newThr == 0) {
+            float ft = (float) newCap * loadFactor;
+            newThr = (newCap < MAXIMUM_CAPACITY && ft < (float) MAXIMUM_CAPACITY ? (int) ft : Integer.MAX_VALUE);
+        }
         threshold = newThr;
-        @SuppressWarnings("unchecked")
+        @SuppressWarnings({"rawtypes", "unchecked"})
         Node<K, V>[] newTable = (Node<K, V>[]) new Node[newCap];
-        if (table != null) {
-            for (int j = 0; j < oldCap; ++j) {
-                Node<K, V> e = table[j];
-                if (e != null) {
-                    table[j] = null;
-                    if (e.next == null) {
-                        newTable[e.hash & (newCap - 1)] = e;
-                    } else {
-                        // split hash linked list
-                        Node<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null, next = null;
-                        do {
-                            next = e.next;
-                            // if have high bit?
-                            if ((e.hash & oldCap) == 0) {
-                                //stay on old list
-                                if (loHead == null) {
-                                    loHead = e;
-                                } else {
-                                    loTail.next = e;
-                                }
-                                loTail = e;
-                            } else {
-                                // move to new list
-                                if (hiHead == null) {
-                                    hiHead = e;
-                                } else {
-                                    hiTail.next = e;
-                                }
-                                hiTail = e;
-                            }
-                        } while ((e = e.next) != null);
-
-                        if (loHead != null) {
-                            loTail.next = null;
-                            newTable[j] = loHead;
-                        }
+        table = newTable;
+        if (oldTab != null) {
+            long start = (stats == null) ? 0L : System.nanoTime();
+            if (incrementalResize) {
+                oldTable = oldTab;
+                transferIndex = 0;
+            } else {
+                for (int j = 0; j < oldCap; ++j) {
+                    transferBin(oldTab, j, newTable);
+                }
+            }
+            if (stats != null) {
+                stats.recordResize(System.nanoTime() - start);
+            }
+        }
+        return newTable;
+    }
 
-                        if (hiHead != null) {
-                            hiTail.next = null;
-                            newTable[j + newCap] = hiHead;
-                        }
+    /**
+     * Moves bin j of oldTab, whose length is half of newTab's, into
+     * bins j and j + oldCap of newTab.
+     */
+    final void transferBin(Node<K, V>[] oldTab, int j, Node<K, V>[] newTab) {
+        int oldCap = oldTab.length;
+        Node<K, V> e = oldTab[j];
+        if (e == null) {
+            return;
+        }
+        oldTab[j] = null;
+        if (e.next == null) {
+            newTab[e.hash & (newTab.length - 1)] = e;
+        } else if (e instanceof TreeNode) {
+            // same lo/hi split, done on the tree's next-links
+            ((TreeNode<K, V>) e).split(this, newTab, j, oldCap);
+        } else {
+            // split hash linked list
+            Node<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null, next = null;
+            do {
+                next = e.next;
+                // if have high bit?
+                if ((e.hash & oldCap) == 0) {
+                    //stay on old list
+                    if (loHead == null) {
+                        loHead = e;
+                    } else {
+                        loTail.next = e;
+                    }
+                    loTail = e;
+                } else {
+                    // move to new list
+                    if (hiHead == null) {
+                        hiHead = e;
+                    } else {
+                        hiTail.next = e;
                     }
+                    hiTail = e;
                 }
+            } while ((e = next) != null);
+
+            if (loHead != null) {
+                loTail.next = null;
+                newTab[j] = loHead;
+            }
+
+            if (hiHead != null) {
+                hiTail.next = null;
+                newTab[j + oldCap] = hiHead;
             }
         }
-        table = newTable;
-        return newTable;
+    }
+
+    /**
+     * Moves up to TRANSFER_STRIDE bins of an incremental resize.
+     */
+    final void transferStep() {
+        Node<K, V>[] oldTab = oldTable;
+        if (oldTab != null) {
+            int end = Math.min(transferIndex + TRANSFER_STRIDE, oldTab.length);
+            for (int j = transferIndex; j < end; ++j) {
+                transferBin(oldTab, j, table);
+            }
+            transferIndex = end;
+            if (end == oldTab.length) {
+                oldTable = null;
+            }
+        }
+    }
+
+    /**
+     * Moves all remaining bins of an incremental resize.
+     */
+    final void finishTransfer() {
+        Node<K, V>[] oldTab = oldTable;
+        if (oldTab != null) {
+            for (int j = transferIndex; j < oldTab.length; ++j) {
+                transferBin(oldTab, j, table);
+            }
+            oldTable = null;
+        }
+    }
+
+    /**
+     * Returns the table whose bin currently holds the given hash: the
+     * old table if that bin has not been transferred yet, else table.
+     */
+    final Node<K, V>[] tableFor(int hash) {
+        Node<K, V>[] oldTab = oldTable;
+        if (oldTab != null && (hash & (oldTab.length - 1)) >= transferIndex) {
+            return oldTab;
+        }
+        return table;
+    }
+
+    /**
+     * Replaces all linked nodes in bin at index for given hash unless
+     * table is too small, in which case resizes instead.
+     */
+    final void treeifyBin(Node<K, V>[] tab, int hash) {
+        int n = (tab == null) ? 0 : tab.length;
+        if (n < MIN_TREEIFY_CAPACITY) {
+            resize();
+            return;
+        }
+        int index = hash & (n - 1);
+        Node<K, V> e = tab[index];
+        if (e == null) {
+            return;
+        }
+        TreeNode<K, V> hd = null, tl = null;
+        do {
+            TreeNode<K, V> p = replacementTreeNode(e, null);
+            if (tl == null) {
+                hd = p;
+            } else {
+                p.prev = tl;
+                tl.next = p;
+            }
+            tl = p;
+        } while ((e = e.next) != null);
+        tab[index] = hd;
+        hd.treeify(tab);
+    }
+
+    /* ------------------------------------------------------------ */
+    // LinkedHashMap support
+
+    /*
+     * The following package-protected methods, the node factories and
+     * the afterNode callbacks, are designed to be overridden by
+     * MyLinkedHashMap, but not by any other subclass. The other
+     * internal methods (getNode, putVal, resize, removeNode and the
+     * like) are also package-protected but are declared final, so can
+     * be used by MyLinkedHashMap, view classes, and MyHashMapBuilder.
+     */
+
+    // Create a regular (non-tree) node
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        return new Node<>(hash, key, value, next);
+    }
+
+    // For conversion from TreeNodes to plain nodes
+    Node<K, V> replacementNode(Node<K, V> p, Node<K, V> next) {
+        return new Node<>(p.hash, p.key, p.value, next);
+    }
+
+    // Create a tree bin node
+    TreeNode<K, V> newTreeNode(int hash, K key, V value, Node<K, V> next) {
+        return new TreeNode<>(hash, key, value, next);
+    }
+
+    // For treeifyBin
+    TreeNode<K, V> replacementTreeNode(Node<K, V> p, Node<K, V> next) {
+        return new TreeNode<>(p.hash, p.key, p.value, next);
+    }
+
+    // Callbacks to allow MyLinkedHashMap post-actions
+    void afterNodeAccess(Node<K, V> p) {
+    }
+
+    void afterNodeInsertion(boolean evict) {
+    }
+
+    void afterNodeRemoval(Node<K, V> p) {
     }
 
     /**
@@ -253,6 +692,137 @@ public class MyHashMap<K, V> implements Map<K, V> {
         return (key == null) ? 0 : h ^ (h >>> 16);
     }
 
+    /**
+     * Returns the hash this map stores and bins the key by: hash(key),
+     * or the keyed hash if keyedHashing.
+     */
+    final int hashOf(Object key) {
+        if (!keyedHashing) {
+            return hash(key);
+        }
+        if (key == null) {
+            return 0;
+        }
+        if (key instanceof String) {
+            return sipHash13(hashSeed0, hashSeed1, (String) key);
+        }
+        // equal hashCodes stay equal, but which of them share a bin
+        // can no longer be chosen from outside
+        long z = (key.hashCode() ^ hashSeed0) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 32) ^ hashSeed1) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (z ^ (z >>> 29));
+    }
+
+    /**
+     * Whether the stored hashes of m are valid in this map.
+     */
+    final boolean sameHashing(MyHashMap<?, ?> m) {
+        return keyedHashing == m.keyedHashing && hashSeed0 == m.hashSeed0 && hashSeed1 == m.hashSeed1;
+    }
+
+    /**
+     * SipHash-1-3 of the UTF-16 code units of s, four to a 64-bit
+     * word, truncated to 32 bits.
+     */
+    static int sipHash13(long k0, long k1, String s) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int len = s.length(), end = len & ~3;
+        for (int i = 0; i <= end; i += 4) {
+            long m;
+            if (i < end) {
+                m = s.charAt(i) | (long) s.charAt(i + 1) << 16
+                        | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+            } else {
+                // last word: the remaining chars and the length in bytes
+                m = (long) (len << 1) << 56;
+                for (int j = 0; i + j < len; j++) {
+                    m |= (long) s.charAt(i + j) << (j << 4);
+                }
+            }
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+        v2 ^= 0xff;
+        for (int r = 0; r < 3; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        long h = v0 ^ v1 ^ v2 ^ v3;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Source of hash keys for keyed maps, loaded on first use. Keys are
+     * a SplittableRandom-style sequence started from a SecureRandom
+     * seed, so they are unpredictable without a SecureRandom call per
+     * map.
+     */
+    static final class HashKeys {
+        private static final AtomicLong seed = new AtomicLong(new SecureRandom().nextLong());
+
+        static long next() {
+            long z = seed.addAndGet(0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Returns a power of two size for the given target capacity.
+     */
+    static int tableSizeFor(int cap) {
+        int n = cap - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Returns x's Class if it is of the form "class C implements
+     * Comparable<C>", else null.
+     */
+    static Class<?> comparableClassFor(Object x) {
+        if (x instanceof Comparable) {
+            Class<?> c = x.getClass();
+            if (c == String.class) { // bypass checks
+                return c;
+            }
+            Type[] ts = c.getGenericInterfaces();
+            for (Type t : ts) {
+                if (t instanceof ParameterizedType) {
+                    ParameterizedType p = (ParameterizedType) t;
+                    Type[] as = p.getActualTypeArguments();
+                    if (p.getRawType() == Comparable.class && as != null && as.length == 1 && as[0] == c) {
+                        return c;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns k.compareTo(x) if x matches kc (k's screened comparable
+     * class), else 0.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"}) // for cast to Comparable
+    static int compareComparables(Class<?> kc, Object k, Object x) {
+        return (x == null || x.getClass() != kc ? 0 : ((Comparable) k).compareTo(x));
+    }
+
     @Override
     public int size() {
         return size;
@@ -265,14 +835,22 @@ public class MyHashMap<K, V> implements Map<K, V> {
 
     @Override
     public boolean containsKey(Object key) {
-        return getNode(hash(key), key) != null;
+        return getNode(hashOf(key), key) != null;
     }
 
     @Override
     public boolean containsValue(Object value) {
-        if (table != null && size > 0) {
-            for (int i = 0; i < table.length; ++i) {
-                Node<K, V> e = table[i];
+        if (size > 0) {
+            // transferred bins of oldTable are empty, so both are scanned whole
+            return containsValue(table, value) || containsValue(oldTable, value);
+        }
+        return false;
+    }
+
+    private static boolean containsValue(Node<?, ?>[] tab, Object value) {
+        if (tab != null) {
+            for (int i = 0; i < tab.length; ++i) {
+                Node<?, ?> e = tab[i];
                 if (e != null) {
                     do {
                         if (e.value == value || (value != null && value.equals(e.value))) {
@@ -288,32 +866,1549 @@ public class MyHashMap<K, V> implements Map<K, V> {
 
     @Override
     public V remove(Object key) {
-        return null;
-    }
-
-    @Override
-    public void putAll(Map<? extends K, ? extends V> m) {
-
-    }
-
-    @Override
-    public void clear() {
-
+        Node<K, V> e = removeNode(hashOf(key), key);
+        return e == null ? null : e.value;
     }
 
-    @Override
-    public Set<K> keySet() {
-        return null;
+    /**
+     * Implements Map.remove and related methods
+     *
+     * @param hash hash for key
+     * @param key  the key
+     * @return the node, or null if none
+     */
+    final Node<K, V> removeNode(int hash, Object key) {
+        return removeNode(hash, key, true);
     }
 
+    /**
+     * As removeNode(hash, key), but if movable is false the nodes of a
+     * tree bin stay where they are, as iterators need.
+     */
+    final Node<K, V> removeNode(int hash, Object key, boolean movable) {
+        transferStep();
+        Node<K, V>[] tab = tableFor(hash);
+        if (tab == null || tab.length == 0) {
+            return null;
+        }
+        int index = hash & (tab.length - 1);
+        Node<K, V> p = tab[index], node = null;
+        if (p == null) {
+            return null;
+        }
+        if (p.hash == hash && (p.key == key || (key != null && key.equals(p.key)))) {
+            node = p;
+        } else if (p instanceof TreeNode) {
+            node = ((TreeNode<K, V>) p).getTreeNode(hash, key);
+        } else {
+            for (Node<K, V> e = p.next; e != null; p = e, e = e.next) {
+                if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                    node = e;
+                    break;
+                }
+            }
+        }
+        if (node == null) {
+            return null;
+        }
+        if (node instanceof TreeNode) {
+            // may turn the bin back into a plain list
+            ((TreeNode<K, V>) node).removeTreeNode(this, tab, movable);
+        } else if (node == p) {
+            // remove head of bucket
+            tab[index] = node.next;
+        } else {
+            p.next = node.next;
+        }
+        ++modCount;
+        --size;
+        afterNodeRemoval(node);
+        return node;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        putMapEntries(m);
+    }
+
+    /**
+     * Writes a snapshot of this map to the channel, in the format of
+     * {@link MyHashMapSnapshot}: capacity, load factor and hash mode,
+     * then each mapping as its stored hash and serialized key and
+     * value, bin by bin. Nothing is hashed.
+     *
+     * The snapshot of a map with keyed hashing holds its secret hash
+     * key, so it must be kept from whoever supplies the keys.
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public void snapshot(WritableByteChannel out, Serializer<? super K> keySerializer,
+                         Serializer<? super V> valueSerializer) throws IOException {
+        finishTransfer();
+        MyHashMapSnapshot.write(this, out, keySerializer, valueSerializer);
+    }
+
+    /**
+     * Reads a map written by {@link #snapshot}. Every mapping is linked
+     * straight into the bin its recorded hash selects, in a table of
+     * the recorded capacity, so neither hashCode() nor resize() is
+     * called. Bins that were trees are treeified again.
+     *
+     * @throws IOException if reading from the channel fails, or the
+     *                     data is not a valid snapshot
+     */
+    public static <K, V> MyHashMap<K, V> restore(ReadableByteChannel in, Serializer<? extends K> keySerializer,
+                                                 Serializer<? extends V> valueSerializer) throws IOException {
+        return MyHashMapSnapshot.read(in, keySerializer, valueSerializer);
+    }
+
+    /**
+     * Looks up keys[i] for each i and stores its value, or null if
+     * none, in values[i], as calling get for each key would.
+     *
+     * The keys are processed in blocks of BATCH_SIZE: all hashes of a
+     * block are computed first, then all its bin heads are loaded, and
+     * then the chains are walked in lock step, one node of each per
+     * round. The loads of different keys do not depend on each other,
+     * so on a table much larger than the CPU caches their misses
+     * overlap instead of being paid one after another.
+     *
+     * @return the number of keys found
+     * @throws IllegalArgumentException if values is shorter than keys
+     */
+    public int getAll(Object[] keys, V[] values) {
+        int n = keys.length, found = 0;
+        if (values.length < n)
+            throw new IllegalArgumentException("values.length < keys.length");
+        int[] hashes = new int[Math.min(n, BATCH_SIZE)];
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<K, V>[] nodes = (Node<K, V>[]) new Node[hashes.length];
+        for (int from = 0; from < n; from += BATCH_SIZE) {
+            int m = Math.min(BATCH_SIZE, n - from);
+            probe(keys, from, m, hashes, nodes);
+            for (int j = 0; j < m; j++) {
+                Node<K, V> e = nodes[j];
+                if (e != null) {
+                    values[from + j] = e.value;
+                    found++;
+                } else {
+                    values[from + j] = null;
+                }
+            }
+        }
+        if (stats != null) {
+            stats.recordBatch(found, n - found);
+        }
+        return found;
+    }
+
+    /**
+     * Maps keys[i] to values[i] for each i, as calling put for each
+     * pair in order would. Each block of keys is probed as in
+     * {@link #getAll}; the values of keys found are replaced, then the
+     * new keys of the block are inserted.
+     *
+     * @throws IllegalArgumentException if values is shorter than keys
+     */
+    public void putAll(K[] keys, V[] values) {
+        int n = keys.length;
+        if (values.length < n)
+            throw new IllegalArgumentException("values.length < keys.length");
+        int[] hashes = new int[Math.min(n, BATCH_SIZE)];
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<K, V>[] nodes = (Node<K, V>[]) new Node[hashes.length];
+        for (int from = 0; from < n; from += BATCH_SIZE) {
+            int m = Math.min(BATCH_SIZE, n - from);
+            probe(keys, from, m, hashes, nodes);
+            // replace first: inserting may treeify or resize, which can
+            // replace the nodes just found
+            for (int j = 0; j < m; j++) {
+                if (nodes[j] != null) {
+                    nodes[j].value = values[from + j];
+                }
+            }
+            for (int j = 0; j < m; j++) {
+                if (nodes[j] == null) {
+                    putVal(hashes[j], keys[from + j], values[from + j]);
+                }
+                nodes[j] = null;
+            }
+        }
+    }
+
+    /**
+     * Sets hashes[j] and nodes[j] to the hash and node, or null, of
+     * keys[from + j] for j in [0, m), walking all chains together.
+     */
+    private void probe(Object[] keys, int from, int m, int[] hashes, Node<K, V>[] nodes) {
+        for (int j = 0; j < m; j++) {
+            hashes[j] = hashOf(keys[from + j]);
+        }
+        for (int j = 0; j < m; j++) {
+            Node<K, V>[] tab = tableFor(hashes[j]);
+            nodes[j] = (tab == null || tab.length == 0) ? null : tab[hashes[j] & (tab.length - 1)];
+        }
+        // nodes[j] is the next candidate of key j until pending[j] is
+        // cleared, then its answer
+        boolean[] pending = new boolean[m];
+        int left = 0;
+        for (int j = 0; j < m; j++) {
+            if (nodes[j] != null) {
+                pending[j] = true;
+                left++;
+            }
+        }
+        while (left > 0) {
+            for (int j = 0; j < m; j++) {
+                if (!pending[j]) {
+                    continue;
+                }
+                Node<K, V> e = nodes[j];
+                Object key = keys[from + j];
+                int hash = hashes[j];
+                if (e instanceof TreeNode) {
+                    nodes[j] = ((TreeNode<K, V>) e).getTreeNode(hash, key);
+                } else if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                    nodes[j] = e;
+                } else if ((nodes[j] = e.next) != null) {
+                    continue;
+                }
+                pending[j] = false;
+                left--;
+            }
+        }
+    }
+
+    /**
+     * Implements Map.putAll and Map constructor. The table is sized
+     * for the incoming mappings up front, so a bulk load resizes at
+     * most once instead of doubling its way up.
+     *
+     * @param m the map
+     */
+    final void putMapEntries(Map<? extends K, ? extends V> m) {
+        int s = m.size();
+        if (s <= 0) {
+            return;
+        }
+        // target table length, assuming the keys are new to this map
+        float ft = ((float) s / loadFactor) + 1.0F;
+        int t = (ft < (float) MAXIMUM_CAPACITY) ? tableSizeFor((int) ft) : MAXIMUM_CAPACITY;
+        if (table == null) {
+            if (t > threshold) {
+                threshold = t;
+            }
+        } else if (t > table.length) {
+            growTo(t);
+        }
+        if (m instanceof MyHashMap && !sameHashing((MyHashMap<?, ?>) m)) {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                K key = e.getKey();
+                putVal(hashOf(key), key, e.getValue());
+            }
+        } else if (m instanceof MyLinkedHashMap) {
+            // reuse stored hashes, keeping the source's order
+            @SuppressWarnings("unchecked")
+            MyLinkedHashMap<K, V> src = (MyLinkedHashMap<K, V>) m;
+            for (MyLinkedHashMap.Entry<K, V> e = src.head; e != null; e = e.after) {
+                putVal(e.hash, e.key, e.value);
+            }
+        } else if (m instanceof MyHashMap) {
+            // reuse stored hashes instead of calling hashCode() again
+            @SuppressWarnings("unchecked")
+            MyHashMap<K, V> src = (MyHashMap<K, V>) m;
+            putNodes(src.table);
+            putNodes(src.oldTable);
+        } else {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                K key = e.getKey();
+                putVal(hashOf(key), key, e.getValue());
+            }
+        }
+    }
+
+    private void putNodes(Node<K, V>[] tab) {
+        if (tab != null) {
+            for (Node<K, V> b : tab) {
+                for (Node<K, V> e = b; e != null; e = e.next) {
+                    putVal(e.hash, e.key, e.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resizes an allocated table to the given power of two length in a
+     * single pass, splitting each bin as many ways as needed.
+     */
+    final void growTo(int newCap) {
+        long start = (stats == null) ? 0L : System.nanoTime();
+        finishTransfer();
+        Node<K, V>[] oldTab = table;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Node<K, V>[] newTab = (Node<K, V>[]) new Node[newCap];
+        float ft = (float) newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float) MAXIMUM_CAPACITY ? (int) ft : Integer.MAX_VALUE);
+        table = newTab;
+        int oldCap = oldTab.length;
+        for (int j = 0; j < oldCap; ++j) {
+            Node<K, V> e = oldTab[j];
+            oldTab[j] = null;
+            boolean tree = e instanceof TreeNode;
+            while (e != null) {
+                Node<K, V> next = e.next;
+                if (tree) {
+                    e = replacementNode(e, null);
+                }
+                int index = e.hash & (newCap - 1);
+                e.next = newTab[index];
+                newTab[index] = e;
+                e = next;
+            }
+            if (tree && newCap >= MIN_TREEIFY_CAPACITY) {
+                // the nodes of a tree bin land in bins j, j + oldCap, ...
+                for (int k = j; k < newCap; k += oldCap) {
+                    int binCount = 0;
+                    for (Node<K, V> p = newTab[k]; p != null; p = p.next) {
+                        ++binCount;
+                    }
+                    if (binCount > TREEIFY_THRESHOLD) {
+                        treeifyBin(newTab, k);
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            stats.recordResize(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        if (table != null && size > 0) {
+            Arrays.fill(table, null);
+            size = 0;
+        }
+        oldTable = null;
+    }
+
+    /**
+     * Starts recording lookup and resize statistics for {@link #stats()},
+     * from zero. While disabled, which is the default, recording costs
+     * a null check per get and resize.
+     */
+    public void enableStats() {
+        stats = new MyHashMapStats.Recorder();
+    }
+
+    /**
+     * Stops recording statistics and drops the counts so far.
+     */
+    public void disableStats() {
+        stats = null;
+    }
+
+    /**
+     * Returns a snapshot of the table layout and of the counters
+     * recorded since {@link #enableStats()}. The layout is measured by
+     * a scan of the table, so this takes time linear in the capacity.
+     */
+    public MyHashMapStats stats() {
+        return new MyHashMapStats(this);
+    }
+
+    /**
+     * Returns an immutable copy of this map whose lookups go through a
+     * minimal perfect hash function, for maps that are built once and
+     * then only read. Later changes to this map are not reflected in
+     * the copy.
+     *
+     * @return a frozen copy of this map
+     */
+    public MyFrozenHashMap<K, V> freeze() {
+        return new MyFrozenHashMap<>(this);
+    }
+
+    /**
+     * Performs the action for each mapping, bin by bin. Throws
+     * ConcurrentModificationException if the action changes the
+     * structure of the map.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        finishTransfer();
+        Node<K, V>[] tab = table;
+        if (size > 0 && tab != null) {
+            int mc = modCount;
+            for (Node<K, V> e : tab) {
+                for (; e != null; e = e.next) {
+                    action.accept(e.key, e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Map))
+            return false;
+        Map<?, ?> m = (Map<?, ?>) o;
+        if (m.size() != size())
+            return false;
+        try {
+            for (Map.Entry<K, V> e : entrySet()) {
+                K key = e.getKey();
+                V value = e.getValue();
+                if (value == null) {
+                    if (!(m.get(key) == null && m.containsKey(key)))
+                        return false;
+                } else if (!value.equals(m.get(key))) {
+                    return false;
+                }
+            }
+        } catch (ClassCastException | NullPointerException unused) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<K, V> e : entrySet()) {
+            h += e.hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        Iterator<Map.Entry<K, V>> i = entrySet().iterator();
+        if (!i.hasNext())
+            return "{}";
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (; ; ) {
+            Map.Entry<K, V> e = i.next();
+            K key = e.getKey();
+            V value = e.getValue();
+            sb.append(key == this ? "(this Map)" : key);
+            sb.append('=');
+            sb.append(value == this ? "(this Map)" : value);
+            if (!i.hasNext())
+                return sb.append('}').toString();
+            sb.append(',').append(' ');
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Views
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa. If the map is modified
+     * while an iteration over the set is in progress (except through
+     * the iterator's own {@code remove} operation), the results of
+     * the iteration are undefined. The set supports element removal,
+     * but not {@code add} or {@code addAll}.
+     *
+     * Its spliterator splits on ranges of bin indices, so that a
+     * parallel stream over a large map is shared out across cores.
+     *
+     * @return a set view of the keys contained in this map
+     */
+    @Override
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyHashMap.this.clear();
+        }
+
+        public final Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return removeNode(hashOf(key), key) != null;
+        }
+
+        public final Spliterator<K> spliterator() {
+            return new KeySpliterator<>(MyHashMap.this, 0, -1, 0, 0);
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            finishTransfer();
+            Node<K, V>[] tab = table;
+            if (size > 0 && tab != null) {
+                int mc = modCount;
+                for (Node<K, V> e : tab) {
+                    for (; e != null; e = e.next) {
+                        action.accept(e.key);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in
+     * this map, backed by the map like {@link #keySet()}. The
+     * collection supports element removal, but not {@code add} or
+     * {@code addAll}.
+     *
+     * @return a view of the values contained in this map
+     */
     @Override
     public Collection<V> values() {
-        return null;
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyHashMap.this.clear();
+        }
+
+        public final Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final Spliterator<V> spliterator() {
+            return new ValueSpliterator<>(MyHashMap.this, 0, -1, 0, 0);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            finishTransfer();
+            Node<K, V>[] tab = table;
+            if (size > 0 && tab != null) {
+                int mc = modCount;
+                for (Node<K, V> e : tab) {
+                    for (; e != null; e = e.next) {
+                        action.accept(e.value);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
     }
 
+    /**
+     * Returns a {@link Set} view of the mappings contained in this
+     * map, backed by the map like {@link #keySet()}. The entries are
+     * the nodes of the map, so {@code setValue} writes through. The
+     * set supports element removal, but not {@code add} or
+     * {@code addAll}.
+     *
+     * @return a set view of the mappings contained in this map
+     */
     @Override
-    public Set<Entry<K, V>> entrySet() {
-        return null;
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            es = new EntrySet();
+            entrySet = es;
+        }
+        return es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> candidate = getNode(hashOf(key), key);
+            return candidate != null && candidate.equals(e);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                Object key = ((Map.Entry<?, ?>) o).getKey();
+                return removeNode(hashOf(key), key) != null;
+            }
+            return false;
+        }
+
+        public final Spliterator<Map.Entry<K, V>> spliterator() {
+            return new EntrySpliterator<>(MyHashMap.this, 0, -1, 0, 0);
+        }
+
+        public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            finishTransfer();
+            Node<K, V>[] tab = table;
+            if (size > 0 && tab != null) {
+                int mc = modCount;
+                for (Node<K, V> e : tab) {
+                    for (; e != null; e = e.next) {
+                        action.accept(e);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * Walks the bins of table in order. An incremental resize still in
+     * progress is finished first, so that every node is in table.
+     */
+    abstract class HashIterator {
+        Node<K, V> next;        // next entry to return
+        Node<K, V> current;     // current entry
+        int expectedModCount;   // for fast-fail
+        int index;              // current slot
+
+        HashIterator() {
+            finishTransfer();
+            expectedModCount = modCount;
+            Node<K, V>[] t = table;
+            current = next = null;
+            index = 0;
+            if (t != null && size > 0) { // advance to first entry
+                do {
+                } while (index < t.length && (next = t[index++]) == null);
+            }
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final Node<K, V> nextNode() {
+            Node<K, V>[] t;
+            Node<K, V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            if ((next = (current = e).next) == null && (t = table) != null) {
+                do {
+                } while (index < t.length && (next = t[index++]) == null);
+            }
+            return e;
+        }
+
+        public final void remove() {
+            Node<K, V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            // keep tree bins in place, next may point into one
+            removeNode(p.hash, p.key, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends HashIterator implements Iterator<K> {
+        public final K next() {
+            return nextNode().key;
+        }
+    }
+
+    final class ValueIterator extends HashIterator implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class EntryIterator extends HashIterator implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // spliterators
+
+    /**
+     * Covers bins [index, fence) of the table. The top-level
+     * spliterator binds to the table on first use, finishing any
+     * incremental resize, and knows the exact size; each split halves
+     * the bin range and the size estimate.
+     */
+    static class HashMapSpliterator<K, V> {
+        final MyHashMap<K, V> map;
+        Node<K, V> current;          // current node
+        int index;                   // current index, modified on advance/split
+        int fence;                   // one past last index
+        int est;                     // size estimate
+        int expectedModCount;        // for comodification checks
+
+        HashMapSpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+            this.map = m;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                MyHashMap<K, V> m = map;
+                m.finishTransfer();
+                est = m.size;
+                expectedModCount = m.modCount;
+                Node<K, V>[] tab = m.table;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            return hi;
+        }
+
+        public final long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+
+        /**
+         * Returns the next node of bins [index, hi), or null.
+         */
+        final Node<K, V> advance(Node<K, V>[] tab, int hi) {
+            while (current != null || index < hi) {
+                if (current == null) {
+                    current = tab[index++];
+                } else {
+                    Node<K, V> e = current;
+                    current = e.next;
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        final int sizeCharacteristic() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+        }
+    }
+
+    static final class KeySpliterator<K, V> extends HashMapSpliterator<K, V> implements Spliterator<K> {
+        KeySpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public KeySpliterator<K, V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new KeySpliterator<>(map, lo, index = mid, est >>>= 1, expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i, hi = getFence(), mc = expectedModCount;
+            MyHashMap<K, V> m = map;
+            Node<K, V>[] tab = m.table;
+            if (tab != null && tab.length >= hi && (i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K, V> p = current;
+                current = null;
+                do {
+                    if (p == null) {
+                        p = tab[i++];
+                    } else {
+                        action.accept(p.key);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            Node<K, V>[] tab = map.table;
+            if (tab != null && tab.length >= hi && index >= 0) {
+                Node<K, V> e = advance(tab, hi);
+                if (e != null) {
+                    action.accept(e.key);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return sizeCharacteristic() | Spliterator.DISTINCT;
+        }
+    }
+
+    static final class ValueSpliterator<K, V> extends HashMapSpliterator<K, V> implements Spliterator<V> {
+        ValueSpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public ValueSpliterator<K, V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new ValueSpliterator<>(map, lo, index = mid, est >>>= 1, expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i, hi = getFence(), mc = expectedModCount;
+            MyHashMap<K, V> m = map;
+            Node<K, V>[] tab = m.table;
+            if (tab != null && tab.length >= hi && (i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K, V> p = current;
+                current = null;
+                do {
+                    if (p == null) {
+                        p = tab[i++];
+                    } else {
+                        action.accept(p.value);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            Node<K, V>[] tab = map.table;
+            if (tab != null && tab.length >= hi && index >= 0) {
+                Node<K, V> e = advance(tab, hi);
+                if (e != null) {
+                    action.accept(e.value);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return sizeCharacteristic();
+        }
+    }
+
+    static final class EntrySpliterator<K, V> extends HashMapSpliterator<K, V>
+            implements Spliterator<Map.Entry<K, V>> {
+        EntrySpliterator(MyHashMap<K, V> m, int origin, int fence, int est, int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public EntrySpliterator<K, V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid || current != null) ? null :
+                    new EntrySpliterator<>(map, lo, index = mid, est >>>= 1, expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i, hi = getFence(), mc = expectedModCount;
+            MyHashMap<K, V> m = map;
+            Node<K, V>[] tab = m.table;
+            if (tab != null && tab.length >= hi && (i = index) >= 0 && (i < (index = hi) || current != null)) {
+                Node<K, V> p = current;
+                current = null;
+                do {
+                    if (p == null) {
+                        p = tab[i++];
+                    } else {
+                        action.accept(p);
+                        p = p.next;
+                    }
+                } while (p != null || i < hi);
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            Node<K, V>[] tab = map.table;
+            if (tab != null && tab.length >= hi && index >= 0) {
+                Node<K, V> e = advance(tab, hi);
+                if (e != null) {
+                    action.accept(e);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return sizeCharacteristic() | Spliterator.DISTINCT;
+        }
+    }
+
+    /**
+     * Entry for Tree bins. Nodes keep their next links, so a tree bin
+     * can still be walked (and split in resize) like a plain list; the
+     * red-black links order the nodes by hash, then by compareTo when
+     * the keys are mutually Comparable, then by tieBreakOrder.
+     */
+    static final class TreeNode<K, V> extends MyLinkedHashMap.Entry<K, V> {
+        TreeNode<K, V> parent;  // red-black tree links
+        TreeNode<K, V> left;
+        TreeNode<K, V> right;
+        TreeNode<K, V> prev;    // needed to unlink next upon deletion
+        boolean red;
+
+        TreeNode(int hash, K key, V val, Node<K, V> next) {
+            super(hash, key, val, next);
+        }
+
+        /**
+         * Returns root of tree containing this node.
+         */
+        TreeNode<K, V> root() {
+            TreeNode<K, V> r = this;
+            while (r.parent != null) {
+                r = r.parent;
+            }
+            return r;
+        }
+
+        /**
+         * Ensures that the given root is the first node of its bin.
+         */
+        static <K, V> void moveRootToFront(Node<K, V>[] tab, TreeNode<K, V> root) {
+            if (root == null || tab == null || tab.length == 0) {
+                return;
+            }
+            int index = root.hash & (tab.length - 1);
+            TreeNode<K, V> first = (TreeNode<K, V>) tab[index];
+            if (root != first) {
+                tab[index] = root;
+                TreeNode<K, V> rp = root.prev;
+                Node<K, V> rn = root.next;
+                if (rn != null) {
+                    ((TreeNode<K, V>) rn).prev = rp;
+                }
+                if (rp != null) {
+                    rp.next = rn;
+                }
+                if (first != null) {
+                    first.prev = root;
+                }
+                root.next = first;
+                root.prev = null;
+            }
+        }
+
+        /**
+         * Finds the node starting at root p with the given hash and key.
+         * The kc argument caches comparableClassFor(key) upon first use
+         * comparing keys.
+         */
+        TreeNode<K, V> find(int h, Object k, Class<?> kc) {
+            TreeNode<K, V> p = this;
+            do {
+                int ph = p.hash, dir;
+                K pk = p.key;
+                TreeNode<K, V> pl = p.left, pr = p.right, q;
+                if (ph > h) {
+                    p = pl;
+                } else if (ph < h) {
+                    p = pr;
+                } else if (pk == k || (k != null && k.equals(pk))) {
+                    return p;
+                } else if (pl == null) {
+                    p = pr;
+                } else if (pr == null) {
+                    p = pl;
+                } else if ((kc != null || (kc = comparableClassFor(k)) != null) &&
+                        (dir = compareComparables(kc, k, pk)) != 0) {
+                    p = (dir < 0) ? pl : pr;
+                } else if ((q = pr.find(h, k, kc)) != null) {
+                    // same hash and not comparable: both sides may hold it
+                    return q;
+                } else {
+                    p = pl;
+                }
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * Calls find for root node.
+         */
+        TreeNode<K, V> getTreeNode(int h, Object k) {
+            return ((parent != null) ? root() : this).find(h, k, null);
+        }
+
+        /**
+         * Tie-breaking utility for ordering insertions when equal
+         * hashCodes and non-comparable. We don't require a total
+         * order, just a consistent insertion rule to maintain
+         * equivalence across rebalancings. Tie-breaking further than
+         * necessary simplifies testing a bit.
+         */
+        static int tieBreakOrder(Object a, Object b) {
+            int d;
+            if (a == null || b == null ||
+                    (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0) {
+                d = (System.identityHashCode(a) <= System.identityHashCode(b) ? -1 : 1);
+            }
+            return d;
+        }
+
+        /**
+         * Forms tree of the nodes linked from this node.
+         */
+        void treeify(Node<K, V>[] tab) {
+            TreeNode<K, V> root = null;
+            for (TreeNode<K, V> x = this, next; x != null; x = next) {
+                next = (TreeNode<K, V>) x.next;
+                x.left = x.right = null;
+                if (root == null) {
+                    x.parent = null;
+                    x.red = false;
+                    root = x;
+                    continue;
+                }
+                K k = x.key;
+                int h = x.hash;
+                Class<?> kc = null;
+                for (TreeNode<K, V> p = root; ; ) {
+                    int dir, ph = p.hash;
+                    K pk = p.key;
+                    if (ph > h) {
+                        dir = -1;
+                    } else if (ph < h) {
+                        dir = 1;
+                    } else if ((kc == null && (kc = comparableClassFor(k)) == null) ||
+                            (dir = compareComparables(kc, k, pk)) == 0) {
+                        dir = tieBreakOrder(k, pk);
+                    }
+                    TreeNode<K, V> xp = p;
+                    if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                        x.parent = xp;
+                        if (dir <= 0) {
+                            xp.left = x;
+                        } else {
+                            xp.right = x;
+                        }
+                        root = balanceInsertion(root, x);
+                        break;
+                    }
+                }
+            }
+            moveRootToFront(tab, root);
+        }
+
+        /**
+         * Returns a list of non-TreeNodes replacing those linked from
+         * this node.
+         */
+        Node<K, V> untreeify(MyHashMap<K, V> map) {
+            Node<K, V> hd = null, tl = null;
+            for (Node<K, V> q = this; q != null; q = q.next) {
+                Node<K, V> p = map.replacementNode(q, null);
+                if (tl == null) {
+                    hd = p;
+                } else {
+                    tl.next = p;
+                }
+                tl = p;
+            }
+            return hd;
+        }
+
+        /**
+         * Tree version of putVal.
+         *
+         * @return the existing node for the key, or null if a new node was added
+         */
+        TreeNode<K, V> putTreeVal(MyHashMap<K, V> map, Node<K, V>[] tab, int h, K k, V v) {
+            Class<?> kc = null;
+            boolean searched = false;
+            TreeNode<K, V> root = (parent != null) ? root() : this;
+            for (TreeNode<K, V> p = root; ; ) {
+                int dir, ph = p.hash;
+                K pk = p.key;
+                if (ph > h) {
+                    dir = -1;
+                } else if (ph < h) {
+                    dir = 1;
+                } else if (pk == k || (k != null && k.equals(pk))) {
+                    return p;
+                } else if ((kc == null && (kc = comparableClassFor(k)) == null) ||
+                        (dir = compareComparables(kc, k, pk)) == 0) {
+                    if (!searched) {
+                        // look for an equal key on both sides once before tie-breaking
+                        TreeNode<K, V> q, ch;
+                        searched = true;
+                        if (((ch = p.left) != null && (q = ch.find(h, k, kc)) != null) ||
+                                ((ch = p.right) != null && (q = ch.find(h, k, kc)) != null)) {
+                            return q;
+                        }
+                    }
+                    dir = tieBreakOrder(k, pk);
+                }
+
+                TreeNode<K, V> xp = p;
+                if ((p = (dir <= 0) ? p.left : p.right) == null) {
+                    Node<K, V> xpn = xp.next;
+                    TreeNode<K, V> x = map.newTreeNode(h, k, v, xpn);
+                    if (dir <= 0) {
+                        xp.left = x;
+                    } else {
+                        xp.right = x;
+                    }
+                    xp.next = x;
+                    x.parent = x.prev = xp;
+                    if (xpn != null) {
+                        ((TreeNode<K, V>) xpn).prev = x;
+                    }
+                    moveRootToFront(tab, balanceInsertion(root, x));
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Removes the given node, that must be present before this call.
+         * This is messier than typical red-black deletion code because we
+         * cannot swap the contents of an interior node with a leaf
+         * successor that is pinned by "next" pointers that are accessible
+         * independently during traversal. So instead we swap the tree
+         * linkages. If the current tree appears to have too few nodes,
+         * the bin is converted back to a plain bin. (The test triggers
+         * somewhere between 2 and 6 nodes, depending on tree structure).
+         */
+        void removeTreeNode(MyHashMap<K, V> map, Node<K, V>[] tab, boolean movable) {
+            if (tab == null || tab.length == 0) {
+                return;
+            }
+            int index = hash & (tab.length - 1);
+            TreeNode<K, V> first = (TreeNode<K, V>) tab[index], root = first, rl;
+            TreeNode<K, V> succ = (TreeNode<K, V>) next, pred = prev;
+            if (pred == null) {
+                tab[index] = first = succ;
+            } else {
+                pred.next = succ;
+            }
+            if (succ != null) {
+                succ.prev = pred;
+            }
+            if (first == null) {
+                return;
+            }
+            if (root.parent != null) {
+                root = root.root();
+            }
+            if (movable && (root.right == null || (rl = root.left) == null || rl.left == null)) {
+                tab[index] = first.untreeify(map);  // too small
+                return;
+            }
+            TreeNode<K, V> p = this, pl = left, pr = right, replacement;
+            if (pl != null && pr != null) {
+                TreeNode<K, V> s = pr, sl;
+                while ((sl = s.left) != null) { // find successor
+                    s = sl;
+                }
+                boolean c = s.red;
+                s.red = p.red;
+                p.red = c; // swap colors
+                TreeNode<K, V> sr = s.right;
+                TreeNode<K, V> pp = p.parent;
+                if (s == pr) { // p was s's direct parent
+                    p.parent = s;
+                    s.right = p;
+                } else {
+                    TreeNode<K, V> sp = s.parent;
+                    if ((p.parent = sp) != null) {
+                        if (s == sp.left) {
+                            sp.left = p;
+                        } else {
+                            sp.right = p;
+                        }
+                    }
+                    if ((s.right = pr) != null) {
+                        pr.parent = s;
+                    }
+                }
+                p.left = null;
+                if ((p.right = sr) != null) {
+                    sr.parent = p;
+                }
+                if ((s.left = pl) != null) {
+                    pl.parent = s;
+                }
+                if ((s.parent = pp) == null) {
+                    root = s;
+                } else if (p == pp.left) {
+                    pp.left = s;
+                } else {
+                    pp.right = s;
+                }
+                replacement = (sr != null) ? sr : p;
+            } else if (pl != null) {
+                replacement = pl;
+            } else if (pr != null) {
+                replacement = pr;
+            } else {
+                replacement = p;
+            }
+            if (replacement != p) {
+                TreeNode<K, V> pp = replacement.parent = p.parent;
+                if (pp == null) {
+                    (root = replacement).red = false;
+                } else if (p == pp.left) {
+                    pp.left = replacement;
+                } else {
+                    pp.right = replacement;
+                }
+                p.left = p.right = p.parent = null;
+            }
+
+            TreeNode<K, V> r = p.red ? root : balanceDeletion(root, replacement);
+
+            if (replacement == p) {  // detach
+                TreeNode<K, V> pp = p.parent;
+                p.parent = null;
+                if (pp != null) {
+                    if (p == pp.left) {
+                        pp.left = null;
+                    } else if (p == pp.right) {
+                        pp.right = null;
+                    }
+                }
+            }
+            if (movable) {
+                moveRootToFront(tab, r);
+            }
+        }
+
+        /**
+         * Splits nodes in a tree bin into lower and upper tree bins,
+         * or untreeifies if now too small. Called only from resize;
+         * see above discussion about split bits and indices.
+         *
+         * @param map   the map
+         * @param tab   the table for recording bin heads
+         * @param index the index of the table being split
+         * @param bit   the bit of hash to split on
+         */
+        void split(MyHashMap<K, V> map, Node<K, V>[] tab, int index, int bit) {
+            TreeNode<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+            int lc = 0, hc = 0;
+            for (TreeNode<K, V> e = this, next; e != null; e = next) {
+                next = (TreeNode<K, V>) e.next;
+                e.next = null;
+                if ((e.hash & bit) == 0) {
+                    if ((e.prev = loTail) == null) {
+                        loHead = e;
+                    } else {
+                        loTail.next = e;
+                    }
+                    loTail = e;
+                    ++lc;
+                } else {
+                    if ((e.prev = hiTail) == null) {
+                        hiHead = e;
+                    } else {
+                        hiTail.next = e;
+                    }
+                    hiTail = e;
+                    ++hc;
+                }
+            }
+
+            if (loHead != null) {
+                if (lc <= UNTREEIFY_THRESHOLD) {
+                    tab[index] = loHead.untreeify(map);
+                } else {
+                    tab[index] = loHead;
+                    if (hiHead != null) { // (else is already treeified)
+                        loHead.treeify(tab);
+                    }
+                }
+            }
+            if (hiHead != null) {
+                if (hc <= UNTREEIFY_THRESHOLD) {
+                    tab[index + bit] = hiHead.untreeify(map);
+                } else {
+                    tab[index + bit] = hiHead;
+                    if (loHead != null) {
+                        hiHead.treeify(tab);
+                    }
+                }
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        // Red-black tree methods, all adapted from CLR
+
+        static <K, V> TreeNode<K, V> rotateLeft(TreeNode<K, V> root, TreeNode<K, V> p) {
+            TreeNode<K, V> r, pp, rl;
+            if (p != null && (r = p.right) != null) {
+                if ((rl = p.right = r.left) != null) {
+                    rl.parent = p;
+                }
+                if ((pp = r.parent = p.parent) == null) {
+                    (root = r).red = false;
+                } else if (pp.left == p) {
+                    pp.left = r;
+                } else {
+                    pp.right = r;
+                }
+                r.left = p;
+                p.parent = r;
+            }
+            return root;
+        }
+
+        static <K, V> TreeNode<K, V> rotateRight(TreeNode<K, V> root, TreeNode<K, V> p) {
+            TreeNode<K, V> l, pp, lr;
+            if (p != null && (l = p.left) != null) {
+                if ((lr = p.left = l.right) != null) {
+                    lr.parent = p;
+                }
+                if ((pp = l.parent = p.parent) == null) {
+                    (root = l).red = false;
+                } else if (pp.right == p) {
+                    pp.right = l;
+                } else {
+                    pp.left = l;
+                }
+                l.right = p;
+                p.parent = l;
+            }
+            return root;
+        }
+
+        static <K, V> TreeNode<K, V> balanceInsertion(TreeNode<K, V> root, TreeNode<K, V> x) {
+            x.red = true;
+            for (TreeNode<K, V> xp, xpp, xppl, xppr; ; ) {
+                if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                } else if (!xp.red || (xpp = xp.parent) == null) {
+                    return root;
+                }
+                if (xp == (xppl = xpp.left)) {
+                    if ((xppr = xpp.right) != null && xppr.red) {
+                        xppr.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    } else {
+                        if (x == xp.right) {
+                            root = rotateLeft(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateRight(root, xpp);
+                            }
+                        }
+                    }
+                } else {
+                    if (xppl != null && xppl.red) {
+                        xppl.red = false;
+                        xp.red = false;
+                        xpp.red = true;
+                        x = xpp;
+                    } else {
+                        if (x == xp.left) {
+                            root = rotateRight(root, x = xp);
+                            xpp = (xp = x.parent) == null ? null : xp.parent;
+                        }
+                        if (xp != null) {
+                            xp.red = false;
+                            if (xpp != null) {
+                                xpp.red = true;
+                                root = rotateLeft(root, xpp);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        static <K, V> TreeNode<K, V> balanceDeletion(TreeNode<K, V> root, TreeNode<K, V> x) {
+            for (TreeNode<K, V> xp, xpl, xpr; ; ) {
+                if (x == null || x == root) {
+                    return root;
+                } else if ((xp = x.parent) == null) {
+                    x.red = false;
+                    return x;
+                } else if (x.red) {
+                    x.red = false;
+                    return root;
+                } else if ((xpl = xp.left) == x) {
+                    if ((xpr = xp.right) != null && xpr.red) {
+                        xpr.red = false;
+                        xp.red = true;
+                        root = rotateLeft(root, xp);
+                        xpr = (xp = x.parent) == null ? null : xp.right;
+                    }
+                    if (xpr == null) {
+                        x = xp;
+                    } else {
+                        TreeNode<K, V> sl = xpr.left, sr = xpr.right;
+                        if ((sr == null || !sr.red) && (sl == null || !sl.red)) {
+                            xpr.red = true;
+                            x = xp;
+                        } else {
+                            if (sr == null || !sr.red) {
+                                if (sl != null) {
+                                    sl.red = false;
+                                }
+                                xpr.red = true;
+                                root = rotateRight(root, xpr);
+                                xpr = (xp = x.parent) == null ? null : xp.right;
+                            }
+                            if (xpr != null) {
+                                xpr.red = (xp != null) && xp.red;
+                                if ((sr = xpr.right) != null) {
+                                    sr.red = false;
+                                }
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateLeft(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                } else { // symmetric
+                    if (xpl != null && xpl.red) {
+                        xpl.red = false;
+                        xp.red = true;
+                        root = rotateRight(root, xp);
+                        xpl = (xp = x.parent) == null ? null : xp.left;
+                    }
+                    if (xpl == null) {
+                        x = xp;
+                    } else {
+                        TreeNode<K, V> sl = xpl.left, sr = xpl.right;
+                        if ((sl == null || !sl.red) && (sr == null || !sr.red)) {
+                            xpl.red = true;
+                            x = xp;
+                        } else {
+                            if (sl == null || !sl.red) {
+                                if (sr != null) {
+                                    sr.red = false;
+                                }
+                                xpl.red = true;
+                                root = rotateLeft(root, xpl);
+                                xpl = (xp = x.parent) == null ? null : xp.left;
+                            }
+                            if (xpl != null) {
+                                xpl.red = (xp != null) && xp.red;
+                                if ((sl = xpl.left) != null) {
+                                    sl.red = false;
+                                }
+                            }
+                            if (xp != null) {
+                                xp.red = false;
+                                root = rotateRight(root, xp);
+                            }
+                            x = root;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Recursive invariant check
+         */
+        static <K, V> boolean checkInvariants(TreeNode<K, V> t) {
+            TreeNode<K, V> tp = t.parent, tl = t.left, tr = t.right,
+                    tb = t.prev, tn = (TreeNode<K, V>) t.next;
+            if (tb != null && tb.next != t)
+                return false;
+            if (tn != null && tn.prev != t)
+                return false;
+            if (tp != null && t != tp.left && t != tp.right)
+                return false;
+            if (tl != null && (tl.parent != t || tl.hash > t.hash))
+                return false;
+            if (tr != null && (tr.parent != t || tr.hash < t.hash))
+                return false;
+            if (t.red && tl != null && tl.red && tr != null && tr.red)
+                return false;
+            if (tl != null && !checkInvariants(tl))
+                return false;
+            if (tr != null && !checkInvariants(tr))
+                return false;
+            return true;
+        }
     }
 
 }
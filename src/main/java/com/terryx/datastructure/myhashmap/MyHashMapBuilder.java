@@ -0,0 +1,233 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bulk loader for {@link MyHashMap}. Mappings are collected first and
+ * the map is built in one go: the table is allocated at its final
+ * size, hashes are computed in parallel, and the mappings are then
+ * partitioned by the top bits of their bin index so that each
+ * ForkJoin task fills its own contiguous range of bins. Ranges are
+ * disjoint, so the tasks share the table without any locking.
+ *
+ * When the same key is added more than once the last value wins, as
+ * with successive puts.
+ */
+public class MyHashMapBuilder<K, V> {
+
+    /**
+     * Below this many mappings the map is filled sequentially.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Bin ranges per worker thread, to even out skewed partitions.
+     */
+    static final int PARTITIONS_PER_THREAD = 4;
+
+    private Object[] keys = new Object[16];
+    private Object[] values = new Object[16];
+    private int count;
+
+    private float loadFactor = MyHashMap.DEFAULT_LOAD_FACTOR;
+    private ForkJoinPool pool;
+
+    /**
+     * Sets the load factor of the map to build.
+     */
+    public MyHashMapBuilder<K, V> loadFactor(float loadFactor) {
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        return this;
+    }
+
+    /**
+     * Sets the pool used by {@link #build()}; the common pool if unset.
+     */
+    public MyHashMapBuilder<K, V> pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public MyHashMapBuilder<K, V> put(K key, V value) {
+        if (count == keys.length) {
+            grow(count + 1);
+        }
+        keys[count] = key;
+        values[count] = value;
+        count++;
+        return this;
+    }
+
+    public MyHashMapBuilder<K, V> putAll(Map<? extends K, ? extends V> m) {
+        grow(count + m.size());
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+        return this;
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity > keys.length) {
+            int newLength = Math.max(minCapacity, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+    }
+
+    /**
+     * Builds a new map holding the mappings added so far. The builder
+     * may be reused afterwards.
+     */
+    public MyHashMap<K, V> build() {
+        int n = count;
+        float ft = ((float) n / loadFactor) + 1.0F;
+        int cap = (ft < (float) MyHashMap.MAXIMUM_CAPACITY) ?
+                MyHashMap.tableSizeFor((int) ft) : MyHashMap.MAXIMUM_CAPACITY;
+        MyHashMap<K, V> map = new MyHashMap<>(cap, loadFactor);
+        ForkJoinPool p = (pool != null) ? pool : ForkJoinPool.commonPool();
+        if (n < PARALLEL_THRESHOLD || p.getParallelism() < 2 || cap < MyHashMap.MIN_TREEIFY_CAPACITY) {
+            for (int i = 0; i < n; i++) {
+                K key = key(i);
+                map.putVal(MyHashMap.hash(key), key, value(i));
+            }
+            return map;
+        }
+        map.resize(); // allocates the table at cap
+
+        int[] hashes = new int[n];
+        p.invoke(new HashTask(hashes, 0, n));
+
+        // partitions are ranges of 2^shift bins, a power of two of them
+        int parts = Math.min(cap, MyHashMap.tableSizeFor(p.getParallelism() * PARTITIONS_PER_THREAD));
+        int shift = Integer.numberOfTrailingZeros(cap) - Integer.numberOfTrailingZeros(parts);
+
+        // stable counting sort of input positions by partition
+        int[] starts = new int[parts + 1];
+        for (int i = 0; i < n; i++) {
+            starts[((hashes[i] & (cap - 1)) >>> shift) + 1]++;
+        }
+        for (int i = 0; i < parts; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] order = new int[n];
+        int[] next = Arrays.copyOf(starts, parts);
+        for (int i = 0; i < n; i++) {
+            order[next[(hashes[i] & (cap - 1)) >>> shift]++] = i;
+        }
+
+        map.size = p.invoke(new FillTask(map, hashes, order, starts, shift, 0, parts));
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int i) {
+        return (K) keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int i) {
+        return (V) values[i];
+    }
+
+    /**
+     * Computes MyHashMap.hash of keys [lo, hi).
+     */
+    @SuppressWarnings("serial")
+    final class HashTask extends RecursiveAction {
+        final int[] hashes;
+        final int lo, hi;
+
+        HashTask(int[] hashes, int lo, int hi) {
+            this.hashes = hashes;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                for (int i = lo; i < hi; i++) {
+                    hashes[i] = MyHashMap.hash(keys[i]);
+                }
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new HashTask(hashes, lo, mid), new HashTask(hashes, mid, hi));
+            }
+        }
+    }
+
+    /**
+     * Inserts the mappings of partitions [lo, hi) and returns the
+     * number of distinct keys added.
+     */
+    @SuppressWarnings("serial")
+    final class FillTask extends RecursiveTask<Integer> {
+        final MyHashMap<K, V> map;
+        final int[] hashes, order, starts;
+        final int shift, lo, hi;
+
+        FillTask(MyHashMap<K, V> map, int[] hashes, int[] order, int[] starts, int shift, int lo, int hi) {
+            this.map = map;
+            this.hashes = hashes;
+            this.order = order;
+            this.starts = starts;
+            this.shift = shift;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                FillTask right = new FillTask(map, hashes, order, starts, shift, mid, hi);
+                right.fork();
+                int added = new FillTask(map, hashes, order, starts, shift, lo, mid).compute();
+                return added + right.join();
+            }
+            MyHashMap.Node<K, V>[] tab = map.table;
+            int mask = tab.length - 1, added = 0;
+            for (int o = starts[lo]; o < starts[hi]; o++) {
+                int i = order[o], hash = hashes[i], index = hash & mask, binCount = 0;
+                K key = key(i);
+                MyHashMap.Node<K, V> e = tab[index], last = null;
+                if (e instanceof MyHashMap.TreeNode) {
+                    e = ((MyHashMap.TreeNode<K, V>) e).putTreeVal(map, tab, hash, key, value(i));
+                    if (e == null) {
+                        added++;
+                    } else {
+                        e.value = value(i);
+                    }
+                    continue;
+                }
+                for (; e != null; last = e, e = e.next, binCount++) {
+                    if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                        break;
+                    }
+                }
+                if (e != null) {
+                    e.value = value(i);
+                    continue;
+                }
+                MyHashMap.Node<K, V> node = map.newNode(hash, key, value(i), null);
+                if (last == null) {
+                    tab[index] = node;
+                } else {
+                    last.next = node;
+                }
+                added++;
+                if (binCount >= MyHashMap.TREEIFY_THRESHOLD) {
+                    // the table is big enough that treeifyBin never resizes
+                    map.treeifyBin(tab, hash);
+                }
+            }
+            return added;
+        }
+    }
+}
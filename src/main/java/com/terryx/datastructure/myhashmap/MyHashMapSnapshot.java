@@ -0,0 +1,288 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ConcurrentModificationException;
+
+/**
+ * The binary snapshot format of {@link MyHashMap#snapshot}, streamed
+ * through a direct buffer so that maps of any size go to a channel in
+ * large writes. All numbers are big-endian.
+ *
+ * <pre>
+ * header:  int     magic "MHMS"
+ *          int     version
+ *          byte    flags: 1 incremental resize, 2 keyed hashing
+ *          float   load factor
+ *          int     capacity, 0 if no table was allocated
+ *          int     size
+ *          long[2] hash key, zero unless keyed hashing
+ * size records, in bin order and in bin order within each bin:
+ *          int     stored hash
+ *          varint  key length + 1, 0 for a null key
+ *          byte[]  key, as written by the key serializer
+ *          varint  value length + 1, 0 for a null value
+ *          byte[]  value, as written by the value serializer
+ * </pre>
+ *
+ * Varints hold 7 bits per byte, low bits first, with the high bit set
+ * on all but the last byte; most records spend one byte per length.
+ */
+final class MyHashMapSnapshot {
+
+    static final int MAGIC = 0x4D484D53;
+
+    static final int VERSION = 1;
+
+    static final int INCREMENTAL_RESIZE = 1;
+    static final int KEYED_HASHING = 2;
+
+    static final int HEADER_BYTES = 37;
+
+    /**
+     * The most bytes a varint takes.
+     */
+    static final int MAX_VARINT_BYTES = 5;
+
+    /**
+     * Initial size of the stream buffer; it grows to hold larger
+     * records.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private MyHashMapSnapshot() {
+    }
+
+    static <K, V> void write(MyHashMap<K, V> map, WritableByteChannel out, Serializer<? super K> keySerializer,
+                             Serializer<? super V> valueSerializer) throws IOException {
+        MyHashMap.Node<K, V>[] tab = map.table;
+        Writer w = new Writer(out);
+        int flags = (map.incrementalResize ? INCREMENTAL_RESIZE : 0) | (map.keyedHashing ? KEYED_HASHING : 0);
+        w.buffer.putInt(MAGIC).putInt(VERSION).put((byte) flags).putFloat(map.loadFactor)
+                .putInt(tab == null ? 0 : tab.length).putInt(map.size)
+                .putLong(map.hashSeed0).putLong(map.hashSeed1);
+        int count = 0;
+        if (tab != null) {
+            // tree bins keep their nodes linked through next as well
+            for (MyHashMap.Node<K, V> b : tab) {
+                for (MyHashMap.Node<K, V> e = b; e != null; e = e.next) {
+                    w.record(e.hash, e.key, e.value, keySerializer, valueSerializer);
+                    count++;
+                }
+            }
+        }
+        if (count != map.size)
+            throw new ConcurrentModificationException();
+        w.flush();
+    }
+
+    static <K, V> MyHashMap<K, V> read(ReadableByteChannel in, Serializer<? extends K> keySerializer,
+                                       Serializer<? extends V> valueSerializer) throws IOException {
+        Reader r = new Reader(in);
+        ByteBuffer b = r.need(HEADER_BYTES);
+        if (b.getInt() != MAGIC)
+            throw new StreamCorruptedException("Not a MyHashMap snapshot");
+        int version = b.getInt();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported snapshot version: " + version);
+        int flags = b.get();
+        float loadFactor = b.getFloat();
+        int cap = b.getInt(), size = b.getInt();
+        long hashSeed0 = b.getLong(), hashSeed1 = b.getLong();
+        if (cap < 0 || cap > MyHashMap.MAXIMUM_CAPACITY || (cap & (cap - 1)) != 0
+                || size < 0 || (cap == 0 && size != 0) || !(loadFactor > 0))
+            throw new StreamCorruptedException("Invalid snapshot header");
+
+        MyHashMap<K, V> map = new MyHashMap<>(cap, loadFactor, (flags & INCREMENTAL_RESIZE) != 0,
+                (flags & KEYED_HASHING) != 0, hashSeed0, hashSeed1);
+        if (cap == 0) {
+            return map;
+        }
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        MyHashMap.Node<K, V>[] tab = (MyHashMap.Node<K, V>[]) new MyHashMap.Node[cap];
+        map.table = tab;
+        float ft = (float) cap * loadFactor;
+        map.threshold = (cap < MyHashMap.MAXIMUM_CAPACITY && ft < (float) MyHashMap.MAXIMUM_CAPACITY ?
+                (int) ft : Integer.MAX_VALUE);
+
+        int bin = -1, binCount = 0;
+        MyHashMap.Node<K, V> last = null;
+        for (int i = 0; i < size; i++) {
+            int hash = r.need(4).getInt();
+            K key = r.read(keySerializer);
+            V value = r.read(valueSerializer);
+            int index = hash & (cap - 1);
+            if (index != bin) {
+                if (index < bin)
+                    throw new StreamCorruptedException("Bins out of order");
+                endBin(map, tab, last, binCount);
+                bin = index;
+                binCount = 0;
+                last = null;
+            }
+            MyHashMap.Node<K, V> node = map.newNode(hash, key, value, null);
+            if (last == null) {
+                tab[index] = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            binCount++;
+        }
+        endBin(map, tab, last, binCount);
+        map.size = size;
+        return map;
+    }
+
+    /**
+     * Treeifies a restored bin if putting its nodes one by one would
+     * have.
+     */
+    private static <K, V> void endBin(MyHashMap<K, V> map, MyHashMap.Node<K, V>[] tab,
+                                      MyHashMap.Node<K, V> last, int binCount) {
+        if (binCount > MyHashMap.TREEIFY_THRESHOLD && tab.length >= MyHashMap.MIN_TREEIFY_CAPACITY) {
+            map.treeifyBin(tab, last.hash);
+        }
+    }
+
+    /**
+     * Fills a buffer with records and writes it out when full.
+     */
+    static final class Writer {
+        final WritableByteChannel out;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        <K, V> void record(int hash, K key, V value, Serializer<? super K> keySerializer,
+                           Serializer<? super V> valueSerializer) throws IOException {
+            for (; ; ) {
+                ByteBuffer b = buffer;
+                int start = b.position();
+                try {
+                    b.putInt(hash);
+                    put(key, keySerializer, b);
+                    put(value, valueSerializer, b);
+                    return;
+                } catch (BufferOverflowException e) {
+                    b.position(start);
+                    if (start > 0) {
+                        flush();
+                    } else {
+                        // a single record larger than the buffer
+                        buffer = ByteBuffer.allocateDirect(b.capacity() << 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the length-prefixed form of value. The length is only
+         * known afterwards, so the value is written after room for the
+         * longest varint and moved back over the unused bytes.
+         */
+        private static <T> void put(T value, Serializer<? super T> serializer, ByteBuffer b) {
+            if (value == null) {
+                b.put((byte) 0);
+                return;
+            }
+            int start = b.position();
+            if (b.remaining() < MAX_VARINT_BYTES)
+                throw new BufferOverflowException();
+            b.position(start + MAX_VARINT_BYTES);
+            serializer.write(value, b);
+            int length = b.position() - start - MAX_VARINT_BYTES;
+            int i = start, v = length + 1;
+            for (; (v & ~0x7F) != 0; v >>>= 7) {
+                b.put(i++, (byte) ((v & 0x7F) | 0x80));
+            }
+            b.put(i++, (byte) v);
+            if (i < start + MAX_VARINT_BYTES) {
+                for (int j = start + MAX_VARINT_BYTES, end = j + length; j < end; j++) {
+                    b.put(i++, b.get(j));
+                }
+            }
+            b.position(i);
+        }
+
+        void flush() throws IOException {
+            ByteBuffer b = buffer;
+            b.flip();
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+            b.clear();
+        }
+    }
+
+    /**
+     * Reads the channel through a buffer, refilling it as records are
+     * consumed. The channel must be blocking.
+     */
+    static final class Reader {
+        final ReadableByteChannel in;
+        ByteBuffer buffer;
+
+        Reader(ReadableByteChannel in) {
+            this.in = in;
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0);
+        }
+
+        /**
+         * Returns the buffer with at least n bytes remaining.
+         */
+        ByteBuffer need(int n) throws IOException {
+            ByteBuffer b = buffer;
+            if (b.remaining() < n) {
+                if (n > b.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(n, b.capacity() << 1));
+                    larger.put(b);
+                    buffer = b = larger;
+                } else {
+                    b.compact();
+                }
+                while (b.position() < n) {
+                    if (in.read(b) < 0)
+                        throw new EOFException("Truncated snapshot");
+                }
+                b.flip();
+            }
+            return b;
+        }
+
+        /**
+         * Reads a length-prefixed object, or null.
+         */
+        <T> T read(Serializer<? extends T> serializer) throws IOException {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte x = need(1).get();
+                v |= (x & 0x7F) << shift;
+                if (x >= 0) {
+                    break;
+                }
+                if (shift == 7 * (MAX_VARINT_BYTES - 1))
+                    throw new StreamCorruptedException("Invalid length");
+            }
+            int length = v - 1;
+            if (length < 0) {
+                if (v != 0)
+                    throw new StreamCorruptedException("Invalid length");
+                return null;
+            }
+            ByteBuffer b = need(length);
+            ByteBuffer region = b.slice();
+            region.limit(length);
+            b.position(b.position() + length);
+            return serializer.read(region);
+        }
+    }
+}
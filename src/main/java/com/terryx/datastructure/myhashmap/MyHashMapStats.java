@@ -0,0 +1,399 @@
+package com.terryx.datastructure.myhashmap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * A snapshot of how the keys of a {@link MyHashMap} are distributed
+ * and how it has been used, returned by {@link MyHashMap#stats()}.
+ *
+ * The layout part is measured from the table: how many bins are
+ * occupied, how many are trees, and a histogram of chain lengths. A
+ * good hash function leaves chains close to what uniform hashing
+ * predicts at this load, {@link #getExpectedMeanChainLength()}; a mean
+ * well above it, a long tail in the histogram or many tree bins point
+ * at a hashCode() that maps many keys to few values.
+ *
+ * The counters are recorded only between {@link MyHashMap#enableStats()}
+ * and {@link MyHashMap#disableStats()}: get hits and misses, the number
+ * of nodes each get compared in a list bin (its probe length), lookups
+ * that went to tree bins, and the number and duration of resizes.
+ *
+ * Histograms have {@link #HISTOGRAM_BUCKETS} buckets: bucket i counts
+ * chains or probes of length i, and the last bucket those of that
+ * length or longer.
+ */
+public final class MyHashMapStats {
+
+    /**
+     * Lengths 0 through TREEIFY_THRESHOLD get their own bucket; the
+     * last one counts the chains a put would treeify.
+     */
+    public static final int HISTOGRAM_BUCKETS = MyHashMap.TREEIFY_THRESHOLD + 2;
+
+    /**
+     * The counters of a map with stats enabled. Written by the owning
+     * map only, and read without synchronization, so a concurrent read
+     * may see a count that is slightly behind.
+     */
+    static final class Recorder {
+        long hits, misses, treeLookups, probes;
+        final long[] probeLengths = new long[HISTOGRAM_BUCKETS];
+        long resizes, resizeNanos, maxResizeNanos;
+
+        void recordLookup(int probes, boolean hit) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+            this.probes += probes;
+            probeLengths[Math.min(probes, HISTOGRAM_BUCKETS - 1)]++;
+        }
+
+        void recordTreeLookup(boolean hit) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+            treeLookups++;
+        }
+
+        void recordBatch(int hits, int misses) {
+            this.hits += hits;
+            this.misses += misses;
+        }
+
+        void recordResize(long nanos) {
+            resizes++;
+            resizeNanos += nanos;
+            maxResizeNanos = Math.max(maxResizeNanos, nanos);
+        }
+    }
+
+    private final int capacity, size, occupiedBins, treeBins, longestChain;
+    private final float loadFactor;
+    private final long[] chainLengths = new long[HISTOGRAM_BUCKETS];
+
+    private final long hits, misses, treeLookups, probes;
+    private final long[] probeLengths;
+    private final long resizes, resizeNanos, maxResizeNanos;
+
+    MyHashMapStats(MyHashMap<?, ?> m) {
+        int occupied = 0, trees = 0, longest = 0, count = 0;
+        // during an incremental resize the bins not yet transferred
+        // are counted in the old table, and their targets in the new
+        // one as empty
+        for (MyHashMap.Node<?, ?>[] tab : Arrays.asList(m.table, m.oldTable)) {
+            if (tab == null) {
+                continue;
+            }
+            for (MyHashMap.Node<?, ?> b : tab) {
+                int len = 0;
+                for (MyHashMap.Node<?, ?> e = b; e != null; e = e.next) {
+                    len++;
+                }
+                if (b instanceof MyHashMap.TreeNode) {
+                    trees++;
+                }
+                if (len > 0) {
+                    occupied++;
+                    count += len;
+                }
+                longest = Math.max(longest, len);
+                chainLengths[Math.min(len, HISTOGRAM_BUCKETS - 1)]++;
+            }
+        }
+        if (m.oldTable != null) {
+            // the transferred bins of the old table are not bins anymore
+            chainLengths[0] -= m.transferIndex;
+        }
+        capacity = (m.table == null) ? 0 : m.table.length;
+        size = count;
+        occupiedBins = occupied;
+        treeBins = trees;
+        longestChain = longest;
+        loadFactor = m.loadFactor;
+
+        Recorder rec = m.stats;
+        if (rec != null) {
+            hits = rec.hits;
+            misses = rec.misses;
+            treeLookups = rec.treeLookups;
+            probes = rec.probes;
+            probeLengths = rec.probeLengths.clone();
+            resizes = rec.resizes;
+            resizeNanos = rec.resizeNanos;
+            maxResizeNanos = rec.maxResizeNanos;
+        } else {
+            hits = misses = treeLookups = probes = 0L;
+            probeLengths = new long[HISTOGRAM_BUCKETS];
+            resizes = resizeNanos = maxResizeNanos = 0L;
+        }
+    }
+
+    /**
+     * The length of the table.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The number of mappings counted in the table.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * The number of non-empty bins.
+     */
+    public int getOccupiedBins() {
+        return occupiedBins;
+    }
+
+    /**
+     * The number of bins holding a red-black tree.
+     */
+    public int getTreeBins() {
+        return treeBins;
+    }
+
+    public int getLongestChain() {
+        return longestChain;
+    }
+
+    /**
+     * The mean length of the non-empty bins.
+     */
+    public double getMeanChainLength() {
+        return (occupiedBins == 0) ? 0.0 : (double) size / occupiedBins;
+    }
+
+    /**
+     * The mean length of the non-empty bins if the keys were hashed
+     * uniformly: a / (1 - e^-a) at a = size / capacity.
+     */
+    public double getExpectedMeanChainLength() {
+        if (size == 0) {
+            return 0.0;
+        }
+        double a = (double) size / capacity;
+        return a / -Math.expm1(-a);
+    }
+
+    /**
+     * Histogram of the bins by number of nodes, empty bins included.
+     */
+    public long[] getChainLengths() {
+        return chainLengths.clone();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The fraction of gets that found their key, or NaN before the
+     * first get.
+     */
+    public double getHitRate() {
+        long gets = hits + misses;
+        return (gets == 0) ? Double.NaN : (double) hits / gets;
+    }
+
+    /**
+     * The number of gets answered by a tree bin. These are not part of
+     * the probe lengths.
+     */
+    public long getTreeLookups() {
+        return treeLookups;
+    }
+
+    /**
+     * The mean number of nodes compared per get of a list bin.
+     */
+    public double getMeanProbeLength() {
+        long lookups = 0;
+        for (long c : probeLengths) {
+            lookups += c;
+        }
+        return (lookups == 0) ? 0.0 : (double) probes / lookups;
+    }
+
+    /**
+     * Histogram of the gets of list bins by nodes compared; a miss on
+     * an empty bin compares none.
+     */
+    public long[] getProbeLengths() {
+        return probeLengths.clone();
+    }
+
+    /**
+     * The number of times the table grew. In incremental mode only the
+     * allocation of the new table is timed.
+     */
+    public long getResizes() {
+        return resizes;
+    }
+
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    public long getMaxResizeNanos() {
+        return maxResizeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MyHashMapStats{capacity=" + capacity + ", size=" + size
+                + ", occupiedBins=" + occupiedBins + ", treeBins=" + treeBins
+                + ", longestChain=" + longestChain
+                + String.format(", meanChainLength=%.3f (uniform %.3f)",
+                getMeanChainLength(), getExpectedMeanChainLength())
+                + ", chainLengths=" + Arrays.toString(chainLengths)
+                + ", hits=" + hits + ", misses=" + misses + ", treeLookups=" + treeLookups
+                + String.format(", meanProbeLength=%.3f", getMeanProbeLength())
+                + ", probeLengths=" + Arrays.toString(probeLengths)
+                + ", resizes=" + resizes + ", resizeNanos=" + resizeNanos
+                + ", maxResizeNanos=" + maxResizeNanos + "}";
+    }
+
+    /**
+     * Registers an MXBean for the map with the platform MBean server,
+     * under {@code com.terryx.datastructure.myhashmap:type=MyHashMap,name=<name>},
+     * enabling stats on the map if they are not enabled yet. The bean
+     * holds on to the map until it is unregistered.
+     *
+     * As the map is not thread-safe, attributes read while it is being
+     * modified are approximate.
+     *
+     * @return the name the bean was registered under
+     * @throws JMException if the name is taken or registration fails
+     */
+    public static ObjectName registerMBean(MyHashMap<?, ?> map, String name) throws JMException {
+        if (map.stats == null) {
+            map.enableStats();
+        }
+        ObjectName objectName = new ObjectName(MyHashMapStats.class.getPackage().getName()
+                + ":type=MyHashMap,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(map), objectName);
+        return objectName;
+    }
+
+    /**
+     * Serves the attributes from a snapshot that is refreshed at most
+     * once per {@link #MAX_AGE_NANOS}, since a monitoring client reads
+     * every attribute in turn and each snapshot scans the table.
+     */
+    static final class MBean implements MyHashMapStatsMXBean {
+        static final long MAX_AGE_NANOS = 1000000000L;
+
+        final MyHashMap<?, ?> map;
+        MyHashMapStats snapshot;
+        long takenAt;
+
+        MBean(MyHashMap<?, ?> map) {
+            this.map = map;
+        }
+
+        synchronized MyHashMapStats snapshot() {
+            long now = System.nanoTime();
+            if (snapshot == null || now - takenAt > MAX_AGE_NANOS) {
+                snapshot = map.stats();
+                takenAt = now;
+            }
+            return snapshot;
+        }
+
+        public int getCapacity() {
+            return snapshot().getCapacity();
+        }
+
+        public int getSize() {
+            return snapshot().getSize();
+        }
+
+        public int getOccupiedBins() {
+            return snapshot().getOccupiedBins();
+        }
+
+        public int getTreeBins() {
+            return snapshot().getTreeBins();
+        }
+
+        public int getLongestChain() {
+            return snapshot().getLongestChain();
+        }
+
+        public double getMeanChainLength() {
+            return snapshot().getMeanChainLength();
+        }
+
+        public double getExpectedMeanChainLength() {
+            return snapshot().getExpectedMeanChainLength();
+        }
+
+        public long[] getChainLengths() {
+            return snapshot().getChainLengths();
+        }
+
+        public long getHits() {
+            return snapshot().getHits();
+        }
+
+        public long getMisses() {
+            return snapshot().getMisses();
+        }
+
+        public double getHitRate() {
+            return snapshot().getHitRate();
+        }
+
+        public long getTreeLookups() {
+            return snapshot().getTreeLookups();
+        }
+
+        public double getMeanProbeLength() {
+            return snapshot().getMeanProbeLength();
+        }
+
+        public long[] getProbeLengths() {
+            return snapshot().getProbeLengths();
+        }
+
+        public long getResizes() {
+            return snapshot().getResizes();
+        }
+
+        public long getResizeNanos() {
+            return snapshot().getResizeNanos();
+        }
+
+        public long getMaxResizeNanos() {
+            return snapshot().getMaxResizeNanos();
+        }
+
+        public synchronized void reset() {
+            // a fresh recorder rather than zeroed fields, so the map
+            // never sees a half reset one
+            if (map.stats != null) {
+                map.enableStats();
+            }
+            snapshot = null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.terryx.datastructure.myhashmap;
+
+/**
+ * Management interface of a {@link MyHashMap} registered with
+ * {@link MyHashMapStats#registerMBean}. The attributes are those of
+ * {@link MyHashMapStats}; see there for their meaning.
+ */
+public interface MyHashMapStatsMXBean {
+
+    int getCapacity();
+
+    int getSize();
+
+    int getOccupiedBins();
+
+    int getTreeBins();
+
+    int getLongestChain();
+
+    double getMeanChainLength();
+
+    double getExpectedMeanChainLength();
+
+    long[] getChainLengths();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    long getTreeLookups();
+
+    double getMeanProbeLength();
+
+    long[] getProbeLengths();
+
+    long getResizes();
+
+    long getResizeNanos();
+
+    long getMaxResizeNanos();
+
+    /**
+     * Sets the lookup and resize counters back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,514 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Hash table with a doubly linked list running through its entries,
+ * in the manner of java.util.LinkedHashMap. The links live in the
+ * nodes themselves, so keeping the order costs two fields per entry
+ * and no extra allocation.
+ *
+ * The list is kept in insertion order, or, if the map was created in
+ * access order, from least to most recently accessed. A put or get
+ * of an existing key counts as an access and moves its entry to the
+ * tail in O(1).
+ *
+ * After each insertion {@link #removeEldestEntry} is asked whether
+ * the head of the list should go. By default it evicts once the map
+ * holds more than its maximum size, so
+ * {@code new MyLinkedHashMap<>(16, 0.75f, true, 1000)} is a ready made
+ * LRU cache of 1000 entries.
+ *
+ * The collection views iterate in list order. Their spliterators are
+ * ORDERED and do not split well, so parallel streams over this map
+ * gain less than over a MyHashMap.
+ */
+public class MyLinkedHashMap<K, V> extends MyHashMap<K, V> {
+
+    /**
+     * HashMap.Node subclass for normal MyLinkedHashMap entries.
+     */
+    static class Entry<K, V> extends MyHashMap.Node<K, V> {
+        Entry<K, V> before, after;
+
+        Entry(int hash, K key, V value, Node<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
+
+    /**
+     * The head (eldest) of the doubly linked list.
+     */
+    transient Entry<K, V> head;
+
+    /**
+     * The tail (youngest) of the doubly linked list.
+     */
+    transient Entry<K, V> tail;
+
+    /**
+     * The iteration ordering method for this linked hash map: true
+     * for access-order, false for insertion-order.
+     */
+    final boolean accessOrder;
+
+    /**
+     * Number of mappings above which the eldest entry is evicted.
+     */
+    final int maxSize;
+
+    public MyLinkedHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    public MyLinkedHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    public MyLinkedHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    public MyLinkedHashMap(int initialCapacity, float loadFactor, boolean accessOrder) {
+        this(initialCapacity, loadFactor, accessOrder, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs an empty map that evicts its eldest entry whenever a
+     * put takes it above {@code maxSize} mappings.
+     *
+     * @param accessOrder true for access-order, false for insertion-order
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public MyLinkedHashMap(int initialCapacity, float loadFactor, boolean accessOrder, int maxSize) {
+        super(initialCapacity, loadFactor);
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        this.accessOrder = accessOrder;
+        this.maxSize = maxSize;
+    }
+
+    public MyLinkedHashMap(Map<? extends K, ? extends V> m) {
+        this();
+        putAll(m);
+    }
+
+    /**
+     * Returns true if this map should remove its eldest entry. Invoked
+     * by put and putAll after inserting a new mapping, with the least
+     * recently inserted (or accessed, in access order) entry.
+     *
+     * The default implementation returns true once the map holds more
+     * than its maximum size. Subclasses may override it to evict on
+     * some other condition; returning true removes {@code eldest}.
+     */
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size > maxSize;
+    }
+
+    // internal utilities
+
+    // link at the end of list
+    private void linkNodeLast(Entry<K, V> p) {
+        Entry<K, V> last = tail;
+        tail = p;
+        if (last == null) {
+            head = p;
+        } else {
+            p.before = last;
+            last.after = p;
+        }
+    }
+
+    // apply src's links to dst
+    private void transferLinks(Entry<K, V> src, Entry<K, V> dst) {
+        Entry<K, V> b = dst.before = src.before;
+        Entry<K, V> a = dst.after = src.after;
+        if (b == null) {
+            head = dst;
+        } else {
+            b.after = dst;
+        }
+        if (a == null) {
+            tail = dst;
+        } else {
+            a.before = dst;
+        }
+    }
+
+    // overrides of MyHashMap hook methods
+
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> e) {
+        Entry<K, V> p = new Entry<>(hash, key, value, e);
+        linkNodeLast(p);
+        return p;
+    }
+
+    @Override
+    Node<K, V> replacementNode(Node<K, V> p, Node<K, V> next) {
+        Entry<K, V> q = (Entry<K, V>) p;
+        Entry<K, V> t = new Entry<>(q.hash, q.key, q.value, next);
+        transferLinks(q, t);
+        return t;
+    }
+
+    @Override
+    TreeNode<K, V> newTreeNode(int hash, K key, V value, Node<K, V> next) {
+        TreeNode<K, V> p = new TreeNode<>(hash, key, value, next);
+        linkNodeLast(p);
+        return p;
+    }
+
+    @Override
+    TreeNode<K, V> replacementTreeNode(Node<K, V> p, Node<K, V> next) {
+        Entry<K, V> q = (Entry<K, V>) p;
+        TreeNode<K, V> t = new TreeNode<>(q.hash, q.key, q.value, next);
+        transferLinks(q, t);
+        return t;
+    }
+
+    @Override
+    void afterNodeRemoval(Node<K, V> e) { // unlink
+        Entry<K, V> p = (Entry<K, V>) e, b = p.before, a = p.after;
+        p.before = p.after = null;
+        if (b == null) {
+            head = a;
+        } else {
+            b.after = a;
+        }
+        if (a == null) {
+            tail = b;
+        } else {
+            a.before = b;
+        }
+    }
+
+    @Override
+    void afterNodeInsertion(boolean evict) { // possibly remove eldest
+        Entry<K, V> first;
+        if (evict && (first = head) != null && removeEldestEntry(first)) {
+            removeNode(first.hash, first.key);
+        }
+    }
+
+    @Override
+    void afterNodeAccess(Node<K, V> e) { // move node to last
+        Entry<K, V> last;
+        if (accessOrder && (last = tail) != e) {
+            Entry<K, V> p = (Entry<K, V>) e, b = p.before, a = p.after;
+            p.after = null;
+            if (b == null) {
+                head = a;
+            } else {
+                b.after = a;
+            }
+            // p is not the tail, so a != null
+            a.before = b;
+            p.before = last;
+            last.after = p;
+            tail = p;
+            ++modCount;
+        }
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Entry<K, V> e = head; e != null; e = e.after) {
+            V v = e.value;
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null
+     * if this map contains no mapping for the key. In access order the
+     * entry becomes the most recently used.
+     */
+    @Override
+    public V get(Object key) {
+        Node<K, V> e;
+        int hash = hashOf(key);
+        if ((e = (stats == null) ? getNode(hash, key) : getNodeRecorded(hash, key)) == null)
+            return null;
+        afterNodeAccess(e);
+        return e.value;
+    }
+
+    /**
+     * As MyHashMap.getAll, but looks the keys up one by one so that an
+     * access-ordered map sees the accesses in order.
+     */
+    @Override
+    public int getAll(Object[] keys, V[] values) {
+        int n = keys.length, found = 0;
+        if (values.length < n)
+            throw new IllegalArgumentException("values.length < keys.length");
+        for (int i = 0; i < n; i++) {
+            Node<K, V> e = getNode(hashOf(keys[i]), keys[i]);
+            if (e != null) {
+                afterNodeAccess(e);
+                values[i] = e.value;
+                found++;
+            } else {
+                values[i] = null;
+            }
+        }
+        if (stats != null) {
+            stats.recordBatch(found, n - found);
+        }
+        return found;
+    }
+
+    /**
+     * As MyHashMap.putAll, but puts the mappings one by one, so that
+     * the order of the list and any evictions are those of the batch.
+     */
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        int n = keys.length;
+        if (values.length < n)
+            throw new IllegalArgumentException("values.length < keys.length");
+        for (int i = 0; i < n; i++) {
+            putVal(hashOf(keys[i]), keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        head = tail = null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        for (Entry<K, V> e = head; e != null; e = e.after) {
+            action.accept(e.key, e.value);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map, in
+     * list order.
+     */
+    @Override
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new LinkedKeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class LinkedKeySet extends AbstractSet<K> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyLinkedHashMap.this.clear();
+        }
+
+        public final Iterator<K> iterator() {
+            return new LinkedKeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            return removeNode(hashOf(key), key) != null;
+        }
+
+        public final Spliterator<K> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED | Spliterator.ORDERED | Spliterator.DISTINCT);
+        }
+
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (Entry<K, V> e = head; e != null; e = e.after) {
+                action.accept(e.key);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map, in list order.
+     */
+    @Override
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new LinkedValues();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class LinkedValues extends AbstractCollection<V> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyLinkedHashMap.this.clear();
+        }
+
+        public final Iterator<V> iterator() {
+            return new LinkedValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final Spliterator<V> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED | Spliterator.ORDERED);
+        }
+
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (Entry<K, V> e = head; e != null; e = e.after) {
+                action.accept(e.value);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map,
+     * in list order.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            es = new LinkedEntrySet();
+            entrySet = es;
+        }
+        return es;
+    }
+
+    final class LinkedEntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            MyLinkedHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<K, V>> iterator() {
+            return new LinkedEntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Node<K, V> candidate = getNode(hashOf(key), key);
+            return candidate != null && candidate.equals(e);
+        }
+
+        public final boolean remove(Object o) {
+            if (contains(o)) {
+                Object key = ((Map.Entry<?, ?>) o).getKey();
+                return removeNode(hashOf(key), key) != null;
+            }
+            return false;
+        }
+
+        public final Spliterator<Map.Entry<K, V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED | Spliterator.ORDERED | Spliterator.DISTINCT);
+        }
+
+        public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            for (Entry<K, V> e = head; e != null; e = e.after) {
+                action.accept(e);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    // Iterators
+
+    abstract class LinkedHashIterator {
+        Entry<K, V> next;
+        Entry<K, V> current;
+        int expectedModCount;
+
+        LinkedHashIterator() {
+            next = head;
+            expectedModCount = modCount;
+            current = null;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final Entry<K, V> nextNode() {
+            Entry<K, V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            current = e;
+            next = e.after;
+            return e;
+        }
+
+        public final void remove() {
+            Node<K, V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            removeNode(p.hash, p.key, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class LinkedKeyIterator extends LinkedHashIterator implements Iterator<K> {
+        public final K next() {
+            return nextNode().getKey();
+        }
+    }
+
+    final class LinkedValueIterator extends LinkedHashIterator implements Iterator<V> {
+        public final V next() {
+            return nextNode().value;
+        }
+    }
+
+    final class LinkedEntryIterator extends LinkedHashIterator implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+}
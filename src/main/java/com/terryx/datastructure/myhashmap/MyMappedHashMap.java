@@ -0,0 +1,971 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent hash map kept in two memory-mapped files, so that opening
+ * an existing map maps the files and reads a header instead of
+ * loading anything: pages are faulted in by the OS as lookups touch
+ * them.
+ *
+ * The index file holds a header and the bucket array of a
+ * {@link MyHashMap}-style table, a power of two of longs, each the
+ * offset of the first record of its chain in the data file. The data
+ * file is an append-only log of records, each chained to the next
+ * record of its bucket:
+ * <pre>
+ *   int length | int crc | int hash | int keyLength | int valueLength |
+ *   long next | key bytes | value bytes
+ * </pre>
+ * A put appends a record and links it into the chain in place of the
+ * old one; a remove appends a tombstone (valueLength -1) and unlinks
+ * the old record. When the table grows, the index file is extended
+ * and each chain is split into a lo and a hi chain, exactly as
+ * MyHashMap.resize() splits its bins.
+ *
+ * The data file is mapped in segments of {@code segmentSize} bytes
+ * and records never straddle two segments. Keys are hashed and
+ * compared by their serialized bytes, as in {@link MyOffHeapHashMap}.
+ *
+ * Crash consistency: only the next links are updated in place, and
+ * they are derived data. The index header carries a clean flag that
+ * is cleared, and forced to disk, before the first change after
+ * opening, and set again by {@link #close()}. Opening a map that was
+ * not closed cleanly rebuilds the index by replaying the log up to the
+ * first record that is missing or fails its CRC, so the map comes
+ * back holding some prefix of the operations done on it. Everything
+ * before the last {@link #sync()} is in that prefix.
+ *
+ * Dead records and tombstones are dropped by {@link #compact()}, which
+ * put and remove call once they make up more than a segment and half
+ * of the log, but not while an iterator updates the map. It copies the
+ * live records to a new file that atomically replaces the old one.
+ *
+ * Null keys and values are not permitted. This map is not
+ * synchronized.
+ */
+public class MyMappedHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Closeable {
+
+    static final long INDEX_MAGIC = 0x4d794d6170496478L;
+    static final long DATA_MAGIC = 0x4d794d6170446174L;
+    static final int VERSION = 1;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, such that the index fits in one mapping.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 27;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The segment size used when none specified in constructor.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+    // index header
+    static final int I_MAGIC = 0, I_VERSION = 8, I_CLEAN = 12, I_CAPACITY = 16, I_SIZE = 20,
+            I_DATA_END = 24, I_GARBAGE = 32, INDEX_HEADER = 64;
+
+    // data header
+    static final int D_MAGIC = 0, D_SEGMENT_SIZE = 8, DATA_HEADER = 16;
+
+    // record header
+    static final int R_LENGTH = 0, R_CRC = 4, R_HASH = 8, R_KEY_LENGTH = 12, R_VALUE_LENGTH = 16,
+            R_NEXT = 20, RECORD_HEADER = 28;
+
+    /**
+     * Length marking the rest of a segment as unused.
+     */
+    static final int SKIP = -1;
+
+    /**
+     * Value length of a tombstone record.
+     */
+    static final int TOMBSTONE = -1;
+
+    /**
+     * Source of bulk writes when zeroing the data file.
+     */
+    private static final byte[] ZEROS = new byte[8192];
+
+    final Serializer<K> keySerializer;
+    final Serializer<V> valueSerializer;
+    final Path dataPath, indexPath;
+
+    FileChannel dataChannel, indexChannel;
+    MappedByteBuffer index;
+    MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    int segmentSize, segmentShift;
+
+    int capacity, size, threshold;
+
+    /**
+     * End of the log, and bytes of dead records and tombstones in it.
+     */
+    long dataEnd, garbage;
+
+    /**
+     * Whether the clean flag on disk is still set.
+     */
+    boolean clean;
+
+    /**
+     * Whether opening had to replay the log.
+     */
+    boolean recovered;
+
+    private ByteBuffer keyBuffer = ByteBuffer.allocate(64);
+    private ByteBuffer valueBuffer = ByteBuffer.allocate(64);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    /**
+     * Opens the map stored at path, and path + ".index", creating it
+     * if the data file does not exist.
+     */
+    public MyMappedHashMap(Path path, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws IOException {
+        this(path, keySerializer, valueSerializer, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize bytes per mapped data segment, a power of two
+     *                    bounding the size of a record; ignored if the
+     *                    map already exists
+     */
+    public MyMappedHashMap(Path path, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                           int segmentSize) throws IOException {
+        if (segmentSize < 1024 || (segmentSize & (segmentSize - 1)) != 0)
+            throw new IllegalArgumentException("Illegal segment size: " + segmentSize);
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+        this.dataPath = path;
+        this.indexPath = path.resolveSibling(path.getFileName() + ".index");
+        dataChannel = openChannel(dataPath);
+        indexChannel = openChannel(indexPath);
+        try {
+            open(segmentSize);
+        } catch (IOException | RuntimeException e) {
+            dataChannel.close();
+            indexChannel.close();
+            throw e;
+        }
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private void open(int newSegmentSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+        if (dataChannel.size() < DATA_HEADER) {
+            header.putLong(D_MAGIC, DATA_MAGIC).putInt(D_SEGMENT_SIZE, newSegmentSize);
+            dataChannel.write(header, 0);
+            dataChannel.force(true);
+        } else {
+            dataChannel.read(header, 0);
+            if (header.getLong(D_MAGIC) != DATA_MAGIC)
+                throw new IOException("Not a map data file: " + dataPath);
+        }
+        setSegmentSize(header.getInt(D_SEGMENT_SIZE));
+
+        ByteBuffer h = ByteBuffer.allocate(INDEX_HEADER);
+        if (indexChannel.size() >= INDEX_HEADER) {
+            indexChannel.read(h, 0);
+        }
+        long indexBytes = INDEX_HEADER + 8L * h.getInt(I_CAPACITY);
+        if (h.getLong(I_MAGIC) == INDEX_MAGIC && h.getInt(I_VERSION) == VERSION && h.getInt(I_CLEAN) == 1
+                && indexChannel.size() >= indexBytes && h.getLong(I_DATA_END) <= dataChannel.size()) {
+            capacity = h.getInt(I_CAPACITY);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+            size = h.getInt(I_SIZE);
+            dataEnd = h.getLong(I_DATA_END);
+            garbage = h.getLong(I_GARBAGE);
+            threshold = thresholdFor(capacity);
+            clean = true;
+        } else {
+            recover();
+            recovered = true;
+        }
+    }
+
+    private void setSegmentSize(int segmentSize) throws IOException {
+        if (segmentSize < 1024 || (segmentSize & (segmentSize - 1)) != 0)
+            throw new IOException("Corrupt map data file: " + dataPath);
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+    }
+
+    private static int thresholdFor(int capacity) {
+        return capacity >= MAXIMUM_CAPACITY ? Integer.MAX_VALUE : (int) (capacity * LOAD_FACTOR);
+    }
+
+    /* ---------------- Files -------------- */
+
+    /**
+     * Returns the segment holding the given data file offset, mapping
+     * it (and growing the file) if needed.
+     */
+    private MappedByteBuffer segment(long offset) {
+        int i = (int) (offset >>> segmentShift);
+        if (i >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(i + 1, segments.length * 2));
+        }
+        MappedByteBuffer s = segments[i];
+        if (s == null) {
+            try {
+                s = segments[i] = dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) i << segmentShift,
+                        segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return s;
+    }
+
+    /*
+     * A mapping is otherwise only released when its buffer is
+     * collected, and until then its file cannot be truncated or
+     * replaced on some platforms, while on others access through it
+     * faults once the file shrinks. UNMAP is Unsafe.invokeCleaner on
+     * JDK 9 and later, with UNSAFE its receiver, or DirectBuffer.cleaner
+     * on JDK 8; null if neither is accessible.
+     */
+    private static final Object UNSAFE;
+    private static final Method UNMAP;
+
+    static {
+        Object unsafe = null;
+        Method unmap = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Method m = c.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            unmap = m;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                Method m = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+                m.setAccessible(true);
+                unmap = m;
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+        }
+        UNSAFE = unsafe;
+        UNMAP = unmap;
+    }
+
+    /**
+     * Releases the mapping of a buffer now, if the JDK lets us, rather
+     * than when it is collected. Neither the buffer nor any view of it
+     * may be used afterwards, so callers drop their references first.
+     */
+    static void unmap(MappedByteBuffer b) {
+        if (b == null || UNMAP == null) {
+            return;
+        }
+        try {
+            if (UNSAFE != null) {
+                UNMAP.invoke(UNSAFE, b);
+            } else {
+                Object cleaner = UNMAP.invoke(b);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // left to the garbage collector
+        }
+    }
+
+    private int at(long offset) {
+        return (int) offset & (segmentSize - 1);
+    }
+
+    /**
+     * Maps a fresh, zeroed index of the given capacity. The old index
+     * is unmapped before its file is truncated.
+     */
+    private void resetIndex(int cap) throws IOException {
+        MappedByteBuffer old = index;
+        index = null;
+        unmap(old);
+        indexChannel.truncate(0);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + 8L * cap);
+        index.putLong(I_MAGIC, INDEX_MAGIC);
+        index.putInt(I_VERSION, VERSION);
+        index.putInt(I_CLEAN, 0);
+        index.putInt(I_CAPACITY, cap);
+        capacity = cap;
+        threshold = thresholdFor(cap);
+        clean = false;
+    }
+
+    private long head(int j) {
+        return index.getLong(INDEX_HEADER + 8 * j);
+    }
+
+    private void setHead(int j, long offset) {
+        index.putLong(INDEX_HEADER + 8 * j, offset);
+    }
+
+    private long next(long e) {
+        return segment(e).getLong(at(e) + R_NEXT);
+    }
+
+    private void setNext(long e, long next) {
+        segment(e).putLong(at(e) + R_NEXT, next);
+    }
+
+    private int length(long e) {
+        return segment(e).getInt(at(e) + R_LENGTH);
+    }
+
+    private static ByteBuffer region(ByteBuffer b, int from, int length) {
+        ByteBuffer d = b.duplicate();
+        d.limit(from + length);
+        d.position(from);
+        return d.slice();
+    }
+
+    /**
+     * Clears the clean flag on disk before the first change.
+     */
+    private void markDirty() {
+        if (clean) {
+            index.putInt(I_CLEAN, 0);
+            index.force();
+            clean = false;
+        }
+    }
+
+    private void writeHeader() {
+        index.putInt(I_CAPACITY, capacity);
+        index.putInt(I_SIZE, size);
+        index.putLong(I_DATA_END, dataEnd);
+        index.putLong(I_GARBAGE, garbage);
+    }
+
+    /* ---------------- Records -------------- */
+
+    @SuppressWarnings("unchecked")
+    private ByteBuffer serializeKey(Object key) {
+        for (; ; ) {
+            ByteBuffer b = keyBuffer;
+            b.clear();
+            try {
+                keySerializer.write((K) Objects.requireNonNull(key), b);
+                b.flip();
+                return b;
+            } catch (BufferOverflowException e) {
+                keyBuffer = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.capacity() + 1));
+            }
+        }
+    }
+
+    private ByteBuffer serializeValue(V value) {
+        for (; ; ) {
+            ByteBuffer b = valueBuffer;
+            b.clear();
+            try {
+                valueSerializer.write(Objects.requireNonNull(value), b);
+                b.flip();
+                return b;
+            } catch (BufferOverflowException e) {
+                valueBuffer = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.capacity() + 1));
+            }
+        }
+    }
+
+    /**
+     * CRC of a record, over everything but its length, crc and next
+     * fields.
+     */
+    private int crcOf(ByteBuffer s, int a, int length) {
+        crc.reset();
+        crc.update(region(s, a + R_HASH, R_NEXT - R_HASH));
+        crc.update(region(s, a + RECORD_HEADER, length - RECORD_HEADER));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends a record, a tombstone if value is null, and returns its
+     * offset. The length is written last.
+     */
+    private long append(int hash, ByteBuffer key, ByteBuffer value) {
+        long length = (long) RECORD_HEADER + key.remaining() + (value == null ? 0 : value.remaining());
+        if (length > segmentSize)
+            throw new IllegalArgumentException("Record of " + length + " bytes exceeds segment size " + segmentSize);
+        long pos = dataEnd;
+        int left = segmentSize - at(pos);
+        if (left < length) {
+            if (left >= 4) {
+                segment(pos).putInt(at(pos), SKIP);
+            }
+            pos += left;
+        }
+        MappedByteBuffer s = segment(pos);
+        int a = at(pos);
+        s.putInt(a + R_HASH, hash);
+        s.putInt(a + R_KEY_LENGTH, key.remaining());
+        s.putInt(a + R_VALUE_LENGTH, value == null ? TOMBSTONE : value.remaining());
+        s.putLong(a + R_NEXT, 0L);
+        ByteBuffer d = s.duplicate();
+        d.position(a + RECORD_HEADER);
+        d.put(key);
+        key.rewind();
+        if (value != null) {
+            d.put(value);
+            value.rewind();
+        }
+        s.putInt(a + R_CRC, crcOf(s, a, (int) length));
+        s.putInt(a + R_LENGTH, (int) length);
+        dataEnd = pos + length;
+        return pos;
+    }
+
+    /**
+     * Returns whether the key of record e equals the key bytes.
+     */
+    private boolean keyEquals(long e, ByteBuffer key) {
+        MappedByteBuffer s = segment(e);
+        int a = at(e), length = key.remaining();
+        if (s.getInt(a + R_KEY_LENGTH) != length) {
+            return false;
+        }
+        int from = a + RECORD_HEADER, i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (s.getLong(from + i) != key.getLong(i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (s.get(from + i) != key.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private K readKey(long e) {
+        MappedByteBuffer s = segment(e);
+        int a = at(e);
+        return keySerializer.read(region(s, a + RECORD_HEADER, s.getInt(a + R_KEY_LENGTH)));
+    }
+
+    private V readValue(long e) {
+        MappedByteBuffer s = segment(e);
+        int a = at(e), keyLength = s.getInt(a + R_KEY_LENGTH);
+        return valueSerializer.read(region(s, a + RECORD_HEADER + keyLength, s.getInt(a + R_VALUE_LENGTH)));
+    }
+
+    /* ---------------- Chains -------------- */
+
+    /**
+     * Returns the offset of the record holding the key, or 0.
+     */
+    private long find(int hash, ByteBuffer key) {
+        for (long e = head(hash & (capacity - 1)); e != 0; e = next(e)) {
+            if (segment(e).getInt(at(e) + R_HASH) == hash && keyEquals(e, key)) {
+                return e;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Puts record r in the place of record e in bucket j, or unlinks e
+     * if r is 0.
+     */
+    private void replace(int j, long e, long r) {
+        long next = next(e);
+        if (r != 0) {
+            setNext(r, next);
+        } else {
+            r = next;
+        }
+        long p = head(j);
+        if (p == e) {
+            setHead(j, r);
+        } else {
+            long q;
+            while ((q = next(p)) != e) {
+                p = q;
+            }
+            setNext(p, r);
+        }
+    }
+
+    private void link(int j, long r) {
+        setNext(r, head(j));
+        setHead(j, r);
+    }
+
+    /**
+     * Doubles the table, growing the index file in place and splitting
+     * every chain into lo and hi chains as MyHashMap.resize() does.
+     */
+    private void resize() {
+        int oldCap = capacity;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        try {
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + 8L * newCap);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int j = 0; j < oldCap; j++) {
+            long loHead = 0, loTail = 0, hiHead = 0, hiTail = 0, next;
+            for (long e = head(j); e != 0; e = next) {
+                next = next(e);
+                if ((segment(e).getInt(at(e) + R_HASH) & oldCap) == 0) {
+                    if (loTail == 0) {
+                        loHead = e;
+                    } else {
+                        setNext(loTail, e);
+                    }
+                    loTail = e;
+                } else {
+                    if (hiTail == 0) {
+                        hiHead = e;
+                    } else {
+                        setNext(hiTail, e);
+                    }
+                    hiTail = e;
+                }
+            }
+            if (loTail != 0) {
+                setNext(loTail, 0);
+            }
+            if (hiTail != 0) {
+                setNext(hiTail, 0);
+            }
+            setHead(j, loHead);
+            setHead(j + oldCap, hiHead);
+        }
+        capacity = newCap;
+        threshold = thresholdFor(newCap);
+        index.putInt(I_CAPACITY, newCap);
+        modCount++;
+    }
+
+    /**
+     * Rebuilds the index by replaying the log from the start, stopping
+     * at the first record that is missing or fails its CRC, and zeroes
+     * whatever follows it.
+     */
+    private void recover() throws IOException {
+        resetIndex(DEFAULT_INITIAL_CAPACITY);
+        size = 0;
+        garbage = 0;
+        long fileSize = dataChannel.size();
+        long pos = DATA_HEADER;
+        while (pos + RECORD_HEADER <= fileSize) {
+            int left = segmentSize - at(pos);
+            if (left < RECORD_HEADER) {
+                pos += left;
+                continue;
+            }
+            MappedByteBuffer s = segment(pos);
+            int a = at(pos), length = s.getInt(a + R_LENGTH);
+            if (length == SKIP) {
+                pos += left;
+                continue;
+            }
+            int keyLength = s.getInt(a + R_KEY_LENGTH), valueLength = s.getInt(a + R_VALUE_LENGTH);
+            if (length < RECORD_HEADER || length > left || keyLength < 0 || valueLength < TOMBSTONE
+                    || length != RECORD_HEADER + keyLength + Math.max(valueLength, 0)
+                    || s.getInt(a + R_CRC) != crcOf(s, a, length)) {
+                break;
+            }
+            int hash = s.getInt(a + R_HASH), j = hash & (capacity - 1);
+            long e = find(hash, region(s, a + RECORD_HEADER, keyLength));
+            if (e != 0) {
+                garbage += length(e);
+                if (valueLength == TOMBSTONE) {
+                    replace(j, e, 0);
+                    size--;
+                } else {
+                    replace(j, e, pos);
+                }
+            } else if (valueLength != TOMBSTONE) {
+                link(j, pos);
+                if (++size > threshold) {
+                    resize();
+                }
+            }
+            if (valueLength == TOMBSTONE) {
+                garbage += length;
+            }
+            pos += length;
+        }
+        dataEnd = pos;
+        // a later record could have reached the disk before a lost one;
+        // make sure it can never be replayed after new appends
+        zero(pos, fileSize);
+        writeHeader();
+    }
+
+    /**
+     * Zeroes the data file in [from, to), with bulk puts into each
+     * segment it spans.
+     */
+    private void zero(long from, long to) {
+        while (from < to) {
+            int a = at(from), n = (int) Math.min(segmentSize - a, to - from);
+            ByteBuffer d = segment(from).duplicate();
+            d.position(a);
+            for (int left = n; left > 0; left -= ZEROS.length) {
+                d.put(ZEROS, 0, Math.min(left, ZEROS.length));
+            }
+            from += n;
+        }
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    @Override
+    public V get(Object key) {
+        ByteBuffer k = serializeKey(key);
+        long e = find(MyOffHeapHashMap.hash(k), k);
+        return e == 0 ? null : readValue(e);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        ByteBuffer k = serializeKey(key);
+        return find(MyOffHeapHashMap.hash(k), k) != 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * Implements put, compacting only if allowed to, since compaction
+     * moves every record and so invalidates iterators.
+     */
+    V putVal(K key, V value, boolean mayCompact) {
+        ByteBuffer k = serializeKey(key);
+        ByteBuffer v = serializeValue(value);
+        int hash = MyOffHeapHashMap.hash(k), j = hash & (capacity - 1);
+        markDirty();
+        long e = find(hash, k);
+        if (e != 0) {
+            V oldValue = readValue(e);
+            long r = append(hash, k, v);
+            garbage += length(e);
+            // in place, so that iterators are not disturbed
+            replace(j, e, r);
+            if (mayCompact) {
+                compactIfWasteful();
+            }
+            return oldValue;
+        }
+        link(j, append(hash, k, v));
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+        if (mayCompact) {
+            compactIfWasteful();
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return removeKey(key, true);
+    }
+
+    /**
+     * Implements remove, compacting only if allowed to, as putVal.
+     */
+    V removeKey(Object key, boolean mayCompact) {
+        ByteBuffer k = serializeKey(key);
+        int hash = MyOffHeapHashMap.hash(k);
+        long e = find(hash, k);
+        if (e == 0) {
+            return null;
+        }
+        markDirty();
+        V oldValue = readValue(e);
+        long t = append(hash, k, null);
+        garbage += length(e) + length(t);
+        replace(hash & (capacity - 1), e, 0);
+        modCount++;
+        size--;
+        if (mayCompact) {
+            compactIfWasteful();
+        }
+        return oldValue;
+    }
+
+    /**
+     * Compacts the log if more than a segment and half of it is dead
+     * records and tombstones.
+     */
+    private void compactIfWasteful() {
+        if (garbage > segmentSize && garbage > (dataEnd >>> 1)) {
+            compact();
+        }
+    }
+
+    @Override
+    public void clear() {
+        rewrite(false);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Rewrites the data file with only the live records, dropping
+     * replaced values and tombstones.
+     */
+    public void compact() {
+        rewrite(true);
+    }
+
+    private void rewrite(boolean keepLive) {
+        markDirty();
+        Path tmp = dataPath.resolveSibling(dataPath.getFileName() + ".compact");
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+                header.putLong(D_MAGIC, DATA_MAGIC).putInt(D_SEGMENT_SIZE, segmentSize);
+                out.write(header, 0);
+                long pos = DATA_HEADER;
+                for (int j = 0; keepLive && j < capacity; j++) {
+                    for (long e = head(j); e != 0; e = next(e)) {
+                        int length = length(e), left = segmentSize - at(pos);
+                        if (left < length) {
+                            if (left >= 4) {
+                                ByteBuffer skip = ByteBuffer.allocate(4).putInt(0, SKIP);
+                                out.write(skip, pos);
+                            }
+                            pos += left;
+                        }
+                        ByteBuffer record = region(segment(e), at(e), length);
+                        while (record.hasRemaining()) {
+                            pos += out.write(record, pos);
+                        }
+                    }
+                }
+                out.force(true);
+            }
+            // the data file must be neither mapped nor open when replaced
+            MappedByteBuffer[] old = segments;
+            segments = new MappedByteBuffer[0];
+            for (MappedByteBuffer s : old) {
+                unmap(s);
+            }
+            dataChannel.close();
+            try {
+                Files.move(tmp, dataPath, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // the old file, if the move failed, is mapped again lazily
+                dataChannel = openChannel(dataPath);
+            }
+            recover();
+            modCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces all changes to disk. After a crash the map will hold at
+     * least the mappings as they were at this point.
+     */
+    public void sync() {
+        writeHeader();
+        for (MappedByteBuffer s : segments) {
+            if (s != null) {
+                s.force();
+            }
+        }
+        index.force();
+    }
+
+    /**
+     * Syncs the map, marks it clean so the next open is O(1), and
+     * closes the files. The map must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (index == null) {
+            return;
+        }
+        try {
+            sync();
+            index.putInt(I_CLEAN, 1);
+            index.force();
+        } finally {
+            MappedByteBuffer oldIndex = index;
+            MappedByteBuffer[] oldSegments = segments;
+            index = null;
+            segments = new MappedByteBuffer[0];
+            unmap(oldIndex);
+            for (MappedByteBuffer s : oldSegments) {
+                unmap(s);
+            }
+            dataChannel.close();
+            indexChannel.close();
+        }
+    }
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MyMappedHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MyMappedHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Detached copy of a mapping; setValue writes through with put.
+     */
+    final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            MyMappedHashMap.this.putVal(getKey(), value, false);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Walks the chains bucket by bucket. Replacing a value keeps the
+     * chain's shape, and removing the last returned record leaves the
+     * saved next offset valid.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        long next;          // next record to return, or 0
+        int bucket;         // bucket of next
+        K lastReturned;
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            bucket = -1;
+            advanceBucket();
+        }
+
+        private void advanceBucket() {
+            while (next == 0 && ++bucket < capacity) {
+                next = head(bucket);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            long e = next;
+            if (e == 0) {
+                throw new NoSuchElementException();
+            }
+            next = MyMappedHashMap.this.next(e);
+            advanceBucket();
+            lastReturned = readKey(e);
+            return new Entry(lastReturned, readValue(e));
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            MyMappedHashMap.this.removeKey(lastReturned, false);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+}
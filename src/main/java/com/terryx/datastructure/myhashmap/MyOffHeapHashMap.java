@@ -0,0 +1,662 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Hash map whose keys and values live outside the Java heap, so that
+ * the garbage collector never has to scan them. Each mapping is
+ * serialized by the {@link Serializer}s given to the constructor and
+ * appended to a slab, a direct ByteBuffer of {@code slabSize} bytes;
+ * the index of the table is itself a direct ByteBuffer. On the heap
+ * there are only the buffer objects and two scratch buffers.
+ *
+ * The index is an open addressing table of 12-byte entries: the hash
+ * of the serialized key, and a reference to the record in its slab,
+ * slab number + 1 in the high word and offset in the low word; a zero
+ * reference marks an empty slot. Collisions are resolved by linear
+ * probing with backward-shift deletion, as in {@link MyOpenHashMap}.
+ * A record is
+ * <pre>
+ *   int keyLength | int valueLength | key bytes | value bytes
+ * </pre>
+ *
+ * Keys are compared by their serialized bytes, without deserializing
+ * the stored key; the key serializer must be canonical. Records are
+ * never moved by put or remove: a value of a different length is
+ * appended as a new record, and a dead record only has its key length
+ * complemented. Once dead records make up more than a slab and half
+ * of the used bytes, put or remove copies the live ones into fresh
+ * slabs, so a map under churn holds about twice its live data.
+ *
+ * Null keys and values are not permitted. This map is not
+ * synchronized, and even reads share the scratch buffers.
+ */
+public class MyOffHeapHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, such that the index fits in one buffer.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 27;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The slab size used when none specified in constructor.
+     */
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /**
+     * Bytes per index entry: int hash, long reference.
+     */
+    static final int ENTRY_BYTES = 12;
+
+    /**
+     * Bytes of record header: int key length, int value length.
+     */
+    static final int HEADER_BYTES = 8;
+
+    final Serializer<K> keySerializer;
+    final Serializer<V> valueSerializer;
+
+    /**
+     * The index, capacity * ENTRY_BYTES bytes; allocated on first put.
+     */
+    ByteBuffer index;
+
+    int capacity;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    /**
+     * The slabs, slabs[slabCount - 1] is being filled; the position of
+     * each slab is its fill pointer.
+     */
+    ByteBuffer[] slabs = new ByteBuffer[0];
+    int slabCount;
+    final int slabSize;
+
+    /**
+     * Bytes of all records, and of the dead ones among them.
+     */
+    long usedBytes, garbageBytes;
+
+    /**
+     * Reused for serializing the argument key and value.
+     */
+    private ByteBuffer keyBuffer = ByteBuffer.allocate(64);
+    private ByteBuffer valueBuffer = ByteBuffer.allocate(64);
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    public MyOffHeapHashMap(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(keySerializer, valueSerializer, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param initialCapacity number of mappings to size the index for
+     * @param slabSize        bytes per slab; larger records get a slab
+     *                        of their own
+     */
+    public MyOffHeapHashMap(Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                            int initialCapacity, float loadFactor, int slabSize) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        if (slabSize <= HEADER_BYTES)
+            throw new IllegalArgumentException("Illegal slab size: " + slabSize);
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+        this.loadFactor = loadFactor;
+        this.slabSize = slabSize;
+        this.capacity = MyOpenHashMap.capacityFor(initialCapacity, loadFactor);
+        if (capacity > MAXIMUM_CAPACITY) {
+            capacity = MAXIMUM_CAPACITY;
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    @SuppressWarnings("unchecked")
+    private ByteBuffer serializeKey(Object key) {
+        for (; ; ) {
+            ByteBuffer b = keyBuffer;
+            b.clear();
+            try {
+                keySerializer.write((K) Objects.requireNonNull(key), b);
+                b.flip();
+                return b;
+            } catch (BufferOverflowException e) {
+                keyBuffer = ByteBuffer.allocate(grow(b.capacity()));
+            }
+        }
+    }
+
+    private ByteBuffer serializeValue(V value) {
+        for (; ; ) {
+            ByteBuffer b = valueBuffer;
+            b.clear();
+            try {
+                valueSerializer.write(Objects.requireNonNull(value), b);
+                b.flip();
+                return b;
+            } catch (BufferOverflowException e) {
+                valueBuffer = ByteBuffer.allocate(grow(b.capacity()));
+            }
+        }
+    }
+
+    private static int grow(int capacity) {
+        if (capacity >= Integer.MAX_VALUE / 2)
+            throw new OutOfMemoryError("Serialized form too large");
+        return capacity * 2;
+    }
+
+    /**
+     * murmur3_32 of the buffer's remaining bytes.
+     */
+    static int hash(ByteBuffer b) {
+        int h = 0, i = b.position(), end = b.limit();
+        for (; i + 4 <= end; i += 4) {
+            h ^= mixK(b.getInt(i));
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            k |= (b.get(i) & 0xff) << shift;
+        }
+        h ^= mixK(k);
+        h ^= end - b.position();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+
+    /* ---------------- Records -------------- */
+
+    private ByteBuffer slab(long ref) {
+        return slabs[(int) (ref >>> 32) - 1];
+    }
+
+    /**
+     * Returns whether the key of the record is equal to the remaining
+     * bytes of key, compared a long at a time.
+     */
+    private boolean keyEquals(long ref, ByteBuffer key) {
+        ByteBuffer slab = slab(ref);
+        int off = (int) ref, length = key.remaining();
+        if (slab.getInt(off) != length) {
+            return false;
+        }
+        int from = off + HEADER_BYTES, i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (slab.getLong(from + i) != key.getLong(i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (slab.get(from + i) != key.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a buffer over bytes [from, from + length) of the slab.
+     */
+    private static ByteBuffer region(ByteBuffer slab, int from, int length) {
+        ByteBuffer b = slab.duplicate();
+        b.limit(from + length);
+        b.position(from);
+        return b.slice();
+    }
+
+    private K readKey(long ref) {
+        ByteBuffer slab = slab(ref);
+        int off = (int) ref;
+        return keySerializer.read(region(slab, off + HEADER_BYTES, slab.getInt(off)));
+    }
+
+    private V readValue(long ref) {
+        ByteBuffer slab = slab(ref);
+        int off = (int) ref, keyLength = slab.getInt(off);
+        return valueSerializer.read(region(slab, off + HEADER_BYTES + keyLength, slab.getInt(off + 4)));
+    }
+
+    /**
+     * Appends a record and returns its reference.
+     */
+    private long append(ByteBuffer key, ByteBuffer value) {
+        int length = HEADER_BYTES + key.remaining() + value.remaining();
+        if (length < 0)
+            throw new OutOfMemoryError("Record too large");
+        ByteBuffer slab = (slabCount == 0) ? null : slabs[slabCount - 1];
+        if (slab == null || slab.remaining() < length) {
+            slab = newSlab(Math.max(slabSize, length));
+        }
+        int off = slab.position();
+        slab.putInt(key.remaining());
+        slab.putInt(value.remaining());
+        slab.put(key);
+        slab.put(value);
+        key.rewind();
+        value.rewind();
+        usedBytes += length;
+        return ((long) slabCount << 32) | off;
+    }
+
+    private ByteBuffer newSlab(int bytes) {
+        if (slabCount == slabs.length) {
+            slabs = Arrays.copyOf(slabs, Math.max(4, slabCount * 2));
+        }
+        ByteBuffer slab = ByteBuffer.allocateDirect(bytes);
+        slabs[slabCount++] = slab;
+        return slab;
+    }
+
+    /**
+     * Marks a record dead.
+     */
+    private void kill(long ref) {
+        ByteBuffer slab = slab(ref);
+        int off = (int) ref, keyLength = slab.getInt(off);
+        slab.putInt(off, ~keyLength);
+        garbageBytes += HEADER_BYTES + keyLength + slab.getInt(off + 4);
+    }
+
+    /**
+     * Compacts the slabs if more than a slab and half of the used
+     * bytes are dead. Compaction only rewrites the references in the
+     * index, not the slots, so it is safe during iteration.
+     */
+    private void compactIfWasteful() {
+        if (garbageBytes > slabSize && garbageBytes > usedBytes / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the live records into new slabs, freeing the old ones to
+     * the garbage collector, which releases their memory.
+     */
+    private void compact() {
+        ByteBuffer[] oldSlabs = slabs;
+        slabs = new ByteBuffer[0];
+        slabCount = 0;
+        usedBytes = garbageBytes = 0;
+        for (int i = 0; i < capacity; i++) {
+            int p = i * ENTRY_BYTES;
+            long ref = index.getLong(p + 4);
+            if (ref != 0) {
+                ByteBuffer slab = oldSlabs[(int) (ref >>> 32) - 1];
+                int off = (int) ref;
+                int length = HEADER_BYTES + slab.getInt(off) + slab.getInt(off + 4);
+                ByteBuffer to = (slabCount == 0) ? null : slabs[slabCount - 1];
+                if (to == null || to.remaining() < length) {
+                    to = newSlab(Math.max(slabSize, length));
+                }
+                index.putLong(p + 4, ((long) slabCount << 32) | to.position());
+                to.put(region(slab, off, length));
+                usedBytes += length;
+            }
+        }
+    }
+
+    /* ---------------- Index -------------- */
+
+    /**
+     * Returns the slot holding the key, or -1 - the empty slot where it
+     * would be inserted.
+     */
+    private int find(int hash, ByteBuffer key) {
+        ByteBuffer idx = index;
+        int mask = capacity - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int p = i * ENTRY_BYTES;
+            long ref = idx.getLong(p + 4);
+            if (ref == 0) {
+                return -1 - i;
+            }
+            if (idx.getInt(p) == hash && keyEquals(ref, key)) {
+                return i;
+            }
+        }
+    }
+
+    private int findKey(Object key) {
+        ByteBuffer k = serializeKey(key);
+        return (index == null) ? -1 : find(hash(k), k);
+    }
+
+    private void resize() {
+        ByteBuffer oldIndex = index;
+        int oldCap = capacity;
+        if (oldIndex != null) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                if (size >= MAXIMUM_CAPACITY - 1)
+                    throw new IllegalStateException("Capacity exceeded");
+                threshold = MAXIMUM_CAPACITY - 1;
+                return;
+            }
+            capacity = oldCap << 1;
+        }
+        threshold = (int) Math.min(capacity * (double) loadFactor, capacity - 1);
+        ByteBuffer idx = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES);
+        int mask = capacity - 1;
+        for (int j = 0; oldIndex != null && j < oldCap; j++) {
+            int p = j * ENTRY_BYTES;
+            long ref = oldIndex.getLong(p + 4);
+            if (ref != 0) {
+                int hash = oldIndex.getInt(p), i = hash & mask;
+                while (idx.getLong(i * ENTRY_BYTES + 4) != 0) {
+                    i = (i + 1) & mask;
+                }
+                idx.putInt(i * ENTRY_BYTES, hash);
+                idx.putLong(i * ENTRY_BYTES + 4, ref);
+            }
+        }
+        index = idx;
+    }
+
+    /**
+     * Empties slot i and shifts the following entries of its run back.
+     *
+     * @return true if an entry was moved into slot i
+     */
+    boolean removeAt(int i) {
+        ByteBuffer idx = index;
+        kill(idx.getLong(i * ENTRY_BYTES + 4));
+        int mask = capacity - 1, hole = i;
+        boolean refilled = false;
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            long ref = idx.getLong(j * ENTRY_BYTES + 4);
+            if (ref == 0) {
+                break;
+            }
+            int hash = idx.getInt(j * ENTRY_BYTES);
+            // entry at j may move back to hole if its home is not in (hole, j]
+            if (((j - (hash & mask)) & mask) >= ((j - hole) & mask)) {
+                idx.putInt(hole * ENTRY_BYTES, hash);
+                idx.putLong(hole * ENTRY_BYTES + 4, ref);
+                refilled |= hole == i;
+                hole = j;
+            }
+        }
+        idx.putInt(hole * ENTRY_BYTES, 0);
+        idx.putLong(hole * ENTRY_BYTES + 4, 0L);
+        modCount++;
+        --size;
+        compactIfWasteful();
+        return refilled;
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    @Override
+    public V get(Object key) {
+        int i = findKey(key);
+        return i < 0 ? null : readValue(index.getLong(i * ENTRY_BYTES + 4));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findKey(key) >= 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        ByteBuffer k = serializeKey(key);
+        ByteBuffer v = serializeValue(value);
+        int hash = hash(k);
+        if (index == null) {
+            resize();
+        }
+        int i = find(hash, k);
+        if (i >= 0) {
+            int p = i * ENTRY_BYTES;
+            long ref = index.getLong(p + 4);
+            V oldValue = readValue(ref);
+            ByteBuffer slab = slab(ref);
+            int off = (int) ref;
+            if (slab.getInt(off + 4) == v.remaining()) {
+                // same length, overwrite in place
+                ByteBuffer to = slab.duplicate();
+                to.position(off + HEADER_BYTES + slab.getInt(off));
+                to.put(v);
+            } else {
+                kill(ref);
+                index.putLong(p + 4, append(k, v));
+                compactIfWasteful();
+            }
+            return oldValue;
+        }
+        i = -1 - i;
+        index.putInt(i * ENTRY_BYTES, hash);
+        index.putLong(i * ENTRY_BYTES + 4, append(k, v));
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+        compactIfWasteful();
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = findKey(key);
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = readValue(index.getLong(i * ENTRY_BYTES + 4));
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Removes all of the mappings and drops the slabs; the index keeps
+     * its capacity.
+     */
+    @Override
+    public void clear() {
+        if (index != null) {
+            for (int p = 0; p < capacity * ENTRY_BYTES; p += 4) {
+                index.putInt(p, 0);
+            }
+        }
+        slabs = new ByteBuffer[0];
+        slabCount = 0;
+        usedBytes = garbageBytes = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory held by this map,
+     * index and slabs.
+     */
+    public long offHeapBytes() {
+        long bytes = (index == null) ? 0 : index.capacity();
+        for (int i = 0; i < slabCount; i++) {
+            bytes += slabs[i].capacity();
+        }
+        return bytes;
+    }
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MyOffHeapHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int i = findKey(e.getKey());
+            return i >= 0 && Objects.equals(readValue(index.getLong(i * ENTRY_BYTES + 4)), e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MyOffHeapHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Detached copy of a mapping; setValue writes through with put.
+     */
+    final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            MyOffHeapHashMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Iterates the index circularly from just after an empty slot, as
+     * MyOpenHashMap.EntryIterator does, deserializing each mapping.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final int start;
+        int position;          // number of slots passed, in [0, capacity]
+        int lastReturned = -1; // slot of last returned entry, or -1
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            int i = 0;
+            if (index == null) {
+                position = capacity;
+            } else {
+                while (ref(i) != 0) {
+                    i++;
+                }
+            }
+            start = i;
+            advance();
+        }
+
+        private long ref(int i) {
+            return index.getLong(i * ENTRY_BYTES + 4);
+        }
+
+        private int slot(int pos) {
+            return (start + 1 + pos) & (capacity - 1);
+        }
+
+        private void advance() {
+            while (position < capacity && ref(slot(position)) == 0) {
+                position++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < capacity;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (position >= capacity) {
+                throw new NoSuchElementException();
+            }
+            int i = slot(position++);
+            lastReturned = i;
+            advance();
+            long ref = ref(i);
+            return new Entry(readKey(ref), readValue(ref));
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (removeAt(lastReturned)) {
+                // an unvisited entry was shifted into the removed slot
+                position = (lastReturned - start - 1) & (capacity - 1);
+            }
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
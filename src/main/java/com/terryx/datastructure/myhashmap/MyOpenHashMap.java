@@ -0,0 +1,507 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.*;
+
+/**
+ * Open addressing variant of {@link MyHashMap}. Instead of one Node
+ * object per mapping, hashes, keys and values are kept in three
+ * parallel arrays and collisions are resolved by linear probing, so a
+ * lookup reads neighbouring slots rather than chasing next pointers.
+ *
+ * Removal uses backward-shift deletion: the entries following the
+ * removed slot in its probe run are moved back to fill the hole, so
+ * the table never holds tombstones and a miss always stops at the
+ * first empty slot.
+ *
+ * In Robin Hood mode an insert takes over any slot whose resident is
+ * closer to its home than the new entry is, and moves the resident
+ * on instead. Entries along a run then stay ordered by home slot, so
+ * a lookup can stop as soon as it has probed further
+ * than the resident of the current slot is displaced: the key would
+ * have claimed that slot. This keeps probe lengths short and even at
+ * high load, which is why the mode defaults to a 0.9 load factor.
+ */
+public class MyOpenHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The load factor used in Robin Hood mode when none specified.
+     */
+    static final float DEFAULT_ROBIN_HOOD_LOAD_FACTOR = 0.9f;
+
+    /**
+     * Value representing null keys inside tables, an empty slot is a
+     * slot whose key is null.
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * Spread hash (as computed by {@link MyHashMap#hash}) of the key
+     * in each slot, so probes can skip equals() on mismatching hashes
+     * and entries can be moved without calling hashCode() again.
+     */
+    int[] hashes;
+
+    /**
+     * Keys, masked with NULL_KEY; null marks an empty slot.
+     */
+    Object[] keys;
+
+    /**
+     * Values, parallel to keys.
+     */
+    Object[] values;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    /**
+     * The load factor for the table.
+     */
+    final float loadFactor;
+
+    /**
+     * Whether entries are placed by Robin Hood displacement. A slot's
+     * displacement is not stored, it is recomputed from its hash.
+     */
+    final boolean robinHood;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    int modCount;
+
+    public MyOpenHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    public MyOpenHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    /**
+     * Constructs an empty map using the given probing mode and its
+     * default load factor.
+     *
+     * @param robinHood true to use Robin Hood placement
+     */
+    public MyOpenHashMap(boolean robinHood) {
+        this(DEFAULT_INITIAL_CAPACITY, robinHood ? DEFAULT_ROBIN_HOOD_LOAD_FACTOR : DEFAULT_LOAD_FACTOR, robinHood);
+    }
+
+    public MyOpenHashMap(int expectedSize, float loadFactor) {
+        this(expectedSize, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty map able to hold {@code expectedSize}
+     * mappings without resizing.
+     *
+     * @param expectedSize the expected number of mappings
+     * @param loadFactor   the load factor, in (0, 1)
+     * @param robinHood    true to use Robin Hood placement
+     * @throws IllegalArgumentException if the size is negative or the
+     *                                  load factor is out of range
+     */
+    public MyOpenHashMap(int expectedSize, float loadFactor, boolean robinHood) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expectedSize);
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        this.robinHood = robinHood;
+        allocate(capacityFor(expectedSize, loadFactor));
+    }
+
+    /**
+     * Returns the table length needed to hold the given number of
+     * mappings below the load factor; always at least 2 so there is
+     * an empty slot to end every probe.
+     */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        long cap = (long) (expectedSize / (double) loadFactor) + 1;
+        return cap >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : Math.max(2, MyHashMap.tableSizeFor((int) cap));
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        threshold = (capacity == MAXIMUM_CAPACITY) ? capacity - 1 : (int) (capacity * loadFactor);
+    }
+
+    static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+
+    /**
+     * Maps a spread hash to its home slot. MyHashMap.hash() leaves
+     * regular patterns (e.g. multiples of the table length) intact,
+     * which is tolerable with chaining but builds long runs under
+     * linear probing, so the hash is scrambled once more with a
+     * golden-ratio multiply before masking.
+     */
+    static int home(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the slot holding the (masked) key, or -1 if none.
+     */
+    int findSlot(int hash, Object k) {
+        int[] hs = hashes;
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = home(hash, mask), dist = 0; ; i = (i + 1) & mask, dist++) {
+            Object x = ks[i];
+            if (x == null) {
+                return -1;
+            }
+            if (hs[i] == hash && (x == k || k.equals(x))) {
+                return i;
+            }
+            if (robinHood && ((i - home(hs[i], mask)) & mask) < dist) {
+                // resident is richer than the key would be: the key is absent
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        Object k = maskNull(key);
+        int i = findSlot(MyHashMap.hash(key), k);
+        return i < 0 ? null : MyOpenHashMap.<V>value(values[i]);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V value(Object v) {
+        return (V) v;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findSlot(MyHashMap.hash(key), maskNull(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Object[] ks = keys, vs = values;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != null && Objects.equals(vs[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Object k = maskNull(key);
+        int hash = MyHashMap.hash(key);
+        int[] hs = hashes;
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        int i = home(hash, mask), dist = 0;
+        for (Object x; (x = ks[i]) != null; i = (i + 1) & mask, dist++) {
+            if (hs[i] == hash && (x == k || k.equals(x))) {
+                V oldValue = value(values[i]);
+                values[i] = value;
+                return oldValue;
+            }
+            if (robinHood && ((i - home(hs[i], mask)) & mask) < dist) {
+                break;
+            }
+        }
+        insert(i, dist, hash, k, value);
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Doubles the table. Entries are re-placed from their stored hash,
+     * no equals() is needed since every key is known to be distinct.
+     */
+    void resize() {
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys, oldValues = values;
+        int oldCap = oldKeys.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1) {
+                throw new IllegalStateException("Capacity exhausted.");
+            }
+            return;
+        }
+        allocate(oldCap << 1);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldCap; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int h = oldHashes[j], i = home(h, mask), dist = 0;
+                if (!robinHood) {
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                }
+                insert(i, dist, h, k, oldValues[j]);
+            }
+        }
+    }
+
+    /**
+     * Stores an entry known to be absent at slot i, reached at the given
+     * displacement from its home. In linear mode slot i is empty. In
+     * Robin Hood mode any resident from slot i on that is displaced less
+     * than the entry being placed swaps with it, and the evicted entry
+     * continues down the run until an empty slot is found.
+     */
+    private void insert(int i, int dist, int hash, Object k, Object v) {
+        int[] hs = hashes;
+        Object[] ks = keys, vs = values;
+        int mask = ks.length - 1;
+        for (; ks[i] != null; i = (i + 1) & mask, dist++) {
+            int d = (i - home(hs[i], mask)) & mask;
+            if (d < dist) {
+                int th = hs[i];
+                Object tk = ks[i], tv = vs[i];
+                hs[i] = hash;
+                ks[i] = k;
+                vs[i] = v;
+                hash = th;
+                k = tk;
+                v = tv;
+                dist = d;
+            }
+        }
+        hs[i] = hash;
+        ks[i] = k;
+        vs[i] = v;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = findSlot(MyHashMap.hash(key), maskNull(key));
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = value(values[i]);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Empties slot i and shifts the following entries of its run back
+     * so that every remaining entry is still reachable from its home
+     * slot without passing an empty slot.
+     *
+     * @return true if an entry was moved into slot i
+     */
+    boolean removeAt(int i) {
+        int[] hs = hashes;
+        Object[] ks = keys, vs = values;
+        int mask = ks.length - 1, hole = i;
+        boolean refilled = false;
+        for (int j = (i + 1) & mask; ks[j] != null; j = (j + 1) & mask) {
+            // entry at j may move back to hole if its home is not in (hole, j]
+            int dist = (j - home(hs[j], mask)) & mask;
+            if (dist >= ((j - hole) & mask)) {
+                hs[hole] = hs[j];
+                ks[hole] = ks[j];
+                vs[hole] = vs[j];
+                refilled |= hole == i;
+                hole = j;
+            } else if (robinHood) {
+                // homes are in order along a Robin Hood run, nothing later can move
+                break;
+            }
+        }
+        hs[hole] = 0;
+        ks[hole] = null;
+        vs[hole] = null;
+        modCount++;
+        --size;
+        return refilled;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(hashes, 0);
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MyOpenHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            int i = findSlot(MyHashMap.hash(key), maskNull(key));
+            return i >= 0 && Objects.equals(values[i], e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MyOpenHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Write-through entry; setValue goes back through put, which never
+     * moves an existing key.
+     */
+    final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            MyOpenHashMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Iterates the table circularly, starting just after an empty slot.
+     * A probe run never wraps past that slot, so backward shifts done by
+     * Iterator.remove only ever move entries from later in the iteration
+     * to earlier positions within the run; the only slot that must be
+     * revisited is the one that was just removed.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final int start;
+        int position;          // number of slots passed, in [0, capacity]
+        int lastReturned = -1; // slot of last returned entry, or -1
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            int i = 0;
+            while (keys[i] != null) {
+                i++;
+            }
+            start = i;
+            advance();
+        }
+
+        private int slot(int pos) {
+            return (start + 1 + pos) & (keys.length - 1);
+        }
+
+        private void advance() {
+            while (position < keys.length && keys[slot(position)] == null) {
+                position++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < keys.length;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (position >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            int i = slot(position++);
+            lastReturned = i;
+            advance();
+            return new Entry(MyOpenHashMap.<K>unmaskNull(keys[i]), MyOpenHashMap.<V>value(values[i]));
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (removeAt(lastReturned)) {
+                // an unvisited entry was shifted into the removed slot
+                position = (lastReturned - start - 1) & (keys.length - 1);
+            }
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.*;
+
+/**
+ * Persistent (immutable) map on a hash array mapped trie. Each level
+ * of the trie consumes five bits of {@link MyHashMap#hash}, so a trie
+ * of n mappings is about log32(n) levels deep, and 7 at most.
+ * {@link #plus} and {@link #minus} return a new version that shares
+ * every node off the path to the changed key with the old one: an
+ * update allocates a handful of small nodes, and old versions stay
+ * valid and can be read from any thread without synchronization.
+ *
+ * The nodes follow the CHAMP layout: a node keeps one bitmap for the
+ * mappings stored inline and one for its sub-nodes, and a single
+ * array with the inline keys and values first and the sub-nodes last,
+ * so there are no empty slots and no wrapper objects per entry. A
+ * sub-node that shrinks to one mapping is inlined back into its
+ * parent, which keeps the trie shallow after removals. Keys whose
+ * hashes are equal in all 32 bits share a collision node at the
+ * bottom.
+ *
+ * Many updates are cheaper through {@link #asTransient()}, which edits
+ * nodes it has already copied in place instead of copying them again
+ * for every update, and whose {@link Transient#persistent()} then
+ * returns the result as a new version.
+ *
+ * Null keys and values are allowed. The {@code Map} mutators throw
+ * {@code UnsupportedOperationException}.
+ */
+public final class MyPersistentHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * Hash bits consumed per level.
+     */
+    static final int BITS = 5;
+
+    static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Returned by Node.find for absent keys, since values may be null.
+     */
+    static final Object NOT_FOUND = new Object();
+
+    private static final MyPersistentHashMap<?, ?> EMPTY =
+            new MyPersistentHashMap<>(new BitmapNode(null, 0, 0, new Object[0]), 0);
+
+    final Node root;
+
+    final int size;
+
+    MyPersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> MyPersistentHashMap<K, V> empty() {
+        return (MyPersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent map with the mappings of m. The stored
+     * hashes of a {@link MyHashMap} are reused.
+     *
+     * @throws NullPointerException if the specified map is null
+     */
+    public static <K, V> MyPersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof MyPersistentHashMap) {
+            @SuppressWarnings("unchecked")
+            MyPersistentHashMap<K, V> p = (MyPersistentHashMap<K, V>) m;
+            return p;
+        }
+        Transient<K, V> t = MyPersistentHashMap.<K, V>empty().asTransient();
+        if (m instanceof MyHashMap && !((MyHashMap<?, ?>) m).keyedHashing) {
+            // reuse stored hashes instead of calling hashCode() again
+            @SuppressWarnings("unchecked")
+            MyHashMap<K, V> src = (MyHashMap<K, V>) m;
+            putNodes(t, src.table);
+            putNodes(t, src.oldTable);
+        } else {
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                t.put(e.getKey(), e.getValue());
+            }
+        }
+        return t.persistent();
+    }
+
+    private static <K, V> void putNodes(Transient<K, V> t, MyHashMap.Node<K, V>[] tab) {
+        if (tab != null) {
+            for (MyHashMap.Node<K, V> b : tab) {
+                for (MyHashMap.Node<K, V> e = b; e != null; e = e.next) {
+                    t.put(e.hash, e.key, e.value);
+                }
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = root.find(key, MyHashMap.hash(key), 0);
+        return (v == NOT_FOUND) ? null : (V) v;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root.find(key, MyHashMap.hash(key), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns this map with key mapped to value; this map itself if it
+     * already maps key to that same value.
+     */
+    public MyPersistentHashMap<K, V> plus(K key, V value) {
+        Result r = new Result();
+        Node newRoot = root.put(null, key, MyHashMap.hash(key), value, 0, r);
+        return (newRoot == root) ? this : new MyPersistentHashMap<K, V>(newRoot, r.added ? size + 1 : size);
+    }
+
+    /**
+     * Returns this map without a mapping for key; this map itself if
+     * there is none.
+     */
+    public MyPersistentHashMap<K, V> minus(Object key) {
+        Result r = new Result();
+        Node newRoot = root.remove(null, key, MyHashMap.hash(key), 0, r);
+        return (newRoot == root) ? this : new MyPersistentHashMap<K, V>(newRoot, size - 1);
+    }
+
+    /**
+     * Returns a mutable copy of this map, which shares the nodes of
+     * this map until it changes them.
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root, size);
+    }
+
+    /**
+     * A mutable map under construction, for batches of updates. Each
+     * node is copied at most once per transient and then edited in
+     * place. Not thread-safe, and no longer usable once
+     * {@link #persistent()} has been called.
+     */
+    public static final class Transient<K, V> {
+
+        /**
+         * Marks the nodes this transient owns and may edit in place;
+         * null once persistent() has been called.
+         */
+        private Object edit = new Object();
+
+        private Node root;
+
+        private int size;
+
+        Transient(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        private void ensureEditable() {
+            if (edit == null)
+                throw new IllegalStateException("Transient used after persistent()");
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            ensureEditable();
+            Object v = root.find(key, MyHashMap.hash(key), 0);
+            return (v == NOT_FOUND) ? null : (V) v;
+        }
+
+        public boolean containsKey(Object key) {
+            ensureEditable();
+            return root.find(key, MyHashMap.hash(key), 0) != NOT_FOUND;
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        /**
+         * Associates the specified value with the specified key.
+         *
+         * @return the previous value associated with key, or
+         * {@code null} if there was no mapping for key
+         */
+        public V put(K key, V value) {
+            return put(MyHashMap.hash(key), key, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(int hash, K key, V value) {
+            ensureEditable();
+            Result r = new Result();
+            root = root.put(edit, key, hash, value, 0, r);
+            if (r.added) {
+                size++;
+            }
+            return (V) r.oldValue;
+        }
+
+        /**
+         * Removes the mapping for a key if it is present.
+         *
+         * @return the previous value associated with key, or
+         * {@code null} if there was no mapping for key
+         */
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            ensureEditable();
+            Result r = new Result();
+            root = root.remove(edit, key, MyHashMap.hash(key), 0, r);
+            if (r.removed) {
+                size--;
+            }
+            return (V) r.oldValue;
+        }
+
+        /**
+         * Returns the current contents as a persistent map, and ends
+         * this transient.
+         */
+        public MyPersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return new MyPersistentHashMap<>(root, size);
+        }
+    }
+
+    /**
+     * What an update did, beyond the node it returns.
+     */
+    static final class Result {
+        boolean added, removed;
+        Object oldValue;
+    }
+
+    static boolean eq(Object x, Object y) {
+        return x == y || (x != null && x.equals(y));
+    }
+
+    abstract static class Node {
+        /**
+         * Returns the value of key, or NOT_FOUND.
+         */
+        abstract Object find(Object key, int hash, int shift);
+
+        /**
+         * Returns this node with key mapped to value: this node itself
+         * if nothing changed or it was edited in place, else a copy.
+         * Nodes are edited in place when edit is non-null and they
+         * were created under the same edit.
+         */
+        abstract Node put(Object edit, Object key, int hash, Object value, int shift, Result r);
+
+        /**
+         * Returns this node without key, as put does. A node left with
+         * a single mapping is returned as such, for its parent to
+         * inline.
+         */
+        abstract Node remove(Object edit, Object key, int hash, int shift, Result r);
+
+        /**
+         * Whether the subtree holds exactly one mapping, which then is
+         * key(0) -> value(0).
+         */
+        abstract boolean isSingleton();
+
+        /**
+         * Number of mappings stored inline in this node.
+         */
+        abstract int payloadArity();
+
+        abstract Object key(int i);
+
+        abstract Object value(int i);
+
+        /**
+         * Number of sub-nodes.
+         */
+        abstract int nodeArity();
+
+        abstract Node node(int i);
+    }
+
+    static final class BitmapNode extends Node {
+        final Object edit;
+        int dataMap, nodeMap;
+
+        /**
+         * Keys and values of the inline mappings in bit order, then
+         * the sub-nodes in reverse bit order.
+         */
+        Object[] array;
+
+        BitmapNode(Object edit, int dataMap, int nodeMap, Object[] array) {
+            this.edit = edit;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.array = array;
+        }
+
+        int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        int nodeIndex(int bit) {
+            return array.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        boolean editable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+
+        /**
+         * Returns this node if editable, else a copy owned by edit.
+         */
+        BitmapNode editableCopy(Object edit) {
+            return editable(edit) ? this : new BitmapNode(edit, dataMap, nodeMap, array.clone());
+        }
+
+        /**
+         * Returns a node with the given fields: this node, updated, if
+         * editable, else a new one.
+         */
+        BitmapNode with(Object edit, int dataMap, int nodeMap, Object[] array) {
+            if (editable(edit)) {
+                this.dataMap = dataMap;
+                this.nodeMap = nodeMap;
+                this.array = array;
+                return this;
+            }
+            return new BitmapNode(edit, dataMap, nodeMap, array);
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                return eq(key, array[i]) ? array[i + 1] : NOT_FOUND;
+            }
+            if ((nodeMap & bit) != 0) {
+                return ((Node) array[nodeIndex(bit)]).find(key, hash, shift + BITS);
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(Object edit, Object key, int hash, Object value, int shift, Result r) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                Object k = array[i];
+                if (eq(key, k)) {
+                    Object old = array[i + 1];
+                    r.oldValue = old;
+                    if (old == value) {
+                        return this;
+                    }
+                    BitmapNode n = editableCopy(edit);
+                    n.array[i + 1] = value;
+                    return n;
+                }
+                // push both mappings one level down
+                r.added = true;
+                Node sub = merge(edit, k, MyHashMap.hash(k), array[i + 1], key, hash, value, shift + BITS);
+                Object[] a = new Object[array.length - 1];
+                int ni = a.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+                System.arraycopy(array, 0, a, 0, i);
+                System.arraycopy(array, i + 2, a, i, ni - i);
+                a[ni] = sub;
+                System.arraycopy(array, ni + 2, a, ni + 1, array.length - ni - 2);
+                return with(edit, dataMap ^ bit, nodeMap | bit, a);
+            }
+            if ((nodeMap & bit) != 0) {
+                int ni = nodeIndex(bit);
+                Node sub = (Node) array[ni];
+                Node newSub = sub.put(edit, key, hash, value, shift + BITS, r);
+                if (newSub == sub) {
+                    return this;
+                }
+                BitmapNode n = editableCopy(edit);
+                n.array[ni] = newSub;
+                return n;
+            }
+            r.added = true;
+            int i = 2 * dataIndex(bit);
+            Object[] a = new Object[array.length + 2];
+            System.arraycopy(array, 0, a, 0, i);
+            a[i] = key;
+            a[i + 1] = value;
+            System.arraycopy(array, i, a, i + 2, array.length - i);
+            return with(edit, dataMap | bit, nodeMap, a);
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, Result r) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                if (!eq(key, array[i])) {
+                    return this;
+                }
+                r.removed = true;
+                r.oldValue = array[i + 1];
+                Object[] a = new Object[array.length - 2];
+                System.arraycopy(array, 0, a, 0, i);
+                System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+                return with(edit, dataMap ^ bit, nodeMap, a);
+            }
+            if ((nodeMap & bit) != 0) {
+                int ni = nodeIndex(bit);
+                Node sub = (Node) array[ni];
+                Node newSub = sub.remove(edit, key, hash, shift + BITS, r);
+                if (newSub == sub) {
+                    return this;
+                }
+                if (!newSub.isSingleton()) {
+                    BitmapNode n = editableCopy(edit);
+                    n.array[ni] = newSub;
+                    return n;
+                }
+                // inline the last mapping of the sub-node
+                int i = 2 * dataIndex(bit);
+                Object[] a = new Object[array.length + 1];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = newSub.key(0);
+                a[i + 1] = newSub.value(0);
+                System.arraycopy(array, i, a, i + 2, ni - i);
+                System.arraycopy(array, ni + 1, a, ni + 2, array.length - ni - 1);
+                return with(edit, dataMap | bit, nodeMap ^ bit, a);
+            }
+            return this;
+        }
+
+        @Override
+        boolean isSingleton() {
+            return nodeMap == 0 && Integer.bitCount(dataMap) == 1;
+        }
+
+        @Override
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        Object key(int i) {
+            return array[2 * i];
+        }
+
+        @Override
+        Object value(int i) {
+            return array[2 * i + 1];
+        }
+
+        @Override
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Node node(int i) {
+            return (Node) array[array.length - 1 - i];
+        }
+    }
+
+    /**
+     * Returns a node holding two mappings with different keys, starting
+     * at the given level.
+     */
+    static Node merge(Object edit, Object k1, int h1, Object v1, Object k2, int h2, Object v2, int shift) {
+        if (shift >= 32) {
+            return new CollisionNode(edit, h1, new Object[]{k1, v1, k2, v2});
+        }
+        int b1 = (h1 >>> shift) & MASK, b2 = (h2 >>> shift) & MASK;
+        if (b1 != b2) {
+            Object[] a = (b1 < b2) ? new Object[]{k1, v1, k2, v2} : new Object[]{k2, v2, k1, v1};
+            return new BitmapNode(edit, (1 << b1) | (1 << b2), 0, a);
+        }
+        Node sub = merge(edit, k1, h1, v1, k2, h2, v2, shift + BITS);
+        return new BitmapNode(edit, 0, 1 << b1, new Object[]{sub});
+    }
+
+    /**
+     * Mappings whose keys have the same 32-bit hash, below the last
+     * level of bitmap nodes.
+     */
+    static final class CollisionNode extends Node {
+        final Object edit;
+        final int hash;
+
+        /**
+         * Keys and values, alternating.
+         */
+        Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            this.edit = edit;
+            this.hash = hash;
+            this.array = array;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (eq(key, array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        CollisionNode with(Object edit, Object[] array) {
+            if (edit != null && this.edit == edit) {
+                this.array = array;
+                return this;
+            }
+            return new CollisionNode(edit, hash, array);
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int i = indexOf(key);
+            return (i < 0) ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node put(Object edit, Object key, int hash, Object value, int shift, Result r) {
+            int i = indexOf(key);
+            if (i >= 0) {
+                Object old = array[i + 1];
+                r.oldValue = old;
+                if (old == value) {
+                    return this;
+                }
+                Object[] a = (edit != null && this.edit == edit) ? array : array.clone();
+                a[i + 1] = value;
+                return with(edit, a);
+            }
+            r.added = true;
+            Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            return with(edit, a);
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, Result r) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            r.removed = true;
+            r.oldValue = array[i + 1];
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return with(edit, a);
+        }
+
+        @Override
+        boolean isSingleton() {
+            return array.length == 2;
+        }
+
+        @Override
+        int payloadArity() {
+            return array.length >> 1;
+        }
+
+        @Override
+        Object key(int i) {
+            return array[2 * i];
+        }
+
+        @Override
+        Object value(int i) {
+            return array[2 * i + 1];
+        }
+
+        @Override
+        int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        Node node(int i) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<>(root);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            Object v = root.find(key, MyHashMap.hash(key), 0);
+            return v != NOT_FOUND && eq(v, e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, the inline mappings of each node
+     * before its sub-nodes.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        /**
+         * Deep enough for seven levels of bitmap nodes and one of
+         * collision nodes.
+         */
+        final Node[] nodes = new Node[8];
+        final int[] nextNode = new int[8];
+        int depth;
+        Node current;
+        int nextPayload;
+
+        EntryIterator(Node root) {
+            nodes[0] = root;
+            current = root;
+            advance();
+        }
+
+        /**
+         * Makes current the next node with inline mappings left, or
+         * null at the end.
+         */
+        private void advance() {
+            while (current != null && nextPayload >= current.payloadArity()) {
+                Node n = nodes[depth];
+                if (nextNode[depth] < n.nodeArity()) {
+                    Node sub = n.node(nextNode[depth]++);
+                    nodes[++depth] = sub;
+                    nextNode[depth] = 0;
+                    current = sub;
+                    nextPayload = 0;
+                } else if (depth > 0) {
+                    nodes[depth--] = null;
+                } else {
+                    current = null;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (current == null)
+                throw new NoSuchElementException();
+            int i = nextPayload++;
+            Map.Entry<K, V> e = new AbstractMap.SimpleImmutableEntry<>((K) current.key(i), (V) current.value(i));
+            advance();
+            return e;
+        }
+    }
+}
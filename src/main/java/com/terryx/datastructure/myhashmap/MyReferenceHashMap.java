@@ -0,0 +1,539 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Hash map whose keys and values may each be held weakly or softly,
+ * like {@code java.util.WeakHashMap} but with the strength of either
+ * side chosen per map:
+ * <ul>
+ * <li>weak keys: an entry goes away once its key is no longer strongly
+ * reachable elsewhere, for metadata attached to objects whose lifetime
+ * the map does not control;</li>
+ * <li>soft values: the garbage collector may clear values when memory
+ * runs low, so a cache built on the map shrinks under pressure;</li>
+ * <li>weak values: an entry goes away with its value.</li>
+ * </ul>
+ *
+ * Each weak or soft key or value is held by a reference object that
+ * knows its entry and is registered with the map's queue. When the
+ * collector clears it, the reference is queued, and the map unlinks
+ * its entry the next time it is used: every get, put and remove polls
+ * at most {@link #EXPUNGE_BATCH} references, so the cost of expunging
+ * is spread over the operations and never needs a scan of the table.
+ * Entries whose key or value has been cleared but not yet expunged
+ * are treated as absent. size(), resizes and iteration first drain
+ * the queue completely; size() may still count entries the collector
+ * has cleared but not yet queued.
+ *
+ * Keys are compared with equals(). Null keys and values are allowed;
+ * a null value is held as such, whatever the value strength. Like
+ * MyHashMap this class is not thread-safe.
+ */
+public class MyReferenceHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * How the map holds its keys or values.
+     */
+    public enum Strength {
+        STRONG, WEAK, SOFT
+    }
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The most cleared references expunged by one get, put or remove.
+     */
+    static final int EXPUNGE_BATCH = 16;
+
+    static final class Entry<K, V> {
+        final int hash;
+
+        /**
+         * The key masked with NULL_KEY, or a reference to it.
+         */
+        final Object key;
+
+        /**
+         * The value, or a reference to it if the value is not null.
+         */
+        Object value;
+
+        Entry<K, V> next;
+
+        Entry(int hash, Object key, Strength keyStrength, ReferenceQueue<Object> queue, Entry<K, V> next) {
+            this.hash = hash;
+            this.key = reference(key, keyStrength, queue, this);
+            this.next = next;
+        }
+    }
+
+    /**
+     * A weak or soft reference that knows the entry to expunge when it
+     * is cleared.
+     */
+    interface EntryReference {
+        Entry<?, ?> entry();
+    }
+
+    static final class WeakEntryReference extends WeakReference<Object> implements EntryReference {
+        final Entry<?, ?> entry;
+
+        WeakEntryReference(Object referent, ReferenceQueue<Object> queue, Entry<?, ?> entry) {
+            super(referent, queue);
+            this.entry = entry;
+        }
+
+        public Entry<?, ?> entry() {
+            return entry;
+        }
+    }
+
+    static final class SoftEntryReference extends SoftReference<Object> implements EntryReference {
+        final Entry<?, ?> entry;
+
+        SoftEntryReference(Object referent, ReferenceQueue<Object> queue, Entry<?, ?> entry) {
+            super(referent, queue);
+            this.entry = entry;
+        }
+
+        public Entry<?, ?> entry() {
+            return entry;
+        }
+    }
+
+    /**
+     * Returns what an entry stores for the object: the object itself if
+     * strong or null, else a new reference to it.
+     */
+    static Object reference(Object referent, Strength strength, ReferenceQueue<Object> queue, Entry<?, ?> entry) {
+        if (strength == Strength.STRONG || referent == null) {
+            return referent;
+        }
+        return (strength == Strength.WEAK) ? new WeakEntryReference(referent, queue, entry)
+                : new SoftEntryReference(referent, queue, entry);
+    }
+
+    Entry<K, V>[] table;
+
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    final Strength keyStrength, valueStrength;
+
+    /**
+     * Receives the references of this map once they are cleared.
+     */
+    final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    /**
+     * The number of structural modifications, for fail-fast iterators.
+     * Expunging does not count: iterators skip cleared entries anyway.
+     */
+    transient int modCount;
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Constructs an empty map with the default initial capacity (16)
+     * and load factor (0.75).
+     *
+     * @throws NullPointerException if a strength is null
+     */
+    public MyReferenceHashMap(Strength keyStrength, Strength valueStrength) {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, keyStrength, valueStrength);
+    }
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @param keyStrength     how keys are held
+     * @param valueStrength   how values are held
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is nonpositive
+     * @throws NullPointerException     if a strength is null
+     */
+    public MyReferenceHashMap(int initialCapacity, float loadFactor, Strength keyStrength, Strength valueStrength) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.keyStrength = Objects.requireNonNull(keyStrength);
+        this.valueStrength = Objects.requireNonNull(valueStrength);
+        this.loadFactor = loadFactor;
+        int cap = MyHashMap.tableSizeFor(Math.min(Math.max(initialCapacity, 1), MAXIMUM_CAPACITY));
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Entry<K, V>[] tab = (Entry<K, V>[]) new Entry[cap];
+        table = tab;
+        threshold = (int) Math.min(cap * loadFactor, MAXIMUM_CAPACITY + 1.0f);
+    }
+
+    /**
+     * Returns the masked key of the entry, or null if it was cleared.
+     */
+    Object keyOf(Entry<K, V> e) {
+        Object k = e.key;
+        return (keyStrength == Strength.STRONG) ? k : ((Reference<?>) k).get();
+    }
+
+    /**
+     * Returns the value of the entry, or null if it is null or was
+     * cleared.
+     */
+    @SuppressWarnings("unchecked")
+    V valueOf(Entry<K, V> e) {
+        Object v = e.value;
+        return (valueStrength == Strength.STRONG || v == null) ? (V) v : (V) ((Reference<?>) v).get();
+    }
+
+    /**
+     * Whether the entry held a non-null value that has been cleared.
+     */
+    boolean valueCleared(Entry<K, V> e) {
+        Object v = e.value;
+        return valueStrength != Strength.STRONG && v != null && ((Reference<?>) v).get() == null;
+    }
+
+    /**
+     * Unlinks the entries of at most max cleared references.
+     */
+    void expungeStaleEntries(int max) {
+        for (int i = 0; i < max; i++) {
+            Reference<?> r = queue.poll();
+            if (r == null) {
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            Entry<K, V> e = (Entry<K, V>) ((EntryReference) r).entry();
+            // the value may have been replaced since this reference
+            // was set, then the entry stays
+            if (e.key == r || e.value == r) {
+                removeEntry(e);
+            }
+        }
+    }
+
+    /**
+     * Unlinks the given entry if it is still in the table. Its next
+     * link is kept, so an iterator standing on it can go on.
+     */
+    boolean removeEntry(Entry<K, V> e) {
+        Entry<K, V>[] tab = table;
+        int index = e.hash & (tab.length - 1);
+        for (Entry<K, V> p = tab[index], prev = null; p != null; prev = p, p = p.next) {
+            if (p == e) {
+                if (prev == null) {
+                    tab[index] = e.next;
+                } else {
+                    prev.next = e.next;
+                }
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the live entry for the key, or null.
+     */
+    Entry<K, V> getEntry(Object key) {
+        Object k = MyOpenHashMap.maskNull(key);
+        int hash = MyHashMap.hash(key);
+        Entry<K, V>[] tab = table;
+        for (Entry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+            if (e.hash == hash) {
+                Object ek = keyOf(e);
+                if ((ek == k || (ek != null && k.equals(ek))) && !valueCleared(e)) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V get(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        Entry<K, V> e = getEntry(key);
+        return (e == null) ? null : valueOf(e);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        Object k = MyOpenHashMap.maskNull(key);
+        int hash = MyHashMap.hash(key);
+        Entry<K, V>[] tab = table;
+        int index = hash & (tab.length - 1);
+        for (Entry<K, V> e = tab[index]; e != null; e = e.next) {
+            if (e.hash == hash) {
+                Object ek = keyOf(e);
+                if (ek == k || (ek != null && k.equals(ek))) {
+                    // a cleared value is replaced like a live one
+                    V oldValue = valueOf(e);
+                    e.value = reference(value, valueStrength, queue, e);
+                    return oldValue;
+                }
+            }
+        }
+        Entry<K, V> e = new Entry<>(hash, k, keyStrength, queue, tab[index]);
+        e.value = reference(value, valueStrength, queue, e);
+        tab[index] = e;
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Drops all cleared entries, then doubles the table if still above
+     * the threshold.
+     */
+    void resize() {
+        expungeStaleEntries(Integer.MAX_VALUE);
+        Entry<K, V>[] oldTab = table;
+        int oldCap = oldTab.length;
+        if (size <= threshold) {
+            return;
+        }
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Entry<K, V>[] newTab = (Entry<K, V>[]) new Entry[newCap];
+        for (int j = 0; j < oldCap; j++) {
+            Entry<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+            for (Entry<K, V> e = oldTab[j], next; e != null; e = next) {
+                next = e.next;
+                if ((e.hash & oldCap) == 0) {
+                    if (loTail == null) {
+                        loHead = e;
+                    } else {
+                        loTail.next = e;
+                    }
+                    loTail = e;
+                } else {
+                    if (hiTail == null) {
+                        hiHead = e;
+                    } else {
+                        hiTail.next = e;
+                    }
+                    hiTail = e;
+                }
+            }
+            if (loTail != null) {
+                loTail.next = null;
+                newTab[j] = loHead;
+            }
+            if (hiTail != null) {
+                hiTail.next = null;
+                newTab[j + oldCap] = hiHead;
+            }
+        }
+        table = newTab;
+        threshold = (int) Math.min(newCap * loadFactor, MAXIMUM_CAPACITY + 1.0f);
+        modCount++;
+    }
+
+    @Override
+    public V remove(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        Entry<K, V> e = getEntry(key);
+        if (e == null) {
+            return null;
+        }
+        V oldValue = valueOf(e);
+        removeEntry(e);
+        modCount++;
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        // the queued references belong to entries about to be dropped
+        while (queue.poll() != null) {
+        }
+        Arrays.fill(table, null);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of entries after expunging all queued ones.
+     */
+    @Override
+    public int size() {
+        expungeStaleEntries(Integer.MAX_VALUE);
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Entry<K, V> candidate = getEntry(e.getKey());
+            return candidate != null && Objects.equals(valueOf(candidate), e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MyReferenceHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return MyReferenceHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            MyReferenceHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates over the live entries, holding their keys and values
+     * strongly from hasNext() on so they cannot be cleared in between.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final Entry<K, V>[] tab;
+        int index;
+        Entry<K, V> next, current;
+        Object nextKey;
+        V nextValue;
+        int expectedModCount;
+
+        EntryIterator() {
+            expungeStaleEntries(Integer.MAX_VALUE);
+            tab = table;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextKey == null) {
+                Entry<K, V> e = next;
+                while (e == null && index < tab.length) {
+                    e = tab[index++];
+                }
+                if (e == null) {
+                    return false;
+                }
+                next = e;
+                nextKey = keyOf(e);
+                nextValue = valueOf(e);
+                if (nextKey == null || valueCleared(e)) {
+                    nextKey = null;
+                    next = e.next;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = next;
+            next = current.next;
+            Map.Entry<K, V> e = new WriteThroughEntry(current, MyOpenHashMap.<K>unmaskNull(nextKey), nextValue);
+            nextKey = null;
+            nextValue = null;
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (removeEntry(current)) {
+                modCount++;
+            }
+            expectedModCount = modCount;
+            current = null;
+        }
+    }
+
+    /**
+     * An entry returned by the iterator, which holds its key and value
+     * strongly and writes setValue through to the map.
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        final Entry<K, V> entry;
+
+        WriteThroughEntry(Entry<K, V> entry, K key, V value) {
+            super(key, value);
+            this.entry = entry;
+        }
+
+        @Override
+        public V setValue(V value) {
+            entry.value = reference(value, valueStrength, queue, entry);
+            return super.setValue(value);
+        }
+    }
+}
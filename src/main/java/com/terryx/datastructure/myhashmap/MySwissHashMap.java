@@ -0,0 +1,439 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.*;
+
+/**
+ * Open addressing map in the style of SwissTable. Next to the key and
+ * value arrays every slot owns a control byte: either EMPTY, DELETED,
+ * or a 7-bit fingerprint (h2) of the key's hash. Slots are probed in
+ * groups of 8 whose control bytes are packed into one long, and the
+ * fingerprint is compared against all 8 bytes at once with SWAR bit
+ * tricks. Only slots whose fingerprint matches are looked at in the
+ * key array, so equals() is almost never called on unrelated keys.
+ *
+ * The hash is the one computed by {@link MyHashMap#hash}. Its low bits
+ * select the home group (h1); the fingerprint is taken from the top
+ * bits of a golden-ratio multiple of it so that it does not repeat
+ * the bits already used by h1. Groups are probed triangularly
+ * (home, +1, +3, +6, ...), which visits every group of a power of two
+ * sized table.
+ *
+ * A removed slot becomes EMPTY when its group still has an EMPTY slot
+ * (probes never pass such a group anyway), otherwise DELETED. DELETED
+ * slots are reused by inserts and dropped on the next rehash.
+ */
+public class MySwissHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
+
+    /**
+     * Slots per group, the number of control bytes in a long.
+     */
+    static final int GROUP_WIDTH = 8;
+
+    /**
+     * The default initial capacity - MUST be a power of two, at least
+     * GROUP_WIDTH.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /*
+     * Control bytes. Full slots hold h2 in [0, 127], so only the
+     * special values have the high bit set.
+     */
+    static final int EMPTY = 0x80;
+    static final int DELETED = 0xFE;
+
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * A group whose slots are all EMPTY.
+     */
+    static final long EMPTY_GROUP = LSBS * EMPTY;
+
+    /**
+     * Control bytes, GROUP_WIDTH per long; byte j of ctrl[g] (bits
+     * 8j..8j+7) belongs to slot g * GROUP_WIDTH + j.
+     */
+    long[] ctrl;
+
+    /**
+     * Keys, masked with MyOpenHashMap.NULL_KEY, meaningful only in full
+     * slots.
+     */
+    Object[] keys;
+
+    /**
+     * Values, parallel to keys.
+     */
+    Object[] values;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * Number of EMPTY slots that may still be filled before rehashing,
+     * keeping the table at most 7/8 full counting DELETED slots.
+     */
+    int growthLeft;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    int modCount;
+
+    public MySwissHashMap() {
+        allocate(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map able to hold {@code expectedSize}
+     * mappings without rehashing.
+     *
+     * @param expectedSize the expected number of mappings
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public MySwissHashMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expectedSize);
+        allocate(capacityFor(expectedSize));
+    }
+
+    static int capacityFor(int expectedSize) {
+        long cap = (long) expectedSize * GROUP_WIDTH / (GROUP_WIDTH - 1) + 1;
+        return cap >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : Math.max(GROUP_WIDTH, MyHashMap.tableSizeFor((int) cap));
+    }
+
+    private void allocate(int capacity) {
+        ctrl = new long[capacity / GROUP_WIDTH];
+        Arrays.fill(ctrl, EMPTY_GROUP);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        growthLeft = maxLoad(capacity) - size;
+    }
+
+    static int maxLoad(int capacity) {
+        return capacity - capacity / GROUP_WIDTH;
+    }
+
+    /**
+     * Fingerprint stored in the control byte of a full slot.
+     */
+    static int h2(int hash) {
+        return (hash * 0x9E3779B9) >>> 25;
+    }
+
+    /*
+     * SWAR matching. Each returns a word with the high bit set in every
+     * byte that matches; Long.numberOfTrailingZeros(m) >>> 3 is then the
+     * slot index within the group. matchFingerprint may report a false
+     * positive in the byte above a true match (borrow propagation), which
+     * the key comparison filters out.
+     */
+
+    static long matchFingerprint(long group, int h2) {
+        long x = group ^ (LSBS * h2);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    static long matchEmpty(long group) {
+        // EMPTY is the only control byte with bit 7 set and bit 1 clear
+        return group & ~(group << 6) & MSBS;
+    }
+
+    static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    void setCtrl(int slot, int b) {
+        int g = slot / GROUP_WIDTH, shift = (slot & (GROUP_WIDTH - 1)) << 3;
+        ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | ((long) b << shift);
+    }
+
+    int ctrlAt(int slot) {
+        return (int) (ctrl[slot / GROUP_WIDTH] >>> ((slot & (GROUP_WIDTH - 1)) << 3)) & 0xFF;
+    }
+
+    /**
+     * Returns the slot holding the (masked) key, or -1 if none.
+     */
+    int findSlot(int hash, Object k) {
+        long[] cs = ctrl;
+        Object[] ks = keys;
+        int groupMask = cs.length - 1, fp = h2(hash);
+        for (int g = hash & groupMask, step = 0; ; g = (g + ++step) & groupMask) {
+            long group = cs[g];
+            for (long m = matchFingerprint(group, fp); m != 0; m &= m - 1) {
+                int slot = g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object x = ks[slot];
+                if (x == k || k.equals(x)) {
+                    return slot;
+                }
+            }
+            if (matchEmpty(group) != 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the first EMPTY or DELETED slot on the probe sequence for
+     * hash. There always is one since the table is never full.
+     */
+    int findInsertSlot(int hash) {
+        long[] cs = ctrl;
+        int groupMask = cs.length - 1;
+        for (int g = hash & groupMask, step = 0; ; g = (g + ++step) & groupMask) {
+            long m = matchEmptyOrDeleted(cs[g]);
+            if (m != 0) {
+                return g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V value(Object v) {
+        return (V) v;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = findSlot(MyHashMap.hash(key), MyOpenHashMap.maskNull(key));
+        return i < 0 ? null : MySwissHashMap.<V>value(values[i]);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findSlot(MyHashMap.hash(key), MyOpenHashMap.maskNull(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < keys.length; i++) {
+            if ((ctrlAt(i) & EMPTY) == 0 && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Object k = MyOpenHashMap.maskNull(key);
+        int hash = MyHashMap.hash(key);
+        int i = findSlot(hash, k);
+        if (i >= 0) {
+            V oldValue = value(values[i]);
+            values[i] = value;
+            return oldValue;
+        }
+        i = findInsertSlot(hash);
+        if (growthLeft == 0 && ctrlAt(i) == EMPTY) {
+            rehash();
+            i = findInsertSlot(hash);
+        }
+        if (ctrlAt(i) == EMPTY) {
+            growthLeft--;
+        }
+        setCtrl(i, h2(hash));
+        keys[i] = k;
+        values[i] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Rebuilds the table, doubling it unless at least half of the load
+     * budget is taken by DELETED slots, in which case the capacity is
+     * kept and only the tombstones are dropped.
+     */
+    void rehash() {
+        long[] oldCtrl = ctrl;
+        Object[] oldKeys = keys, oldValues = values;
+        int oldCap = oldKeys.length;
+        int newCap = oldCap;
+        if (size > maxLoad(oldCap) / 2) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                throw new IllegalStateException("Capacity exhausted.");
+            }
+            newCap = oldCap << 1;
+        }
+        allocate(newCap);
+        for (int g = 0; g < oldCtrl.length; g++) {
+            // walk the full slots of each group, no equals() needed
+            for (long m = ~oldCtrl[g] & MSBS; m != 0; m &= m - 1) {
+                int j = g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object k = oldKeys[j];
+                int hash = MyHashMap.hash(MyOpenHashMap.unmaskNull(k));
+                int i = findInsertSlot(hash);
+                setCtrl(i, h2(hash));
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+        growthLeft = maxLoad(newCap) - size;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = findSlot(MyHashMap.hash(key), MyOpenHashMap.maskNull(key));
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = value(values[i]);
+        removeAt(i);
+        return oldValue;
+    }
+
+    void removeAt(int i) {
+        if (matchEmpty(ctrl[i / GROUP_WIDTH]) != 0) {
+            setCtrl(i, EMPTY);
+            growthLeft++;
+        } else {
+            setCtrl(i, DELETED);
+        }
+        keys[i] = null;
+        values[i] = null;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0 || growthLeft != maxLoad(keys.length)) {
+            Arrays.fill(ctrl, EMPTY_GROUP);
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+            growthLeft = maxLoad(keys.length);
+            modCount++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MySwissHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            int i = findSlot(MyHashMap.hash(key), MyOpenHashMap.maskNull(key));
+            return i >= 0 && Objects.equals(values[i], e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MySwissHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            MySwissHashMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Slots never move on removal, so the iterator is a plain scan over
+     * the full slots.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        int next;
+        int lastReturned = -1;
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            while (next < keys.length && (ctrlAt(next) & EMPTY) != 0) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            int i = lastReturned = next++;
+            advance();
+            return new Entry(MyOpenHashMap.<K>unmaskNull(keys[i]), MySwissHashMap.<V>value(values[i]));
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(lastReturned);
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts objects to and from bytes for the maps that keep their
+ * data outside the Java heap.
+ *
+ * Maps that compare keys by their serialized form require the key
+ * serializer to be canonical: equal keys must always produce equal
+ * bytes, and unequal keys different bytes.
+ */
+public interface Serializer<T> {
+
+    /**
+     * Writes the object at the buffer's position, advancing it. If the
+     * buffer is too small this throws BufferOverflowException, and the
+     * caller retries with a larger buffer.
+     *
+     * @throws BufferOverflowException if the object does not fit
+     */
+    void write(T value, ByteBuffer out);
+
+    /**
+     * Reads an object from the buffer's remaining bytes, which are
+     * exactly the bytes written for it.
+     */
+    T read(ByteBuffer in);
+
+    /**
+     * Strings as UTF-8.
+     */
+    Serializer<String> STRING = new Serializer<String>() {
+        public void write(String value, ByteBuffer out) {
+            out.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public String read(ByteBuffer in) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Byte arrays as themselves. As map keys they are compared by
+     * content, unlike in the heap maps.
+     */
+    Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        public void write(byte[] value, ByteBuffer out) {
+            out.put(value);
+        }
+
+        public byte[] read(ByteBuffer in) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            return bytes;
+        }
+    };
+
+    Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public void write(Integer value, ByteBuffer out) {
+            out.putInt(value);
+        }
+
+        public Integer read(ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+
+    Serializer<Long> LONG = new Serializer<Long>() {
+        public void write(Long value, ByteBuffer out) {
+            out.putLong(value);
+        }
+
+        public Long read(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+}
@@ -0,0 +1,622 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * A {@code String -> Object} hash map that keeps its keys as UTF-8
+ * bytes in one shared byte array, the arena, instead of as String
+ * objects. A slot holds the full 32-bit hash of its key, the offset
+ * and length of the key bytes in the arena, and the value; probing is
+ * linear with backward-shift deletion as in {@link MyOpenHashMap}.
+ *
+ * Keys can be given either as any {@code CharSequence} or as a slice
+ * of a {@code byte[]} holding UTF-8, and both forms of the same string
+ * find the same mapping. Neither get nor put creates a String: a
+ * CharSequence is encoded on the fly while it is hashed and compared,
+ * and a byte slice is compared against the arena directly, so a
+ * parser can look up a token straight from its input buffer. Only
+ * keys that are inserted are copied, into the arena.
+ *
+ * Compared with a {@code MyHashMap<String, V>} this saves the String
+ * and array headers of every key, and a lookup compares the cached
+ * hash before touching any key bytes. Resizing reuses the cached
+ * hashes and never looks at the keys. Removed keys leave garbage in
+ * the arena, which is dropped when the arena next has to grow.
+ *
+ * Unpaired surrogates in a CharSequence are encoded as '?', as by
+ * {@code String.getBytes(UTF_8)}. Byte slices are taken as they are,
+ * so malformed UTF-8 can only be matched by the same bytes. Values
+ * may be null; {@link #get} then cannot tell a null mapping from an
+ * absent one, use {@link #containsKey} where it matters.
+ */
+public class StringObjectMap<V> {
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The largest arena that can be allocated.
+     */
+    static final int MAXIMUM_ARENA = Integer.MAX_VALUE - 8;
+
+    /**
+     * Arena bytes reserved per expected mapping by the constructor.
+     */
+    static final int BYTES_PER_KEY = 16;
+
+    static final int FNV_BASIS = 0x811C9DC5, FNV_PRIME = 0x01000193;
+
+    /**
+     * Receives the mappings in {@link #forEach}.
+     */
+    public interface StringObjectConsumer<V> {
+        void accept(String key, V value);
+    }
+
+    /**
+     * Hash of the key in each slot, 0 marks a free slot; hash() never
+     * returns 0.
+     */
+    int[] hashes;
+
+    /**
+     * Offset of the key in the arena in the high 32 bits, its length
+     * in the low 32 bits, parallel to hashes.
+     */
+    long[] spans;
+
+    /**
+     * Values, parallel to hashes.
+     */
+    Object[] values;
+
+    /**
+     * The key bytes, packed up to arenaUsed.
+     */
+    byte[] arena;
+
+    int arenaUsed;
+
+    /**
+     * The bytes below arenaUsed that belong to removed keys.
+     */
+    int arenaGarbage;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    /**
+     * The load factor for the table.
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    int modCount;
+
+    public StringObjectMap() {
+        this(0);
+    }
+
+    public StringObjectMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map able to hold {@code expectedSize}
+     * mappings without resizing.
+     *
+     * @param expectedSize the expected number of mappings
+     * @param loadFactor   the load factor, in (0, 1)
+     * @throws IllegalArgumentException if the size is negative or the
+     *                                  load factor is out of range
+     */
+    public StringObjectMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + expectedSize);
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(MyOpenHashMap.capacityFor(expectedSize, loadFactor));
+        arena = new byte[(int) Math.min(Math.max(expectedSize, 1) * (long) BYTES_PER_KEY, MAXIMUM_ARENA)];
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        spans = new long[capacity];
+        values = new Object[capacity];
+        threshold = (capacity == MAXIMUM_CAPACITY) ? capacity - 1 : (int) (capacity * loadFactor);
+    }
+
+    static long span(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    static int offset(long span) {
+        return (int) (span >>> 32);
+    }
+
+    static int length(long span) {
+        return (int) span;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V value(Object v) {
+        return (V) v;
+    }
+
+    /**
+     * Ends a hash: FNV-1a leaves the low bits, which pick the slot,
+     * poorly mixed for short keys, so all bits are mixed once more.
+     */
+    static int finish(int h) {
+        h = MyFrozenHashMap.mix(h);
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * Hashes a slice of UTF-8 bytes, FNV-1a style.
+     */
+    static int hash(byte[] b, int off, int len) {
+        int h = FNV_BASIS;
+        for (int i = off, end = off + len; i < end; i++) {
+            h = (h ^ (b[i] & 0xFF)) * FNV_PRIME;
+        }
+        return finish(h);
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of s, equal to hashing its bytes.
+     */
+    static int hash(CharSequence s) {
+        int h = FNV_BASIS;
+        for (int i = 0, n = s.length(); i < n; ) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                h = (h ^ c) * FNV_PRIME;
+                i++;
+            } else {
+                long u = encode(s, i);
+                int count = (int) (u >>> 32);
+                for (int k = 0, bytes = (int) u; k < count; k++, bytes >>>= 8) {
+                    h = (h ^ (bytes & 0xFF)) * FNV_PRIME;
+                }
+                i += (count == 4) ? 2 : 1;
+            }
+        }
+        return finish(h);
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the character at index i of s, which
+     * is not ASCII, packed first byte lowest, with their number in the
+     * high 32 bits. Four bytes mean a surrogate pair, two chars.
+     */
+    static long encode(CharSequence s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x800) {
+            return (2L << 32) | (0xC0 | (c >> 6)) | ((0x80 | (c & 0x3F)) << 8);
+        }
+        if (Character.isSurrogate(c)) {
+            char d;
+            if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(d = s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, d);
+                return (4L << 32) | ((0xF0 | (cp >> 18)) | ((0x80 | ((cp >> 12) & 0x3F)) << 8)
+                        | ((0x80 | ((cp >> 6) & 0x3F)) << 16) | ((long) (0x80 | (cp & 0x3F)) << 24)) & 0xFFFFFFFFL;
+            }
+            return (1L << 32) | '?';
+        }
+        return (3L << 32) | (0xE0 | (c >> 12)) | ((0x80 | ((c >> 6) & 0x3F)) << 8) | ((0x80 | (c & 0x3F)) << 16);
+    }
+
+    /**
+     * Whether the UTF-8 encoding of s equals the given arena bytes.
+     */
+    static boolean equals(CharSequence s, byte[] b, int off, int len) {
+        int end = off + len, j = off;
+        for (int i = 0, n = s.length(); i < n; ) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (j == end || b[j++] != (byte) c) {
+                    return false;
+                }
+                i++;
+            } else {
+                long u = encode(s, i);
+                int count = (int) (u >>> 32);
+                if (end - j < count) {
+                    return false;
+                }
+                for (int k = 0, bytes = (int) u; k < count; k++, bytes >>>= 8) {
+                    if (b[j++] != (byte) bytes) {
+                        return false;
+                    }
+                }
+                i += (count == 4) ? 2 : 1;
+            }
+        }
+        return j == end;
+    }
+
+    static boolean equals(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot holding the key, or -1 if none.
+     */
+    int findSlot(CharSequence key) {
+        int h = hash(key);
+        int[] hs = hashes;
+        int mask = hs.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int x = hs[i];
+            if (x == 0) {
+                return -1;
+            }
+            if (x == h) {
+                long sp = spans[i];
+                if (equals(key, arena, offset(sp), length(sp))) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the slot holding the key with the given hash, or the
+     * bitwise complement of the free slot where it would go.
+     */
+    int findSlot(int h, byte[] b, int off, int len) {
+        int[] hs = hashes;
+        int mask = hs.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int x = hs[i];
+            if (x == 0) {
+                return ~i;
+            }
+            if (x == h) {
+                long sp = spans[i];
+                if (length(sp) == len && equals(arena, offset(sp), b, off, len)) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    int findSlot(byte[] key, int off, int len) {
+        checkFromIndexSize(key, off, len);
+        int i = findSlot(hash(key, off, len), key, off, len);
+        return i < 0 ? -1 : i;
+    }
+
+    static void checkFromIndexSize(byte[] b, int off, int len) {
+        if ((off | len) < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array " + b.length);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     *
+     * @throws NullPointerException if the key is null
+     */
+    public V get(CharSequence key) {
+        int i = findSlot(key);
+        return i < 0 ? null : StringObjectMap.<V>value(values[i]);
+    }
+
+    /**
+     * Returns the value mapped to the key whose UTF-8 encoding is
+     * {@code len} bytes of {@code key} from {@code off}, or
+     * {@code null} if there is none.
+     *
+     * @throws IndexOutOfBoundsException if the slice is out of bounds
+     */
+    public V get(byte[] key, int off, int len) {
+        int i = findSlot(key, off, len);
+        return i < 0 ? null : StringObjectMap.<V>value(values[i]);
+    }
+
+    public boolean containsKey(CharSequence key) {
+        return findSlot(key) >= 0;
+    }
+
+    public boolean containsKey(byte[] key, int off, int len) {
+        return findSlot(key, off, len) >= 0;
+    }
+
+    public boolean containsValue(V value) {
+        int[] hs = hashes;
+        for (int i = 0; i < hs.length; i++) {
+            if (hs[i] != 0 && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     * @throws NullPointerException if the key is null
+     */
+    public V put(CharSequence key, V value) {
+        // encode into the free end of the arena, where the key stays
+        // if it turns out to be new
+        int n = key.length();
+        reserve(3L * n);
+        byte[] b = arena;
+        int start = arenaUsed, j = start;
+        for (int i = 0; i < n; ) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                b[j++] = (byte) c;
+                i++;
+            } else {
+                long u = encode(key, i);
+                int count = (int) (u >>> 32);
+                for (int k = 0, bytes = (int) u; k < count; k++, bytes >>>= 8) {
+                    b[j++] = (byte) bytes;
+                }
+                i += (count == 4) ? 2 : 1;
+            }
+        }
+        int len = j - start;
+        int h = hash(b, start, len);
+        int i = findSlot(h, b, start, len);
+        if (i >= 0) {
+            V oldValue = StringObjectMap.<V>value(values[i]);
+            values[i] = value;
+            return oldValue;
+        }
+        arenaUsed = j;
+        insert(~i, h, span(start, len), value);
+        return null;
+    }
+
+    /**
+     * Associates the specified value with the key whose UTF-8 encoding
+     * is {@code len} bytes of {@code key} from {@code off}. The bytes
+     * are copied if the key is new.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     * @throws IndexOutOfBoundsException if the slice is out of bounds
+     */
+    public V put(byte[] key, int off, int len, V value) {
+        checkFromIndexSize(key, off, len);
+        int h = hash(key, off, len);
+        int i = findSlot(h, key, off, len);
+        if (i >= 0) {
+            V oldValue = StringObjectMap.<V>value(values[i]);
+            values[i] = value;
+            return oldValue;
+        }
+        // compacting the arena moves keys but not slots, so ~i is
+        // still the free slot
+        reserve(len);
+        int start = arenaUsed;
+        System.arraycopy(key, off, arena, start, len);
+        arenaUsed = start + len;
+        insert(~i, h, span(start, len), value);
+        return null;
+    }
+
+    private void insert(int i, int h, long span, V value) {
+        hashes[i] = h;
+        spans[i] = span;
+        values[i] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize();
+        }
+    }
+
+    /**
+     * Makes room for n more bytes at the end of the arena. A new arena
+     * is allocated only when the current one is full, and then holds
+     * just the live keys, half again as large as needed.
+     */
+    void reserve(long n) {
+        if (arenaUsed + n <= arena.length) {
+            return;
+        }
+        long needed = arenaUsed - arenaGarbage + n;
+        if (needed > MAXIMUM_ARENA) {
+            throw new IllegalStateException("Arena exhausted.");
+        }
+        int cap = (int) Math.min(Math.max(needed + (needed >> 1), arena.length), MAXIMUM_ARENA);
+        byte[] old = arena, b = new byte[cap];
+        int[] hs = hashes;
+        long[] sps = spans;
+        int used = 0;
+        for (int i = 0; i < hs.length; i++) {
+            if (hs[i] != 0) {
+                long sp = sps[i];
+                int len = length(sp);
+                System.arraycopy(old, offset(sp), b, used, len);
+                sps[i] = span(used, len);
+                used += len;
+            }
+        }
+        arena = b;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    /**
+     * Doubles the table, re-placing every slot by its cached hash.
+     */
+    void resize() {
+        int[] oldHashes = hashes;
+        long[] oldSpans = spans;
+        Object[] oldValues = values;
+        int oldCap = oldHashes.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1) {
+                throw new IllegalStateException("Capacity exhausted.");
+            }
+            return;
+        }
+        allocate(oldCap << 1);
+        int[] hs = hashes;
+        int mask = hs.length - 1;
+        for (int j = 0; j < oldCap; j++) {
+            int h = oldHashes[j];
+            if (h != 0) {
+                int i = h & mask;
+                while (hs[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                hs[i] = h;
+                spans[i] = oldSpans[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     * @throws NullPointerException if the key is null
+     */
+    public V remove(CharSequence key) {
+        int i = findSlot(key);
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = StringObjectMap.<V>value(values[i]);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping for the key whose UTF-8 encoding is
+     * {@code len} bytes of {@code key} from {@code off}, if present.
+     *
+     * @return the previous value associated with key, or
+     * {@code null} if there was no mapping for key
+     * @throws IndexOutOfBoundsException if the slice is out of bounds
+     */
+    public V remove(byte[] key, int off, int len) {
+        int i = findSlot(key, off, len);
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = StringObjectMap.<V>value(values[i]);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Empties slot i and shifts the rest of its run back, as
+     * MyOpenHashMap.removeAt does. The key bytes become garbage.
+     */
+    void removeAt(int i) {
+        int[] hs = hashes;
+        long[] sps = spans;
+        Object[] vs = values;
+        arenaGarbage += length(sps[i]);
+        int mask = hs.length - 1, hole = i;
+        for (int j = (i + 1) & mask; hs[j] != 0; j = (j + 1) & mask) {
+            int dist = (j - hs[j]) & mask;
+            if (dist >= ((j - hole) & mask)) {
+                hs[hole] = hs[j];
+                sps[hole] = sps[j];
+                vs[hole] = vs[j];
+                hole = j;
+            }
+        }
+        hs[hole] = 0;
+        sps[hole] = 0;
+        vs[hole] = null;
+        size--;
+        modCount++;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(hashes, 0);
+            Arrays.fill(spans, 0);
+            Arrays.fill(values, null);
+            size = 0;
+            modCount++;
+        }
+        arenaUsed = 0;
+        arenaGarbage = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Performs the given action for each mapping, in table order. Each
+     * key is decoded into a new String.
+     *
+     * @throws ConcurrentModificationException if the action adds or
+     *                                         removes mappings
+     */
+    public void forEach(StringObjectConsumer<? super V> action) {
+        int mc = modCount;
+        int[] hs = hashes;
+        for (int i = 0; i < hs.length; i++) {
+            if (hs[i] != 0) {
+                long sp = spans[i];
+                String key = new String(arena, offset(sp), length(sp), StandardCharsets.UTF_8);
+                action.accept(key, StringObjectMap.<V>value(values[i]));
+            }
+        }
+        if (mc != modCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        forEach(new StringObjectConsumer<V>() {
+            @Override
+            public void accept(String key, V value) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(key).append('=').append(value);
+            }
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,383 @@
+package com.terryx.datastructure.myhashmap;
+
+import java.util.Objects;
+
+/**
+ * A size-bounded cache with W-TinyLFU admission. Entries are kept in a
+ * {@link MyHashMap} from key to node, and every node also sits on one
+ * of three intrusive LRU lists:
+ *
+ * <ul>
+ * <li>window: about 1% of the capacity, where every new key enters;
+ * <li>probation: the part of the main region for keys that have left
+ * the window, or been demoted, and not been hit since;
+ * <li>protected: up to 80% of the main region, for keys hit while on
+ * probation.
+ * </ul>
+ *
+ * When the window overflows its eldest entry becomes a candidate for
+ * the main region. If the cache is then over capacity, the candidate
+ * and the eldest probation entry (the victim) are compared by their
+ * estimated access frequency, kept in a count-min sketch over all
+ * keys seen recently, and only the more frequent one stays. A scan of
+ * keys that are used once therefore cycles through the window and is
+ * rejected at the door, instead of flushing the hot set as plain LRU
+ * would.
+ *
+ * All operations are O(1). Null keys and values are not permitted.
+ * This class is not synchronized.
+ */
+public class TinyLfuCache<K, V> {
+
+    /**
+     * Percentage of the capacity given to the window.
+     */
+    static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Percentage of the main region that may be protected.
+     */
+    static final int PROTECTED_PERCENT = 80;
+
+    static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    /**
+     * Cache entry, linked into the list of its queue.
+     */
+    static final class Node<K, V> {
+        final K key;
+        V value;
+        int queue;
+        Node<K, V> prev, next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A queue of nodes, eldest first.
+     */
+    static final class Queue<K, V> {
+        Node<K, V> head, tail;
+        int size;
+
+        void linkLast(Node<K, V> p) {
+            Node<K, V> last = tail;
+            tail = p;
+            p.prev = last;
+            p.next = null;
+            if (last == null) {
+                head = p;
+            } else {
+                last.next = p;
+            }
+            size++;
+        }
+
+        void unlink(Node<K, V> p) {
+            Node<K, V> b = p.prev, a = p.next;
+            if (b == null) {
+                head = a;
+            } else {
+                b.next = a;
+            }
+            if (a == null) {
+                tail = b;
+            } else {
+                a.prev = b;
+            }
+            p.prev = p.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> p) {
+            if (p != tail) {
+                unlink(p);
+                linkLast(p);
+            }
+        }
+    }
+
+    final MyHashMap<K, Node<K, V>> data;
+    final FrequencySketch sketch;
+    final int maximumSize, maxWindow, maxProtected;
+
+    final Queue<K, V> window = new Queue<>();
+    final Queue<K, V> probation = new Queue<>();
+    final Queue<K, V> protectedQueue = new Queue<>();
+
+    long hits, misses;
+
+    /**
+     * Creates a cache holding at most {@code maximumSize} entries.
+     *
+     * @throws IllegalArgumentException if maximumSize is not positive
+     */
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.maxWindow = Math.max(1, (int) ((long) maximumSize * WINDOW_PERCENT / 100));
+        this.maxProtected = (int) ((long) (maximumSize - maxWindow) * PROTECTED_PERCENT / 100);
+        this.data = new MyHashMap<>((int) Math.min((maximumSize + 1L) * 4 / 3 + 1, MyHashMap.MAXIMUM_CAPACITY));
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Returns the cached value for the key, or null on a miss. Either
+     * way the access is counted towards the key's frequency.
+     */
+    public V get(Object key) {
+        int hash = MyHashMap.hash(Objects.requireNonNull(key));
+        sketch.increment(hash);
+        Node<K, V> node = getNode(hash, key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    /**
+     * Returns the cached value without counting an access or changing
+     * the eviction order.
+     */
+    public V peek(Object key) {
+        Node<K, V> node = getNode(MyHashMap.hash(Objects.requireNonNull(key)), key);
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return peek(key) != null;
+    }
+
+    /**
+     * Caches the value for the key, evicting an entry if the cache is
+     * full, and returns the previous value, if any. The new entry may
+     * itself be the one evicted, once it leaves the window, if it is
+     * not used again.
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        int hash = MyHashMap.hash(Objects.requireNonNull(key));
+        sketch.increment(hash);
+        Node<K, V> node = getNode(hash, key);
+        if (node != null) {
+            V oldValue = node.value;
+            node.value = value;
+            onHit(node);
+            return oldValue;
+        }
+        node = new Node<>(key, value);
+        data.putVal(hash, key, node);
+        node.queue = WINDOW;
+        window.linkLast(node);
+        evict();
+        return null;
+    }
+
+    public V remove(Object key) {
+        MyHashMap.Node<K, Node<K, V>> e = data.removeNode(MyHashMap.hash(Objects.requireNonNull(key)), key);
+        if (e == null) {
+            return null;
+        }
+        Node<K, V> node = e.value;
+        queueOf(node).unlink(node);
+        return node.value;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Removes all entries. The frequency sketch is kept.
+     */
+    public void clear() {
+        data.clear();
+        window.head = window.tail = null;
+        probation.head = probation.tail = null;
+        protectedQueue.head = protectedQueue.tail = null;
+        window.size = probation.size = protectedQueue.size = 0;
+    }
+
+    /**
+     * Returns the fraction of {@link #get} calls that were hits.
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    private Node<K, V> getNode(int hash, Object key) {
+        MyHashMap.Node<K, Node<K, V>> e = data.getNode(hash, key);
+        return e == null ? null : e.value;
+    }
+
+    private Queue<K, V> queueOf(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedQueue;
+        }
+    }
+
+    /**
+     * Moves a node that was hit to the tail of its queue, promoting it
+     * from probation to protected. Overflowing protected entries are
+     * demoted back to probation.
+     */
+    private void onHit(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.unlink(node);
+                node.queue = PROTECTED;
+                protectedQueue.linkLast(node);
+                while (protectedQueue.size > maxProtected) {
+                    Node<K, V> demoted = protectedQueue.head;
+                    protectedQueue.unlink(demoted);
+                    demoted.queue = PROBATION;
+                    probation.linkLast(demoted);
+                }
+                break;
+            default:
+                protectedQueue.moveToLast(node);
+        }
+    }
+
+    /**
+     * Moves window overflow to probation and, while over capacity,
+     * lets each such candidate compete with the probation victim.
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        while (window.size > maxWindow) {
+            Node<K, V> first = window.head;
+            window.unlink(first);
+            first.queue = PROBATION;
+            probation.linkLast(first);
+            if (candidate == null) {
+                candidate = first;
+            }
+        }
+        while (data.size() > maximumSize) {
+            Node<K, V> victim = probation.head;
+            if (victim == null) {
+                // everything is protected or in the window
+                victim = (protectedQueue.head != null) ? protectedQueue.head : window.head;
+            } else if (candidate != null) {
+                Node<K, V> next = candidate.next;
+                if (candidate != victim && !admit(candidate, victim)) {
+                    victim = candidate;
+                }
+                candidate = next;
+            }
+            remove(victim.key);
+        }
+    }
+
+    /**
+     * Whether the candidate should replace the victim.
+     */
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        return sketch.frequency(MyHashMap.hash(candidate.key)) > sketch.frequency(MyHashMap.hash(victim.key));
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, packed sixteen to a long.
+     * Each key is counted in four counters, one per row; the estimate
+     * is their minimum. Once the number of increments reaches ten
+     * times the cache size, all counters are halved so that the
+     * estimate tracks recent popularity rather than all time counts.
+     */
+    static final class FrequencySketch {
+
+        static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        static final long RESET_MASK = 0x7777777777777777L;
+
+        final long[] table;
+        final int tableMask;
+        final int sampleSize;
+        int size;
+
+        FrequencySketch(int maximumSize) {
+            int length = MyHashMap.tableSizeFor(Math.max(maximumSize, 16));
+            table = new long[length];
+            tableMask = length - 1;
+            sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Returns the estimated number of occurrences, at most 15.
+         */
+        int frequency(int hash) {
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        /**
+         * Counts an occurrence, unless all counters are saturated.
+         */
+        void increment(int hash) {
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++size == sampleSize) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = 0xfL << offset;
+            if ((table[i] & mask) != mask) {
+                table[i] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Halves every counter.
+         */
+        void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size >>>= 1;
+        }
+
+        /**
+         * Row i's word for the hash, from an independent mix per row.
+         */
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.terryx.datastructure.myconcurrenthashmap;
+
+/*
+ * @test
+ * @summary The parallel bulk operations of MyConcurrentHashMap agree
+ *          with a sequential pass at any parallelism threshold, run in
+ *          the caller at Long.MAX_VALUE, stop searching once found, and
+ *          see every stable mapping while writers add, remove and
+ *          resize. Also prints the time of an aggregation against
+ *          copying the map first.
+ * @run main BulkOps
+ * @run main BulkOps bench
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BulkOps {
+
+    static final long[] THRESHOLDS = {Long.MAX_VALUE, 1L << 20, 1000, 1, 0};
+
+    public static void main(String[] args) throws Throwable {
+        emptyMap();
+        for (long threshold : THRESHOLDS) {
+            agreesWithSequential(threshold);
+        }
+        sequentialAtMaxThreshold();
+        searchStops();
+        for (long threshold : THRESHOLDS) {
+            duringWrites(threshold);
+        }
+        nulls();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void emptyMap() throws Throwable {
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        for (long threshold : THRESHOLDS) {
+            equal(m.reduce(threshold, (k, v) -> k, Integer::sum), null);
+            equal(m.reduceToLong(threshold, (k, v) -> 1L, 7L, Long::sum), 7L);
+            equal(m.search(threshold, (k, v) -> k), null);
+            m.forEach(threshold, (k, v) -> {
+                throw new AssertionError();
+            });
+        }
+    }
+
+    static void agreesWithSequential(long threshold) throws Throwable {
+        int n = 100000;
+        MyConcurrentHashMap<Integer, Long> m = new MyConcurrentHashMap<>();
+        long keySum = 0, valueSum = 0, odd = 0;
+        for (int i = 0; i < n; i++) {
+            m.put(i, 3L * i);
+            keySum += i;
+            valueSum += 3L * i;
+            odd += i & 1;
+        }
+
+        final LongAdder sum = new LongAdder();
+        final Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        m.forEach(threshold, (k, v) -> {
+            sum.add(v);
+            if (!seen.add(k)) throw new AssertionError("twice " + k);
+        });
+        equal(sum.sum(), valueSum);
+        equal(seen.size(), n);
+
+        sum.reset();
+        m.forEach(threshold, (k, v) -> (k & 1) == 0 ? null : k, k -> sum.increment());
+        equal(sum.sum(), odd);
+        sum.reset();
+        m.forEachKey(threshold, k -> sum.add(k));
+        equal(sum.sum(), keySum);
+        sum.reset();
+        m.forEachValue(threshold, v -> sum.add(v));
+        equal(sum.sum(), valueSum);
+        sum.reset();
+        m.forEachEntry(threshold, e -> sum.add(e.getValue() - 3L * e.getKey()));
+        equal(sum.sum(), 0L);
+
+        equal(m.reduceToLong(threshold, (k, v) -> v, 0L, Long::sum), valueSum);
+        equal(m.reduceValuesToLong(threshold, v -> v, Long.MIN_VALUE, Math::max), 3L * (n - 1));
+        equal(m.reduceToDouble(threshold, (k, v) -> (double) k, 0.0, Double::sum), (double) keySum);
+        equal(m.reduce(threshold, (k, v) -> (long) k, Long::sum), keySum);
+        equal(m.reduce(threshold, (k, v) -> k < 10 ? (long) k : null, Long::sum), 45L);
+        equal(m.reduceKeys(threshold, Math::min), 0);
+        equal(m.reduceValues(threshold, Math::max), 3L * (n - 1));
+
+        equal(m.search(threshold, (k, v) -> k == 12345 ? v : null), 3L * 12345);
+        equal(m.search(threshold, (k, v) -> v < 0 ? k : null), null);
+        equal(m.searchKeys(threshold, k -> k == n - 1 ? "last" : null), "last");
+        equal(m.searchValues(threshold, v -> v == 0 ? "zero" : null), "zero");
+    }
+
+    /**
+     * With no threshold, nothing is forked and the whole traversal
+     * runs in the calling thread.
+     */
+    static void sequentialAtMaxThreshold() throws Throwable {
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        for (int i = 0; i < 50000; i++) {
+            m.put(i, i);
+        }
+        equal(m.batchFor(Long.MAX_VALUE), 0);
+        equal(m.batchFor(100000), 0);
+        check(m.batchFor(1) > 0);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger elsewhere = new AtomicInteger();
+        m.forEach(Long.MAX_VALUE, (k, v) -> {
+            if (Thread.currentThread() != caller) elsewhere.incrementAndGet();
+        });
+        equal(elsewhere.get(), 0);
+        equal(m.reduceToLong(Long.MAX_VALUE, (k, v) -> Thread.currentThread() == caller ? 1L : 0L,
+                0L, Long::sum), 50000L);
+    }
+
+    /**
+     * Once a match is found, the other tasks stop looking, and the
+     * result is one of the matches.
+     */
+    static void searchStops() throws Throwable {
+        final int n = 200000;
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        for (int i = 0; i < n; i++) {
+            m.put(i, i);
+        }
+        for (long threshold : THRESHOLDS) {
+            final AtomicInteger calls = new AtomicInteger();
+            Integer found = m.search(threshold, (k, v) -> {
+                calls.incrementAndGet();
+                return k % 1000 == 7 ? k : null;
+            });
+            check(found != null && found % 1000 == 7);
+            check(calls.get() < n / 2);
+        }
+    }
+
+    /**
+     * Writers keep adding and removing keys of their own while the
+     * bulk operations run, growing the table through several resizes.
+     * The stable keys, present throughout, are each seen exactly once.
+     */
+    static void duringWrites(final long threshold) throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>(16);
+        final int stable = 5000, writers = 4;
+        long stableSum = 0;
+        for (int i = 0; i < stable; i++) {
+            m.put(i, 1);
+            stableSum += i;
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            final int base = (t + 1) * 1000000;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    Random rnd = new Random(base);
+                    while (!done.get()) {
+                        for (int i = 0; i < 20000; i++) {
+                            m.put(base + i, -1);
+                        }
+                        for (int i = 0; i < 20000; i++) {
+                            m.remove(base + rnd.nextInt(20000));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (int round = 0; round < 20; round++) {
+                final int[] counts = new int[stable];
+                m.forEach(threshold, (k, v) -> {
+                    if (k < stable) {
+                        synchronized (counts) {
+                            counts[k]++;
+                        }
+                    }
+                });
+                for (int i = 0; i < stable; i++) {
+                    if (counts[i] != 1) fail("key " + i + " seen " + counts[i] + " times");
+                }
+                equal(m.reduceToLong(threshold, (k, v) -> v > 0 ? k : 0L, 0L, Long::sum), stableSum);
+                equal(m.reduceValuesToLong(threshold, v -> v > 0 ? v : 0L, 0L, Long::sum), (long) stable);
+                equal(m.search(threshold, (k, v) -> k == stable - 1 ? v : null), 1);
+            }
+        } finally {
+            done.set(true);
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+        }
+    }
+
+    static void nulls() throws Throwable {
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        m.put(1, 1);
+        List<Runnable> calls = Arrays.<Runnable>asList(
+                () -> m.forEach(1, null),
+                () -> m.forEach(1, null, x -> {
+                }),
+                () -> m.forEachKey(1, null),
+                () -> m.forEachEntry(1, null),
+                () -> m.search(1, null),
+                () -> m.searchValues(1, null),
+                () -> m.reduce(1, (k, v) -> k, null),
+                () -> m.reduceKeys(1, null),
+                () -> m.reduceToLong(1, null, 0L, Long::sum),
+                () -> m.reduceValuesToLong(1, v -> v, 0L, null),
+                () -> m.reduceToDouble(1, (k, v) -> k, 0.0, null));
+        for (Runnable r : calls) {
+            try {
+                r.run();
+                fail("expected NullPointerException");
+            } catch (NullPointerException expected) {
+                pass();
+            }
+        }
+    }
+
+    /**
+     * Sums the values of a 2M-entry map: by copying it into a HashMap
+     * first, by reduceValuesToLong in the caller, and in parallel.
+     */
+    static void bench() throws Throwable {
+        final int n = 1 << 21;
+        MyConcurrentHashMap<Integer, Long> m = new MyConcurrentHashMap<>();
+        for (int i = 0; i < n; i++) {
+            m.put(i, (long) i);
+        }
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (long v : new HashMap<>(m).values()) {
+                sum += v;
+            }
+            long copied = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long seq = m.reduceValuesToLong(Long.MAX_VALUE, v -> v, 0L, Long::sum);
+            long sequential = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long par = m.reduceValuesToLong(10000, v -> v, 0L, Long::sum);
+            long parallel = System.nanoTime() - start;
+            if (sum != seq || seq != par) throw new AssertionError();
+            System.out.printf("copy + sum: %4d ms, reduce: %4d ms, parallel reduce (%d workers): %4d ms%n",
+                    copied / 1000000, sequential / 1000000, ForkJoinPool.getCommonPoolParallelism(),
+                    parallel / 1000000);
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.terryx.datastructure.myconcurrenthashmap;
+
+/*
+ * @test
+ * @summary compute, computeIfAbsent, computeIfPresent and merge of
+ *          MyConcurrentHashMap agree with HashMap, are atomic under
+ *          contention, call the mapping function once per absent key
+ *          however many threads race for it, and leave other bins free
+ *          while it runs. Also prints the work saved for a memoizing
+ *          cache against get-then-putIfAbsent.
+ * @run main ComputeOnce
+ * @run main ComputeOnce bench
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+public class ComputeOnce {
+
+    static final int THREADS = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws Throwable {
+        randomOps();
+        singleEvaluation(false);
+        singleEvaluation(true);
+        otherBinsStayFree();
+        atomicMerge();
+        recursiveUpdate();
+        nulls();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * A key with a chosen hash, to put several keys in one bin.
+     */
+    static final class Key {
+        final int id, hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public String toString() {
+            return "Key" + id;
+        }
+    }
+
+    static void randomOps() throws Throwable {
+        Random rnd = new Random(24);
+        MyConcurrentHashMap<Key, Integer> m = new MyConcurrentHashMap<>();
+        Map<Key, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            // few distinct hashes, so most bins hold several keys
+            int id = rnd.nextInt(2000);
+            Key key = new Key(id, id % 300);
+            final int x = rnd.nextInt(10);
+            // null results remove mappings
+            Function<Key, Integer> f = k -> (x == 0) ? null : x;
+            BiFunction<Key, Integer, Integer> rf = (k, v) -> (x == 0) ? null : (v == null ? x : v + x);
+            BiFunction<Integer, Integer, Integer> mf = (a, b) -> (x == 1) ? null : a + b;
+            switch (rnd.nextInt(6)) {
+                case 0:
+                    equal(m.computeIfAbsent(key, f), expected.computeIfAbsent(key, f));
+                    break;
+                case 1:
+                    equal(m.computeIfPresent(key, rf), expected.computeIfPresent(key, rf));
+                    break;
+                case 2:
+                    equal(m.compute(key, rf), expected.compute(key, rf));
+                    break;
+                case 3:
+                    equal(m.merge(key, x + 1, mf), expected.merge(key, x + 1, mf));
+                    break;
+                case 4:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(m.mappingCount(), (long) expected.size());
+        equal(m, expected);
+    }
+
+    /**
+     * Threads race to compute the same keys; each key's function runs
+     * once. With collide, all keys share a few bins, so most of them
+     * are computed under the lock of an existing node rather than of a
+     * reservation.
+     */
+    static void singleEvaluation(final boolean collide) throws Throwable {
+        final MyConcurrentHashMap<Key, Integer> m = new MyConcurrentHashMap<>();
+        final int keys = 2000;
+        final AtomicInteger calls = new AtomicInteger();
+        final Function<Key, Integer> slow = k -> {
+            calls.incrementAndGet();
+            Thread.yield();
+            return k.id * 2;
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    barrier.await();
+                    for (int id = 0; id < keys; id++) {
+                        Key k = new Key(id, collide ? id % 7 : id);
+                        Integer v = m.computeIfAbsent(k, slow);
+                        if (v == null || v != id * 2)
+                            throw new AssertionError(k + " -> " + v);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get(60, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        pool.shutdown();
+        equal(calls.get(), keys);
+        equal(m.size(), keys);
+    }
+
+    /**
+     * While one computeIfAbsent is stuck in its function, the key reads
+     * as absent, other keys can be read and written, and a racing
+     * computeIfAbsent of the same key waits and then uses its result.
+     */
+    static void otherBinsStayFree() throws Throwable {
+        final MyConcurrentHashMap<Integer, String> m = new MyConcurrentHashMap<>(64);
+        for (int i = 1; i < 20; i++) {
+            m.put(i, "v" + i);
+        }
+        final CountDownLatch entered = new CountDownLatch(1), gate = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Function<Integer, String> gated = k -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return "computed";
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<String> first = pool.submit(() -> m.computeIfAbsent(0, gated));
+        entered.await();
+        Future<String> second = pool.submit(() -> m.computeIfAbsent(0, gated));
+
+        equal(m.get(0), null);
+        check(!m.containsKey(0));
+        equal(m.get(5), "v5");
+        equal(m.put(5, "w5"), "v5");
+        equal(m.computeIfAbsent(30, k -> "v30"), "v30");
+        equal(m.remove(7), "v7");
+        equal(m.merge(8, "!", String::concat), "v8!");
+        int n = 0;
+        for (Integer k : m.keySet()) {
+            n++;
+        }
+        equal(n, m.size());
+        check(!second.isDone());
+
+        gate.countDown();
+        equal(first.get(10, TimeUnit.SECONDS), "computed");
+        equal(second.get(10, TimeUnit.SECONDS), "computed");
+        pool.shutdown();
+        equal(calls.get(), 1);
+        equal(m.get(0), "computed");
+    }
+
+    static void atomicMerge() throws Throwable {
+        final MyConcurrentHashMap<Integer, Long> m = new MyConcurrentHashMap<>();
+        final int keys = 100, rounds = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < rounds; i++) {
+                        int k = (i + id) % keys;
+                        switch (i % 3) {
+                            case 0:
+                                m.merge(k, 1L, Long::sum);
+                                break;
+                            case 1:
+                                m.compute(k, (key, v) -> v == null ? 1L : v + 1);
+                                break;
+                            default:
+                                if (m.computeIfPresent(k, (key, v) -> v + 1) == null)
+                                    m.merge(k, 1L, Long::sum);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        long total = 0;
+        for (long v : m.values()) {
+            total += v;
+        }
+        equal(total, (long) THREADS * rounds);
+        equal(m.size(), keys);
+    }
+
+    static void recursiveUpdate() throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        try {
+            m.computeIfAbsent(1, k -> m.computeIfAbsent(1, k2 -> 2));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            pass();
+        }
+        try {
+            m.compute(1, (k, v) -> m.put(1, 3));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            pass();
+        }
+        // the reservation is gone, and the map usable
+        check(m.isEmpty());
+        equal(m.computeIfAbsent(1, k -> 4), 4);
+        equal(m.size(), 1);
+        // an exception from the function leaves no mapping
+        try {
+            m.computeIfAbsent(2, k -> {
+                throw new ArithmeticException();
+            });
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            pass();
+        }
+        check(!m.containsKey(2));
+        equal(m.size(), 1);
+    }
+
+    static void nulls() throws Throwable {
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        List<Runnable> calls = Arrays.<Runnable>asList(
+                () -> m.computeIfAbsent(null, k -> 1),
+                () -> m.computeIfAbsent(1, null),
+                () -> m.computeIfPresent(null, (k, v) -> 1),
+                () -> m.compute(1, null),
+                () -> m.merge(1, null, Integer::sum),
+                () -> m.merge(null, 1, Integer::sum));
+        for (Runnable r : calls) {
+            try {
+                r.run();
+                fail("expected NullPointerException");
+            } catch (NullPointerException expected) {
+                pass();
+            }
+        }
+        equal(m.computeIfAbsent(1, k -> null), null);
+        check(m.isEmpty());
+    }
+
+    /**
+     * Threads memoize a 20us computation over a small key space, once
+     * with computeIfAbsent and once with the check-then-act idiom.
+     */
+    static void bench() throws Throwable {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        final int keys = 1000, lookups = 20000;
+        for (int threads = 1; threads <= Math.max(2, cpus); threads <<= 1) {
+            for (final boolean atomic : new boolean[]{false, true}) {
+                final MyConcurrentHashMap<Integer, Long> m = new MyConcurrentHashMap<>();
+                final AtomicInteger calls = new AtomicInteger();
+                final Function<Integer, Long> expensive = k -> {
+                    calls.incrementAndGet();
+                    long end = System.nanoTime() + 20000, x = k;
+                    while (System.nanoTime() < end) {
+                        x = x * 31 + 7;
+                    }
+                    return x;
+                };
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                List<Future<?>> futures = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(pool.submit(() -> {
+                        Random rnd = new Random();
+                        for (int i = 0; i < lookups; i++) {
+                            Integer k = rnd.nextInt(keys);
+                            if (atomic) {
+                                m.computeIfAbsent(k, expensive);
+                            } else if (m.get(k) == null) {
+                                m.putIfAbsent(k, expensive.apply(k));
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+                long elapsed = System.nanoTime() - start;
+                pool.shutdown();
+                System.out.printf("%2d threads, %-20s %5d calls, %4d ms%n", threads,
+                        atomic ? "computeIfAbsent:" : "get + putIfAbsent:", calls.get(), elapsed / 1000000);
+            }
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.terryx.datastructure.myconcurrenthashmap;
+
+/*
+ * @test
+ * @summary MyConcurrentHashMap agrees with java.util.HashMap on one
+ *          thread, and with many threads never loses a put nor lets a
+ *          reader miss a key while bins are split across resizes. Also
+ *          prints read throughput by thread count against a
+ *          synchronized map.
+ * @run main ConcurrentAccess
+ * @run main ConcurrentAccess bench
+ */
+
+import com.terryx.datastructure.myhashmap.MyHashMap;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConcurrentAccess {
+
+    static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws Throwable {
+        randomOps();
+        views();
+        nulls();
+        concurrentPuts();
+        readersDuringResize();
+        concurrentRemoves();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void randomOps() throws Throwable {
+        Random rnd = new Random(21);
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            Integer key = rnd.nextInt(5000);
+            Integer value = rnd.nextInt(10);
+            switch (rnd.nextInt(8)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                    equal(m.putIfAbsent(key, value), expected.putIfAbsent(key, value));
+                    break;
+                case 2:
+                    equal(m.replace(key, value), expected.replace(key, value));
+                    break;
+                case 3:
+                    Integer old = rnd.nextInt(10);
+                    equal(m.replace(key, old, value), expected.replace(key, old, value));
+                    break;
+                case 4:
+                    equal(m.remove(key, value), expected.remove(key, value));
+                    break;
+                case 5:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                case 6:
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(m.size(), expected.size());
+        equal(m, expected);
+        equal(expected, m);
+        equal(m.hashCode(), expected.hashCode());
+        equal(new HashMap<>(m), expected);
+        check(m.containsValue(expected.values().iterator().next()));
+        check(!m.containsValue(-1));
+        m.clear();
+        check(m.isEmpty());
+        equal(m.size(), 0);
+        equal(m.get(1), null);
+    }
+
+    static void views() throws Throwable {
+        MyConcurrentHashMap<Integer, String> m = new MyConcurrentHashMap<>(4);
+        for (int i = 0; i < 1000; i++) {
+            m.put(i, "v" + i);
+        }
+        equal(m.keySet().size(), 1000);
+        equal(m.values().size(), 1000);
+        check(m.keySet().contains(5));
+        check(m.values().contains("v5"));
+        check(m.entrySet().contains(new AbstractMap.SimpleEntry<>(5, "v5")));
+        check(!m.entrySet().contains(new AbstractMap.SimpleEntry<>(5, "v6")));
+        check(m.keySet().remove(5));
+        check(!m.keySet().remove(5));
+        check(m.entrySet().remove(new AbstractMap.SimpleEntry<>(6, "v6")));
+        check(!m.entrySet().remove(new AbstractMap.SimpleEntry<>(7, "v6")));
+        for (Iterator<Map.Entry<Integer, String>> it = m.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, String> e = it.next();
+            if (e.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                e.setValue("w" + e.getKey());
+            }
+        }
+        equal(m.size(), 499);
+        for (Map.Entry<Integer, String> e : m.entrySet()) {
+            equal(e.getValue(), "w" + e.getKey());
+        }
+        // weakly consistent: modifying during iteration never throws
+        for (Integer k : m.keySet()) {
+            m.remove(k);
+            m.put(k + 100000, "x");
+        }
+        check(m.keySet().iterator() != null);
+        try {
+            m.keySet().add(1);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            pass();
+        }
+        try {
+            m.entrySet().iterator().next().setValue(null);
+            fail("expected NullPointerException");
+        } catch (NullPointerException expected) {
+            pass();
+        }
+        equal(new MyConcurrentHashMap<>(m), m);
+        check(!new MyConcurrentHashMap<String, String>().keySet().iterator().hasNext());
+    }
+
+    static void nulls() throws Throwable {
+        final MyConcurrentHashMap<String, String> m = new MyConcurrentHashMap<>();
+        m.put("a", "b");
+        List<Runnable> calls = Arrays.<Runnable>asList(
+                new Runnable() {
+                    public void run() {
+                        m.put(null, "v");
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.put("k", null);
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.get(null);
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.containsValue(null);
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.putIfAbsent("k", null);
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.replace("a", null, "c");
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        m.remove(null, "b");
+                    }
+                });
+        for (Runnable r : calls) {
+            try {
+                r.run();
+                fail("expected NullPointerException");
+            } catch (NullPointerException expected) {
+                pass();
+            }
+        }
+        check(!m.remove("a", null));
+        equal(m.size(), 1);
+    }
+
+    static void awaitAll(List<Future<?>> futures) throws Throwable {
+        for (Future<?> f : futures) {
+            try {
+                f.get(60, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Threads put disjoint ranges and a shared range into a small
+     * table, which resizes many times under them.
+     */
+    static void concurrentPuts() throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>(2);
+        final int perThread = 100000;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int base = t * perThread;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    barrier.await();
+                    for (int i = 0; i < perThread; i++) {
+                        m.put(base + i, base + i);
+                        m.putIfAbsent(-1 - (i % 1000), i);
+                    }
+                    return null;
+                }
+            }));
+        }
+        awaitAll(futures);
+        pool.shutdown();
+        equal(m.size(), THREADS * perThread + 1000);
+        for (int i = 0; i < THREADS * perThread; i++) {
+            if (m.get(i) == null || m.get(i) != i) {
+                fail("lost " + i);
+            }
+        }
+        int n = 0;
+        for (Integer k : m.keySet()) {
+            n++;
+        }
+        equal(n, m.size());
+        pass();
+    }
+
+    /**
+     * Keys put before the readers start must stay visible to them
+     * while writers keep adding other keys and the table keeps growing.
+     */
+    static void readersDuringResize() throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        final int stable = 1000;
+        for (int i = 0; i < stable; i++) {
+            m.put(i, i);
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        final int writers = Math.max(1, THREADS / 2);
+        for (int t = 0; t < writers; t++) {
+            final int base = stable + t * 500000;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < 500000; i++) {
+                        m.put(base + i, i);
+                    }
+                    return null;
+                }
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = writers; t < THREADS; t++) {
+            readers.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    Random rnd = new Random();
+                    while (!done.get()) {
+                        int k = rnd.nextInt(stable);
+                        Integer v = m.get(k);
+                        if (v == null || v != k)
+                            throw new AssertionError("missed " + k + " got " + v);
+                    }
+                    // a traversal during the resizes sees every stable key
+                    BitSet seen = new BitSet();
+                    for (Map.Entry<Integer, Integer> e : m.entrySet()) {
+                        if (e.getKey() < stable)
+                            seen.set(e.getKey());
+                    }
+                    if (seen.cardinality() != stable)
+                        throw new AssertionError("iterator saw " + seen.cardinality());
+                    return null;
+                }
+            }));
+        }
+        awaitAll(futures);
+        done.set(true);
+        awaitAll(readers);
+        pool.shutdown();
+        equal(m.size(), stable + writers * 500000);
+    }
+
+    /**
+     * Threads remove each other's keys; every key is removed exactly
+     * once.
+     */
+    static void concurrentRemoves() throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        final int n = 200000;
+        for (int i = 0; i < n; i++) {
+            m.put(i, i);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(new Callable<Integer>() {
+                public Integer call() {
+                    int removed = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (m.remove(i) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> f : futures) {
+            total += f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        equal(total, n);
+        check(m.isEmpty());
+    }
+
+    /**
+     * Random gets from a preloaded map by 1, 2, 4 ... threads.
+     */
+    static void bench() throws Throwable {
+        final int size = 1 << 20;
+        final MyConcurrentHashMap<Integer, Integer> chm = new MyConcurrentHashMap<>();
+        final Map<Integer, Integer> sync = Collections.synchronizedMap(new MyHashMap<Integer, Integer>());
+        for (int i = 0; i < size; i++) {
+            chm.put(i, i);
+            sync.put(i, i);
+        }
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cpus; threads <<= 1) {
+            System.out.printf("%2d threads: MyConcurrentHashMap %7.1f Mops/s, synchronized MyHashMap %7.1f Mops/s%n",
+                    threads, readRate(chm, threads, size), readRate(sync, threads, size));
+        }
+    }
+
+    static double readRate(final Map<Integer, Integer> m, int threads, final int size) throws Throwable {
+        final int gets = 2000000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    Random rnd = new Random();
+                    long sum = 0;
+                    barrier.await();
+                    for (int i = 0; i < gets; i++) {
+                        sum += m.get(rnd.nextInt(size));
+                    }
+                    return sum;
+                }
+            }));
+        }
+        barrier.await();
+        long start = System.nanoTime();
+        awaitAll(futures);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        return (double) threads * gets / elapsed * 1000;
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
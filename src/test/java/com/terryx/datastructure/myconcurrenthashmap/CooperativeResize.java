@@ -0,0 +1,239 @@
+package com.terryx.datastructure.myconcurrenthashmap;
+
+/*
+ * @test
+ * @summary While one thread's resize of MyConcurrentHashMap is stuck on
+ *          a locked bin, another writer claims the remaining strides
+ *          and moves them, and the resize completes once the bin is
+ *          released. Also prints the time to grow a map by thread count.
+ * @run main CooperativeResize
+ * @run main CooperativeResize bench
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class CooperativeResize {
+
+    public static void main(String[] args) throws Throwable {
+        helperTakesRemainingStrides();
+        repeatedGrowth();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * A key whose equals() can be made to wait, holding the lock of the
+     * bin it is being put into.
+     */
+    static final class GatedKey {
+        final int id;
+        final CountDownLatch entered, gate;
+
+        GatedKey(int id, CountDownLatch entered, CountDownLatch gate) {
+            this.id = id;
+            this.entered = entered;
+            this.gate = gate;
+        }
+
+        @Override
+        public int hashCode() {
+            return 60;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (gate != null) {
+                entered.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return o instanceof GatedKey && ((GatedKey) o).id == id;
+        }
+    }
+
+    static void awaitState(Thread t, Thread.State state) throws Throwable {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (t.getState() != state) {
+            if (System.nanoTime() > deadline) {
+                fail(t + " is " + t.getState() + ", expected " + state);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    static void helperTakesRemainingStrides() throws Throwable {
+        // a table of 64 bins, resized at 48 mappings, in strides of 16
+        final MyConcurrentHashMap<Object, Integer> m = new MyConcurrentHashMap<>(32);
+        m.put(new GatedKey(0, null, null), 0);
+        for (int i = 0; i < 46; i++) {
+            m.put(i, i);
+        }
+        AtomicReferenceArray<MyConcurrentHashMap.Node<Object, Integer>> old = m.table;
+        equal(old.length(), 64);
+        // on one CPU there is nobody to share with, and the first
+        // resizer claims the whole table as a single stride
+        boolean striped = MyConcurrentHashMap.NCPU > 1;
+
+        // hold the lock of bin 60
+        final CountDownLatch entered = new CountDownLatch(1), gate = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            public void run() {
+                m.put(new GatedKey(1, entered, gate), 1);
+            }
+        };
+        holder.start();
+        entered.await();
+
+        // the 48th mapping starts the resize; its thread claims the top
+        // stride and gets stuck at bin 60
+        Thread resizer = new Thread() {
+            public void run() {
+                m.put(100, 100);
+            }
+        };
+        resizer.start();
+        awaitState(resizer, Thread.State.BLOCKED);
+
+        // this writer joins the resize and moves all the other strides
+        m.put(200, 200);
+        for (int i = 0; i < 64; i++) {
+            boolean moved = old.get(i) instanceof MyConcurrentHashMap.ForwardingNode;
+            if (moved != (i > 60 || (striped && i < 48))) {
+                fail("bin " + i + (moved ? " moved" : " not moved"));
+            }
+        }
+        pass();
+        check(m.table == old);
+        equal(m.get(200), 200);
+        equal(m.get(5), 5);
+
+        gate.countDown();
+        holder.join();
+        resizer.join();
+        equal(m.table.length(), 128);
+        equal(m.sizeCtl, 96);
+        equal(m.size(), 50);
+        for (int i = 0; i < 46; i++) {
+            equal(m.get(i), i);
+        }
+        equal(m.get(new GatedKey(1, null, null)), 1);
+        equal(m.get(100), 100);
+    }
+
+    /**
+     * Many writers grow a map from the smallest table; afterwards the
+     * resize state is back at rest and nothing was lost.
+     */
+    static void repeatedGrowth() throws Throwable {
+        final int threads = 8, perThread = 200000;
+        for (int round = 0; round < 5; round++) {
+            final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int base = t * perThread;
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < perThread; i++) {
+                            m.put(base + i, i);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+            int n = threads * perThread;
+            equal(m.size(), n);
+            int cap = m.table.length();
+            // updates that go to a counter cell do not always check
+            // for a resize, so growth may lag a little behind the count
+            check(cap >= n / 2);
+            equal(m.sizeCtl, cap - (cap >>> 2));
+            for (int i = 0; i < n; i++) {
+                if (m.get(i) == null) {
+                    fail("lost " + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wall time for 1, 2, 4 ... threads to put 8M keys into an empty
+     * map, most of which is spent resizing.
+     */
+    static void bench() throws Throwable {
+        final int n = 1 << 23;
+        final Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cpus; threads <<= 1) {
+            for (int round = 0; round < 3; round++) {
+                final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                final int per = n / threads;
+                List<Future<?>> futures = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int from = t * per;
+                    futures.add(pool.submit(new Runnable() {
+                        public void run() {
+                            for (int i = from; i < from + per; i++) {
+                                m.put(keys[i], keys[i]);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+                long elapsed = System.nanoTime() - start;
+                pool.shutdown();
+                System.out.printf("%2d threads: %5d ms for %d puts%n", threads, elapsed / 1000000, m.size());
+            }
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
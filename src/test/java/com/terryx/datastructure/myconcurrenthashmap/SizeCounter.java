@@ -0,0 +1,224 @@
+package com.terryx.datastructure.myconcurrenthashmap;
+
+/*
+ * @test
+ * @summary The size of MyConcurrentHashMap, kept in a base count and
+ *          striped counter cells, is exact once concurrent puts and
+ *          removes have finished, and never negative while they run.
+ *          Also prints write throughput by thread count.
+ * @run main SizeCounter
+ * @run main SizeCounter bench
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SizeCounter {
+
+    static final int THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    public static void main(String[] args) throws Throwable {
+        probes();
+        singleThread();
+        for (int round = 0; round < 3; round++) {
+            contended();
+        }
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * Probes start at 0, differ between threads, and keep moving.
+     */
+    static void probes() throws Throwable {
+        final Set<Integer> seen = Collections.synchronizedSet(new HashSet<Integer>());
+        Thread[] ts = new Thread[16];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = new Thread() {
+                public void run() {
+                    if (MyConcurrentHashMap.getProbe() != 0)
+                        throw new AssertionError();
+                    int p = MyConcurrentHashMap.initProbe();
+                    if (p == 0 || MyConcurrentHashMap.getProbe() != p)
+                        throw new AssertionError();
+                    int q = MyConcurrentHashMap.advanceProbe(p);
+                    if (q == p || q == 0 || MyConcurrentHashMap.getProbe() != q)
+                        throw new AssertionError();
+                    seen.add(p);
+                }
+            };
+            ts[i].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        equal(seen.size(), ts.length);
+        // the low bit, which picks one of the first two cells, varies
+        int odd = 0;
+        for (int p : seen) {
+            odd += p & 1;
+        }
+        check(odd > 0 && odd < ts.length);
+    }
+
+    static void singleThread() throws Throwable {
+        MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        equal(m.mappingCount(), 0L);
+        check(m.isEmpty());
+        for (int i = 0; i < 1000; i++) {
+            m.put(i, i);
+            m.put(i, -i);
+        }
+        equal(m.mappingCount(), 1000L);
+        equal(m.size(), 1000);
+        for (int i = 0; i < 1000; i += 2) {
+            m.remove(i);
+            m.remove(i);
+        }
+        equal(m.mappingCount(), 500L);
+        m.clear();
+        equal(m.mappingCount(), 0L);
+        check(m.isEmpty());
+    }
+
+    /**
+     * Each thread puts and removes its own keys in bursts, so the
+     * count moves up and down under contention.
+     */
+    static void contended() throws Throwable {
+        final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>();
+        final int perThread = 20000;
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int base = t * perThread;
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    barrier.await();
+                    for (int round = 0; round < 10; round++) {
+                        for (int i = 0; i < perThread; i++) {
+                            m.put(base + i, i);
+                        }
+                        for (int i = 0; i < perThread; i += 2) {
+                            m.remove(base + i);
+                        }
+                        for (int i = 0; i < perThread; i += 2) {
+                            m.put(base + i, i);
+                        }
+                        if (round < 9) {
+                            for (int i = 0; i < perThread; i++) {
+                                m.remove(base + i);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        Future<Long> watcher = pool.submit(new Callable<Long>() {
+            public Long call() {
+                long max = 0;
+                while (!done.get()) {
+                    long n = m.mappingCount();
+                    if (n < 0 || m.size() < 0)
+                        throw new AssertionError("negative count " + n);
+                    max = Math.max(max, n);
+                }
+                return max;
+            }
+        });
+        for (Future<?> f : futures) {
+            try {
+                f.get(120, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        done.set(true);
+        check(watcher.get() <= (long) THREADS * perThread);
+        pool.shutdown();
+        equal(m.mappingCount(), (long) THREADS * perThread);
+        equal(m.size(), THREADS * perThread);
+        int n = 0;
+        for (Integer k : m.keySet()) {
+            n++;
+        }
+        equal(n, THREADS * perThread);
+        // the cells, if any, never outgrow the next power of two of the CPUs
+        MyConcurrentHashMap.CounterCell[] cs = m.counterCells;
+        check(cs == null || cs.length <= Math.max(2, Integer.highestOneBit(MyConcurrentHashMap.NCPU) << 1));
+    }
+
+    /**
+     * Puts and removes of thread-local keys by 1, 2, 4 ... threads, so
+     * that the bins do not contend and the count does.
+     */
+    static void bench() throws Throwable {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cpus; threads <<= 1) {
+            final MyConcurrentHashMap<Integer, Integer> m = new MyConcurrentHashMap<>(1 << 20);
+            final int ops = 2000000;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int base = t << 16;
+                futures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < ops; i++) {
+                            Integer k = base + (i & 0xFFFF);
+                            if (m.put(k, i) != null) {
+                                m.remove(k);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+            MyConcurrentHashMap.CounterCell[] cs = m.counterCells;
+            System.out.printf("%2d threads: %6.1f Mops/s, %d counter cells%n", threads,
+                    (double) threads * ops / elapsed * 1000, cs == null ? 0 : cs.length);
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary getAll and putAll give the same results as get and put called
+ *          key by key, across blocks, duplicates, tree bins, null keys
+ *          and incremental resizes. Also prints their throughput against
+ *          single gets on a table larger than the caches.
+ * @run main BatchOps
+ * @run main/othervm -Xmx2g BatchOps bench
+ */
+
+import java.util.*;
+
+public class BatchOps {
+
+    public static void main(String[] args) throws Throwable {
+        randomBatches(new MyHashMap<Object, Integer>(), new HashMap<Object, Integer>());
+        randomBatches(new MyHashMap<Object, Integer>(true), new HashMap<Object, Integer>());
+        randomBatches(new MyHashMap<Object, Integer>(16, 0.75f, false, true), new HashMap<Object, Integer>());
+        randomBatches(new MyLinkedHashMap<Object, Integer>(16, 0.75f, true, 500),
+                new LinkedHashMap<Object, Integer>(16, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+                        return size() > 500;
+                    }
+                });
+        errors();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static Object key(Random rnd) {
+        int i = rnd.nextInt(3000);
+        if (i == 0) {
+            return null;
+        }
+        // a quarter of the keys share their hash, so some bins are trees
+        return (i % 4 == 0) ? new TreeBins.ComparableKey(i, 4) : (Object) i;
+    }
+
+    static void randomBatches(MyHashMap<Object, Integer> m, Map<Object, Integer> expected) throws Throwable {
+        Random rnd = new Random(15);
+        for (int round = 0; round < 2000; round++) {
+            // sizes below, at and above a block, with repeated keys
+            int n = rnd.nextInt(200);
+            Object[] keys = new Object[n];
+            Integer[] values = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = key(rnd);
+                values[i] = (rnd.nextInt(10) == 0) ? null : round * 1000 + i;
+            }
+            if (rnd.nextBoolean()) {
+                m.putAll(keys, values);
+                for (int i = 0; i < n; i++) {
+                    expected.put(keys[i], values[i]);
+                }
+            } else {
+                Integer[] out = new Integer[n + 1];
+                Arrays.fill(out, -1);
+                int found = m.getAll(keys, out);
+                int expectedFound = 0;
+                for (int i = 0; i < n; i++) {
+                    equal(out[i], expected.get(keys[i]));
+                    if (expected.containsKey(keys[i])) {
+                        expectedFound++;
+                    }
+                }
+                equal(out[n], -1);
+                equal(found, expectedFound);
+            }
+            if (rnd.nextInt(4) == 0) {
+                for (int i = 0; i < 50; i++) {
+                    Object k = key(rnd);
+                    equal(m.remove(k), expected.remove(k));
+                }
+            }
+        }
+        equal(m.size(), expected.size());
+        equal(new HashMap<>(m), new HashMap<>(expected));
+        if (m instanceof MyLinkedHashMap) {
+            equal(new ArrayList<>(m.keySet()), new ArrayList<>(expected.keySet()));
+        }
+    }
+
+    static void errors() throws Throwable {
+        MyHashMap<String, String> m = new MyHashMap<>();
+        try {
+            m.getAll(new Object[2], new String[1]);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            pass();
+        }
+        try {
+            m.putAll(new String[2], new String[1]);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            pass();
+        }
+        equal(m.getAll(new Object[0], new String[0]), 0);
+        m.putAll(new String[0], new String[0]);
+        String[] out = {"x"};
+        equal(m.getAll(new Object[]{"a"}, out), 0);
+        equal(out[0], null);
+    }
+
+    static volatile long sink;
+
+    /**
+     * Prints million keys per second for a loop of get and for getAll
+     * in batches of 50 and 500, on maps of growing size.
+     */
+    static void bench() {
+        Random rnd = new Random(15);
+        for (int size : new int[]{1 << 12, 1 << 18, 1 << 22}) {
+            MyHashMap<Long, Long> m = new MyHashMap<>();
+            Long[] keys = new Long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = rnd.nextLong();
+                m.put(keys[i], keys[i]);
+            }
+            // look the keys up in random order, so that nothing is cached
+            Long[] lookups = new Long[1 << 20];
+            for (int i = 0; i < lookups.length; i++) {
+                lookups[i] = keys[rnd.nextInt(size)];
+            }
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime(), sum = 0;
+                for (Long k : lookups) {
+                    sum += m.get(k);
+                }
+                double single = rate(start);
+                double[] batched = new double[2];
+                int[] batchSizes = {50, 500};
+                for (int b = 0; b < batchSizes.length; b++) {
+                    Long[] batch = new Long[batchSizes[b]], out = new Long[batchSizes[b]];
+                    start = System.nanoTime();
+                    for (int i = 0; i + batch.length <= lookups.length; i += batch.length) {
+                        System.arraycopy(lookups, i, batch, 0, batch.length);
+                        m.getAll(batch, out);
+                        sum += out[0];
+                    }
+                    batched[b] = rate(start);
+                }
+                sink = sum;
+                System.out.printf("size %8d: get %6.1f, getAll(50) %6.1f, getAll(500) %6.1f Mkeys/s%n",
+                        size, single, batched[0], batched[1]);
+            }
+        }
+    }
+
+    static double rate(long start) {
+        return (1 << 20) * 1e3 / (System.nanoTime() - start);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
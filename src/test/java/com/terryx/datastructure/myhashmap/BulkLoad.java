@@ -0,0 +1,133 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary putAll presizes the table, and MyHashMapBuilder builds the same
+ *          map in parallel as sequential puts would.
+ */
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkLoad {
+
+    public static void main(String[] args) throws Throwable {
+        presizedPutAll();
+        for (int n : new int[]{0, 10, 100000}) {
+            builder(n, 1 << 30, new ForkJoinPool(4));
+        }
+        // duplicates and heavy collisions, so some bins are treeified
+        builder(100000, 20000, new ForkJoinPool(4));
+        builder(200000, 97, new ForkJoinPool(8));
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void presizedPutAll() throws Throwable {
+        Map<Integer, Integer> src = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            src.put(i, -i);
+        }
+        MyHashMap<Integer, Integer> m = new MyHashMap<>();
+        m.putAll(src);
+        int cap = m.table.length;
+        equal(cap, MyHashMap.tableSizeFor((int) (100000 / 0.75f) + 1));
+        equal(m.size(), 100000);
+        for (int i = 0; i < 100000; i++) {
+            equal(m.get(i), -i);
+        }
+
+        // into a non-empty map, and from another MyHashMap
+        MyHashMap<Integer, Integer> m2 = new MyHashMap<>(4);
+        m2.put(-1, 1);
+        m2.putAll(m);
+        equal(m2.table.length, cap);
+        equal(m2.size(), 100001);
+        equal(m2.get(-1), 1);
+        equal(m2.get(99999), -99999);
+
+        MyHashMap<Integer, Integer> copy = new MyHashMap<>(src);
+        equal(copy.size(), src.size());
+        equal(copy.table.length, cap);
+    }
+
+    /**
+     * Key with a limited number of hash codes, to force collisions.
+     */
+    static final class Key implements Comparable<Key> {
+        final int id, hash;
+
+        Key(int id, int hashes) {
+            this.id = id;
+            this.hash = id % hashes;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        public int compareTo(Key o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    static void builder(int n, int hashes, ForkJoinPool pool) throws Throwable {
+        Random rnd = new Random(n);
+        MyHashMapBuilder<Key, Integer> b = new MyHashMapBuilder<Key, Integer>().pool(pool);
+        MyHashMap<Key, Integer> expected = new MyHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Key k = new Key(rnd.nextInt(Math.max(1, n)), hashes);
+            b.put(k, i);
+            expected.put(k, i);
+        }
+        MyHashMap<Key, Integer> m = b.build();
+        pool.shutdown();
+        equal(m.size(), expected.size());
+        int nodes = 0;
+        for (int i = 0; m.table != null && i < m.table.length; i++) {
+            MyHashMap.Node<Key, Integer> e = m.table[i];
+            if (e instanceof MyHashMap.TreeNode) {
+                check(MyHashMap.TreeNode.checkInvariants((MyHashMap.TreeNode<Key, Integer>) e));
+            }
+            for (; e != null; e = e.next) {
+                nodes++;
+                equal(e.hash & (m.table.length - 1), i);
+                equal(e.value, expected.get(e.key));
+            }
+        }
+        equal(nodes, expected.size());
+        // the built map keeps working as a normal map
+        m.put(new Key(-1, hashes), -1);
+        equal(m.get(new Key(-1, hashes)), -1);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyHashMap.freeze() returns an immutable map that holds exactly
+ *          the mappings of the source, with no empty slots, including
+ *          keys whose hash codes collide entirely.
+ */
+
+import java.util.*;
+
+public class Freeze {
+
+    public static void main(String[] args) throws Throwable {
+        for (int n : new int[]{0, 1, 2, 5, 6, 100, 1000, 100000}) {
+            randomKeys(n);
+        }
+        collidingKeys();
+        nullKeyAndValues();
+        immutable();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void verify(Map<?, ?> expected, MyFrozenHashMap<?, ?> frozen) throws Throwable {
+        equal(frozen.size(), expected.size());
+        equal(frozen.table.length, 2 * expected.size());
+        for (Map.Entry<?, ?> e : expected.entrySet()) {
+            if (!frozen.containsKey(e.getKey()) || !Objects.equals(frozen.get(e.getKey()), e.getValue())) {
+                fail("lost " + e);
+            }
+        }
+        // iteration sees each mapping exactly once
+        equal(new HashMap<Object, Object>(frozen), expected);
+        int seen = 0;
+        for (Map.Entry<?, ?> e : frozen.entrySet()) {
+            seen++;
+        }
+        equal(seen, expected.size());
+        check(frozen.equals(expected) && expected.equals(frozen));
+        equal(frozen.hashCode(), expected.hashCode());
+    }
+
+    static void randomKeys(int n) throws Throwable {
+        Random rnd = new Random(n);
+        MyHashMap<String, Integer> m = new MyHashMap<>();
+        Map<String, Integer> expected = new HashMap<>();
+        while (m.size() < n) {
+            String key = Long.toString(rnd.nextLong(), 36);
+            m.put(key, key.length());
+            expected.put(key, key.length());
+        }
+        MyFrozenHashMap<String, Integer> frozen = m.freeze();
+        verify(expected, frozen);
+        // a 32-bit hash collision is likely among 100000 keys
+        check(frozen.overflow == null || n > 1000);
+        // misses
+        for (int i = 0; i < Math.min(n, 1000); i++) {
+            String key = "absent" + i;
+            check(frozen.get(key) == null && !frozen.containsKey(key));
+        }
+        // the copy is detached from the source
+        m.put("new key", 1);
+        check(!frozen.containsKey("new key"));
+        // and any map can be frozen
+        verify(expected, new MyFrozenHashMap<>(expected));
+    }
+
+    static void collidingKeys() throws Throwable {
+        MyHashMap<TreeBins.ComparableKey, Integer> m = new MyHashMap<>();
+        Map<TreeBins.ComparableKey, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            TreeBins.ComparableKey key = new TreeBins.ComparableKey(i, i < 1000 ? 7 : 3000);
+            m.put(key, i);
+            expected.put(key, i);
+        }
+        MyFrozenHashMap<TreeBins.ComparableKey, Integer> frozen = m.freeze();
+        verify(expected, frozen);
+        // one slot for each of the 7 shared hashes and the 2000 distinct ones
+        equal(frozen.slots, 7 + 2000);
+        equal(frozen.overflow.size(), 3000 - frozen.slots);
+        check(!frozen.containsKey(new TreeBins.ComparableKey(5000, 7)));
+    }
+
+    static void nullKeyAndValues() throws Throwable {
+        MyHashMap<String, String> m = new MyHashMap<>();
+        m.put(null, "null key");
+        m.put("null value", null);
+        m.put("x", "y");
+        MyFrozenHashMap<String, String> frozen = m.freeze();
+        equal(frozen.get(null), "null key");
+        check(frozen.containsKey("null value") && frozen.get("null value") == null);
+        check(frozen.containsValue(null) && frozen.containsValue("y") && !frozen.containsValue("z"));
+        check(!frozen.containsKey("z"));
+    }
+
+    static void immutable() throws Throwable {
+        MyHashMap<String, Integer> m = new MyHashMap<>();
+        m.put("a", 1);
+        MyFrozenHashMap<String, Integer> frozen = m.freeze();
+        try {
+            frozen.put("b", 2);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            pass();
+        }
+        try {
+            frozen.remove("a");
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            pass();
+        }
+        try {
+            Iterator<Map.Entry<String, Integer>> it = frozen.entrySet().iterator();
+            it.next().setValue(3);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            pass();
+        }
+        equal(frozen.get("a"), 1);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -25,19 +25,15 @@ public class Get {
                             Boolean oldValue) throws Throwable {
         if (oldValue != null) {
             check(m.containsValue(oldValue));
-        /* commented since not implement */
-//            check(m.values().contains(oldValue));
+            check(m.values().contains(oldValue));
         }
         equal(m.put(key, value), oldValue);
         equal(m.get(key), value);
         check(!m.isEmpty());
         check(m.containsValue(value));
         check(m.containsKey(key));
-
-        /* commented since not implement */
-
-//        check(m.keySet().contains(key));
-//        check(m.values().contains(value));
+        check(m.keySet().contains(key));
+        check(m.values().contains(value));
     }
 
     private static void testMap(Map<Character, Boolean> m) throws Throwable {
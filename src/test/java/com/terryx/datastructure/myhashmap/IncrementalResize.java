@@ -0,0 +1,88 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary In incremental resize mode a put that crosses the threshold
+ *          only allocates the new table; later writes move a bounded
+ *          number of bins and lookups see every mapping meanwhile.
+ */
+
+import java.util.*;
+
+public class IncrementalResize {
+
+    public static void main(String[] args) throws Throwable {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>(true);
+        int resizes = 0;
+        for (int i = 0; i < 200000; i++) {
+            int cap = m.table == null ? 0 : m.table.length;
+            int transferred = m.oldTable == null ? 0 : m.transferIndex;
+            m.put(i, i);
+            if (m.table.length != cap && cap != 0) {
+                resizes++;
+                // nothing moved yet by the put that triggered the resize
+                check(m.oldTable != null && m.oldTable.length == cap);
+                equal(m.transferIndex, 0);
+            } else if (m.oldTable != null) {
+                equal(m.transferIndex - transferred, MyHashMap.TRANSFER_STRIDE);
+            }
+            if (m.oldTable != null && (i & 127) == 0) {
+                // lookups consult both tables during the transfer
+                for (int j = 0; j <= i; j += 7) {
+                    equal(m.get(j), j);
+                }
+                check(!m.containsKey(-1));
+                check(m.containsValue(i));
+            }
+        }
+        check(resizes > 10);
+        equal(m.size(), 200000);
+
+        // removes advance the transfer as well
+        MyHashMap<Integer, Integer> r = new MyHashMap<>(true);
+        int i = 0;
+        while (r.oldTable == null) {
+            r.put(i, i);
+            i++;
+        }
+        int oldCap = r.oldTable.length;
+        for (int j = 0; r.oldTable != null; j++) {
+            equal(r.remove(j), j);
+        }
+        equal(r.size(), i - (oldCap + MyHashMap.TRANSFER_STRIDE - 1) / MyHashMap.TRANSFER_STRIDE);
+        for (int j = 0; j < i; j++) {
+            equal(r.get(j), j < i - r.size() ? null : j);
+        }
+        r.clear();
+        check(r.isEmpty() && r.oldTable == null && r.get(i - 1) == null);
+
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
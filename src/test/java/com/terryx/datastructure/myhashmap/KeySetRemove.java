@@ -12,7 +12,7 @@ import java.util.*;
 
 public class KeySetRemove {
     public static void main(String args[]) throws Exception {
-        Map m[] = {new HashMap(), new TreeMap()};
+        Map m[] = {new MyHashMap(), new MyLinkedHashMap(), new TreeMap()};
         for (int i = 0; i < m.length; i++) {
             m[i].put("bananas", null);
             if (!m[i].keySet().remove("bananas"))
@@ -0,0 +1,229 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary With keyed hashing, Strings crafted to share a hashCode() are
+ *          spread over the table, every map hashes differently, and maps
+ *          still copy to and from each other correctly. Also prints the
+ *          cost of keyed hashing against the plain spreader.
+ * @run main KeyedHashing
+ * @run main KeyedHashing bench
+ */
+
+import java.util.*;
+
+public class KeyedHashing {
+
+    public static void main(String[] args) throws Throwable {
+        sipHashVectors();
+        floodedStrings();
+        perInstanceKeys();
+        copies();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * Returns 2^bits distinct Strings with equal hashCode(), built from
+     * the colliding pair "Aa" and "BB".
+     */
+    static List<String> collidingStrings(int bits) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1 << bits; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < bits; b++) {
+                sb.append(((i >>> b) & 1) == 0 ? "Aa" : "BB");
+            }
+            keys.add(sb.toString());
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the length of the longest bin, counting tree bins by their
+     * nodes.
+     */
+    static int longestBin(MyHashMap<?, ?> m) {
+        int max = 0;
+        for (MyHashMap.Node<?, ?> b : m.table) {
+            int n = 0;
+            for (MyHashMap.Node<?, ?> e = b; e != null; e = e.next) {
+                n++;
+            }
+            max = Math.max(max, n);
+        }
+        return max;
+    }
+
+    static void sipHashVectors() throws Throwable {
+        // reference values of SipHash-1-3 over the UTF-16LE bytes, with
+        // key bytes 00..0f, folded to 32 bits
+        long k0 = 0x0706050403020100L, k1 = 0x0f0e0d0c0b0a0908L;
+        String[] inputs = {"", "a", "abc", "abcd", "abcde", "hello, world"};
+        int[] expected = {0xaea3c584, 0x7ed1bb4a, 0x64978778, 0xa08cdd87, 0xa653e6e8, 0xc5dd1ee7};
+        for (int i = 0; i < inputs.length; i++) {
+            equal(Integer.toHexString(MyHashMap.sipHash13(k0, k1, inputs[i])), Integer.toHexString(expected[i]));
+        }
+    }
+
+    static void floodedStrings() throws Throwable {
+        List<String> keys = collidingStrings(14);
+        MyHashMap<String, Integer> plain = new MyHashMap<>();
+        MyHashMap<String, Integer> keyed = new MyHashMap<>(16, 0.75f, false, true);
+        for (int i = 0; i < keys.size(); i++) {
+            plain.put(keys.get(i), i);
+            keyed.put(keys.get(i), i);
+        }
+        equal(longestBin(plain), keys.size());
+        check(longestBin(keyed) < 16);
+        for (int i = 0; i < keys.size(); i++) {
+            equal(keyed.get(keys.get(i)), i);
+        }
+        equal(keyed, plain);
+        for (int i = 0; i < keys.size(); i += 2) {
+            equal(keyed.remove(keys.get(i)), i);
+        }
+        equal(keyed.size(), keys.size() / 2);
+        check(keyed.containsKey(keys.get(1)) && !keyed.containsKey(keys.get(0)));
+        keyed.put(null, -1);
+        equal(keyed.get(null), -1);
+
+        // equal hashCodes of other keys stay together, in a tree bin
+        MyHashMap<TreeBins.ComparableKey, Integer> m = new MyHashMap<>(16, 0.75f, false, true);
+        for (int i = 0; i < 1000; i++) {
+            m.put(new TreeBins.ComparableKey(i, 1), i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            equal(m.get(new TreeBins.ComparableKey(i, 1)), i);
+        }
+        // but hashCodes that only differ above the mask are spread
+        MyHashMap<Integer, Integer> ints = new MyHashMap<>(16, 0.75f, false, true);
+        for (int i = 0; i < 10000; i++) {
+            ints.put(i << 20, i);
+        }
+        check(longestBin(ints) < 16);
+    }
+
+    static void perInstanceKeys() throws Throwable {
+        MyHashMap<String, String> a = new MyHashMap<>(16, 0.75f, false, true);
+        MyHashMap<String, String> b = new MyHashMap<>(16, 0.75f, false, true);
+        check(a.hashSeed0 != b.hashSeed0 || a.hashSeed1 != b.hashSeed1);
+        int same = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            equal(a.hashOf(key), a.hashOf(new String(key.toCharArray())));
+            if (a.hashOf(key) == b.hashOf(key)) {
+                same++;
+            }
+        }
+        check(same < 5);
+        MyHashMap<String, String> plain = new MyHashMap<>();
+        equal(plain.hashOf("key"), MyHashMap.hash("key"));
+    }
+
+    static void copies() throws Throwable {
+        MyHashMap<String, Integer> keyed = new MyHashMap<>(16, 0.75f, false, true);
+        for (int i = 0; i < 5000; i++) {
+            keyed.put("k" + i, i);
+        }
+        MyHashMap<String, Integer> plain = new MyHashMap<>(keyed);
+        MyHashMap<String, Integer> other = new MyHashMap<>(16, 0.75f, false, true);
+        other.putAll(keyed);
+        MyLinkedHashMap<String, Integer> linked = new MyLinkedHashMap<>(keyed);
+        MyHashMap<String, Integer> back = new MyHashMap<>(16, 0.75f, false, true);
+        back.putAll(linked);
+        MyFrozenHashMap<String, Integer> frozen = keyed.freeze();
+        for (int i = 0; i < 5000; i++) {
+            String key = "k" + i;
+            equal(plain.get(key), i);
+            equal(other.get(key), i);
+            equal(linked.get(key), i);
+            equal(back.get(key), i);
+            equal(frozen.get(key), i);
+        }
+        equal(new HashMap<>(keyed), new HashMap<>(plain));
+    }
+
+    static volatile Object sink;
+
+    /**
+     * Prints ns per get for the plain spreader and keyed hashing.
+     */
+    static void bench() {
+        List<String> words = new ArrayList<>();
+        Random rnd = new Random(14);
+        for (int i = 0; i < 100000; i++) {
+            char[] cs = new char[4 + rnd.nextInt(16)];
+            for (int j = 0; j < cs.length; j++) {
+                cs[j] = (char) ('a' + rnd.nextInt(26));
+            }
+            words.add(new String(cs));
+        }
+        List<Integer> ints = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            ints.add(rnd.nextInt());
+        }
+        List<String> flood = collidingStrings(13);
+        System.out.printf("%-22s %10s %10s%n", "ns/get", "plain", "keyed");
+        for (int round = 0; round < 3; round++) {
+            row("String, 4-20 chars", words);
+            row("Integer", ints);
+            row("String, colliding", flood);
+        }
+    }
+
+    static <K> void row(String name, List<K> keys) {
+        MyHashMap<K, K> plain = new MyHashMap<>();
+        MyHashMap<K, K> keyed = new MyHashMap<>(16, 0.75f, false, true);
+        for (K k : keys) {
+            plain.put(k, k);
+            keyed.put(k, k);
+        }
+        System.out.printf("%-22s %10.1f %10.1f%n", name, time(plain, keys), time(keyed, keys));
+    }
+
+    static <K> double time(MyHashMap<K, K> m, List<K> keys) {
+        int reps = Math.max(1, 2000000 / keys.size());
+        long start = System.nanoTime();
+        for (int r = 0; r < reps; r++) {
+            for (K k : keys) {
+                sink = m.get(k);
+            }
+        }
+        return (double) (System.nanoTime() - start) / ((long) reps * keys.size());
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyLinkedHashMap keeps its entries linked in insertion or access
+ *          order, through tree bins and resizes, and evicts the eldest
+ *          entry once it grows past its maximum size.
+ */
+
+import java.util.*;
+
+public class LruEviction {
+
+    public static void main(String[] args) throws Throwable {
+        insertionOrder();
+        accessOrder();
+        maxSize();
+        removeEldestOverride();
+        treeBins();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * Returns the keys in linked order, checking the back links too.
+     */
+    static List<Object> order(MyLinkedHashMap<?, ?> m) throws Throwable {
+        List<Object> keys = new ArrayList<>();
+        MyLinkedHashMap.Entry<?, ?> prev = null;
+        for (MyLinkedHashMap.Entry<?, ?> e = m.head; e != null; e = e.after) {
+            check(e.before == prev);
+            keys.add(e.key);
+            prev = e;
+        }
+        check(m.tail == prev);
+        equal(keys.size(), m.size());
+        return keys;
+    }
+
+    static void insertionOrder() throws Throwable {
+        MyLinkedHashMap<Integer, String> m = new MyLinkedHashMap<>();
+        for (int i = 100; i > 0; i--) {
+            m.put(i, "v" + i);
+        }
+        m.get(50);
+        m.put(100, "again");
+        m.remove(1);
+        List<Object> expected = new ArrayList<>();
+        for (int i = 100; i > 1; i--) {
+            expected.add(i);
+        }
+        equal(order(m), expected);
+        check(m.containsValue("again") && !m.containsValue("v1"));
+        m.clear();
+        check(m.head == null && m.tail == null);
+        m.put(7, "seven");
+        equal(order(m), Arrays.<Object>asList(7));
+    }
+
+    static void accessOrder() throws Throwable {
+        MyLinkedHashMap<String, Integer> m = new MyLinkedHashMap<>(16, 0.75f, true);
+        m.put("a", 1);
+        m.put("b", 2);
+        m.put("c", 3);
+        m.get("a");
+        equal(order(m), Arrays.<Object>asList("b", "c", "a"));
+        m.put("b", 20);
+        equal(order(m), Arrays.<Object>asList("c", "a", "b"));
+        m.get("b");
+        m.get("missing");
+        equal(order(m), Arrays.<Object>asList("c", "a", "b"));
+        m.remove("a");
+        equal(order(m), Arrays.<Object>asList("c", "b"));
+    }
+
+    static void maxSize() throws Throwable {
+        MyLinkedHashMap<Integer, Integer> m = new MyLinkedHashMap<>(16, 0.75f, true, 3);
+        m.put(1, 1);
+        m.put(2, 2);
+        m.put(3, 3);
+        m.get(1);
+        m.put(4, 4);
+        equal(m.size(), 3);
+        check(!m.containsKey(2));
+        equal(order(m), Arrays.<Object>asList(3, 1, 4));
+
+        // replacing a value is not an insertion and evicts nothing
+        m.put(3, 30);
+        equal(order(m), Arrays.<Object>asList(1, 4, 3));
+
+        Random rnd = new Random(8);
+        LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > 100;
+            }
+        };
+        m = new MyLinkedHashMap<>(16, 0.75f, true, 100);
+        for (int i = 0; i < 100000; i++) {
+            int key = rnd.nextInt(300);
+            if (rnd.nextBoolean()) {
+                equal(m.put(key, i), expected.put(key, i));
+            } else {
+                equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(order(m), new ArrayList<Object>(expected.keySet()));
+
+        try {
+            new MyLinkedHashMap<>(16, 0.75f, true, 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expectedException) {
+            pass();
+        }
+    }
+
+    static void removeEldestOverride() throws Throwable {
+        final List<Object> evicted = new ArrayList<>();
+        MyLinkedHashMap<Integer, Integer> m = new MyLinkedHashMap<Integer, Integer>() {
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                if (eldest.getValue() < 0) {
+                    evicted.add(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        m.put(1, -1);
+        m.put(2, 2);
+        m.put(3, -3);
+        equal(evicted, Arrays.<Object>asList(1));
+        equal(order(m), Arrays.<Object>asList(2, 3));
+    }
+
+    static void treeBins() throws Throwable {
+        // colliding keys are treeified, split by resize and untreeified
+        // again, all without losing their place in the list
+        MyLinkedHashMap<TreeBins.ComparableKey, Integer> m = new MyLinkedHashMap<>(16, 0.75f, true);
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            TreeBins.ComparableKey key = new TreeBins.ComparableKey(i, 4);
+            m.put(key, i);
+            expected.add(key);
+        }
+        check(m.table[0] instanceof MyHashMap.TreeNode);
+        for (int i = 0; i < 2000; i += 3) {
+            TreeBins.ComparableKey key = new TreeBins.ComparableKey(i, 4);
+            m.get(key);
+            expected.remove(key);
+            expected.add(key);
+        }
+        equal(order(m), expected);
+
+        // putAll grows the table in one pass, re-linking tree bin nodes
+        Map<TreeBins.ComparableKey, Integer> more = new LinkedHashMap<>();
+        for (int i = 2000; i < 10000; i++) {
+            TreeBins.ComparableKey key = new TreeBins.ComparableKey(i, 4);
+            more.put(key, i);
+            expected.add(key);
+        }
+        int oldCap = m.table.length;
+        m.putAll(more);
+        check(m.table.length > oldCap);
+        equal(order(m), expected);
+        for (int i = 0; i < 10000; i++) {
+            equal(m.get(new TreeBins.ComparableKey(i, 4)), i);
+        }
+        expected.clear();
+        for (int i = 0; i < 10000; i++) {
+            expected.add(new TreeBins.ComparableKey(i, 4));
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            if (i % 2500 != 0) {
+                TreeBins.ComparableKey key = new TreeBins.ComparableKey(i, 4);
+                m.remove(key);
+                expected.remove(key);
+            }
+        }
+        check(!(m.table[0] instanceof MyHashMap.TreeNode));
+        equal(order(m), expected);
+
+        MyLinkedHashMap<Object, Object> copy = new MyLinkedHashMap<>(m);
+        equal(order(copy), expected);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyMappedHashMap keeps its mappings across close and reopen
+ *          without replaying its log, recovers a prefix of the operations
+ *          when it was not closed, and compacts its log whether records
+ *          die by put or by remove.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+public class MappedReopen {
+
+    static final int SEGMENT_SIZE = 4096;
+
+    public static void main(String[] args) throws Throwable {
+        Path dir = Files.createTempDirectory("mapped");
+        try {
+            reopen(dir.resolve("reopen"));
+            recovery(dir.resolve("recovery"));
+            tornRecord(dir.resolve("torn"));
+            compaction(dir.resolve("compaction"));
+            churn(dir.resolve("churn"));
+            iterator(dir.resolve("iterator"));
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path f : files) {
+                    Files.delete(f);
+                }
+            }
+            Files.delete(dir);
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static MyMappedHashMap<String, String> open(Path path) throws IOException {
+        return new MyMappedHashMap<>(path, Serializer.STRING, Serializer.STRING, SEGMENT_SIZE);
+    }
+
+    static void randomOps(Map<String, String> m, Map<String, String> expected, Random rnd, int n) throws Throwable {
+        for (int i = 0; i < n; i++) {
+            String key = "key" + rnd.nextInt(2000);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                case 2:
+                    String value = "value" + i + (rnd.nextBoolean() ? "" : "-longer");
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+    }
+
+    static void reopen(Path path) throws Throwable {
+        Map<String, String> expected = new HashMap<>();
+        MyMappedHashMap<String, String> m = open(path);
+        check(m.isEmpty());
+        randomOps(m, expected, new Random(1), 20000);
+        check(m.capacity > MyMappedHashMap.DEFAULT_INITIAL_CAPACITY);
+        m.close();
+
+        m = open(path);
+        check(!m.recovered);
+        equal(m.size(), expected.size());
+        equal(new HashMap<>(m), expected);
+        // and once more after changing it
+        randomOps(m, expected, new Random(2), 20000);
+        m.close();
+        m = open(path);
+        check(!m.recovered);
+        equal(new HashMap<>(m), expected);
+
+        m.clear();
+        check(m.isEmpty());
+        m.put("only", "one");
+        m.close();
+        m = open(path);
+        equal(new HashMap<>(m), Collections.singletonMap("only", "one"));
+        m.close();
+    }
+
+    static void recovery(Path path) throws Throwable {
+        Map<String, String> expected = new HashMap<>();
+        MyMappedHashMap<String, String> m = open(path);
+        randomOps(m, expected, new Random(3), 20000);
+        m.sync();
+        // crash: the map is never closed
+        MyMappedHashMap<String, String> reopened = open(path);
+        check(reopened.recovered);
+        equal(reopened.size(), expected.size());
+        equal(new HashMap<>(reopened), expected);
+        equal(reopened.garbage, m.garbage);
+        randomOps(reopened, expected, new Random(4), 5000);
+        reopened.close();
+        reopened = open(path);
+        check(!reopened.recovered);
+        equal(new HashMap<>(reopened), expected);
+        reopened.close();
+    }
+
+    static void tornRecord(Path path) throws Throwable {
+        Map<String, String> expected = new HashMap<>();
+        MyMappedHashMap<String, String> m = open(path);
+        randomOps(m, expected, new Random(5), 3000);
+        Map<String, String> before = new HashMap<>(expected);
+        m.put("last", "write");
+        m.put("after", "it");
+        m.sync();
+        // damage the second to last record, as if its page never made it
+        long torn = m.dataEnd - (MyMappedHashMap.RECORD_HEADER + "after".length() + "it".length())
+                - (MyMappedHashMap.RECORD_HEADER + "last".length() + "write".length());
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{'X'}), torn + MyMappedHashMap.RECORD_HEADER);
+        }
+        MyMappedHashMap<String, String> reopened = open(path);
+        check(reopened.recovered);
+        // both writes are gone, even though the later one was intact
+        equal(new HashMap<>(reopened), before);
+        // and so is everything after them, up to the end of the file
+        long end = reopened.dataEnd;
+        check(end <= torn);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer tail = ByteBuffer.allocate((int) (ch.size() - end));
+            while (tail.hasRemaining() && ch.read(tail, end + tail.position()) > 0) {
+            }
+            check(!tail.hasRemaining());
+            for (int i = 0; i < tail.capacity(); i++) {
+                if (tail.get(i) != 0) {
+                    fail("byte " + (end + i) + " not zeroed");
+                }
+            }
+        }
+        reopened.put("new", "record");
+        reopened.close();
+        reopened = open(path);
+        before.put("new", "record");
+        equal(new HashMap<>(reopened), before);
+        reopened.close();
+    }
+
+    static void compaction(Path path) throws Throwable {
+        MyMappedHashMap<String, String> m = open(path);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 500; i++) {
+                m.put("key" + i, "round" + round);
+            }
+        }
+        equal(m.size(), 500);
+        // live data is about 45 bytes a mapping
+        check(m.dataEnd < 3 * 45 * 500);
+        check(Files.size(path) < 4 * 45 * 500 + SEGMENT_SIZE);
+        for (int i = 0; i < 500; i++) {
+            equal(m.get("key" + i), "round99");
+        }
+        for (int i = 0; i < 500; i += 2) {
+            m.remove("key" + i);
+        }
+        m.compact();
+        equal(m.garbage, 0L);
+        equal(m.size(), 250);
+        m.close();
+        m = open(path);
+        equal(m.size(), 250);
+        for (int i = 0; i < 500; i++) {
+            equal(m.get("key" + i), i % 2 == 0 ? null : "round99");
+        }
+        m.close();
+        try {
+            open(path).put("big", new String(new char[SEGMENT_SIZE]));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            pass();
+        }
+    }
+
+    /**
+     * Keys are removed and inserted again, so that the log fills with
+     * tombstones; it must not outgrow a few times the live data.
+     */
+    static void churn(Path path) throws Throwable {
+        MyMappedHashMap<String, String> m = open(path);
+        for (int i = 0; i < 100; i++) {
+            m.put("key" + i, "value" + i);
+        }
+        long max = 0;
+        for (int round = 0; round < 500; round++) {
+            for (int i = 0; i < 100; i++) {
+                m.remove("key" + i);
+                m.put("key" + i, "value" + i);
+            }
+            max = Math.max(max, Files.size(path));
+        }
+        equal(m.size(), 100);
+        // live data is about 45 bytes a mapping
+        check(max < 4 * 45 * 100 + 2 * SEGMENT_SIZE);
+        check(m.garbage <= Math.max(SEGMENT_SIZE, m.dataEnd >>> 1));
+        m.close();
+        m = open(path);
+        for (int i = 0; i < 100; i++) {
+            equal(m.get("key" + i), "value" + i);
+        }
+        m.close();
+    }
+
+    static void iterator(Path path) throws Throwable {
+        MyMappedHashMap<String, String> m = open(path);
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            m.put("k" + i, "v" + i);
+        }
+        for (Iterator<Map.Entry<String, String>> it = m.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> e = it.next();
+            if (e.getKey().hashCode() % 3 == 0) {
+                it.remove();
+            } else {
+                e.setValue(e.getValue() + "!");
+                expected.put(e.getKey(), e.getValue());
+            }
+        }
+        equal(new HashMap<>(m), expected);
+        m.close();
+        m = open(path);
+        equal(new HashMap<>(m), expected);
+        m.close();
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyOffHeapHashMap agrees with java.util.HashMap while values grow
+ *          and shrink, compacts its slabs whether records die by put or
+ *          by remove, and compares keys by their
+ *          serialized bytes.
+ */
+
+import java.util.*;
+
+public class OffHeap {
+
+    public static void main(String[] args) throws Throwable {
+        randomOps(MyOffHeapHashMap.DEFAULT_SLAB_SIZE);
+        randomOps(256);
+        compaction();
+        churn();
+        largeRecords();
+        iterator();
+        byteArrayKeys();
+        nulls();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static String randomValue(Random rnd) {
+        char[] cs = new char[rnd.nextInt(40)];
+        for (int i = 0; i < cs.length; i++) {
+            // some multi-byte UTF-8 as well
+            cs[i] = (char) (rnd.nextInt(10) == 0 ? 0x400 + rnd.nextInt(200) : 'a' + rnd.nextInt(26));
+        }
+        return new String(cs);
+    }
+
+    static void randomOps(int slabSize) throws Throwable {
+        Random rnd = new Random(slabSize);
+        MyOffHeapHashMap<String, String> m = new MyOffHeapHashMap<>(Serializer.STRING, Serializer.STRING,
+                0, 0.75f, slabSize);
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            String key = "k" + rnd.nextInt(5000);
+            switch (rnd.nextInt(5)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                case 2:
+                    String value = randomValue(rnd);
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                case 3:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(m.size(), expected.size());
+        equal(new HashMap<>(m), expected);
+        check(m.equals(expected));
+        m.clear();
+        check(m.isEmpty() && m.get("k1") == null);
+        m.put("again", "x");
+        equal(m.get("again"), "x");
+    }
+
+    static void compaction() throws Throwable {
+        MyOffHeapHashMap<Integer, String> m = new MyOffHeapHashMap<>(Serializer.INTEGER, Serializer.STRING,
+                1000, 0.75f, 4096);
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 1000; i++) {
+                // a different length every round, so each put relocates
+                m.put(i, round % 2 == 0 ? "even" + round : "odd" + round + "!");
+            }
+        }
+        equal(m.size(), 1000);
+        for (int i = 0; i < 1000; i++) {
+            equal(m.get(i), "odd199!");
+        }
+        // live data is about 20 bytes a mapping
+        check(m.usedBytes < 3 * 20 * 1000);
+        check(m.offHeapBytes() < 1 << 20);
+    }
+
+    /**
+     * Keys are inserted and removed again, so only a few are ever
+     * live; the slabs of the dead records must be given back.
+     */
+    static void churn() throws Throwable {
+        MyOffHeapHashMap<Integer, String> m = new MyOffHeapHashMap<>(Serializer.INTEGER, Serializer.STRING,
+                0, 0.75f, 1 << 16);
+        for (int i = 0; i < 2000000; i++) {
+            m.put(i, "value" + i);
+            if (i >= 100) {
+                m.remove(i - 100);
+            }
+        }
+        equal(m.size(), 100);
+        for (int i = 2000000 - 100; i < 2000000; i++) {
+            equal(m.get(i), "value" + i);
+        }
+        check(m.garbageBytes <= 1 << 16);
+        check(m.offHeapBytes() < 4 << 16);
+
+        // removing through the iterator compacts as well
+        for (int i = 0; i < 20000; i++) {
+            m.put(i, "value" + i);
+        }
+        for (Iterator<Integer> it = m.keySet().iterator(); it.hasNext(); ) {
+            if (it.next() < 20000) {
+                it.remove();
+            }
+        }
+        equal(m.size(), 100);
+        check(m.garbageBytes <= 1 << 16);
+    }
+
+    static void largeRecords() throws Throwable {
+        MyOffHeapHashMap<String, byte[]> m = new MyOffHeapHashMap<>(Serializer.STRING, Serializer.BYTES,
+                16, 0.75f, 1024);
+        byte[] big = new byte[100000];
+        new Random(1).nextBytes(big);
+        StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longKey.append("key").append(i);
+        }
+        m.put(longKey.toString(), big);
+        m.put("small", new byte[]{1, 2, 3});
+        check(Arrays.equals(m.get(longKey.toString()), big));
+        check(Arrays.equals(m.get("small"), new byte[]{1, 2, 3}));
+        check(m.get(longKey.substring(1)) == null);
+    }
+
+    static void iterator() throws Throwable {
+        MyOffHeapHashMap<Long, Long> m = new MyOffHeapHashMap<>(Serializer.LONG, Serializer.LONG);
+        check(!m.entrySet().iterator().hasNext());
+        Set<Long> expected = new HashSet<>();
+        for (long i = 0; i < 10000; i++) {
+            m.put(i * 0x100000001L, i);
+            expected.add(i * 0x100000001L);
+        }
+        Set<Long> seen = new HashSet<>();
+        for (Iterator<Map.Entry<Long, Long>> it = m.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> e = it.next();
+            check(seen.add(e.getKey()));
+            if (e.getValue() % 3 == 0) {
+                it.remove();
+                expected.remove(e.getKey());
+            } else {
+                e.setValue(-e.getValue());
+            }
+        }
+        equal(seen.size(), 10000);
+        equal(m.keySet(), expected);
+        for (long k : expected) {
+            equal(m.get(k), -(k & 0xffffffffL));
+        }
+        try {
+            for (Map.Entry<Long, Long> e : m.entrySet()) {
+                m.put(-1L, 0L);
+            }
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expectedException) {
+            pass();
+        }
+    }
+
+    static void byteArrayKeys() throws Throwable {
+        MyOffHeapHashMap<byte[], String> m = new MyOffHeapHashMap<>(Serializer.BYTES, Serializer.STRING);
+        m.put(new byte[]{1, 2, 3}, "a");
+        equal(m.get(new byte[]{1, 2, 3}), "a");
+        equal(m.put(new byte[]{1, 2, 3}, "b"), "a");
+        equal(m.get(new byte[]{1, 2}), null);
+        equal(m.get(new byte[0]), null);
+        m.put(new byte[0], "empty");
+        equal(m.get(new byte[0]), "empty");
+        equal(m.size(), 2);
+    }
+
+    static void nulls() throws Throwable {
+        MyOffHeapHashMap<String, String> m = new MyOffHeapHashMap<>(Serializer.STRING, Serializer.STRING);
+        try {
+            m.put(null, "x");
+            fail("expected NullPointerException");
+        } catch (NullPointerException expected) {
+            pass();
+        }
+        try {
+            m.put("x", null);
+            fail("expected NullPointerException");
+        } catch (NullPointerException expected) {
+            pass();
+        }
+        check(m.isEmpty());
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
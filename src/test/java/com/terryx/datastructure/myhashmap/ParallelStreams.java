@@ -0,0 +1,217 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary The collection views of MyHashMap stream every mapping exactly
+ *          once, sequentially or in parallel, through spliterators that
+ *          split on bin index ranges.
+ */
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class ParallelStreams {
+
+    public static void main(String[] args) throws Throwable {
+        streams(new MyHashMap<Integer, Integer>(), 100000);
+        streams(new MyHashMap<Integer, Integer>(true), 100000);
+        streams(new MyHashMap<Integer, Integer>(), 0);
+        streams(new MyLinkedHashMap<Integer, Integer>(), 100000);
+        splitting();
+        treeBins();
+        midTransfer();
+        failFast();
+        linkedOrder();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void streams(Map<Integer, Integer> m, int n) throws Throwable {
+        long keySum = 0, valueSum = 0;
+        for (int i = 0; i < n; i++) {
+            m.put(i * 7919, i);
+            keySum += i * 7919;
+            valueSum += i;
+        }
+        equal(m.keySet().parallelStream().mapToLong(Integer::longValue).sum(), keySum);
+        equal(m.values().parallelStream().mapToLong(Integer::longValue).sum(), valueSum);
+        equal(m.entrySet().parallelStream().filter(e -> e.getValue() % 2 == 0).count(), (long) (n + 1) / 2);
+        equal(m.keySet().stream().mapToLong(Integer::longValue).sum(), keySum);
+        equal(m.keySet().parallelStream().collect(Collectors.toSet()), new HashSet<>(m.keySet()));
+        equal(m.keySet().parallelStream().distinct().count(), (long) n);
+        equal(m.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)), new HashMap<>(m));
+        Spliterator<Integer> s = m.keySet().spliterator();
+        equal(s.estimateSize(), (long) n);
+        equal(s.getExactSizeIfKnown(), (long) n);
+        check(s.hasCharacteristics(Spliterator.DISTINCT));
+    }
+
+    /**
+     * Splits recursively, draining some parts element by element and
+     * the rest in bulk.
+     */
+    static void drain(Spliterator<Map.Entry<Integer, Integer>> s, int depth, final List<Integer> out)
+            throws Throwable {
+        Spliterator<Map.Entry<Integer, Integer>> prefix = (depth < 12) ? s.trySplit() : null;
+        if (prefix != null) {
+            drain(prefix, depth + 1, out);
+            drain(s, depth + 1, out);
+            return;
+        }
+        Consumer<Map.Entry<Integer, Integer>> collect = new Consumer<Map.Entry<Integer, Integer>>() {
+            public void accept(Map.Entry<Integer, Integer> e) {
+                out.add(e.getKey());
+            }
+        };
+        if (depth % 2 == 0) {
+            while (s.tryAdvance(collect)) {
+            }
+        } else {
+            s.tryAdvance(collect);
+            s.forEachRemaining(collect);
+        }
+        check(!s.tryAdvance(collect));
+    }
+
+    static void splitting() throws Throwable {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 50000; i++) {
+            m.put(i, i);
+        }
+        Spliterator<Map.Entry<Integer, Integer>> s = m.entrySet().spliterator();
+        check(s.hasCharacteristics(Spliterator.SIZED));
+        Spliterator<Map.Entry<Integer, Integer>> prefix = s.trySplit();
+        // halves of the bins, with half of the size estimated for each
+        equal(prefix.estimateSize(), 25000L);
+        equal(s.estimateSize(), 25000L);
+        List<Integer> out = new ArrayList<>();
+        drain(prefix, 1, out);
+        drain(s, 1, out);
+        equal(out.size(), 50000);
+        equal(new HashSet<>(out), m.keySet());
+    }
+
+    static void treeBins() throws Throwable {
+        MyHashMap<TreeBins.ComparableKey, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            m.put(new TreeBins.ComparableKey(i, 16), i);
+        }
+        check(m.table[0] instanceof MyHashMap.TreeNode);
+        equal(m.values().parallelStream().mapToLong(Integer::longValue).sum(), 5000L * 4999 / 2);
+        // iterator removal keeps tree bins intact until it is done
+        for (Iterator<TreeBins.ComparableKey> it = m.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().id % 10 != 0) {
+                it.remove();
+            }
+        }
+        equal(m.size(), 500);
+        for (int i = 0; i < 5000; i++) {
+            equal(m.get(new TreeBins.ComparableKey(i, 16)), i % 10 == 0 ? i : null);
+        }
+    }
+
+    static void midTransfer() throws Throwable {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>(true);
+        int n = 0;
+        while (n < 3000 || m.oldTable == null) {
+            m.put(n, n);
+            n++;
+        }
+        // the stream sees the bins of both tables
+        equal(m.keySet().parallelStream().count(), (long) n);
+        equal(m.keySet().stream().mapToLong(Integer::longValue).sum(), (long) n * (n - 1) / 2);
+    }
+
+    static void failFast() throws Throwable {
+        final MyHashMap<Integer, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            m.put(i, i);
+        }
+        try {
+            m.keySet().spliterator().forEachRemaining(new Consumer<Integer>() {
+                public void accept(Integer k) {
+                    if (k == 50) {
+                        m.remove(k);
+                    }
+                }
+            });
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+            pass();
+        }
+        try {
+            for (Integer k : m.keySet()) {
+                m.put(-k - 1, 0);
+            }
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+            pass();
+        }
+        // values may be replaced while iterating
+        for (Map.Entry<Integer, Integer> e : m.entrySet()) {
+            e.setValue(e.getValue() + 1);
+            m.put(e.getKey(), e.getValue() + 1);
+        }
+        equal(m.get(10), 12);
+        equal(m.toString().charAt(0), '{');
+        check(m.equals(new HashMap<>(m)) && new HashMap<>(m).equals(m));
+        equal(m.hashCode(), new HashMap<>(m).hashCode());
+    }
+
+    static void linkedOrder() throws Throwable {
+        MyLinkedHashMap<Integer, Integer> m = new MyLinkedHashMap<>(16, 0.75f, true);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1000; i > 0; i--) {
+            m.put(i, i);
+            expected.add(i);
+        }
+        m.get(500);
+        expected.remove(Integer.valueOf(500));
+        expected.add(500);
+        equal(m.keySet().stream().collect(Collectors.toList()), expected);
+        equal(m.keySet().parallelStream().collect(Collectors.toList()), expected);
+        equal(new ArrayList<>(m.values()), expected);
+        check(m.entrySet().spliterator().hasCharacteristics(Spliterator.ORDERED));
+        try {
+            for (Integer k : m.keySet()) {
+                m.get(k); // an access moves entries in access order
+            }
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            pass();
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyPersistentHashMap versions agree with java.util.HashMap,
+ *          are never changed by later updates, share all nodes off the
+ *          updated path, and transients build the same maps in place.
+ */
+
+import java.util.*;
+
+public class PersistentMap {
+
+    public static void main(String[] args) throws Throwable {
+        for (int hashes : new int[]{3, 200, 1 << 20}) {
+            randomVersions(hashes);
+        }
+        structuralSharing();
+        transients();
+        copies();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static Object key(Random rnd, int hashes) {
+        int i = rnd.nextInt(5000);
+        if (i == 0) {
+            return null;
+        }
+        return rnd.nextBoolean() ? new RandomOps.Key(i, hashes) : (Object) new TreeBins.ComparableKey(i, hashes);
+    }
+
+    static void randomVersions(int hashes) throws Throwable {
+        Random rnd = new Random(hashes);
+        MyPersistentHashMap<Object, Integer> m = MyPersistentHashMap.empty();
+        Map<Object, Integer> expected = new HashMap<>();
+        List<MyPersistentHashMap<Object, Integer>> versions = new ArrayList<>();
+        List<Map<Object, Integer>> contents = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            Object k = key(rnd, hashes);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    MyPersistentHashMap<Object, Integer> removed = m.minus(k);
+                    equal(removed == m, !expected.containsKey(k));
+                    expected.remove(k);
+                    m = removed;
+                    break;
+                case 1:
+                case 2:
+                    Integer value = (i % 11 == 0) ? null : i;
+                    m = m.plus(k, value);
+                    expected.put(k, value);
+                    break;
+                default:
+                    equal(m.get(k), expected.get(k));
+                    equal(m.containsKey(k), expected.containsKey(k));
+            }
+            equal(m.size(), expected.size());
+            if (i % 5000 == 0) {
+                versions.add(m);
+                contents.add(new HashMap<>(expected));
+            }
+        }
+        equal(m, expected);
+        equal(m.hashCode(), expected.hashCode());
+        equal(new HashMap<>(m), expected);
+        check(m.plus(k0(m), m.get(k0(m))) == m);
+        for (int i = 0; i < versions.size(); i++) {
+            equal(versions.get(i), contents.get(i));
+            equal(versions.get(i).size(), contents.get(i).size());
+        }
+        // removing everything leaves the empty map
+        for (Object k : new ArrayList<>(expected.keySet())) {
+            m = m.minus(k);
+        }
+        check(m.isEmpty() && !m.entrySet().iterator().hasNext());
+    }
+
+    static Object k0(Map<Object, ?> m) {
+        return m.keySet().iterator().next();
+    }
+
+    /**
+     * Returns the number of nodes of b that are not nodes of a.
+     */
+    static int newNodes(MyPersistentHashMap<?, ?> a, MyPersistentHashMap<?, ?> b) {
+        Set<MyPersistentHashMap.Node> old = Collections.newSetFromMap(new IdentityHashMap<MyPersistentHashMap.Node, Boolean>());
+        collect(a.root, old);
+        return count(b.root, old);
+    }
+
+    static void collect(MyPersistentHashMap.Node n, Set<MyPersistentHashMap.Node> nodes) {
+        nodes.add(n);
+        for (int i = 0; i < n.nodeArity(); i++) {
+            collect(n.node(i), nodes);
+        }
+    }
+
+    static int count(MyPersistentHashMap.Node n, Set<MyPersistentHashMap.Node> old) {
+        if (old.contains(n)) {
+            return 0;
+        }
+        int c = 1;
+        for (int i = 0; i < n.nodeArity(); i++) {
+            c += count(n.node(i), old);
+        }
+        return c;
+    }
+
+    static void structuralSharing() throws Throwable {
+        MyPersistentHashMap.Transient<Integer, Integer> t = MyPersistentHashMap.<Integer, Integer>empty().asTransient();
+        for (int i = 0; i < 1000000; i++) {
+            t.put(i, i);
+        }
+        MyPersistentHashMap<Integer, Integer> m = t.persistent();
+        equal(m.size(), 1000000);
+        MyPersistentHashMap<Integer, Integer> m2 = m.plus(5, -5).plus(2000000, 0).minus(7);
+        check(newNodes(m, m2) <= 3 * 7);
+        check(newNodes(m, m.plus(5, -5)) <= 7);
+        equal(m.get(5), 5);
+        equal(m2.get(5), -5);
+        equal(m.get(7), 7);
+        equal(m2.get(7), null);
+        equal(m2.size(), 1000000);
+    }
+
+    static void transients() throws Throwable {
+        Random rnd = new Random(17);
+        MyPersistentHashMap<Object, Integer> base = MyPersistentHashMap.empty();
+        for (int i = 0; i < 3000; i++) {
+            base = base.plus(key(rnd, 100), i);
+        }
+        Map<Object, Integer> before = new HashMap<>(base);
+        MyPersistentHashMap.Transient<Object, Integer> t = base.asTransient();
+        Map<Object, Integer> expected = new HashMap<>(base);
+        for (int i = 0; i < 20000; i++) {
+            Object k = key(rnd, 100);
+            if (rnd.nextBoolean()) {
+                equal(t.put(k, i), expected.put(k, i));
+            } else {
+                equal(t.remove(k), expected.remove(k));
+            }
+            equal(t.size(), expected.size());
+        }
+        MyPersistentHashMap<Object, Integer> after = t.persistent();
+        equal(after, expected);
+        // the edits copied shared nodes instead of changing them
+        equal(base, before);
+        try {
+            t.put("x", 1);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            pass();
+        }
+        // and later transients do not change earlier results
+        MyPersistentHashMap.Transient<Object, Integer> t2 = after.asTransient();
+        for (Object k : expected.keySet()) {
+            t2.put(k, -1);
+        }
+        equal(after, expected);
+        try {
+            after.put("x", 1);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            pass();
+        }
+    }
+
+    static void copies() throws Throwable {
+        MyHashMap<String, Integer> m = new MyHashMap<>(true);
+        for (int i = 0; i < 20000; i++) {
+            m.put("k" + i, i);
+        }
+        m.put(null, -1);
+        MyPersistentHashMap<String, Integer> p = MyPersistentHashMap.copyOf(m);
+        equal(p, m);
+        equal(p.get(null), -1);
+        check(MyPersistentHashMap.copyOf(p) == p);
+        MyHashMap<String, Integer> keyed = new MyHashMap<>(16, 0.75f, false, true);
+        keyed.putAll(m);
+        equal(MyPersistentHashMap.copyOf(keyed), m);
+        equal(MyPersistentHashMap.copyOf(new TreeMap<>(Collections.singletonMap("a", 1))).get("a"), 1);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary The primitive specialized maps agree with java.util.HashMap,
+ *          including mappings for the empty key sentinel itself.
+ */
+
+import java.util.*;
+
+public class PrimitiveMaps {
+
+    public static void main(String[] args) throws Throwable {
+        for (int emptyKey : new int[]{0, -1, 7}) {
+            intObject(emptyKey);
+            intInt(emptyKey);
+            longObject(emptyKey);
+            longLong(emptyKey);
+        }
+        sentinels();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void intObject(int emptyKey) throws Throwable {
+        Random rnd = new Random(emptyKey);
+        IntObjectMap<String> m = new IntObjectMap<>(0, 0.75f, emptyKey);
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = rnd.nextInt(3000) - 10;
+            String value = String.valueOf(i);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                case 2:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(m.size(), expected.size());
+        final Map<Integer, String> seen = new HashMap<>();
+        m.forEach(new IntObjectMap.IntObjectConsumer<String>() {
+            public void accept(int key, String value) {
+                seen.put(key, value);
+            }
+        });
+        equal(seen, expected);
+        m.clear();
+        check(m.isEmpty() && !m.containsKey(emptyKey));
+    }
+
+    static void intInt(int emptyKey) throws Throwable {
+        Random rnd = new Random(emptyKey);
+        IntIntMap m = new IntIntMap(0, 0.75f, emptyKey, Integer.MIN_VALUE);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = rnd.nextInt(3000) - 10;
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    equal(m.remove(key), orNoEntry(expected.remove(key)));
+                    break;
+                case 1:
+                    equal(m.put(key, i), orNoEntry(expected.put(key, i)));
+                    break;
+                case 2:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), orNoEntry(expected.get(key)));
+            }
+        }
+        equal(m.size(), expected.size());
+        final Map<Integer, Integer> seen = new HashMap<>();
+        m.forEach(new IntIntMap.IntIntConsumer() {
+            public void accept(int key, int value) {
+                seen.put(key, value);
+            }
+        });
+        equal(seen, expected);
+    }
+
+    static int orNoEntry(Integer v) {
+        return v == null ? Integer.MIN_VALUE : v;
+    }
+
+    static void longObject(long emptyKey) throws Throwable {
+        Random rnd = new Random(emptyKey);
+        LongObjectMap<Long> m = new LongObjectMap<>(0, 0.75f, emptyKey);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // spread keys over the high bits too
+            long key = (rnd.nextInt(3000) - 10) * 0x100000001L;
+            if (rnd.nextInt(50) == 0) {
+                key = emptyKey;
+            }
+            Long value = (long) i;
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                case 2:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+        }
+        equal(m.size(), expected.size());
+    }
+
+    static void longLong(long emptyKey) throws Throwable {
+        Random rnd = new Random(emptyKey);
+        LongLongMap m = new LongLongMap(10, 0.5f, emptyKey, -1L);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = (rnd.nextInt(3000) - 10) * 0x100000001L;
+            if (rnd.nextInt(50) == 0) {
+                key = emptyKey;
+            }
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    equal(m.remove(key), orNoEntry(expected.remove(key)));
+                    break;
+                case 1:
+                    equal(m.put(key, i), orNoEntry(expected.put(key, (long) i)));
+                    break;
+                case 2:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.getOrDefault(key, -2L), expected.containsKey(key) ? expected.get(key) : -2L);
+            }
+        }
+        equal(m.size(), expected.size());
+        final Map<Long, Long> seen = new HashMap<>();
+        m.forEach(new LongLongMap.LongLongConsumer() {
+            public void accept(long key, long value) {
+                seen.put(key, value);
+            }
+        });
+        equal(seen, expected);
+    }
+
+    static long orNoEntry(Long v) {
+        return v == null ? -1L : v;
+    }
+
+    static void sentinels() throws Throwable {
+        IntIntMap m = new IntIntMap();
+        equal(m.get(0), 0);
+        check(!m.containsKey(0));
+        equal(m.put(0, 5), 0);
+        check(m.containsKey(0));
+        equal(m.get(0), 5);
+        equal(m.size(), 1);
+        equal(m.toString(), "{0=5}");
+        equal(m.remove(0), 5);
+        check(m.isEmpty());
+        try {
+            m.put(1, 1);
+            m.forEach(new IntIntMap.IntIntConsumer() {
+                public void accept(int key, int value) {
+                    m.put(key + 1, value);
+                }
+            });
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+            pass();
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary Random put/get/remove/iterator.remove sequences give the same
+ *          results as java.util.HashMap, including null keys and values
+ *          and keys whose hash codes collide.
+ */
+
+import java.util.*;
+
+public class RandomOps {
+
+    interface MapFactory {
+        Map<Object, Object> create();
+    }
+
+    private static void realMain(String[] args) throws Throwable {
+        test("MyHashMap", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyHashMap<>();
+            }
+        });
+        test("MyHashMap(incrementalResize)", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyHashMap<>(true);
+            }
+        });
+        test("MyHashMap(keyedHashing)", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyHashMap<>(16, 0.75f, false, true);
+            }
+        });
+        test("MyLinkedHashMap", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyLinkedHashMap<>();
+            }
+        });
+        test("MyLinkedHashMap(accessOrder)", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyLinkedHashMap<>(16, 0.75f, true);
+            }
+        });
+        test("MyOpenHashMap", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyOpenHashMap<>();
+            }
+        });
+        test("MyOpenHashMap(robinHood)", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyOpenHashMap<>(true);
+            }
+        });
+        test("MyOpenHashMap(robinHood, 0.95)", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MyOpenHashMap<>(0, 0.95f, true);
+            }
+        });
+        test("MySwissHashMap", new MapFactory() {
+            public Map<Object, Object> create() {
+                return new MySwissHashMap<>();
+            }
+        });
+    }
+
+    static void test(String name, MapFactory factory) throws Throwable {
+        System.out.println(name);
+        for (int keySpace : new int[]{8, 100, 5000}) {
+            for (int hashes : new int[]{3, 1 << 20}) {
+                randomOps(factory.create(), keySpace, hashes, new Random(keySpace * 7 + hashes));
+            }
+        }
+        iteratorRemove(factory.create());
+    }
+
+    /**
+     * Key with a configurable number of distinct hash codes; the low
+     * bits of the id are kept out of the hash so that neighbouring ids
+     * collide.
+     */
+    static final class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hashes) {
+            this.id = id;
+            this.hash = (id % hashes) << 4;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        public String toString() {
+            return "Key" + id;
+        }
+    }
+
+    static Object key(Random rnd, int keySpace, int hashes) {
+        int id = rnd.nextInt(keySpace);
+        return id == 0 ? null : new Key(id, hashes);
+    }
+
+    static void randomOps(Map<Object, Object> m, int keySpace, int hashes, Random rnd) throws Throwable {
+        Map<Object, Object> expected = new HashMap<>();
+        for (int i = 0; i < 50000; i++) {
+            Object key = key(rnd, keySpace, hashes);
+            Object value = rnd.nextInt(10) == 0 ? null : i;
+            switch (rnd.nextInt(5)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                case 2:
+                    equal(m.put(key, value), expected.put(key, value));
+                    break;
+                case 3:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+            }
+            if (i % 5000 == 0) {
+                equal(m.size(), expected.size());
+            }
+            if (i % 10000 == 0) {
+                for (Map.Entry<Object, Object> e : expected.entrySet()) {
+                    check(m.containsKey(e.getKey()));
+                    equal(m.get(e.getKey()), e.getValue());
+                }
+            }
+        }
+        equal(m.size(), expected.size());
+    }
+
+    static void iteratorRemove(Map<Object, Object> m) throws Throwable {
+        Random rnd = new Random(42);
+        Map<Object, Object> expected = new HashMap<>();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 300; i++) {
+                Object key = key(rnd, 2000, 97);
+                m.put(key, i);
+                expected.put(key, i);
+            }
+            // remove about half of the entries while iterating
+            Set<Object> seen = new HashSet<>();
+            for (Iterator<Map.Entry<Object, Object>> it = m.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Object, Object> e = it.next();
+                if (!seen.add(e.getKey())) {
+                    fail("visited twice: " + e.getKey());
+                }
+                equal(e.getValue(), expected.get(e.getKey()));
+                if (rnd.nextBoolean()) {
+                    it.remove();
+                    expected.remove(e.getKey());
+                }
+            }
+            equal(m.size(), expected.size());
+            equal(new HashMap<>(m), expected);
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void unexpected(Throwable t) {
+        failed++;
+        t.printStackTrace();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        try {
+            realMain(args);
+        } catch (Throwable t) {
+            unexpected(t);
+        }
+
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+}
@@ -0,0 +1,264 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyReferenceHashMap behaves like HashMap while its keys and
+ *          values are reachable, drops entries whose weak keys are
+ *          collected and lets soft values be cleared under memory
+ *          pressure, expunging them as the map is used.
+ * @run main/othervm -Xmx64m ReferenceMap
+ */
+
+import com.terryx.datastructure.myhashmap.MyReferenceHashMap.Strength;
+
+import java.util.*;
+
+public class ReferenceMap {
+
+    public static void main(String[] args) throws Throwable {
+        for (Strength k : Strength.values()) {
+            for (Strength v : Strength.values()) {
+                agreement(k, v);
+            }
+        }
+        nulls();
+        weakKeys();
+        weakValues();
+        softValues();
+        iteratorRemove();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    /**
+     * Every key and value stays reachable from the reference map, so
+     * nothing can be collected.
+     */
+    static void agreement(Strength keys, Strength values) throws Throwable {
+        Random rnd = new Random(keys.ordinal() * 3 + values.ordinal());
+        Map<Integer, String> expected = new HashMap<>();
+        MyReferenceHashMap<Integer, String> m = new MyReferenceHashMap<>(keys, values);
+        Integer[] pool = new Integer[2000];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = Integer.valueOf(i * 7);
+        }
+        String[] vals = new String[pool.length];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = "v" + i;
+        }
+        for (int i = 0; i < 100000; i++) {
+            Integer k = pool[rnd.nextInt(pool.length)];
+            switch (rnd.nextInt(4)) {
+                case 0:
+                case 1:
+                    String v = vals[rnd.nextInt(vals.length)];
+                    equal(m.put(k, v), expected.put(k, v));
+                    break;
+                case 2:
+                    equal(m.remove(k), expected.remove(k));
+                    break;
+                default:
+                    equal(m.get(k), expected.get(k));
+                    check(m.containsKey(k) == expected.containsKey(k));
+            }
+        }
+        equal(m.size(), expected.size());
+        equal(m, expected);
+        equal(expected, m);
+        equal(m.hashCode(), expected.hashCode());
+        int n = 0;
+        for (Map.Entry<Integer, String> e : m.entrySet()) {
+            equal(e.getValue(), expected.get(e.getKey()));
+            n++;
+        }
+        equal(n, expected.size());
+        m.clear();
+        equal(m.size(), 0);
+        check(m.isEmpty());
+    }
+
+    static void nulls() throws Throwable {
+        MyReferenceHashMap<String, String> m = new MyReferenceHashMap<>(Strength.WEAK, Strength.SOFT);
+        equal(m.put(null, "a"), null);
+        equal(m.put("k", null), null);
+        check(m.containsKey(null));
+        check(m.containsKey("k"));
+        equal(m.get(null), "a");
+        equal(m.get("k"), null);
+        equal(m.size(), 2);
+        equal(m.put(null, null), "a");
+        check(m.containsKey(null));
+        equal(m.remove(null), null);
+        check(!m.containsKey(null));
+        equal(m.size(), 1);
+    }
+
+    /**
+     * Runs the collector until the condition holds, or fails after a
+     * while.
+     */
+    static void awaitGc(MyReferenceHashMap<?, ?> m, int expectedSize) throws Throwable {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (m.size() != expectedSize) {
+            if (System.nanoTime() > deadline) {
+                fail("size " + m.size() + " after gc, expected " + expectedSize);
+                return;
+            }
+            System.gc();
+            Thread.sleep(10);
+        }
+        pass();
+    }
+
+    static void weakKeys() throws Throwable {
+        MyReferenceHashMap<Object, String> m = new MyReferenceHashMap<>(Strength.WEAK, Strength.STRONG);
+        List<Object> kept = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Object key = new Object();
+            m.put(key, "v" + i);
+            if (i % 10 == 0) {
+                kept.add(key);
+            }
+        }
+        awaitGc(m, kept.size());
+        for (Object key : kept) {
+            check(m.containsKey(key));
+        }
+        // further puts and gets expunge and keep working
+        for (int i = 0; i < 1000; i++) {
+            m.put(new Object(), "x");
+        }
+        for (Object key : kept) {
+            check(m.get(key) != null);
+        }
+        awaitGc(m, kept.size());
+        int n = 0;
+        for (Map.Entry<Object, String> e : m.entrySet()) {
+            check(e.getKey() != null);
+            n++;
+        }
+        equal(n, kept.size());
+    }
+
+    static void weakValues() throws Throwable {
+        MyReferenceHashMap<Integer, Object> m = new MyReferenceHashMap<>(Strength.STRONG, Strength.WEAK);
+        Object kept = new Object();
+        for (int i = 0; i < 1000; i++) {
+            m.put(i, (i == 500) ? kept : new Object());
+        }
+        awaitGc(m, 1);
+        check(m.get(500) == kept);
+        check(!m.containsKey(0));
+
+        // a key whose value was cleared but not yet expunged is absent,
+        // and putting it again must not be undone by the expunge
+        MyReferenceHashMap<Integer, Object> r = new MyReferenceHashMap<>(Strength.STRONG, Strength.WEAK);
+        r.put(1, new Object());
+        MyReferenceHashMap.Entry<Integer, Object> e = r.getEntry(1);
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!r.valueCleared(e)) {
+            if (System.nanoTime() > deadline) {
+                fail("value not cleared after gc");
+            }
+            System.gc();
+            Thread.sleep(10);
+        }
+        check(!r.containsKey(1));
+        r.put(1, kept);
+        System.gc();
+        for (int i = 0; i < 100; i++) {
+            r.get(2);
+        }
+        check(r.get(1) == kept);
+        equal(r.size(), 1);
+    }
+
+    static void softValues() throws Throwable {
+        MyReferenceHashMap<Integer, byte[]> m = new MyReferenceHashMap<>(Strength.STRONG, Strength.SOFT);
+        for (int i = 0; i < 64; i++) {
+            m.put(i, new byte[1 << 20]);
+        }
+        equal(m.size(), 64);
+        // soft references survive an ordinary collection
+        System.gc();
+        check(m.size() > 0);
+        // and are cleared before an OutOfMemoryError is thrown
+        try {
+            List<byte[]> hog = new ArrayList<>();
+            for (; ; ) {
+                hog.add(new byte[1 << 20]);
+            }
+        } catch (OutOfMemoryError expected) {
+        }
+        awaitGc(m, 0);
+        check(m.isEmpty());
+        equal(m.get(0), null);
+        m.put(0, new byte[1]);
+        equal(m.size(), 1);
+    }
+
+    static void iteratorRemove() throws Throwable {
+        MyReferenceHashMap<Integer, Integer> m = new MyReferenceHashMap<>(Strength.WEAK, Strength.WEAK);
+        Map<Integer, Integer> held = new HashMap<>();
+        // boxed outside the Integer cache, so that only held keeps them
+        final int base = 1_000_000;
+        for (int i = 0; i < 1000; i++) {
+            Integer k = Integer.valueOf(base + i), v = Integer.valueOf(-base - i);
+            held.put(k, v);
+            m.put(k, v);
+        }
+        for (Iterator<Map.Entry<Integer, Integer>> it = m.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Integer> e = it.next();
+            if (e.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                e.setValue(held.get(e.getKey() - 1));
+            }
+        }
+        equal(m.size(), 500);
+        for (int i = 1; i < 1000; i += 2) {
+            equal(m.get(base + i), -base - (i - 1));
+        }
+        try {
+            Iterator<Integer> it = m.keySet().iterator();
+            it.next();
+            m.put(Integer.valueOf(base + 5000), 1);
+            it.next();
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+            pass();
+        }
+        check(held.size() == 1000);
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
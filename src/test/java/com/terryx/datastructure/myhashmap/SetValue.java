@@ -15,7 +15,7 @@ public class SetValue {
     static final String newValue = "new";
 
     public static void main(String args[]) throws Exception {
-        Map m = new HashMap();
+        Map m = new MyHashMap();
         m.put(key, oldValue);
         Map.Entry e = (Map.Entry) m.entrySet().iterator().next();
         Object returnVal = e.setValue(newValue);
@@ -0,0 +1,289 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary A MyHashMap restored from its snapshot has the same mappings,
+ *          capacity, bin layout and tree bins, and is rebuilt without a
+ *          single call to hashCode(). Also prints time and size against
+ *          Java serialization of java.util.HashMap.
+ * @run main Snapshot
+ * @run main/othervm -Xmx2g Snapshot bench
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class Snapshot {
+
+    public static void main(String[] args) throws Throwable {
+        strings();
+        treeBins();
+        keyedAndIncremental();
+        largeRecords();
+        errors();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static <K, V> byte[] snapshot(MyHashMap<K, V> m, Serializer<? super K> ks, Serializer<? super V> vs)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        m.snapshot(Channels.newChannel(bytes), ks, vs);
+        return bytes.toByteArray();
+    }
+
+    static <K, V> MyHashMap<K, V> restore(byte[] bytes, Serializer<K> ks, Serializer<V> vs) throws IOException {
+        return MyHashMap.restore(Channels.newChannel(new ByteArrayInputStream(bytes)), ks, vs);
+    }
+
+    /**
+     * Checks that both maps have the same table, bin for bin.
+     */
+    static void sameLayout(MyHashMap<?, ?> a, MyHashMap<?, ?> b) throws Throwable {
+        equal(a.size(), b.size());
+        equal(a.table.length, b.table.length);
+        equal(a.threshold, b.threshold);
+        for (int i = 0; i < a.table.length; i++) {
+            equal(a.table[i] instanceof MyHashMap.TreeNode, b.table[i] instanceof MyHashMap.TreeNode);
+            MyHashMap.Node<?, ?> x = a.table[i], y = b.table[i];
+            Set<Object> xs = new HashSet<>(), ys = new HashSet<>();
+            for (; x != null; x = x.next) {
+                xs.add(x.key);
+            }
+            for (; y != null; y = y.next) {
+                ys.add(y.key);
+            }
+            equal(xs, ys);
+        }
+    }
+
+    static void strings() throws Throwable {
+        MyHashMap<String, String> m = new MyHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            m.put("key" + i, (i % 7 == 0) ? null : "value" + i);
+        }
+        m.put(null, "null key");
+        for (int i = 0; i < 20000; i += 3) {
+            m.remove("key" + i);
+        }
+        MyHashMap<String, String> copy = restore(snapshot(m, Serializer.STRING, Serializer.STRING),
+                Serializer.STRING, Serializer.STRING);
+        equal(copy, m);
+        sameLayout(m, copy);
+        equal(copy.get(null), "null key");
+        check(copy.containsKey("key1") && copy.get("key7") == null && copy.containsKey("key7"));
+        copy.put("new", "mapping");
+        equal(copy.size(), m.size() + 1);
+
+        // through a file channel, from an empty and a never used map
+        Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            for (MyHashMap<String, String> source : Arrays.asList(m, new MyHashMap<String, String>(),
+                    new MyHashMap<String, String>(100))) {
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    source.snapshot(ch, Serializer.STRING, Serializer.STRING);
+                }
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    MyHashMap<String, String> restored = MyHashMap.restore(ch, Serializer.STRING, Serializer.STRING);
+                    equal(restored, source);
+                    restored.put("a", "b");
+                    equal(restored.get("a"), "b");
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static final class CountingKey implements Comparable<CountingKey> {
+        static int hashCodeCalls;
+        final int id;
+
+        CountingKey(int id) {
+            this.id = id;
+        }
+
+        public int hashCode() {
+            hashCodeCalls++;
+            return id & 0xff0;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof CountingKey && ((CountingKey) o).id == id;
+        }
+
+        public int compareTo(CountingKey o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    static final Serializer<CountingKey> COUNTING_KEY = new Serializer<CountingKey>() {
+        public void write(CountingKey value, ByteBuffer out) {
+            out.putInt(value.id);
+        }
+
+        public CountingKey read(ByteBuffer in) {
+            return new CountingKey(in.getInt());
+        }
+    };
+
+    static void treeBins() throws Throwable {
+        MyHashMap<CountingKey, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            m.put(new CountingKey(i), i);
+        }
+        check(m.table[16] instanceof MyHashMap.TreeNode);
+        byte[] bytes = snapshot(m, COUNTING_KEY, Serializer.INTEGER);
+        CountingKey.hashCodeCalls = 0;
+        MyHashMap<CountingKey, Integer> copy = restore(bytes, COUNTING_KEY, Serializer.INTEGER);
+        equal(CountingKey.hashCodeCalls, 0);
+        sameLayout(m, copy);
+        for (int i = 0; i < 5000; i++) {
+            equal(copy.get(new CountingKey(i)), i);
+        }
+        @SuppressWarnings("unchecked")
+        MyHashMap<Object, Integer> raw = (MyHashMap<Object, Integer>) (MyHashMap<?, Integer>) copy;
+        TreeBins.checkTable(raw);
+    }
+
+    static void keyedAndIncremental() throws Throwable {
+        // stored hashes of a keyed map are only valid with its hash key
+        MyHashMap<String, Integer> keyed = new MyHashMap<>(16, 0.75f, false, true);
+        MyHashMap<String, Integer> incremental = new MyHashMap<>(true);
+        for (int i = 0; i < 10000; i++) {
+            keyed.put("k" + i, i);
+        }
+        int n = 0;
+        while (n < 10000 || incremental.oldTable == null) {
+            incremental.put("k" + n, n);
+            n++;
+        }
+        MyHashMap<String, Integer> keyedCopy = restore(snapshot(keyed, Serializer.STRING, Serializer.INTEGER),
+                Serializer.STRING, Serializer.INTEGER);
+        check(keyedCopy.keyedHashing && keyedCopy.sameHashing(keyed));
+        MyHashMap<String, Integer> incrementalCopy = restore(
+                snapshot(incremental, Serializer.STRING, Serializer.INTEGER), Serializer.STRING, Serializer.INTEGER);
+        check(incrementalCopy.incrementalResize);
+        equal(incrementalCopy, incremental);
+        for (int i = 0; i < 10000; i++) {
+            equal(keyedCopy.get("k" + i), i);
+            equal(incrementalCopy.get("k" + i), i);
+        }
+        for (int i = n; i < 30000; i++) {
+            incrementalCopy.put("k" + i, i);
+        }
+        equal(incrementalCopy.get("k29999"), 29999);
+        equal(incrementalCopy.get("k1"), 1);
+    }
+
+    static void largeRecords() throws Throwable {
+        MyHashMap<String, byte[]> m = new MyHashMap<>();
+        Random rnd = new Random(16);
+        for (int i = 0; i < 20; i++) {
+            byte[] value = new byte[rnd.nextInt(300000)];
+            rnd.nextBytes(value);
+            m.put("blob" + i, value);
+        }
+        MyHashMap<String, byte[]> copy = restore(snapshot(m, Serializer.STRING, Serializer.BYTES),
+                Serializer.STRING, Serializer.BYTES);
+        equal(copy.size(), 20);
+        for (int i = 0; i < 20; i++) {
+            check(Arrays.equals(copy.get("blob" + i), m.get("blob" + i)));
+        }
+    }
+
+    static void errors() throws Throwable {
+        MyHashMap<String, String> m = new MyHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            m.put("k" + i, "v" + i);
+        }
+        byte[] bytes = snapshot(m, Serializer.STRING, Serializer.STRING);
+        try {
+            restore(Arrays.copyOf(bytes, bytes.length - 1), Serializer.STRING, Serializer.STRING);
+            fail("expected EOFException");
+        } catch (EOFException expected) {
+            pass();
+        }
+        bytes[0] ^= 1;
+        try {
+            restore(bytes, Serializer.STRING, Serializer.STRING);
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+            pass();
+        }
+    }
+
+    /**
+     * Prints snapshot size and time for a map of a million String to
+     * Long mappings, against ObjectOutputStream of a java.util.HashMap.
+     */
+    static void bench() throws Throwable {
+        MyHashMap<String, Long> m = new MyHashMap<>();
+        HashMap<String, Long> h = new HashMap<>();
+        for (long i = 0; i < 1000000; i++) {
+            m.put("key" + i, i);
+            h.put("key" + i, i);
+        }
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            byte[] snap = snapshot(m, Serializer.STRING, Serializer.LONG);
+            long t1 = System.nanoTime();
+            restore(snap, Serializer.STRING, Serializer.LONG);
+            long t2 = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(h);
+            }
+            long t3 = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                in.readObject();
+            }
+            long t4 = System.nanoTime();
+            System.out.printf("snapshot %d bytes, %d ms write, %d ms restore; "
+                            + "serialization %d bytes, %d ms write, %d ms read%n",
+                    snap.length, (t1 - t0) / 1000000, (t2 - t1) / 1000000,
+                    bytes.size(), (t3 - t2) / 1000000, (t4 - t3) / 1000000);
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MyHashMap.stats() reports the table layout, and once enabled
+ *          the gets, probe lengths and resizes, also through JMX; a poor
+ *          hashCode() shows up as chains far above the uniform estimate.
+ */
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+public class Stats {
+
+    public static void main(String[] args) throws Throwable {
+        layout();
+        counters();
+        poorHashCode();
+        incremental();
+        mbean();
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static long sum(long[] histogram) {
+        long s = 0;
+        for (long c : histogram) {
+            s += c;
+        }
+        return s;
+    }
+
+    static void layout() throws Throwable {
+        MyHashMapStats empty = new MyHashMap<String, String>().stats();
+        equal(empty.getCapacity(), 0);
+        equal(empty.getSize(), 0);
+        equal(empty.getMeanChainLength(), 0.0);
+        check(Double.isNaN(empty.getHitRate()));
+
+        MyHashMap<Integer, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            m.put(i * 31, i);
+        }
+        MyHashMapStats s = m.stats();
+        equal(s.getSize(), 10000);
+        equal(s.getCapacity(), 16384);
+        equal(sum(s.getChainLengths()), 16384L);
+        equal((long) s.getOccupiedBins(), 16384L - s.getChainLengths()[0]);
+        long nodes = 0;
+        long[] h = s.getChainLengths();
+        for (int i = 0; i < h.length; i++) {
+            nodes += i * h[i];
+        }
+        equal(nodes, 10000L);
+        // counters are zero while disabled
+        m.get(31);
+        equal(m.stats().getHits(), 0L);
+        equal(m.stats().getResizes(), 0L);
+    }
+
+    static void counters() throws Throwable {
+        MyHashMap<Object, Integer> m = new MyHashMap<>();
+        m.enableStats();
+        for (int i = 0; i < 100000; i++) {
+            m.put(i, i);
+        }
+        // 16 -> 256K, one resize per doubling after the first allocation
+        equal(m.stats().getResizes(), 14L);
+        check(m.stats().getResizeNanos() >= m.stats().getMaxResizeNanos());
+        for (int i = 0; i < 150000; i++) {
+            m.get(i);
+        }
+        MyHashMapStats s = m.stats();
+        equal(s.getHits(), 100000L);
+        equal(s.getMisses(), 50000L);
+        equal(s.getHitRate(), 100000.0 / 150000);
+        equal(sum(s.getProbeLengths()), 150000L);
+        // consecutive Integers never collide, and the misses hit empty bins
+        equal(s.getProbeLengths()[1], 100000L);
+        equal(s.getProbeLengths()[0], 50000L);
+        equal(s.getMeanProbeLength(), 100000.0 / 150000);
+
+        // lookups of tree bins are counted apart
+        for (int i = 0; i < 100; i++) {
+            m.put(new TreeBins.ComparableKey(i, 1), i);
+        }
+        m.get(new TreeBins.ComparableKey(5, 1));
+        m.get(new TreeBins.ComparableKey(500, 1));
+        s = m.stats();
+        equal(s.getTreeBins(), 1);
+        equal(s.getTreeLookups(), 2L);
+        equal(s.getHits(), 100001L);
+        equal(sum(s.getProbeLengths()), 150000L);
+
+        Integer[] out = new Integer[3];
+        m.getAll(new Object[]{1, 2, -1}, out);
+        equal(m.stats().getHits(), 100003L);
+        equal(m.stats().getMisses(), 50002L);
+
+        m.disableStats();
+        m.get(1);
+        equal(m.stats().getHits(), 0L);
+        m.enableStats();
+        equal(m.stats().getHits(), 0L);
+        check(m.stats().toString().contains("hits=0"));
+
+        MyLinkedHashMap<String, String> linked = new MyLinkedHashMap<>();
+        linked.enableStats();
+        linked.put("a", "b");
+        linked.get("a");
+        linked.get("c");
+        equal(linked.stats().getHits(), 1L);
+        equal(linked.stats().getMisses(), 1L);
+    }
+
+    static final class PoorKey {
+        final int id;
+
+        PoorKey(int id) {
+            this.id = id;
+        }
+
+        // only the high bits vary, which the spreader folds into 16 bins
+        public int hashCode() {
+            return (id & 0xf) << 16;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof PoorKey && ((PoorKey) o).id == id;
+        }
+    }
+
+    static void poorHashCode() throws Throwable {
+        MyHashMap<Object, Integer> good = new MyHashMap<>();
+        MyHashMap<Object, Integer> poor = new MyHashMap<>();
+        Random rnd = new Random(18);
+        for (int i = 0; i < 5000; i++) {
+            good.put(rnd.nextLong(), i);
+            poor.put(new PoorKey(i), i);
+        }
+        MyHashMapStats g = good.stats(), p = poor.stats();
+        check(Math.abs(g.getMeanChainLength() - g.getExpectedMeanChainLength()) < 0.1);
+        check(p.getMeanChainLength() > 100 * p.getExpectedMeanChainLength());
+        equal(p.getOccupiedBins(), 16);
+        equal(p.getTreeBins(), 16);
+        equal(p.getChainLengths()[MyHashMapStats.HISTOGRAM_BUCKETS - 1], 16L);
+        equal(p.getLongestChain(), 5000 / 16 + 1);
+    }
+
+    static void incremental() throws Throwable {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>(true);
+        m.enableStats();
+        int n = 0;
+        while (n < 3000 || m.oldTable == null) {
+            m.put(n, n);
+            n++;
+        }
+        MyHashMapStats s = m.stats();
+        equal(s.getSize(), n);
+        equal(sum(s.getChainLengths()), (long) m.table.length + m.oldTable.length - m.transferIndex);
+        check(s.getResizes() > 0);
+        for (int i = 0; i < n; i++) {
+            m.get(i);
+        }
+        equal(m.stats().getHits(), (long) n);
+    }
+
+    static void mbean() throws Throwable {
+        MyHashMap<String, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            m.put("k" + i, i);
+        }
+        ObjectName name = MyHashMapStats.registerMBean(m, "test map");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            m.get("k1");
+            m.get("missing");
+            equal(server.getAttribute(name, "Size"), 1000);
+            equal(server.getAttribute(name, "Hits"), 1L);
+            equal(server.getAttribute(name, "Misses"), 1L);
+            check(((long[]) server.getAttribute(name, "ChainLengths")).length == MyHashMapStats.HISTOGRAM_BUCKETS);
+            server.invoke(name, "reset", null, null);
+            equal(server.getAttribute(name, "Hits"), 0L);
+            equal(server.getAttribute(name, "Size"), 1000);
+        } finally {
+            server.unregisterMBean(name);
+        }
+        check(!server.isRegistered(name));
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
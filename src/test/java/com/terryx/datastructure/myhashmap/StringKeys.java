@@ -0,0 +1,225 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary StringObjectMap agrees with java.util.HashMap, finds the same
+ *          mapping through a String, a StringBuilder and a UTF-8 byte
+ *          slice, and keeps working as removed keys are compacted out
+ *          of the arena. Also prints lookup throughput against decoding
+ *          a String for MyHashMap.
+ * @run main StringKeys
+ * @run main StringKeys bench
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class StringKeys {
+
+    public static void main(String[] args) throws Throwable {
+        randomOps();
+        encodings();
+        slices();
+        errors();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench();
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static final String[] SAMPLES = {
+            "", "a", "Content-Length", "\u00e9t\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "x\ud83d\ude00y", "\u07ff\u0800\uffff"
+    };
+
+    static String key(Random rnd) {
+        int i = rnd.nextInt(3000);
+        return (i < SAMPLES.length) ? SAMPLES[i] : ((i % 3 == 0) ? "\u00fc" : "k") + i;
+    }
+
+    static void randomOps() throws Throwable {
+        Random rnd = new Random(20);
+        StringObjectMap<String> m = new StringObjectMap<>();
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            String key = key(rnd);
+            byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+            String value = (i % 50 == 0) ? null : String.valueOf(i);
+            switch (rnd.nextInt(6)) {
+                case 0:
+                    equal(m.remove(key), expected.remove(key));
+                    break;
+                case 1:
+                    equal(m.remove(utf8, 0, utf8.length), expected.remove(key));
+                    break;
+                case 2:
+                    equal(m.put(new StringBuilder(key), value), expected.put(key, value));
+                    break;
+                case 3:
+                    equal(m.put(utf8, 0, utf8.length, value), expected.put(key, value));
+                    break;
+                case 4:
+                    equal(m.containsKey(key), expected.containsKey(key));
+                    equal(m.containsKey(utf8, 0, utf8.length), expected.containsKey(key));
+                    break;
+                default:
+                    equal(m.get(key), expected.get(key));
+                    equal(m.get(utf8, 0, utf8.length), expected.get(key));
+            }
+        }
+        equal(m.size(), expected.size());
+        // the churn left garbage, which the arena has been dropping
+        check(m.arenaUsed - m.arenaGarbage <= m.arena.length);
+        check(m.arena.length < 3000 * 16);
+        final Map<String, String> seen = new HashMap<>();
+        m.forEach(new StringObjectMap.StringObjectConsumer<String>() {
+            public void accept(String key, String value) {
+                seen.put(key, value);
+            }
+        });
+        equal(seen, expected);
+        m.clear();
+        check(m.isEmpty() && !m.containsKey(""));
+        equal(m.arenaUsed, 0);
+    }
+
+    static void encodings() throws Throwable {
+        for (String s : SAMPLES) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            equal(StringObjectMap.hash(s), StringObjectMap.hash(utf8, 0, utf8.length));
+            check(StringObjectMap.equals(s, utf8, 0, utf8.length));
+        }
+        // an unpaired surrogate is encoded as '?', as by String
+        String[] malformed = {"\ud83d", "a\ude00b", "\ud83d\ud83d"};
+        StringObjectMap<Integer> m = new StringObjectMap<>();
+        for (int i = 0; i < malformed.length; i++) {
+            byte[] utf8 = malformed[i].getBytes(StandardCharsets.UTF_8);
+            m.put(malformed[i], i);
+            equal(m.get(utf8, 0, utf8.length), i);
+            equal(m.get(new String(utf8, StandardCharsets.UTF_8)), i);
+        }
+        check(!StringObjectMap.equals("ab", "abc".getBytes(StandardCharsets.UTF_8), 0, 3));
+        check(!StringObjectMap.equals("abc", "ab".getBytes(StandardCharsets.UTF_8), 0, 2));
+        check(!StringObjectMap.equals("\u00e9", new byte[]{(byte) 0xC3}, 0, 1));
+    }
+
+    static void slices() throws Throwable {
+        byte[] request = "GET /index.html HTTP/1.1\r\nHost: example.com\r\n".getBytes(StandardCharsets.UTF_8);
+        StringObjectMap<Integer> m = new StringObjectMap<>();
+        m.put("GET", 1);
+        m.put("Host", 2);
+        m.put("HTTP/1.1", 3);
+        equal(m.get(request, 0, 3), 1);
+        equal(m.get(request, 16, 8), 3);
+        equal(m.get(request, 26, 4), 2);
+        equal(m.get(request, 0, 2), null);
+        equal(m.get(request, 0, 0), null);
+        m.put(request, 0, 0, 0);
+        equal(m.get(""), 0);
+        // inserted slices are copied
+        byte[] buffer = "key".getBytes(StandardCharsets.UTF_8);
+        m.put(buffer, 0, 3, 4);
+        buffer[0] = 'b';
+        equal(m.get("key"), 4);
+        equal(m.get("bey"), null);
+        equal(m.size(), 5);
+        equal(m.toString().length(), "{GET=1, Host=2, HTTP/1.1=3, =0, key=4}".length());
+    }
+
+    static void errors() throws Throwable {
+        StringObjectMap<Integer> m = new StringObjectMap<>();
+        byte[] b = new byte[4];
+        for (int[] bad : new int[][]{{-1, 1}, {0, 5}, {3, 2}, {1, -1}}) {
+            try {
+                m.get(b, bad[0], bad[1]);
+                fail("expected IndexOutOfBoundsException");
+            } catch (IndexOutOfBoundsException expected) {
+                pass();
+            }
+        }
+        try {
+            m.put((CharSequence) null, 1);
+            fail("expected NullPointerException");
+        } catch (NullPointerException expected) {
+            pass();
+        }
+        try {
+            new StringObjectMap<Integer>(0, 1f);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            pass();
+        }
+    }
+
+    /**
+     * Looks up header names read from a byte buffer, as a protocol
+     * parser would, against decoding a String for each lookup.
+     */
+    static void bench() {
+        Random rnd = new Random(20);
+        int size = 1 << 16;
+        String[] names = new String[size];
+        MyHashMap<String, Integer> strings = new MyHashMap<>();
+        StringObjectMap<Integer> slices = new StringObjectMap<>();
+        for (int i = 0; i < size; i++) {
+            names[i] = "x-header-" + Integer.toHexString(rnd.nextInt());
+            strings.put(names[i], i);
+            slices.put(names[i], i);
+        }
+        int lookups = 1 << 20;
+        byte[] input = new byte[lookups * 20];
+        int[] offsets = new int[lookups + 1];
+        for (int i = 0, p = 0; i < lookups; i++) {
+            byte[] b = names[rnd.nextInt(size)].getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(b, 0, input, p, b.length);
+            offsets[i] = p;
+            p += b.length;
+            offsets[i + 1] = p;
+        }
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime(), sum = 0;
+            for (int i = 0; i < lookups; i++) {
+                sum += strings.get(new String(input, offsets[i], offsets[i + 1] - offsets[i],
+                        StandardCharsets.UTF_8));
+            }
+            long mid = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sum -= slices.get(input, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+            long end = System.nanoTime();
+            System.out.printf("MyHashMap + new String: %5.1f ns/get, StringObjectMap slice: %5.1f ns/get (%d)%n",
+                    (mid - start) / (double) lookups, (end - mid) / (double) lookups, sum);
+        }
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}
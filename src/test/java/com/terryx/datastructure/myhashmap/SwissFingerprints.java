@@ -0,0 +1,72 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary MySwissHashMap filters probes by control byte fingerprints, so
+ *          equals() is only called on keys that are very likely equal.
+ */
+
+import java.util.*;
+
+public class SwissFingerprints {
+
+    static int equalsCalls;
+
+    static final class CountingKey {
+        final String s;
+
+        CountingKey(String s) {
+            this.s = s;
+        }
+
+        public int hashCode() {
+            return s.hashCode();
+        }
+
+        public boolean equals(Object o) {
+            equalsCalls++;
+            return o instanceof CountingKey && ((CountingKey) o).s.equals(s);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = 100000;
+        MySwissHashMap<CountingKey, Integer> m = new MySwissHashMap<>();
+        for (int i = 0; i < n; i++) {
+            m.put(new CountingKey("customer/" + i + "/orders"), i);
+        }
+        if (m.size() != n)
+            throw new RuntimeException("size " + m.size());
+
+        equalsCalls = 0;
+        for (int i = 0; i < n; i++) {
+            Integer v = m.get(new CountingKey("customer/" + i + "/orders"));
+            if (v == null || v != i)
+                throw new RuntimeException("lost " + i);
+        }
+        // one call per hit, plus rare 7-bit fingerprint collisions
+        if (equalsCalls > n + n / 20)
+            throw new RuntimeException("Too many equals calls on hits: " + equalsCalls);
+
+        equalsCalls = 0;
+        for (int i = 0; i < n; i++) {
+            if (m.get(new CountingKey("customer/" + i + "/invoices")) != null)
+                throw new RuntimeException("phantom " + i);
+        }
+        // about 1/128 per occupied slot probed
+        if (equalsCalls > n / 8)
+            throw new RuntimeException("Too many equals calls on misses: " + equalsCalls);
+
+        // tombstones are reused and cleaned up by rehash
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < n; i += 2) {
+                m.remove(new CountingKey("customer/" + i + "/orders"));
+            }
+            for (int i = 0; i < n; i += 2) {
+                m.put(new CountingKey("customer/" + i + "/orders"), i);
+            }
+        }
+        if (m.size() != n || m.keys.length > 2 * MySwissHashMap.capacityFor(n))
+            throw new RuntimeException("size " + m.size() + " capacity " + m.keys.length);
+    }
+}
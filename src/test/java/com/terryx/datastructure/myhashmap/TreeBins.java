@@ -0,0 +1,187 @@
+package com.terryx.datastructure.myhashmap;
+
+/*
+ * @test
+ * @summary Colliding keys are kept in red-black tree bins that stay valid
+ *          across put, remove and resize, and fall back to plain bins
+ *          when they shrink.
+ */
+
+import java.util.*;
+
+public class TreeBins {
+
+    /**
+     * Comparable key whose hashCode is taken modulo a small number of
+     * values so that most keys pile up in a few bins.
+     */
+    static class ComparableKey implements Comparable<ComparableKey> {
+        final int id;
+        final int hash;
+
+        ComparableKey(int id, int hashes) {
+            this.id = id;
+            this.hash = id % hashes;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof ComparableKey && ((ComparableKey) o).id == id;
+        }
+
+        public int compareTo(ComparableKey o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    /**
+     * Same as ComparableKey but without an ordering, so the tree has to
+     * fall back to tieBreakOrder and a full search on equal hashes.
+     */
+    static class PlainKey {
+        final int id;
+        final int hash;
+
+        PlainKey(int id, int hashes) {
+            this.id = id;
+            this.hash = id % hashes;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof PlainKey && ((PlainKey) o).id == id;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        treeified();
+        untreeifiedOnRemove();
+        for (int hashes : new int[]{1, 3, 64, 1024}) {
+            randomOps(true, hashes);
+            randomOps(false, hashes);
+        }
+        System.out.printf("%nPassed = %d, failed = %d%n%n", passed, failed);
+        if (failed > 0) throw new Exception("Some tests failed");
+    }
+
+    static void treeified() throws Throwable {
+        MyHashMap<Object, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            equal(m.put(new ComparableKey(i, 1), i), null);
+        }
+        equal(m.size(), 1000);
+        check(m.table[0] instanceof MyHashMap.TreeNode);
+        for (int i = 0; i < 1000; i++) {
+            equal(m.get(new ComparableKey(i, 1)), i);
+        }
+        equal(m.get(new ComparableKey(1000, 1)), null);
+        checkTable(m);
+    }
+
+    static void untreeifiedOnRemove() throws Throwable {
+        MyHashMap<Object, Integer> m = new MyHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            m.put(new PlainKey(i, 1), i);
+        }
+        check(m.table[0] instanceof MyHashMap.TreeNode);
+        for (int i = 0; i < 98; i++) {
+            equal(m.remove(new PlainKey(i, 1)), i);
+        }
+        check(!(m.table[0] instanceof MyHashMap.TreeNode));
+        equal(m.get(new PlainKey(98, 1)), 98);
+        equal(m.get(new PlainKey(99, 1)), 99);
+        checkTable(m);
+    }
+
+    /**
+     * Runs random put/remove/get against HashMap and verifies the
+     * table layout after every batch.
+     */
+    static void randomOps(boolean comparable, int hashes) throws Throwable {
+        Random rnd = new Random(hashes * 31 + (comparable ? 1 : 0));
+        MyHashMap<Object, Integer> m = new MyHashMap<>();
+        Map<Object, Integer> expected = new HashMap<>();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                int id = rnd.nextInt(2000);
+                Object key = comparable ? new ComparableKey(id, hashes) : new PlainKey(id, hashes);
+                int op = rnd.nextInt(3);
+                if (op == 0) {
+                    equal(m.remove(key), expected.remove(key));
+                } else if (op == 1) {
+                    equal(m.put(key, i), expected.put(key, i));
+                } else {
+                    equal(m.get(key), expected.get(key));
+                }
+            }
+            equal(m.size(), expected.size());
+            for (Map.Entry<Object, Integer> e : expected.entrySet()) {
+                if (!e.getValue().equals(m.get(e.getKey()))) {
+                    fail("missing " + e.getKey());
+                }
+            }
+            checkTable(m);
+        }
+    }
+
+    /**
+     * Every node sits in the bin its hash selects, tree bins have their
+     * root first and satisfy the red-black invariants.
+     */
+    static void checkTable(MyHashMap<Object, Integer> m) throws Throwable {
+        int count = 0;
+        MyHashMap.Node<Object, Integer>[] tab = m.table;
+        for (int i = 0; i < tab.length; i++) {
+            MyHashMap.Node<Object, Integer> e = tab[i];
+            if (e instanceof MyHashMap.TreeNode) {
+                MyHashMap.TreeNode<Object, Integer> root = (MyHashMap.TreeNode<Object, Integer>) e;
+                check(root.parent == null);
+                check(MyHashMap.TreeNode.checkInvariants(root));
+            }
+            for (; e != null; e = e.next) {
+                count++;
+                if ((e.hash & (tab.length - 1)) != i) {
+                    fail("node in wrong bin " + i);
+                }
+            }
+        }
+        equal(count, m.size());
+    }
+
+    //--------------------- Infrastructure ---------------------------
+    static volatile int passed = 0, failed = 0;
+
+    static void pass() {
+        passed++;
+    }
+
+    static void fail() throws Throwable {
+        failed++;
+        Thread.dumpStack();
+        throw new Exception("failed...");
+    }
+
+    static void fail(String msg) throws Throwable {
+        System.out.println(msg);
+        fail();
+    }
+
+    static void check(boolean cond) throws Throwable {
+        if (cond) pass();
+        else fail();
+    }
+
+    static void equal(Object x, Object y) throws Throwable {
+        if (x == null ? y == null : x.equals(y)) pass();
+        else {
+            System.out.println(x + " not equal to " + y);
+            fail();
+        }
+    }
+}